@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+/**
+ * Provider responses and addresses shaped like production traffic.
+ */
+final class Payloads {
+  static final String NOMINATIM_SEARCH = "[{\"place_id\":235508063,"
+          + "\"licence\":\"Data \u00a9 OpenStreetMap contributors, ODbL 1.0. https://osm.org/copyright\","
+          + "\"osm_type\":\"way\",\"osm_id\":403194564,"
+          + "\"boundingbox\":[\"40.7483915\",\"40.7486157\",\"-73.9858424\",\"-73.9854326\"],"
+          + "\"lat\":\"40.7484284\",\"lon\":\"-73.9856546198733\","
+          + "\"display_name\":\"Empire State Building, 350, 5th Avenue, Koreatown, Manhattan Community Board 5, "
+          + "Manhattan, New York County, New York, 10118, United States of America\","
+          + "\"class\":\"tourism\",\"type\":\"attraction\",\"importance\":0.8521629578880869,"
+          + "\"icon\":\"https://nominatim.openstreetmap.org/images/mapicons/poi_point_of_interest.p.20.png\"}]";
+
+  static final String MAPBOX_SEARCH = "{\"type\":\"FeatureCollection\",\"query\":[\"350\",\"5th\",\"ave\",\"new\",\"york\",\"ny\",\"10118\"],"
+          + "\"features\":[{\"id\":\"address.7756945386327546\",\"type\":\"Feature\",\"place_type\":[\"address\"],"
+          + "\"relevance\":1,\"properties\":{\"accuracy\":\"rooftop\"},"
+          + "\"text\":\"5th Avenue\",\"place_name\":\"350 5th Avenue, New York, New York 10118, United States\","
+          + "\"center\":[-73.985664,40.748441],\"geometry\":{\"type\":\"Point\",\"coordinates\":[-73.985664,40.748441]},"
+          + "\"address\":\"350\",\"context\":[{\"id\":\"neighborhood.2103290\",\"text\":\"Midtown South\"},"
+          + "{\"id\":\"postcode.13482670360296810\",\"text\":\"10118\"},"
+          + "{\"id\":\"place.15278078705964500\",\"wikidata\":\"Q60\",\"text\":\"New York\"},"
+          + "{\"id\":\"region.17349986251855570\",\"short_code\":\"US-NY\",\"wikidata\":\"Q1384\",\"text\":\"New York\"},"
+          + "{\"id\":\"country.9053006287256050\",\"short_code\":\"us\",\"wikidata\":\"Q30\",\"text\":\"United States\"}]}],"
+          + "\"attribution\":\"NOTICE: \u00a9 2019 Mapbox and its suppliers. All rights reserved.\"}";
+
+  static final String[][] ADDRESSES = {
+          { "350 5th Ave", "New York", "NY", "10118" },
+          { "1600 Pennsylvania Avenue NW", "Washington", "DC", "20500" },
+          { "233 S. Wacker Dr.", "Chicago", "IL", "60606" },
+          { "1 Infinite Loop", "Cupertino", "CA", "95014" },
+          { "400 Broad St", "Seattle", "WA", "98109" },
+          { "4059 Mt Lee Dr.", "Hollywood", "CA", "90068" },
+          { "11 Wall Street", "New York", "NY", "10005" },
+          { "2 Lincoln Memorial Cir NW", "Washington", "DC", "20037" }
+  };
+
+  private Payloads(){
+  }
+}
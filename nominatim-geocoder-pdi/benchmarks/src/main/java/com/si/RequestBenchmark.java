@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A provider request from address to coordinates, covering request template
+ * expansion, the step's rate limiter, balancer and breaker bookkeeping, and
+ * response parsing, against a stubbed transport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+  private NominatimPDIPluginData data;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws URISyntaxException {
+    data = new NominatimPDIPluginData();
+    data.useHttpClient(new StubHttpClient());
+    data.startNominatimEndpoints("http://nominatim.invalid/search", 0);
+    data.startRateLimiters(0.0, 1, "https://api.mapbox.invalid", 0.0, 1);
+    data.startMapboxTemplates("https://api.mapbox.invalid", "pk.benchmark");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown(){
+    data.stopRateLimiters();
+    data.stopNominatimEndpoints();
+  }
+
+  private String[] nextAddress(){
+    next = (next + 1) % Payloads.ADDRESSES.length;
+    return Payloads.ADDRESSES[next];
+  }
+
+  @Benchmark
+  public String[] nominatimRequest() throws URISyntaxException, IOException {
+    String[] address = this.nextAddress();
+    return data.nominatimRequest(address[0], address[1], address[2], address[3]);
+  }
+
+  @Benchmark
+  public String[] nominatimQueryRequest() throws URISyntaxException, IOException {
+    String[] address = this.nextAddress();
+    return data.nominatimQueryRequest(address[0] + ", " + address[1] + ", " + address[2] + " " + address[3]);
+  }
+
+  @Benchmark
+  public String[] mapBoxRequest() throws URISyntaxException, IOException {
+    String[] address = this.nextAddress();
+    return data.mapBoxRequest(address[0], address[1], address[2], address[3]);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The work the step does for each forward geocoded row: canonicalising and
+ * hashing the address, the memory cache lookup and, on a miss, the
+ * nominatim request against a stubbed transport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowPathBenchmark {
+  @Param({"false", "true"})
+  public boolean cached;
+
+  private NominatimPDIPluginData data;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws URISyntaxException {
+    data = new NominatimPDIPluginData();
+    data.useHttpClient(new StubHttpClient());
+    data.startNominatimEndpoints("http://nominatim.invalid/search", 0);
+    data.startRateLimiters(0.0, 1, null, 0.0, 1);
+    if(cached){
+      data.memoryCache = new GeocodeMemoryCache(16L * 1024L * 1024L);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown(){
+    data.stopRateLimiters();
+    data.stopNominatimEndpoints();
+  }
+
+  @Benchmark
+  public String[] geocodeRow() throws URISyntaxException, IOException {
+    next = (next + 1) % Payloads.ADDRESSES.length;
+    String[] address = Payloads.ADDRESSES[next];
+    String key = AddressCanonicalizer.key(address[0], address[1], address[2], address[3]);
+    long hash = AddressHash.hash64(key);
+    String[] latLong = data.memoryCache == null ? null : data.memoryCache.get(hash);
+    if(latLong == null){
+      latLong = data.nominatimRequest(address[0], address[1], address[2], address[3]);
+      if(data.memoryCache != null){
+        data.memoryCache.put(hash, latLong);
+      }
+    }
+    return latLong;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers every request in memory with a canned provider response, so the
+ * benchmarks measure the step's own work rather than the network.
+ */
+final class StubHttpClient extends CloseableHttpClient {
+  private final byte[] nominatim = Payloads.NOMINATIM_SEARCH.getBytes(StandardCharsets.UTF_8);
+  private final byte[] mapbox = Payloads.MAPBOX_SEARCH.getBytes(StandardCharsets.UTF_8);
+
+  private static final class StubResponse extends BasicHttpResponse implements CloseableHttpResponse {
+    StubResponse(byte[] body){
+      super(HttpVersion.HTTP_1_1, 200, "OK");
+      setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+    }
+
+    public void close(){
+    }
+  }
+
+  @Override
+  protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context){
+    boolean isMapbox = request.getRequestLine().getUri().contains("mapbox.places");
+    return new StubResponse(isMapbox ? mapbox : nominatim);
+  }
+
+  @Override
+  public void close(){
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public HttpParams getParams(){
+    return new BasicHttpParams();
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public ClientConnectionManager getConnectionManager(){
+    return null;
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit on the number of outstanding requests against one endpoint, adjusted
+ * from the latency and failures the endpoint shows (additive increase,
+ * multiplicative decrease).
+ *
+ * Each success while the limit is in use raises it by about one per round
+ * trip. A failure, a throttling response, or a response slower than a
+ * multiple of the minimum round trip cuts it by a fixed ratio, at most once
+ * per round trip, so a server slowing down under load, such as during its own
+ * updates, is backed off before it collapses into queueing. The minimum round
+ * trip is relearned over a window of samples so a lasting change in the
+ * server's speed is not mistaken for congestion.
+ *
+ * Limits are shared by every step copy in the JVM that targets the same
+ * scheme, host and port. The range is the overlap of the ranges of the steps
+ * currently holding the limit, so it widens again when the narrower step
+ * releases it. Waiting requests park on a lock condition rather
+ * than a monitor, so a request waiting on a virtual thread releases its
+ * carrier thread.
+ */
+public class AdaptiveConcurrencyLimit {
+  private static final Map<String, AdaptiveConcurrencyLimit> LIMITS = new HashMap<>();
+  static final double BACKOFF_RATIO = 0.9;
+  static final double LATENCY_TOLERANCE = 2.0;
+  static final int MIN_RTT_WINDOW = 500;
+
+  private final String key;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+  private final List<Hold> holds = new ArrayList<>();
+  private int minLimit;
+  private int maxLimit;
+  private double limit;
+  private int inFlight;
+  private long minRttNanos = Long.MAX_VALUE;
+  private long windowMinRttNanos = Long.MAX_VALUE;
+  private int windowSamples;
+  private long lastDecreaseNanos;
+  private long increases;
+  private long decreases;
+
+  /**
+   * The bounds one step obtained the limit with.
+   */
+  private static final class Hold {
+    final int minLimit;
+    final int maxLimit;
+
+    Hold(int minLimit, int maxLimit){
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+    }
+  }
+
+  /**
+   * Create a limit.
+   *
+   * @param key           The endpoint key
+   * @param minLimit      The lowest limit
+   * @param maxLimit      The highest limit
+   */
+  AdaptiveConcurrencyLimit(String key, int minLimit, int maxLimit){
+    this.key = key;
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.limit = this.minLimit;
+    this.lastDecreaseNanos = System.nanoTime();
+  }
+
+  /**
+   * Obtain the limit for an endpoint. When other steps already hold a limit
+   * for the endpoint the overlap of their ranges applies.
+   * Every call must be paired with {@link #release(int, int)} given the
+   * same bounds.
+   *
+   * @param url           The endpoint url
+   * @param minLimit      The lowest limit
+   * @param maxLimit      The highest limit
+   * @return              The shared limit
+   */
+  public static AdaptiveConcurrencyLimit forEndpoint(String url, int minLimit, int maxLimit){
+    String key = TokenBucketRateLimiter.endpointKey(url);
+    synchronized(LIMITS){
+      AdaptiveConcurrencyLimit limit = LIMITS.get(key);
+      if(limit == null){
+        limit = new AdaptiveConcurrencyLimit(key, minLimit, maxLimit);
+        LIMITS.put(key, limit);
+      }
+      limit.hold(minLimit, maxLimit);
+      return limit;
+    }
+  }
+
+  /**
+   * Add a step's bounds to the ones the range is computed from.
+   *
+   * @param minLimit      The requested lowest limit
+   * @param maxLimit      The requested highest limit
+   */
+  void hold(int minLimit, int maxLimit){
+    lock.lock();
+    try {
+      holds.add(new Hold(minLimit, maxLimit));
+      this.applyHolds();
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove a step's bounds and widen the range to what the remaining steps allow.
+   *
+   * @param minLimit      The lowest limit the step obtained the limit with
+   * @param maxLimit      The highest limit the step obtained the limit with
+   * @return              Whether any step still holds the limit
+   */
+  boolean unhold(int minLimit, int maxLimit){
+    lock.lock();
+    try {
+      for(int i = 0; i < holds.size(); i++){
+        Hold hold = holds.get(i);
+        if(hold.minLimit == minLimit && hold.maxLimit == maxLimit){
+          holds.remove(i);
+          break;
+        }
+      }
+      if(!holds.isEmpty()){
+        this.applyHolds();
+      }
+      return !holds.isEmpty();
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Apply the overlap of the current holds' ranges and keep the limit inside
+   * it. The lock must be held.
+   */
+  private void applyHolds(){
+    int lowest = 1;
+    int highest = Integer.MAX_VALUE;
+    for(Hold hold : holds){
+      int holdMin = Math.max(1, hold.minLimit);
+      lowest = Math.max(lowest, holdMin);
+      highest = Math.min(highest, Math.max(holdMin, hold.maxLimit));
+    }
+    this.maxLimit = highest;
+    this.minLimit = Math.min(lowest, highest);
+    this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, this.limit));
+    available.signalAll();
+  }
+
+  /**
+   * Release a reference obtained from {@link #forEndpoint(String, int, int)}.
+   *
+   * @param minLimit      The lowest limit given to {@link #forEndpoint(String, int, int)}
+   * @param maxLimit      The highest limit given to {@link #forEndpoint(String, int, int)}
+   */
+  public void release(int minLimit, int maxLimit){
+    synchronized(LIMITS){
+      if(!this.unhold(minLimit, maxLimit) && LIMITS.get(key) == this){
+        LIMITS.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Wait until a request is allowed and count it as outstanding. Every call
+   * must be paired with {@link #onSuccess(long, long)}, {@link #onDropped(long)}
+   * or {@link #onIgnored()}.
+   *
+   * @return              The time spent waiting in nanoseconds
+   * @throws InterruptedException
+   */
+  public long acquire() throws InterruptedException {
+    long started = System.nanoTime();
+    lock.lockInterruptibly();
+    try {
+      while(inFlight >= (int) limit){
+        available.await();
+      }
+      inFlight++;
+    }finally{
+      lock.unlock();
+    }
+    return System.nanoTime() - started;
+  }
+
+  /**
+   * Finish a request that succeeded.
+   *
+   * @param startNanos      When the request was sent, from {@link System#nanoTime()}
+   * @param rttNanos        The round trip time
+   */
+  public void onSuccess(long startNanos, long rttNanos){
+    lock.lock();
+    try {
+      this.finish();
+      if(rttNanos < minRttNanos){
+        minRttNanos = rttNanos;
+      }
+      windowMinRttNanos = Math.min(windowMinRttNanos, rttNanos);
+      if(++windowSamples >= MIN_RTT_WINDOW){
+        minRttNanos = windowMinRttNanos;
+        windowMinRttNanos = Long.MAX_VALUE;
+        windowSamples = 0;
+      }
+      if(rttNanos > LATENCY_TOLERANCE * minRttNanos){
+        this.decrease(startNanos);
+      }else if(inFlight + 1 >= limit / 2){
+        // only grow a limit that is actually being used
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+        increases++;
+        available.signalAll();
+      }
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Finish a request that failed or was throttled by the endpoint.
+   *
+   * @param startNanos      When the request was sent, from {@link System#nanoTime()}
+   */
+  public void onDropped(long startNanos){
+    lock.lock();
+    try {
+      this.finish();
+      this.decrease(startNanos);
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Finish a request that says nothing about the endpoint's load, such as one that was cancelled.
+   */
+  public void onIgnored(){
+    lock.lock();
+    try {
+      this.finish();
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Count a request as finished. The lock must be held.
+   */
+  private void finish(){
+    inFlight--;
+    available.signal();
+  }
+
+  /**
+   * Cut the limit unless it was already cut after the request was sent, so a
+   * burst of slow or failed requests from one round trip counts once.
+   *
+   * @param startNanos      When the request was sent
+   */
+  private void decrease(long startNanos){
+    if(startNanos - lastDecreaseNanos < 0L){
+      return;
+    }
+    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    lastDecreaseNanos = System.nanoTime();
+    decreases++;
+  }
+
+  /**
+   * The number of requests currently allowed.
+   *
+   * @return        The limit
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  public int getMinLimit() {
+    lock.lock();
+    try {
+      return minLimit;
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  public int getMaxLimit() {
+    lock.lock();
+    try {
+      return maxLimit;
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The lowest round trip seen in the current window.
+   *
+   * @return        The minimum round trip in milliseconds, or -1 before the first sample
+   */
+  public long getMinRttMillis() {
+    lock.lock();
+    try {
+      return minRttNanos == Long.MAX_VALUE ? -1L : TimeUnit.NANOSECONDS.toMillis(minRttNanos);
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  public long getIncreases() {
+    lock.lock();
+    try {
+      return increases;
+    }finally{
+      lock.unlock();
+    }
+  }
+
+  public long getDecreases() {
+    lock.lock();
+    try {
+      return decreases;
+    }finally{
+      lock.unlock();
+    }
+  }
+}
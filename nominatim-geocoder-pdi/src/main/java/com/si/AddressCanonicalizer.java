@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canonical forms of address parts used for cache keys, so that spelling
+ * variants such as "123 Main Street" and "123 MAIN ST." share one entry.
+ *
+ * Each part is folded to upper case in a single pass over its characters.
+ * Apostrophes and periods are dropped, other punctuation separates words and
+ * runs of whitespace collapse to one space. Street words are replaced through
+ * the USPS suffix and directional tables, state names become their postal
+ * codes and ZIP+4 codes are cut to five digits.
+ */
+public final class AddressCanonicalizer {
+  private static final Map<String, String> STREET_WORDS = new HashMap<>();
+  private static final Map<String, String> STATES = new HashMap<>();
+
+  static {
+    String[] suffixes = {
+      "ALLEY", "ALY", "ALLEE", "ALY", "ALLY", "ALY", "ANNEX", "ANX", "ARCADE", "ARC", "AVENUE", "AVE", "AV", "AVE",
+      "AVEN", "AVE", "AVENU", "AVE", "AVN", "AVE", "AVNUE", "AVE", "BAYOU", "BYU", "BEACH", "BCH", "BEND", "BND",
+      "BLUFF", "BLF", "BOTTOM", "BTM", "BOULEVARD", "BLVD", "BOUL", "BLVD", "BOULV", "BLVD", "BRANCH", "BR",
+      "BRIDGE", "BRG", "BROOK", "BRK", "BYPASS", "BYP", "CAMP", "CP", "CANYON", "CYN", "CAPE", "CPE",
+      "CAUSEWAY", "CSWY", "CENTER", "CTR", "CENTRE", "CTR", "CENTR", "CTR", "CIRCLE", "CIR", "CIRC", "CIR",
+      "CLIFF", "CLF", "CLUB", "CLB", "COMMON", "CMN", "CORNER", "COR", "CORNERS", "CORS", "COURSE", "CRSE",
+      "COURT", "CT", "COURTS", "CTS", "COVE", "CV", "CREEK", "CRK", "CRESCENT", "CRES", "CREST", "CRST",
+      "CROSSING", "XING", "CROSSROAD", "XRD", "CURVE", "CURV", "DALE", "DL", "DAM", "DM", "DIVIDE", "DV",
+      "DRIVE", "DR", "DRIV", "DR", "DRV", "DR", "ESTATE", "EST", "ESTATES", "ESTS", "EXPRESSWAY", "EXPY",
+      "EXPRESS", "EXPY", "EXTENSION", "EXT", "FALLS", "FLS", "FERRY", "FRY", "FIELD", "FLD", "FIELDS", "FLDS",
+      "FLAT", "FLT", "FOREST", "FRST", "FORGE", "FRG", "FORK", "FRK", "FORT", "FT", "FREEWAY", "FWY",
+      "GARDEN", "GDN", "GARDENS", "GDNS", "GATEWAY", "GTWY", "GLEN", "GLN", "GREEN", "GRN", "GROVE", "GRV",
+      "HARBOR", "HBR", "HAVEN", "HVN", "HEIGHTS", "HTS", "HIGHWAY", "HWY", "HIGHWY", "HWY", "HIWAY", "HWY",
+      "HILL", "HL", "HILLS", "HLS", "HOLLOW", "HOLW", "INLET", "INLT", "ISLAND", "IS", "ISLANDS", "ISS",
+      "JUNCTION", "JCT", "KEY", "KY", "KNOLL", "KNL", "LAKE", "LK", "LAKES", "LKS", "LANDING", "LNDG",
+      "LANE", "LN", "LIGHT", "LGT", "LOCK", "LCK", "LODGE", "LDG", "LOOP", "LOOP", "MALL", "MALL",
+      "MANOR", "MNR", "MEADOW", "MDW", "MEADOWS", "MDWS", "MILL", "ML", "MISSION", "MSN", "MOTORWAY", "MTWY",
+      "MOUNT", "MT", "MOUNTAIN", "MTN", "ORCHARD", "ORCH", "OVAL", "OVAL", "OVERPASS", "OPAS", "PARK", "PARK",
+      "PARKWAY", "PKWY", "PARKWY", "PKWY", "PKY", "PKWY", "PASSAGE", "PSGE", "PIKE", "PIKE", "PINE", "PNE",
+      "PINES", "PNES", "PLACE", "PL", "PLAIN", "PLN", "PLAINS", "PLNS", "PLAZA", "PLZ", "POINT", "PT",
+      "POINTS", "PTS", "PORT", "PRT", "PRAIRIE", "PR", "RADIAL", "RADL", "RANCH", "RNCH", "RAPIDS", "RPDS",
+      "REST", "RST", "RIDGE", "RDG", "RIVER", "RIV", "ROAD", "RD", "ROADS", "RDS", "ROUTE", "RTE",
+      "SHORE", "SHR", "SHORES", "SHRS", "SKYWAY", "SKWY", "SPRING", "SPG", "SPRINGS", "SPGS", "SQUARE", "SQ",
+      "STATION", "STA", "STREAM", "STRM", "STREET", "ST", "STR", "ST", "STRT", "ST", "STREETS", "STS",
+      "SUMMIT", "SMT", "TERRACE", "TER", "THROUGHWAY", "TRWY", "TRACE", "TRCE", "TRAIL", "TRL", "TRAILS", "TRL",
+      "TUNNEL", "TUNL", "TURNPIKE", "TPKE", "UNDERPASS", "UPAS", "UNION", "UN", "VALLEY", "VLY", "VIADUCT", "VIA",
+      "VIEW", "VW", "VILLAGE", "VLG", "VILLE", "VL", "VISTA", "VIS", "WALK", "WALK", "WAY", "WAY",
+      "WELL", "WL", "WELLS", "WLS",
+      "APARTMENT", "APT", "BUILDING", "BLDG", "FLOOR", "FL", "SUITE", "STE", "UNIT", "UNIT", "ROOM", "RM"
+    };
+    String[] directionals = {
+      "NORTH", "N", "SOUTH", "S", "EAST", "E", "WEST", "W",
+      "NORTHEAST", "NE", "NORTHWEST", "NW", "SOUTHEAST", "SE", "SOUTHWEST", "SW"
+    };
+    String[] states = {
+      "ALABAMA", "AL", "ALASKA", "AK", "ARIZONA", "AZ", "ARKANSAS", "AR", "CALIFORNIA", "CA", "COLORADO", "CO",
+      "CONNECTICUT", "CT", "DELAWARE", "DE", "DISTRICT OF COLUMBIA", "DC", "FLORIDA", "FL", "GEORGIA", "GA",
+      "HAWAII", "HI", "IDAHO", "ID", "ILLINOIS", "IL", "INDIANA", "IN", "IOWA", "IA", "KANSAS", "KS",
+      "KENTUCKY", "KY", "LOUISIANA", "LA", "MAINE", "ME", "MARYLAND", "MD", "MASSACHUSETTS", "MA",
+      "MICHIGAN", "MI", "MINNESOTA", "MN", "MISSISSIPPI", "MS", "MISSOURI", "MO", "MONTANA", "MT",
+      "NEBRASKA", "NE", "NEVADA", "NV", "NEW HAMPSHIRE", "NH", "NEW JERSEY", "NJ", "NEW MEXICO", "NM",
+      "NEW YORK", "NY", "NORTH CAROLINA", "NC", "NORTH DAKOTA", "ND", "OHIO", "OH", "OKLAHOMA", "OK",
+      "OREGON", "OR", "PENNSYLVANIA", "PA", "RHODE ISLAND", "RI", "SOUTH CAROLINA", "SC", "SOUTH DAKOTA", "SD",
+      "TENNESSEE", "TN", "TEXAS", "TX", "UTAH", "UT", "VERMONT", "VT", "VIRGINIA", "VA", "WASHINGTON", "WA",
+      "WEST VIRGINIA", "WV", "WISCONSIN", "WI", "WYOMING", "WY", "PUERTO RICO", "PR", "GUAM", "GU"
+    };
+    for(int i = 0; i < suffixes.length; i += 2){
+      STREET_WORDS.put(suffixes[i], suffixes[i + 1]);
+    }
+    for(int i = 0; i < directionals.length; i += 2){
+      STREET_WORDS.put(directionals[i], directionals[i + 1]);
+    }
+    for(int i = 0; i < states.length; i += 2){
+      STATES.put(states[i], states[i + 1]);
+    }
+  }
+
+  private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>(){
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(128);
+    }
+  };
+
+  private static final ThreadLocal<StringBuilder> WORD = new ThreadLocal<StringBuilder>(){
+    @Override
+    protected StringBuilder initialValue() {
+      return new StringBuilder(32);
+    }
+  };
+
+  private AddressCanonicalizer(){
+  }
+
+  /**
+   * Append a word to the output, replacing it through the table when listed.
+   *
+   * @param out         The output
+   * @param word        The upper cased word
+   * @param table       The replacement table, or null
+   */
+  private static void appendWord(StringBuilder out, StringBuilder word, Map<String, String> table){
+    if(word.length() == 0){
+      return;
+    }
+    if(out.length() > 0){
+      out.append(' ');
+    }
+    String replacement = null;
+    if(table != null){
+      replacement = table.get(word.toString());
+    }
+    if(replacement != null){
+      out.append(replacement);
+    }else{
+      out.append(word);
+    }
+    word.setLength(0);
+  }
+
+  /**
+   * Fold case, strip punctuation and collapse whitespace, replacing words through a table.
+   *
+   * @param value       The raw value
+   * @param table       The word replacement table, or null
+   * @return            The canonical value
+   */
+  private static String normalize(String value, Map<String, String> table){
+    if(value == null){
+      return "";
+    }
+    StringBuilder out = BUFFER.get();
+    StringBuilder word = WORD.get();
+    out.setLength(0);
+    word.setLength(0);
+    for(int i = 0; i < value.length(); i++){
+      char c = value.charAt(i);
+      if(Character.isLetterOrDigit(c)){
+        word.append(Character.toUpperCase(c));
+      }else if(c == '.' || c == '\'' || c == '\u2019'){
+        // abbreviation periods and apostrophes join their word
+        continue;
+      }else{
+        appendWord(out, word, table);
+      }
+    }
+    appendWord(out, word, table);
+    return out.toString();
+  }
+
+  /**
+   * Canonical street line.
+   *
+   * @param street      The street
+   * @return            The canonical street
+   */
+  public static String street(String street){
+    return normalize(street, STREET_WORDS);
+  }
+
+  /**
+   * Canonical city or other free text.
+   *
+   * @param city        The city
+   * @return            The canonical city
+   */
+  public static String city(String city){
+    return normalize(city, null);
+  }
+
+  /**
+   * Canonical state, using the postal code for full state names.
+   *
+   * @param state       The state
+   * @return            The canonical state
+   */
+  public static String state(String state){
+    String normalized = normalize(state, null);
+    String code = STATES.get(normalized);
+    return code != null ? code : normalized;
+  }
+
+  /**
+   * Canonical postal code. US ZIP+4 codes are cut to the five digit ZIP, other
+   * postal codes are only normalized.
+   *
+   * @param zip         The postal code
+   * @return            The canonical postal code
+   */
+  public static String zip(String zip){
+    if(zip == null){
+      return "";
+    }
+    int start = 0;
+    int end = zip.length();
+    while(start < end && Character.isWhitespace(zip.charAt(start))){
+      start++;
+    }
+    while(end > start && Character.isWhitespace(zip.charAt(end - 1))){
+      end--;
+    }
+    int digits = 0;
+    while(start + digits < end && digits < 5 && Character.isDigit(zip.charAt(start + digits))){
+      digits++;
+    }
+    if(digits == 5 && (start + 5 == end || zip.charAt(start + 5) == '-' || zip.charAt(start + 5) == ' '
+            || end - start == 9)){
+      return zip.substring(start, start + 5);
+    }
+    return normalize(zip, null);
+  }
+
+  /**
+   * Canonical key for an address.
+   *
+   * @param street      The street
+   * @param city        The city
+   * @param state       The state
+   * @param zip         The postal code
+   * @return            The key
+   */
+  public static String key(String street, String city, String state, String zip){
+    return AddressHash.key(street(street), city(city), state(state), zip(zip));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+/**
+ * Cache keys for geocoded addresses.
+ */
+public final class AddressHash {
+  private static final char SEPARATOR = '\u001f';
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private AddressHash(){
+  }
+
+  /**
+   * Join the parts of an address into a single key.
+   *
+   * @param parts       The key parts, nulls are treated as empty
+   * @return            The key
+   */
+  public static String key(String... parts){
+    StringBuilder sb = new StringBuilder(64);
+    for(int i = 0; i < parts.length; i++){
+      if(i > 0){
+        sb.append(SEPARATOR);
+      }
+      if(parts[i] != null){
+        sb.append(parts[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Hash a key to 64 bits. Zero is never returned so it can mark empty slots.
+   *
+   * @param key         The key
+   * @return            The hash
+   */
+  public static long hash64(CharSequence key){
+    long h = FNV_OFFSET;
+    for(int i = 0; i < key.length(); i++){
+      h ^= key.charAt(i);
+      h *= FNV_PRIME;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h == 0L ? 1L : h;
+  }
+}
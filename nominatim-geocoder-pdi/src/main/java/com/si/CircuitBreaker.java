@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Circuit breaker guarding one endpoint.
+ *
+ * The breaker opens after a run of consecutive failures, or at once when the
+ * server asks for a pause with Retry-After. While open, requests are refused.
+ * When the open period ends, a single trial request is let through (half-open):
+ * success closes the breaker and failure opens it again. Each reopening doubles
+ * the open period, with jitter, up to a maximum, and never ends before the
+ * server's Retry-After.
+ */
+public class CircuitBreaker {
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private final int failureThreshold;
+  private final long baseMillis;
+  private final long maxMillis;
+  private State state = State.CLOSED;
+  private int failures;
+  private int opens;
+  private long openUntil;
+  private boolean trialInFlight;
+  private long rejected;
+
+  /**
+   * Create the breaker.
+   *
+   * @param failureThreshold      The consecutive failures that open the breaker
+   * @param baseMillis            The first open period
+   * @param maxMillis             The longest open period
+   */
+  public CircuitBreaker(int failureThreshold, long baseMillis, long maxMillis){
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.baseMillis = Math.max(1L, baseMillis);
+    this.maxMillis = Math.max(this.baseMillis, maxMillis);
+  }
+
+  /**
+   * Exponential backoff with equal jitter: half the exponential delay plus a
+   * random share of the other half.
+   *
+   * @param attempt       The zero based attempt
+   * @param baseMillis    The first delay
+   * @param maxMillis     The longest delay
+   * @return              The delay in milliseconds
+   */
+  public static long backoffMillis(int attempt, long baseMillis, long maxMillis){
+    long delay = Math.min(maxMillis, baseMillis << Math.min(Math.max(0, attempt), 20));
+    long half = delay / 2;
+    return half + ThreadLocalRandom.current().nextLong(half + 1);
+  }
+
+  private void moveToHalfOpen(long now){
+    if(state == State.OPEN && now >= openUntil){
+      state = State.HALF_OPEN;
+      trialInFlight = false;
+    }
+  }
+
+  /**
+   * Whether a request would currently be let through, without reserving it.
+   *
+   * @return        True when closed, or half-open with no trial outstanding
+   */
+  public synchronized boolean isAvailable(){
+    this.moveToHalfOpen(System.currentTimeMillis());
+    return state == State.CLOSED || (state == State.HALF_OPEN && !trialInFlight);
+  }
+
+  /**
+   * Ask to send a request. A request let through must be reported with
+   * {@link #onSuccess()} or {@link #onFailure(long)}.
+   *
+   * @return        True when the request may be sent
+   */
+  public synchronized boolean allowRequest(){
+    this.moveToHalfOpen(System.currentTimeMillis());
+    if(state == State.CLOSED){
+      return true;
+    }
+    if(state == State.HALF_OPEN && !trialInFlight){
+      trialInFlight = true;
+      return true;
+    }
+    rejected++;
+    return false;
+  }
+
+  /**
+   * Record a successful request, closing the breaker.
+   */
+  public synchronized void onSuccess(){
+    state = State.CLOSED;
+    failures = 0;
+    opens = 0;
+    trialInFlight = false;
+  }
+
+  /**
+   * Record a failed request, opening the breaker when the threshold is reached,
+   * when the trial request of a half-open breaker failed, or when the server sent Retry-After.
+   *
+   * @param retryAfterMillis      The pause requested by the server, zero when none
+   */
+  public synchronized void onFailure(long retryAfterMillis){
+    failures++;
+    if(state == State.HALF_OPEN || failures >= failureThreshold || retryAfterMillis > 0){
+      long backoff = backoffMillis(opens, baseMillis, maxMillis);
+      opens++;
+      state = State.OPEN;
+      trialInFlight = false;
+      openUntil = System.currentTimeMillis() + Math.max(backoff, retryAfterMillis);
+    }
+  }
+
+  /**
+   * Report the end of a request that says nothing about the endpoint's health,
+   * such as a client error, releasing a half-open trial.
+   */
+  public synchronized void onIgnored(){
+    trialInFlight = false;
+  }
+
+  /**
+   * The time until an open breaker lets a trial request through.
+   *
+   * @return        The remaining milliseconds, zero when not open
+   */
+  public synchronized long remainingOpenMillis(){
+    return state == State.OPEN ? Math.max(0L, openUntil - System.currentTimeMillis()) : 0L;
+  }
+
+  public synchronized State getState() {
+    this.moveToHalfOpen(System.currentTimeMillis());
+    return state;
+  }
+
+  /**
+   * The number of requests refused while the breaker was open.
+   *
+   * @return        The rejected request count
+   */
+  public synchronized long getRejected() {
+    return rejected;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.io.IOException;
+
+/**
+ * A request was refused because the circuit breakers of every endpoint are open.
+ */
+public class CircuitOpenException extends IOException {
+  private final long remainingMillis;
+
+  /**
+   * Create the exception.
+   *
+   * @param message           The message
+   * @param remainingMillis   The time until a breaker lets a trial request through
+   */
+  public CircuitOpenException(String message, long remainingMillis){
+    super(message);
+    this.remainingMillis = remainingMillis;
+  }
+
+  public long getRemainingMillis() {
+    return remainingMillis;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.math.BigDecimal;
+
+/**
+ * Text form of coordinates returned from the cache tiers.
+ *
+ * Every tier formats through here so a coordinate reads back the same
+ * whichever tier served it: a plain decimal, never in scientific notation,
+ * with at least one fraction digit.
+ */
+public final class CoordinateFormat {
+
+  private CoordinateFormat(){
+  }
+
+  /**
+   * Format a coordinate.
+   *
+   * @param degrees     The coordinate in degrees
+   * @return            The coordinate as a plain decimal
+   */
+  public static String format(double degrees){
+    return plain(BigDecimal.valueOf(degrees));
+  }
+
+  /**
+   * Format a fixed-point coordinate.
+   *
+   * @param fixed       The coordinate in units of 10^-digits degrees
+   * @param digits      The number of fraction digits in the fixed-point value
+   * @return            The coordinate as a plain decimal
+   */
+  public static String format(long fixed, int digits){
+    return plain(BigDecimal.valueOf(fixed, digits));
+  }
+
+  private static String plain(BigDecimal degrees){
+    degrees = degrees.stripTrailingZeros();
+    if(degrees.scale() < 1){
+      degrees = degrees.setScale(1);
+    }
+    return degrees.toPlainString();
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.util.EntityUtils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Spreads requests over replicas of a geocoder with least-outstanding-requests
+ * selection. Step copies configured with the same endpoint list share one
+ * balancer, so the outstanding counts cover every copy in the JVM.
+ *
+ * A replica that fails several requests in a row is taken out of rotation and
+ * background probes of its /status page put it back once it answers again.
+ * When no replica is healthy requests still go to the least loaded one rather
+ * than failing outright.
+ *
+ * Each replica also has a circuit breaker for overload: replicas whose breaker
+ * is open are skipped, and when every breaker is open no replica is handed out.
+ * The latency of successful requests across all replicas is tracked so callers
+ * can decide when a request is running unusually long.
+ */
+public class EndpointBalancer {
+  private static final Map<String, EndpointBalancer> BALANCERS = new HashMap<>();
+  private static final int FAILURES_BEFORE_EJECTION = 3;
+  private static final int PROBE_TIMEOUT_MILLIS = 5000;
+  private static final int LATENCY_SAMPLES = 1024;
+  private static final int LATENCY_MIN_SAMPLES = 50;
+
+  /**
+   * One replica and its load.
+   */
+  public static final class Endpoint {
+    private final int index;
+    private final URI uri;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final CircuitBreaker breaker;
+    private volatile boolean healthy = true;
+
+    Endpoint(int index, URI uri, CircuitBreaker breaker){
+      this.index = index;
+      this.uri = uri;
+      this.breaker = breaker;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public URI getUri() {
+      return uri;
+    }
+
+    public int getOutstanding() {
+      return outstanding.get();
+    }
+
+    public long getRequests() {
+      return requests.get();
+    }
+
+    public boolean isHealthy() {
+      return healthy;
+    }
+
+    public CircuitBreaker getBreaker() {
+      return breaker;
+    }
+  }
+
+  private final String key;
+  private final List<Endpoint> endpoints;
+  private final AtomicInteger rotation = new AtomicInteger();
+  private final LatencyTracker latency = new LatencyTracker(LATENCY_SAMPLES, LATENCY_MIN_SAMPLES);
+  private ScheduledExecutorService prober;
+  private SharedHttpClient probeClient;
+  private int references;
+
+  /**
+   * Create the balancer.
+   *
+   * @param key           The registry key
+   * @param uris          The replicas
+   * @param breakers      Creates the circuit breaker of each replica
+   */
+  EndpointBalancer(String key, List<URI> uris, Supplier<CircuitBreaker> breakers){
+    this.key = key;
+    List<Endpoint> list = new ArrayList<>(uris.size());
+    for(int i = 0; i < uris.size(); i++){
+      list.add(new Endpoint(i, uris.get(i), breakers.get()));
+    }
+    this.endpoints = Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Split a list of endpoints separated by commas or whitespace.
+   *
+   * @param urls          The endpoint list
+   * @return              The endpoints
+   * @throws URISyntaxException
+   */
+  public static List<URI> parseUrls(String urls) throws URISyntaxException {
+    List<URI> uris = new ArrayList<>();
+    if(urls != null){
+      for(String url : urls.split("[,\\s]+")){
+        if(url.length() > 0){
+          uris.add(new URI(url));
+        }
+      }
+    }
+    return uris;
+  }
+
+  /**
+   * Obtain the balancer for a list of endpoints. Every call must be paired with {@link #release()}.
+   *
+   * @param urls                  The endpoints, separated by commas or whitespace
+   * @param healthCheckSeconds    The time between health probes, zero or less to disable them
+   * @param breakers              Creates the circuit breaker of each replica
+   * @return                      The shared balancer
+   * @throws URISyntaxException
+   */
+  public static EndpointBalancer acquire(String urls, int healthCheckSeconds, Supplier<CircuitBreaker> breakers)
+          throws URISyntaxException {
+    List<URI> uris = parseUrls(urls);
+    if(uris.isEmpty()){
+      throw new URISyntaxException(String.valueOf(urls), "No Endpoints Configured");
+    }
+    String key = uris.toString();
+    synchronized(BALANCERS){
+      EndpointBalancer balancer = BALANCERS.get(key);
+      if(balancer == null){
+        balancer = new EndpointBalancer(key, uris, breakers);
+        if(healthCheckSeconds > 0){
+          balancer.startProbes(healthCheckSeconds);
+        }
+        BALANCERS.put(key, balancer);
+      }
+      balancer.references++;
+      return balancer;
+    }
+  }
+
+  /**
+   * Release a reference, stopping the health probes when the last step lets go of the balancer.
+   */
+  public void release(){
+    synchronized(BALANCERS){
+      references--;
+      if(references <= 0){
+        BALANCERS.remove(key);
+        if(prober != null){
+          prober.shutdownNow();
+          probeClient.release(endpoints.size());
+        }
+      }
+    }
+  }
+
+  /**
+   * Pick the healthy replica with the fewest outstanding requests among those
+   * whose breaker lets a request through, and count a request against it.
+   * Every replica handed out must be returned with {@link #complete(Endpoint, boolean, long)}.
+   *
+   * @return              The replica, or null when every breaker is open
+   */
+  public Endpoint acquireEndpoint(){
+    return this.acquireEndpoint(null);
+  }
+
+  /**
+   * Pick a replica other than the given one, as for {@link #acquireEndpoint()}.
+   *
+   * @param exclude       The replica to pass over, or null
+   * @return              The replica, or null when no other replica is available
+   */
+  public Endpoint acquireEndpoint(Endpoint exclude){
+    int size = endpoints.size();
+    for(int attempt = 0; attempt < size; attempt++){
+      int start = Math.floorMod(rotation.getAndIncrement(), size);
+      Endpoint best = null;
+      Endpoint fallback = null;
+      for(int i = 0; i < size; i++){
+        Endpoint candidate = endpoints.get((start + i) % size);
+        if(candidate == exclude || !candidate.breaker.isAvailable()){
+          continue;
+        }
+        if(fallback == null || candidate.outstanding.get() < fallback.outstanding.get()){
+          fallback = candidate;
+        }
+        if(candidate.healthy && (best == null || candidate.outstanding.get() < best.outstanding.get())){
+          best = candidate;
+        }
+      }
+      Endpoint chosen = best != null ? best : fallback;
+      if(chosen == null){
+        return null;
+      }
+      // another thread may have taken a half-open breaker's only trial in the meantime
+      if(chosen.breaker.allowRequest()){
+        chosen.outstanding.incrementAndGet();
+        chosen.requests.incrementAndGet();
+        return chosen;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The time until the first open breaker lets a trial request through.
+   *
+   * @return              The milliseconds to wait, zero when a replica is available
+   */
+  public long nextAvailableMillis(){
+    long wait = Long.MAX_VALUE;
+    for(Endpoint endpoint : endpoints){
+      wait = Math.min(wait, endpoint.breaker.remainingOpenMillis());
+    }
+    return wait;
+  }
+
+  /**
+   * Finish a request, updating the replica's breaker and taking the replica
+   * out of rotation after repeated failures when probes are running to bring it back.
+   *
+   * @param endpoint              The replica
+   * @param failed                Whether the request failed
+   * @param retryAfterMillis      The pause requested by the replica, zero when none
+   */
+  public void complete(Endpoint endpoint, boolean failed, long retryAfterMillis){
+    endpoint.outstanding.decrementAndGet();
+    if(!failed){
+      endpoint.breaker.onSuccess();
+      endpoint.consecutiveFailures.set(0);
+      return;
+    }
+    endpoint.breaker.onFailure(retryAfterMillis);
+    // a replica asking for a pause is busy rather than broken
+    if(retryAfterMillis == 0L && endpoint.consecutiveFailures.incrementAndGet() >= FAILURES_BEFORE_EJECTION && prober != null){
+      endpoint.healthy = false;
+    }
+  }
+
+  /**
+   * Finish a request that was cancelled before it could say anything about the replica.
+   *
+   * @param endpoint              The replica
+   */
+  public void abandon(Endpoint endpoint){
+    endpoint.outstanding.decrementAndGet();
+    endpoint.breaker.onIgnored();
+  }
+
+  /**
+   * The latency of recent successful requests across all replicas.
+   *
+   * @return              The tracker
+   */
+  public LatencyTracker getLatency() {
+    return latency;
+  }
+
+  public List<Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  /**
+   * Derive another nominatim endpoint, such as /status or /reverse, from a search endpoint.
+   *
+   * @param searchUri     The search endpoint
+   * @param name          The endpoint name
+   * @return              The endpoint
+   * @throws URISyntaxException
+   */
+  static URI siblingUri(URI searchUri, String name) throws URISyntaxException {
+    String path = searchUri.getPath() == null ? "" : searchUri.getPath();
+    String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    int slash = trimmed.lastIndexOf('/');
+    String base = trimmed.substring(slash + 1).startsWith("search") ? trimmed.substring(0, slash + 1) : trimmed + "/";
+    return new URIBuilder(searchUri).setPath(base + name).build();
+  }
+
+  /**
+   * Probe every replica on a schedule.
+   *
+   * @param seconds       The time between probes
+   */
+  private void startProbes(int seconds){
+    probeClient = SharedHttpClient.acquire(Math.max(2, endpoints.size()), endpoints.size(), 30, 60,
+            PROBE_TIMEOUT_MILLIS, PROBE_TIMEOUT_MILLIS, PROBE_TIMEOUT_MILLIS);
+    prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("geocoder-health-%d")
+            .build());
+    prober.scheduleWithFixedDelay(this::probeAll, seconds, seconds, TimeUnit.SECONDS);
+  }
+
+  private void probeAll(){
+    HttpClient client = probeClient.getClient();
+    RequestConfig config = RequestConfig.custom()
+            .setConnectTimeout(PROBE_TIMEOUT_MILLIS)
+            .setSocketTimeout(PROBE_TIMEOUT_MILLIS)
+            .setConnectionRequestTimeout(PROBE_TIMEOUT_MILLIS)
+            .build();
+    for(Endpoint endpoint : endpoints){
+      boolean up;
+      try {
+        HttpGet probe = new HttpGet(siblingUri(endpoint.uri, "status"));
+        probe.setConfig(config);
+        HttpResponse response = client.execute(probe);
+        up = response.getStatusLine().getStatusCode() == 200;
+        EntityUtils.consumeQuietly(response.getEntity());
+      }catch(Exception e){
+        up = false;
+      }
+      if(up && !endpoint.healthy){
+        endpoint.consecutiveFailures.set(0);
+      }
+      endpoint.healthy = up;
+    }
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Geocode cache kept in a database table, resolved and written in batches.
+ *
+ * Lookups for a batch of rows go out as one query with a multi-key IN list
+ * and new results are buffered and written back with batched updates and
+ * inserts, so a run costs one round trip per batch rather than one per row.
+ * Misses are stored with null coordinates so they are not looked up again.
+ *
+ * Table layout: address_key (primary key), latitude, longitude.
+ */
+public class GeocodeDatabaseCache {
+  public static final String KEY_COLUMN = "address_key";
+  public static final String LATITUDE_COLUMN = "latitude";
+  public static final String LONGITUDE_COLUMN = "longitude";
+  public static final int MAX_KEY_LENGTH = 255;
+
+  private final Connection connection;
+  private final String table;
+  private final int batchSize;
+  private final Map<String, String[]> unwritten = new LinkedHashMap<>();
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong queries = new AtomicLong();
+  private final AtomicLong writes = new AtomicLong();
+
+  /**
+   * Create the cache.
+   *
+   * @param connection      The database connection, used by this cache alone
+   * @param table           The table, quoted and qualified as the database needs
+   * @param batchSize       The most keys in one query or write batch
+   */
+  public GeocodeDatabaseCache(Connection connection, String table, int batchSize){
+    this.connection = connection;
+    this.table = table;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Whether a key fits the key column.
+   *
+   * @param key         The cache key
+   * @return            True when the key can be cached
+   */
+  public static boolean isCacheable(String key){
+    return key != null && key.length() <= MAX_KEY_LENGTH;
+  }
+
+  /**
+   * Look up a batch of keys, one query per batch size keys.
+   *
+   * @param keys        The cache keys, duplicates allowed
+   * @return            The latitude and longitude of every cached key, an array of nulls for a cached miss
+   * @throws SQLException
+   */
+  public synchronized Map<String, String[]> lookup(Collection<String> keys) throws SQLException {
+    Set<String> distinct = new LinkedHashSet<>();
+    Map<String, String[]> found = new HashMap<>();
+    for(String key : keys){
+      if(!isCacheable(key) || found.containsKey(key)){
+        continue;
+      }
+      String[] waiting = unwritten.get(key);
+      if(waiting != null){
+        found.put(key, waiting.clone());
+      }else{
+        distinct.add(key);
+      }
+    }
+    this.queryAll(new ArrayList<>(distinct), found, true);
+    return found;
+  }
+
+  /**
+   * Query keys in batches.
+   *
+   * @param keys        The distinct keys
+   * @param found       Receives the cached results
+   * @param count       Whether to count the keys as lookups
+   * @throws SQLException
+   */
+  private void queryAll(List<String> keys, Map<String, String[]> found, boolean count) throws SQLException {
+    int hitsBefore = found.size();
+    for(int start = 0; start < keys.size(); start += batchSize){
+      this.query(keys.subList(start, Math.min(keys.size(), start + batchSize)), found);
+    }
+    if(count){
+      lookups.addAndGet(keys.size());
+      hits.addAndGet(found.size() - hitsBefore);
+    }
+  }
+
+  /**
+   * Run one multi-key query.
+   *
+   * @param keys        The keys
+   * @param found       Receives the cached results
+   * @throws SQLException
+   */
+  private void query(List<String> keys, Map<String, String[]> found) throws SQLException {
+    try(PreparedStatement statement = connection.prepareStatement(selectSql(table, keys.size()))){
+      for(int i = 0; i < keys.size(); i++){
+        statement.setString(i + 1, keys.get(i));
+      }
+      queries.incrementAndGet();
+      try(ResultSet results = statement.executeQuery()){
+        while(results.next()){
+          double lat = results.getDouble(2);
+          boolean latNull = results.wasNull();
+          double lon = results.getDouble(3);
+          boolean lonNull = results.wasNull();
+          String[] latLong = new String[2];
+          if(!latNull && !lonNull){
+            latLong[0] = CoordinateFormat.format(lat);
+            latLong[1] = CoordinateFormat.format(lon);
+          }
+          found.put(results.getString(1), latLong);
+        }
+      }
+    }
+  }
+
+  /**
+   * Buffer a result for the next {@link #flush()}. Coordinates are kept in
+   * the form they read back from the table, and a result whose coordinates
+   * are not numbers is not stored.
+   *
+   * @param key         The cache key
+   * @param latLong     The latitude and longitude, nulls for a miss
+   */
+  public synchronized void store(String key, String[] latLong){
+    if(!isCacheable(key) || latLong == null || latLong.length != 2){
+      return;
+    }
+    String[] value = new String[2];
+    if(latLong[0] != null && latLong[1] != null){
+      try {
+        value[0] = CoordinateFormat.format(Double.parseDouble(latLong[0]));
+        value[1] = CoordinateFormat.format(Double.parseDouble(latLong[1]));
+      }catch(NumberFormatException e){
+        return;
+      }
+    }
+    unwritten.put(key, value);
+  }
+
+  /**
+   * Write buffered results with batched updates for keys already in the table
+   * and batched inserts for the rest, in one transaction. When another writer
+   * inserts one of the keys first the transaction is retried once, updating it.
+   *
+   * @throws SQLException
+   */
+  public synchronized void flush() throws SQLException {
+    if(unwritten.isEmpty()){
+      return;
+    }
+    try {
+      this.write();
+    }catch(SQLException e){
+      this.write();
+    }
+    unwritten.clear();
+  }
+
+  private void write() throws SQLException {
+    List<String> keys = new ArrayList<>(unwritten.keySet());
+    Map<String, String[]> existing = new HashMap<>();
+    this.queryAll(keys, existing, false);
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    try(PreparedStatement update = connection.prepareStatement(updateSql(table));
+        PreparedStatement insert = connection.prepareStatement(insertSql(table))){
+      int updates = 0;
+      int inserts = 0;
+      for(String key : keys){
+        String[] latLong = unwritten.get(key);
+        if(existing.containsKey(key)){
+          this.bind(update, latLong, 1);
+          update.setString(3, key);
+          update.addBatch();
+          updates = this.executeFull(update, updates + 1);
+        }else{
+          insert.setString(1, key);
+          this.bind(insert, latLong, 2);
+          insert.addBatch();
+          inserts = this.executeFull(insert, inserts + 1);
+        }
+      }
+      if(updates > 0){
+        update.executeBatch();
+      }
+      if(inserts > 0){
+        insert.executeBatch();
+      }
+      connection.commit();
+      writes.addAndGet(keys.size());
+    }catch(SQLException e){
+      connection.rollback();
+      throw e;
+    }finally{
+      connection.setAutoCommit(autoCommit);
+    }
+  }
+
+  /**
+   * Send a statement's batch once it holds the batch size.
+   *
+   * @param statement   The statement
+   * @param count       The rows in its batch
+   * @return            The rows left in its batch
+   * @throws SQLException
+   */
+  private int executeFull(PreparedStatement statement, int count) throws SQLException {
+    if(count < batchSize){
+      return count;
+    }
+    statement.executeBatch();
+    return 0;
+  }
+
+  private void bind(PreparedStatement statement, String[] latLong, int index) throws SQLException {
+    if(latLong[0] != null && latLong[1] != null){
+      statement.setDouble(index, Double.parseDouble(latLong[0]));
+      statement.setDouble(index + 1, Double.parseDouble(latLong[1]));
+    }else{
+      statement.setNull(index, Types.DOUBLE);
+      statement.setNull(index + 1, Types.DOUBLE);
+    }
+  }
+
+  static String selectSql(String table, int keys){
+    StringBuilder sql = new StringBuilder("SELECT ").append(KEY_COLUMN).append(", ").append(LATITUDE_COLUMN)
+            .append(", ").append(LONGITUDE_COLUMN).append(" FROM ").append(table)
+            .append(" WHERE ").append(KEY_COLUMN).append(" IN (");
+    for(int i = 0; i < keys; i++){
+      sql.append(i > 0 ? ", ?" : "?");
+    }
+    return sql.append(")").toString();
+  }
+
+  static String updateSql(String table){
+    return "UPDATE " + table + " SET " + LATITUDE_COLUMN + " = ?, " + LONGITUDE_COLUMN + " = ? WHERE " + KEY_COLUMN + " = ?";
+  }
+
+  static String insertSql(String table){
+    return "INSERT INTO " + table + " (" + KEY_COLUMN + ", " + LATITUDE_COLUMN + ", " + LONGITUDE_COLUMN + ") VALUES (?, ?, ?)";
+  }
+
+  /**
+   * The number of keys looked up in the table.
+   *
+   * @return        The lookup count
+   */
+  public long getLookups() {
+    return lookups.get();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getQueries() {
+    return queries.get();
+  }
+
+  public long getWrites() {
+    return writes.get();
+  }
+}
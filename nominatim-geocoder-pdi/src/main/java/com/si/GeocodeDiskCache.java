@@ -0,0 +1,643 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent geocode cache stored as an append-only log of records.
+ *
+ * Only a primitive index of key hash to file offset is held in memory; values
+ * are read back with positional reads and the stored key is compared before a
+ * record is returned. Newer records supersede older ones for the same key and
+ * the log is compacted when it is opened with more dead records than live ones.
+ *
+ * The log doubles as a journal of completed lookups for long runs: a restarted
+ * run replays it and answers every address it already resolved without going
+ * to the network. New records are appended by a background writer that commits
+ * whatever accumulated since its last pass in one write and forces the file to
+ * disk periodically, so lookups never wait on the disk. Records that have not
+ * been written yet are answered from memory. When a write fails the cache
+ * stops journaling and only answers from what it already holds, so a failing
+ * disk never costs a lookup its result.
+ *
+ * Record layout: int length, long timestamp, double lat, double lon, key bytes.
+ */
+public class GeocodeDiskCache {
+  private static final Map<String, GeocodeDiskCache> CACHES = new HashMap<>();
+  private static final int HEADER_SIZE = 4;
+  private static final int VALUE_SIZE = 24;
+  private static final int MAX_KEY_BYTES = 64 * 1024;
+  private static final int MAX_PENDING_BYTES = 1024 * 1024;
+  private static final long COMMIT_MILLIS = 100L;
+
+  /**
+   * Records waiting for the writer.
+   */
+  private static final class Batch {
+    private ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+    private final List<String> keys = new ArrayList<>();
+    private final List<String[]> values = new ArrayList<>();
+    private final List<Integer> starts = new ArrayList<>();
+
+    private void add(String key, String[] value, ByteBuffer record){
+      if(buffer.remaining() < record.remaining()){
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + record.remaining()));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+      }
+      keys.add(key);
+      values.add(value);
+      starts.add(buffer.position());
+      buffer.put(record);
+    }
+  }
+
+  private static final ThreadLocal<ByteBuffer> READ_BUFFER = new ThreadLocal<ByteBuffer>(){
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocate(512);
+    }
+  };
+
+  private final String path;
+  private final long ttlMillis;
+  private final long syncMillis;
+  private final boolean compactOnClose;
+  private final Object writeLock = new Object();
+  private final Map<String, String[]> unwritten = new HashMap<>();
+  private Batch pending = new Batch();
+  private ScheduledExecutorService writer;
+  private volatile IOException writeFailure;
+  private final AtomicBoolean failureReported = new AtomicBoolean();
+  private long lastSync;
+  private RandomAccessFile raf;
+  private FileChannel channel;
+  private long writePosition;
+  private long[] hashes;
+  private long[] offsets;
+  private int size;
+  private int records;
+  private int references;
+
+  /**
+   * Create the cache.
+   *
+   * @param path              The canonical cache file path
+   * @param ttlMillis         The time a record stays valid, zero or less to keep records forever
+   * @param syncMillis        The time between forcing new records to disk, zero or less to force them only on close
+   * @param compactOnClose    Whether to drop superseded and expired records when the cache is closed
+   */
+  GeocodeDiskCache(String path, long ttlMillis, long syncMillis, boolean compactOnClose){
+    this.path = path;
+    this.ttlMillis = ttlMillis;
+    this.syncMillis = syncMillis;
+    this.compactOnClose = compactOnClose;
+    this.hashes = new long[1024];
+    this.offsets = new long[1024];
+  }
+
+  /**
+   * Open the cache stored at the given path. Step copies opening the same file
+   * share one instance. Every call must be paired with {@link #release()}.
+   *
+   * @param path              The cache file
+   * @param ttlMillis         The time a record stays valid, zero or less to keep records forever
+   * @param syncMillis        The time between forcing new records to disk, zero or less to force them only on close
+   * @param compactOnClose    Whether to drop superseded and expired records when the cache is closed
+   * @return                  The cache
+   * @throws IOException
+   */
+  public static GeocodeDiskCache open(String path, long ttlMillis, long syncMillis, boolean compactOnClose)
+          throws IOException {
+    String canonical = new File(path).getCanonicalPath();
+    synchronized(CACHES){
+      GeocodeDiskCache cache = CACHES.get(canonical);
+      if(cache == null){
+        cache = new GeocodeDiskCache(canonical, ttlMillis, syncMillis, compactOnClose);
+        cache.load();
+        cache.startWriter();
+        CACHES.put(canonical, cache);
+      }
+      cache.references++;
+      return cache;
+    }
+  }
+
+  /**
+   * Release a reference, closing the file when the last step lets go of it.
+   */
+  public void release(){
+    synchronized(CACHES){
+      references--;
+      if(references <= 0){
+        CACHES.remove(path);
+        this.close();
+      }
+    }
+  }
+
+  /**
+   * Read the log, building the index and compacting it when needed.
+   *
+   * @throws IOException
+   */
+  private void load() throws IOException {
+    File file = new File(path);
+    File parent = file.getParentFile();
+    if(parent != null && !parent.exists() && !parent.mkdirs()){
+      throw new IOException("Unable to Create Cache Directory " + parent);
+    }
+    long validLength = this.scan(file);
+    if(records > 1024 && records > size * 2){
+      this.compact(file);
+      this.clearIndex();
+      validLength = this.scan(file);
+    }
+    raf = new RandomAccessFile(file, "rw");
+    channel = raf.getChannel();
+    if(channel.size() > validLength){
+      // drop a record left half written by an interrupted run
+      channel.truncate(validLength);
+    }
+    writePosition = validLength;
+  }
+
+  /**
+   * Commit pending records on a schedule.
+   */
+  private void startWriter(){
+    lastSync = System.currentTimeMillis();
+    writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("geocoder-journal-%d")
+            .build());
+    writer.scheduleWithFixedDelay(this::commitQuietly, COMMIT_MILLIS, COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  private void commitQuietly(){
+    try {
+      this.commit();
+      if(syncMillis > 0L && System.currentTimeMillis() - lastSync >= syncMillis){
+        this.sync();
+      }
+    }catch(IOException e){
+      // commit has already recorded the failure
+    }
+  }
+
+  /**
+   * Append every pending record to the file in one write and index them. A
+   * failed write drops the batch and makes the cache read-only.
+   *
+   * @throws IOException
+   */
+  void commit() throws IOException {
+    synchronized(writeLock){
+      Batch batch;
+      synchronized(this){
+        if(pending.keys.isEmpty() || channel == null || writeFailure != null){
+          return;
+        }
+        batch = pending;
+        pending = new Batch();
+      }
+      ByteBuffer buffer = batch.buffer;
+      buffer.flip();
+      long offset = writePosition;
+      try {
+        while(buffer.hasRemaining()){
+          channel.write(buffer, offset + buffer.position());
+        }
+      }catch(IOException e){
+        this.fail(e, batch);
+        throw e;
+      }
+      synchronized(this){
+        writePosition += buffer.limit();
+        for(int i = 0; i < batch.keys.size(); i++){
+          String key = batch.keys.get(i);
+          this.index(AddressHash.hash64(key), offset + batch.starts.get(i));
+          records++;
+          // a newer result for the key may be waiting in the next batch
+          if(unwritten.get(key) == batch.values.get(i)){
+            unwritten.remove(key);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Stop journaling after a failed write, forgetting the records that were lost with it.
+   *
+   * @param e           The failure
+   * @param batch       The records that were being written
+   */
+  private void fail(IOException e, Batch batch){
+    synchronized(this){
+      if(writeFailure == null){
+        writeFailure = e;
+      }
+      for(int i = 0; i < batch.keys.size(); i++){
+        String key = batch.keys.get(i);
+        if(unwritten.get(key) == batch.values.get(i)){
+          unwritten.remove(key);
+        }
+      }
+      unwritten.keySet().removeAll(pending.keys);
+      pending = new Batch();
+    }
+  }
+
+  /**
+   * The first write failure, returned to only one caller so that it is reported once.
+   *
+   * @return            The failure, or null when there is none or it was already taken
+   */
+  public IOException takeWriteFailure(){
+    IOException failure = writeFailure;
+    return failure != null && failureReported.compareAndSet(false, true) ? failure : null;
+  }
+
+  /**
+   * Whether a write failed and new results are no longer stored.
+   *
+   * @return            True once the cache is read-only
+   */
+  public boolean isReadOnly(){
+    return writeFailure != null;
+  }
+
+  /**
+   * Force committed records to disk.
+   *
+   * @throws IOException
+   */
+  void sync() throws IOException {
+    synchronized(writeLock){
+      if(channel != null){
+        channel.force(false);
+      }
+      lastSync = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Index every complete record in the file.
+   *
+   * @param file        The cache file
+   * @return            The length of the file covered by complete records
+   * @throws IOException
+   */
+  private long scan(File file) throws IOException {
+    long position = 0L;
+    if(!file.exists()){
+      return position;
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+    try {
+      byte[] keyBytes = new byte[256];
+      while(true){
+        int length;
+        try {
+          length = in.readInt();
+        }catch(EOFException e){
+          break;
+        }
+        int keyLength = length - VALUE_SIZE;
+        if(keyLength < 0 || keyLength > MAX_KEY_BYTES){
+          break;
+        }
+        if(keyBytes.length < keyLength){
+          keyBytes = new byte[keyLength];
+        }
+        try {
+          in.readLong();
+          in.readDouble();
+          in.readDouble();
+          in.readFully(keyBytes, 0, keyLength);
+        }catch(EOFException e){
+          break;
+        }
+        String key = new String(keyBytes, 0, keyLength, StandardCharsets.UTF_8);
+        this.index(AddressHash.hash64(key), position);
+        records++;
+        position += HEADER_SIZE + length;
+      }
+    }finally{
+      in.close();
+    }
+    return position;
+  }
+
+  /**
+   * Rewrite the log keeping only the newest unexpired record per key.
+   *
+   * @param file        The cache file
+   * @throws IOException
+   */
+  private void compact(File file) throws IOException {
+    File tmp = new File(file.getPath() + ".compact");
+    RandomAccessFile source = new RandomAccessFile(file, "r");
+    RandomAccessFile target = new RandomAccessFile(tmp, "rw");
+    try {
+      target.setLength(0L);
+      FileChannel in = source.getChannel();
+      FileChannel out = target.getChannel();
+      long now = System.currentTimeMillis();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 8);
+      for(int i = 0; i < offsets.length; i++){
+        if(hashes[i] == 0L){
+          continue;
+        }
+        header.clear();
+        in.read(header, offsets[i]);
+        header.flip();
+        int length = header.getInt();
+        long timestamp = header.getLong();
+        if(ttlMillis > 0L && now - timestamp > ttlMillis){
+          continue;
+        }
+        in.transferTo(offsets[i], HEADER_SIZE + length, out);
+      }
+      out.force(true);
+    }finally{
+      source.close();
+      target.close();
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Reset the index and record counts.
+   */
+  private void clearIndex(){
+    hashes = new long[1024];
+    offsets = new long[1024];
+    size = 0;
+    records = 0;
+  }
+
+  /**
+   * Point the index entry for a hash at a record, replacing any older record.
+   *
+   * @param hash        The key hash
+   * @param offset      The record offset
+   */
+  private void index(long hash, long offset){
+    if((size + 1) * 2 > hashes.length){
+      this.grow();
+    }
+    int mask = hashes.length - 1;
+    int slot = (int) hash & mask;
+    while(hashes[slot] != 0L && hashes[slot] != hash){
+      slot = (slot + 1) & mask;
+    }
+    if(hashes[slot] == 0L){
+      hashes[slot] = hash;
+      size++;
+    }
+    offsets[slot] = offset;
+  }
+
+  /**
+   * Double the index capacity.
+   */
+  private void grow(){
+    long[] oldHashes = hashes;
+    long[] oldOffsets = offsets;
+    hashes = new long[oldHashes.length * 2];
+    offsets = new long[oldOffsets.length * 2];
+    int mask = hashes.length - 1;
+    for(int i = 0; i < oldHashes.length; i++){
+      if(oldHashes[i] != 0L){
+        int slot = (int) oldHashes[i] & mask;
+        while(hashes[slot] != 0L){
+          slot = (slot + 1) & mask;
+        }
+        hashes[slot] = oldHashes[i];
+        offsets[slot] = oldOffsets[i];
+      }
+    }
+  }
+
+  /**
+   * Find the record offset for a hash.
+   *
+   * @param hash        The key hash
+   * @return            The offset or -1
+   */
+  private synchronized long find(long hash){
+    int mask = hashes.length - 1;
+    int slot = (int) hash & mask;
+    while(hashes[slot] != 0L){
+      if(hashes[slot] == hash){
+        return offsets[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1L;
+  }
+
+  /**
+   * Look up a cached result.
+   *
+   * @param key         The cache key
+   * @return            The latitude and longitude, an array of nulls for a cached miss, or null if not cached
+   * @throws IOException
+   */
+  public String[] get(String key) throws IOException {
+    FileChannel file;
+    synchronized(this){
+      String[] waiting = unwritten.isEmpty() ? null : unwritten.get(key);
+      if(waiting != null){
+        return waiting.clone();
+      }
+      file = channel;
+    }
+    if(file == null){
+      return null;
+    }
+    long offset = this.find(AddressHash.hash64(key));
+    if(offset < 0L){
+      return null;
+    }
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int length = HEADER_SIZE + VALUE_SIZE + keyBytes.length;
+    ByteBuffer buffer = READ_BUFFER.get();
+    if(buffer.capacity() < length){
+      buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+      READ_BUFFER.set(buffer);
+    }
+    buffer.clear();
+    buffer.limit(length);
+    try {
+      while(buffer.hasRemaining()){
+        if(file.read(buffer, offset + buffer.position()) < 0){
+          return null;
+        }
+      }
+    }catch(ClosedChannelException e){
+      // the last step closed the cache during the read
+      return null;
+    }
+    buffer.flip();
+    if(buffer.getInt() != VALUE_SIZE + keyBytes.length){
+      return null;
+    }
+    long timestamp = buffer.getLong();
+    double lat = buffer.getDouble();
+    double lon = buffer.getDouble();
+    for(int i = 0; i < keyBytes.length; i++){
+      if(buffer.get() != keyBytes[i]){
+        return null;
+      }
+    }
+    if(ttlMillis > 0L && System.currentTimeMillis() - timestamp > ttlMillis){
+      return null;
+    }
+    String[] latLong = new String[2];
+    if(!Double.isNaN(lat) && !Double.isNaN(lon)){
+      latLong[0] = CoordinateFormat.format(lat);
+      latLong[1] = CoordinateFormat.format(lon);
+    }
+    return latLong;
+  }
+
+  /**
+   * Store a result. Missing coordinates are stored as a cached miss. The record
+   * is written by the background writer unless too many records are waiting,
+   * in which case the caller writes them. Nothing is stored once a write has
+   * failed; the failure is available from {@link #takeWriteFailure()}.
+   *
+   * @param key         The cache key
+   * @param latLong     The latitude and longitude
+   */
+  public void put(String key, String[] latLong){
+    if(writeFailure != null){
+      return;
+    }
+    double lat = Double.NaN;
+    double lon = Double.NaN;
+    if(latLong != null && latLong.length == 2 && latLong[0] != null && latLong[1] != null){
+      try {
+        lat = Double.parseDouble(latLong[0]);
+        lon = Double.parseDouble(latLong[1]);
+      }catch(NumberFormatException e){
+        return;
+      }
+    }
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    if(keyBytes.length > MAX_KEY_BYTES){
+      return;
+    }
+    ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + VALUE_SIZE + keyBytes.length);
+    record.putInt(VALUE_SIZE + keyBytes.length);
+    record.putLong(System.currentTimeMillis());
+    record.putDouble(lat);
+    record.putDouble(lon);
+    record.put(keyBytes);
+    record.flip();
+    String[] value = Double.isNaN(lat) ? new String[2] : new String[]{CoordinateFormat.format(lat), CoordinateFormat.format(lon)};
+    boolean full;
+    synchronized(this){
+      pending.add(key, value, record);
+      unwritten.put(key, value);
+      full = pending.buffer.position() >= MAX_PENDING_BYTES;
+    }
+    if(full){
+      try {
+        this.commit();
+      }catch(IOException e){
+        // commit has recorded the failure and made the cache read-only
+      }
+    }
+  }
+
+  /**
+   * Commit pending records, force them to disk and close the file, compacting
+   * it first when asked to.
+   */
+  private void close(){
+    if(writer != null){
+      writer.shutdown();
+      try {
+        writer.awaitTermination(1, TimeUnit.MINUTES);
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized(writeLock){
+      try {
+        this.commit();
+        if(channel != null){
+          channel.force(false);
+          raf.close();
+        }
+        if(compactOnClose && channel != null && records > size){
+          this.compact(new File(path));
+        }
+      }catch(IOException e){
+        // nothing left to do with a cache that cannot be flushed
+      }finally{
+        synchronized(this){
+          channel = null;
+          raf = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * The number of records in the file, including superseded ones.
+   *
+   * @return        The record count
+   */
+  public synchronized int getRecords() {
+    return records;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+}
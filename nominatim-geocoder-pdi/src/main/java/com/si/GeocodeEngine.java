@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup state shared by every copy of a step in the JVM: the memory cache,
+ * the table of outstanding lookups and the mapbox circuit breaker. Copies of
+ * one step with the same configuration share an engine, so they answer
+ * repeated addresses from one cache, join each other's outstanding lookups
+ * instead of duplicating them and back off from mapbox together.
+ *
+ * Connection pools, rate limiters, replica balancers and the disk cache have
+ * registries of their own keyed by their settings, so copies already share those.
+ */
+public class GeocodeEngine {
+  private static final Map<String, GeocodeEngine> ENGINES = new HashMap<>();
+
+  private final String key;
+  private final GeocodeMemoryCache memoryCache;
+  private final InFlightRequests inFlight = new InFlightRequests();
+  private final CircuitBreaker mapboxBreaker;
+  private int references;
+
+  /**
+   * Create the engine.
+   *
+   * @param key                   The registry key
+   * @param memoryCacheBytes      The memory cache budget, zero or less for no memory cache
+   * @param breakerThreshold      The consecutive mapbox failures that open its breaker
+   * @param retryBaseMillis       The first open period of the breaker
+   * @param retryMaxMillis        The longest open period of the breaker
+   */
+  GeocodeEngine(String key, long memoryCacheBytes, int breakerThreshold, long retryBaseMillis, long retryMaxMillis){
+    this.key = key;
+    this.memoryCache = memoryCacheBytes > 0 ? new GeocodeMemoryCache(memoryCacheBytes) : null;
+    this.mapboxBreaker = new CircuitBreaker(breakerThreshold, retryBaseMillis, retryMaxMillis);
+  }
+
+  /**
+   * Obtain the engine of a step. Every call must be paired with {@link #release()}.
+   *
+   * @param step                  Identifies the step, such as its transformation and step name
+   * @param configuration         The step settings, so that a changed step gets a new engine
+   * @param memoryCacheBytes      The memory cache budget, zero or less for no memory cache
+   * @param breakerThreshold      The consecutive mapbox failures that open its breaker
+   * @param retryBaseMillis       The first open period of the breaker
+   * @param retryMaxMillis        The longest open period of the breaker
+   * @return                      The shared engine
+   */
+  public static GeocodeEngine acquire(String step, String configuration, long memoryCacheBytes,
+                                      int breakerThreshold, long retryBaseMillis, long retryMaxMillis){
+    String key = step + "#" + Long.toHexString(AddressHash.hash64(String.valueOf(configuration)));
+    synchronized(ENGINES){
+      GeocodeEngine engine = ENGINES.get(key);
+      if(engine == null){
+        engine = new GeocodeEngine(key, memoryCacheBytes, breakerThreshold, retryBaseMillis, retryMaxMillis);
+        ENGINES.put(key, engine);
+      }
+      engine.references++;
+      return engine;
+    }
+  }
+
+  /**
+   * Release a reference, dropping the engine when the last copy lets go of it.
+   * Exactly one caller sees true, so shared totals can be reported once.
+   *
+   * @return        True when this call released the last reference
+   */
+  public boolean release(){
+    synchronized(ENGINES){
+      references--;
+      if(references > 0){
+        return false;
+      }
+      if(ENGINES.get(key) == this){
+        ENGINES.remove(key);
+      }
+      return references == 0;
+    }
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public GeocodeMemoryCache getMemoryCache() {
+    return memoryCache;
+  }
+
+  public InFlightRequests getInFlight() {
+    return inFlight;
+  }
+
+  public CircuitBreaker getMapboxBreaker() {
+    return mapboxBreaker;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A geocoder answered with an error status.
+ */
+public class GeocodeHttpException extends IOException {
+  private final int statusCode;
+  private final long retryAfterMillis;
+
+  /**
+   * Create the exception.
+   *
+   * @param message             The message
+   * @param statusCode          The HTTP status
+   * @param retryAfterMillis    The pause requested with Retry-After, zero when none
+   */
+  public GeocodeHttpException(String message, int statusCode, long retryAfterMillis){
+    super(message);
+    this.statusCode = statusCode;
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  /**
+   * Build the exception for an error response.
+   *
+   * @param provider      The provider name used in the message
+   * @param response      The response
+   * @return              The exception
+   */
+  public static GeocodeHttpException fromResponse(String provider, HttpResponse response){
+    int code = response.getStatusLine().getStatusCode();
+    Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+    long retryAfter = parseRetryAfter(header == null ? null : header.getValue(), System.currentTimeMillis());
+    return new GeocodeHttpException(provider + " Request Failed with Status Code " + code + "\n"
+            + response.getStatusLine().getReasonPhrase(), code, retryAfter);
+  }
+
+  /**
+   * Parse a Retry-After value given either in seconds or as an HTTP date.
+   *
+   * @param value       The header value
+   * @param now         The current time
+   * @return            The pause in milliseconds, zero when absent or unreadable
+   */
+  static long parseRetryAfter(String value, long now){
+    if(value == null || value.trim().length() == 0){
+      return 0L;
+    }
+    try {
+      return TimeUnit.SECONDS.toMillis(Math.max(0L, Long.parseLong(value.trim())));
+    }catch(NumberFormatException e){
+      Date date = DateUtils.parseDate(value.trim());
+      return date == null ? 0L : Math.max(0L, date.getTime() - now);
+    }
+  }
+
+  /**
+   * Whether the status says the server is overloaded or failing, as opposed to a bad request.
+   *
+   * @return        True for 429 and server errors
+   */
+  public boolean isServerFailure() {
+    return statusCode == 429 || statusCode >= 500;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+/**
+ * In-process LRU cache of geocode results.
+ *
+ * Entries live in parallel primitive arrays sized once from a byte budget:
+ * the 64-bit address hash, latitude and longitude as fixed-point ints
+ * (degrees x 1e7) and the links of the recency list. An open-addressed int
+ * table maps hashes to entries, so no objects are allocated per entry.
+ */
+public class GeocodeMemoryCache {
+  private static final double SCALE = 1e7;
+  private static final int SCALE_DIGITS = 7;
+  private static final int NO_VALUE = Integer.MIN_VALUE;
+  private static final int ENTRY_BYTES = 8 + 4 + 4 + 4 + 4;
+  private static final int NONE = -1;
+
+  private final long[] hashes;
+  private final int[] lats;
+  private final int[] lons;
+  private final int[] prev;
+  private final int[] next;
+  private final int[] table;
+  private final int mask;
+  private final int capacity;
+  private int count;
+  private int head = NONE;
+  private int tail = NONE;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Create a cache using at most the given number of bytes.
+   *
+   * @param budgetBytes       The memory budget
+   */
+  public GeocodeMemoryCache(long budgetBytes){
+    int entries = (int) Math.min(1 << 28, Math.max(16L, budgetBytes / (ENTRY_BYTES + 8)));
+    int tableSize = Integer.highestOneBit(entries * 2 - 1) << 1;
+    while(entries > 16 && (long) entries * ENTRY_BYTES + (long) tableSize * 4 > budgetBytes){
+      entries = (int) (entries * 0.9);
+      tableSize = Integer.highestOneBit(entries * 2 - 1) << 1;
+    }
+    capacity = entries;
+    hashes = new long[capacity];
+    lats = new int[capacity];
+    lons = new int[capacity];
+    prev = new int[capacity];
+    next = new int[capacity];
+    table = new int[tableSize];
+    mask = tableSize - 1;
+  }
+
+  /**
+   * Find the table slot holding a hash.
+   *
+   * @param hash        The address hash
+   * @return            The slot or -1
+   */
+  private int findSlot(long hash){
+    int slot = (int) hash & mask;
+    while(table[slot] != 0){
+      if(hashes[table[slot] - 1] == hash){
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return NONE;
+  }
+
+  /**
+   * Remove a table slot, shifting later entries of the probe sequence back.
+   *
+   * @param slot        The slot to clear
+   */
+  private void removeSlot(int slot){
+    int hole = slot;
+    int j = slot;
+    while(true){
+      j = (j + 1) & mask;
+      if(table[j] == 0){
+        break;
+      }
+      int home = (int) hashes[table[j] - 1] & mask;
+      boolean between = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+      if(!between){
+        table[hole] = table[j];
+        hole = j;
+      }
+    }
+    table[hole] = 0;
+  }
+
+  private void unlink(int entry){
+    if(prev[entry] != NONE){
+      next[prev[entry]] = next[entry];
+    }else{
+      head = next[entry];
+    }
+    if(next[entry] != NONE){
+      prev[next[entry]] = prev[entry];
+    }else{
+      tail = prev[entry];
+    }
+  }
+
+  private void pushFront(int entry){
+    prev[entry] = NONE;
+    next[entry] = head;
+    if(head != NONE){
+      prev[head] = entry;
+    }
+    head = entry;
+    if(tail == NONE){
+      tail = entry;
+    }
+  }
+
+  private static int toFixed(String value){
+    return (int) Math.round(Double.parseDouble(value) * SCALE);
+  }
+
+  /**
+   * Look up a result.
+   *
+   * @param hash        The address hash
+   * @return            The latitude and longitude, an array of nulls for a cached miss, or null if not cached
+   */
+  public synchronized String[] get(long hash){
+    int slot = this.findSlot(hash);
+    if(slot == NONE){
+      misses++;
+      return null;
+    }
+    hits++;
+    int entry = table[slot] - 1;
+    if(entry != head){
+      this.unlink(entry);
+      this.pushFront(entry);
+    }
+    String[] latLong = new String[2];
+    if(lats[entry] != NO_VALUE){
+      latLong[0] = CoordinateFormat.format(lats[entry], SCALE_DIGITS);
+      latLong[1] = CoordinateFormat.format(lons[entry], SCALE_DIGITS);
+    }
+    return latLong;
+  }
+
+  /**
+   * Store a result, evicting the least recently used entry when full.
+   * Missing coordinates are stored as a cached miss.
+   *
+   * @param hash        The address hash
+   * @param latLong     The latitude and longitude
+   */
+  public void put(long hash, String[] latLong){
+    int lat = NO_VALUE;
+    int lon = NO_VALUE;
+    if(latLong != null && latLong.length == 2 && latLong[0] != null && latLong[1] != null){
+      try {
+        lat = toFixed(latLong[0]);
+        lon = toFixed(latLong[1]);
+      }catch(NumberFormatException e){
+        return;
+      }
+    }
+    synchronized(this) {
+      int slot = this.findSlot(hash);
+      int entry;
+      if (slot != NONE) {
+        entry = table[slot] - 1;
+        this.unlink(entry);
+      } else {
+        if (count < capacity) {
+          entry = count++;
+        } else {
+          entry = tail;
+          this.unlink(entry);
+          this.removeSlot(this.findSlot(hashes[entry]));
+          evictions++;
+        }
+        hashes[entry] = hash;
+        slot = (int) hash & mask;
+        while (table[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+      }
+      lats[entry] = lat;
+      lons[entry] = lon;
+      this.pushFront(entry);
+    }
+  }
+
+  public synchronized int size() {
+    return count;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+}
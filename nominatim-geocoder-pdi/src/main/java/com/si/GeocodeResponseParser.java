@@ -0,0 +1,511 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming reader for geocoder responses.
+ *
+ * Only the members leading to the first result's coordinates are examined;
+ * everything else is skipped without being materialized and reading stops as
+ * soon as the coordinates are found. Each thread reuses one parser and its
+ * buffers, so a response costs little more than the strings returned.
+ */
+public final class GeocodeResponseParser {
+  private static final ThreadLocal<GeocodeResponseParser> PARSERS = new ThreadLocal<GeocodeResponseParser>(){
+    @Override
+    protected GeocodeResponseParser initialValue() {
+      return new GeocodeResponseParser();
+    }
+  };
+
+  private final byte[] buffer = new byte[8192];
+  private byte[] scratch = new byte[256];
+  private int scratchLength;
+  private InputStream in;
+  private int position;
+  private int limit;
+  private boolean drain;
+
+  private GeocodeResponseParser(){
+  }
+
+  /**
+   * Get this thread's parser, reset to read the given stream.
+   *
+   * @param in        The response body
+   * @return          The parser
+   */
+  static GeocodeResponseParser forStream(InputStream in){
+    GeocodeResponseParser parser = PARSERS.get();
+    parser.in = in;
+    parser.position = 0;
+    parser.limit = 0;
+    parser.scratchLength = 0;
+    parser.drain = false;
+    return parser;
+  }
+
+  /**
+   * Read the first result of a nominatim search response.
+   *
+   * @param in        The response body
+   * @return          The latitude and longitude, nulls when there is no result
+   * @throws IOException
+   */
+  public static String[] parseNominatim(InputStream in) throws IOException {
+    return forStream(in).readNominatim();
+  }
+
+  /**
+   * Read the first feature of a mapbox geocoding response.
+   *
+   * @param in        The response body
+   * @return          The latitude and longitude, nulls when there is no feature
+   * @throws IOException
+   */
+  public static String[] parseMapbox(InputStream in) throws IOException {
+    return forStream(in).readMapbox();
+  }
+
+  /**
+   * Read the address of a nominatim reverse response.
+   *
+   * @param in        The response body
+   * @return          The address line and postcode, nulls when nothing was found
+   * @throws IOException
+   */
+  public static String[] parseNominatimReverse(InputStream in) throws IOException {
+    return forStream(in).readNominatimReverse();
+  }
+
+  /**
+   * Read the responses of a mapbox batch request, one feature collection per query.
+   *
+   * @param in        The response body
+   * @param count     The number of queries in the batch
+   * @return          The latitude and longitude for each query, nulls where there is no feature
+   * @throws IOException
+   */
+  public static String[][] parseMapboxBatch(InputStream in, int count) throws IOException {
+    return forStream(in).readMapboxBatch(count);
+  }
+
+  String[] readNominatim() throws IOException {
+    String[] latLong = new String[2];
+    if(this.next() != '[' || this.next() != '{'){
+      return latLong;
+    }
+    int c = this.next();
+    while(c == '"'){
+      this.readRawString();
+      int field = this.scratchEquals("lat") ? 0 : this.scratchEquals("lon") ? 1 : -1;
+      this.expect(':');
+      c = this.next();
+      if(field >= 0){
+        latLong[field] = this.readScalar(c);
+        if(latLong[0] != null && latLong[1] != null){
+          break;
+        }
+      }else{
+        this.skipValue(c);
+      }
+      c = this.next();
+      if(c != ','){
+        break;
+      }
+      c = this.next();
+    }
+    return latLong;
+  }
+
+  String[] readNominatimReverse() throws IOException {
+    String[] address = new String[2];
+    if(this.next() != '{'){
+      return address;
+    }
+    int c = this.next();
+    while(c == '"'){
+      this.readRawString();
+      boolean details = this.scratchEquals("address");
+      this.expect(':');
+      c = this.next();
+      if(details && c == '{'){
+        this.readAddressDetails(address);
+        return address;
+      }
+      this.skipValue(c);
+      c = this.next();
+      if(c != ','){
+        break;
+      }
+      c = this.next();
+    }
+    return address;
+  }
+
+  /**
+   * Read the house number, road and postcode of an address object whose opening brace was consumed.
+   *
+   * @param address       Receives the address line and postcode
+   * @throws IOException
+   */
+  private void readAddressDetails(String[] address) throws IOException {
+    String number = null;
+    String road = null;
+    int c = this.next();
+    while(c == '"'){
+      this.readRawString();
+      int field = this.scratchEquals("house_number") ? 0 : this.scratchEquals("road") ? 1 : this.scratchEquals("postcode") ? 2 : -1;
+      this.expect(':');
+      c = this.next();
+      if(field == 0){
+        number = this.readScalar(c);
+      }else if(field == 1){
+        road = this.readScalar(c);
+      }else if(field == 2){
+        address[1] = this.readScalar(c);
+      }else{
+        this.skipValue(c);
+      }
+      c = this.next();
+      if(c != ','){
+        break;
+      }
+      c = this.next();
+    }
+    if(road != null){
+      address[0] = number != null ? number + " " + road : road;
+    }
+  }
+
+  String[] readMapbox() throws IOException {
+    if(this.next() != '{'){
+      return new String[2];
+    }
+    return this.readFeatureCollection();
+  }
+
+  String[][] readMapboxBatch(int count) throws IOException {
+    String[][] results = new String[count][];
+    int c = this.next();
+    if(c == '{'){
+      // a batch of one is answered with a bare feature collection
+      results[0] = this.readFeatureCollection();
+    }else if(c == '['){
+      drain = true;
+      int i = 0;
+      c = this.next();
+      while(c == '{'){
+        String[] latLong = this.readFeatureCollection();
+        if(i < count){
+          results[i] = latLong;
+        }
+        i++;
+        c = this.next();
+        if(c != ','){
+          break;
+        }
+        c = this.next();
+      }
+      drain = false;
+    }else{
+      throw new IOException("Malformed Geocoder Response: expected '['");
+    }
+    for(int i = 0; i < count; i++){
+      if(results[i] == null){
+        results[i] = new String[2];
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Read the members of a feature collection whose opening brace was consumed,
+   * returning the center of the first feature. Unless the parser is draining a
+   * batch, reading stops as soon as the center is found.
+   *
+   * @return          The latitude and longitude, nulls when there is no feature
+   * @throws IOException
+   */
+  String[] readFeatureCollection() throws IOException {
+    String[] latLong = new String[2];
+    int c = this.next();
+    while(c == '"'){
+      this.readRawString();
+      boolean features = this.scratchEquals("features");
+      this.expect(':');
+      c = this.next();
+      if(features && !drain){
+        if(c == '[' && this.next() == '{'){
+          this.readFeatureCenter(latLong);
+        }
+        return latLong;
+      }
+      if(features && c == '['){
+        c = this.next();
+        if(c == '{'){
+          this.readFeatureCenter(latLong);
+          c = this.next();
+          while(c == ','){
+            this.skipValue(this.next());
+            c = this.next();
+          }
+        }
+      }else{
+        this.skipValue(c);
+      }
+      c = this.next();
+      if(c != ','){
+        break;
+      }
+      c = this.next();
+    }
+    return latLong;
+  }
+
+  /**
+   * Read the center of a feature whose opening brace was consumed.
+   *
+   * @param latLong       Receives the latitude and longitude
+   * @throws IOException
+   */
+  private void readFeatureCenter(String[] latLong) throws IOException {
+    int c = this.next();
+    while(c == '"'){
+      this.readRawString();
+      boolean center = this.scratchEquals("center");
+      this.expect(':');
+      c = this.next();
+      if(center && c == '['){
+        String lon = this.readScalar(this.next());
+        this.expect(',');
+        String lat = this.readScalar(this.next());
+        latLong[0] = lat;
+        latLong[1] = lon;
+        if(!drain){
+          return;
+        }
+        // consume the rest of the center array
+        this.skipValue('[');
+      }else{
+        this.skipValue(c);
+      }
+      c = this.next();
+      if(c != ','){
+        return;
+      }
+      c = this.next();
+    }
+  }
+
+  /**
+   * Look at the next byte without consuming it.
+   *
+   * @return        The byte or -1 at the end of the stream
+   * @throws IOException
+   */
+  private int peek() throws IOException {
+    if(position >= limit){
+      limit = in.read(buffer, 0, buffer.length);
+      position = 0;
+      if(limit <= 0){
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[position] & 0xff;
+  }
+
+  private int read() throws IOException {
+    int c = this.peek();
+    if(c >= 0){
+      position++;
+    }
+    return c;
+  }
+
+  /**
+   * Consume whitespace and return the next significant byte.
+   *
+   * @return        The byte or -1 at the end of the stream
+   * @throws IOException
+   */
+  int next() throws IOException {
+    int c = this.read();
+    while(c == ' ' || c == '\n' || c == '\r' || c == '\t'){
+      c = this.read();
+    }
+    return c;
+  }
+
+  void expect(int expected) throws IOException {
+    int c = this.next();
+    if(c != expected){
+      throw new IOException("Malformed Geocoder Response: expected '" + (char) expected + "'");
+    }
+  }
+
+  private void appendScratch(int b){
+    if(scratchLength == scratch.length){
+      byte[] larger = new byte[scratch.length * 2];
+      System.arraycopy(scratch, 0, larger, 0, scratchLength);
+      scratch = larger;
+    }
+    scratch[scratchLength++] = (byte) b;
+  }
+
+  private void appendCodePoint(int cp){
+    if(cp < 0x80){
+      this.appendScratch(cp);
+    }else if(cp < 0x800){
+      this.appendScratch(0xc0 | (cp >> 6));
+      this.appendScratch(0x80 | (cp & 0x3f));
+    }else{
+      this.appendScratch(0xe0 | (cp >> 12));
+      this.appendScratch(0x80 | ((cp >> 6) & 0x3f));
+      this.appendScratch(0x80 | (cp & 0x3f));
+    }
+  }
+
+  /**
+   * Read the rest of a string whose opening quote was consumed into the scratch buffer as UTF-8.
+   *
+   * @throws IOException
+   */
+  void readRawString() throws IOException {
+    scratchLength = 0;
+    while(true){
+      int c = this.read();
+      if(c < 0){
+        throw new IOException("Malformed Geocoder Response: unterminated string");
+      }
+      if(c == '"'){
+        return;
+      }
+      if(c == '\\'){
+        int e = this.read();
+        switch(e){
+          case 'n': this.appendScratch('\n'); break;
+          case 't': this.appendScratch('\t'); break;
+          case 'r': this.appendScratch('\r'); break;
+          case 'b': this.appendScratch('\b'); break;
+          case 'f': this.appendScratch('\f'); break;
+          case 'u':
+            int cp = 0;
+            for(int i = 0; i < 4; i++){
+              cp = (cp << 4) | Character.digit(this.read(), 16);
+            }
+            this.appendCodePoint(cp);
+            break;
+          default: this.appendScratch(e);
+        }
+      }else{
+        this.appendScratch(c);
+      }
+    }
+  }
+
+  boolean scratchEquals(String value){
+    if(scratchLength != value.length()){
+      return false;
+    }
+    for(int i = 0; i < scratchLength; i++){
+      if(scratch[i] != value.charAt(i)){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  String scratchString(){
+    return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Read a string, number or literal value as text.
+   *
+   * @param c       The first byte of the value
+   * @return        The value, null for a json null
+   * @throws IOException
+   */
+  String readScalar(int c) throws IOException {
+    if(c == '"'){
+      this.readRawString();
+      return this.scratchString();
+    }
+    scratchLength = 0;
+    this.appendScratch(c);
+    int p = this.peek();
+    while(p >= 0 && p != ',' && p != '}' && p != ']' && p != ' ' && p != '\n' && p != '\r' && p != '\t'){
+      this.appendScratch(this.read());
+      p = this.peek();
+    }
+    return this.scratchEquals("null") ? null : this.scratchString();
+  }
+
+  /**
+   * Skip a value.
+   *
+   * @param c       The first byte of the value
+   * @throws IOException
+   */
+  void skipValue(int c) throws IOException {
+    if(c == '"'){
+      this.skipString();
+    }else if(c == '{' || c == '['){
+      int depth = 1;
+      while(depth > 0){
+        int b = this.read();
+        if(b < 0){
+          throw new IOException("Malformed Geocoder Response: unterminated value");
+        }else if(b == '"'){
+          this.skipString();
+        }else if(b == '{' || b == '['){
+          depth++;
+        }else if(b == '}' || b == ']'){
+          depth--;
+        }
+      }
+    }else{
+      int p = this.peek();
+      while(p >= 0 && p != ',' && p != '}' && p != ']'){
+        this.read();
+        p = this.peek();
+      }
+    }
+  }
+
+  private void skipString() throws IOException {
+    while(true){
+      int c = this.read();
+      if(c < 0){
+        throw new IOException("Malformed Geocoder Response: unterminated string");
+      }
+      if(c == '\\'){
+        this.read();
+      }else if(c == '"'){
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of one step copy: lookups per provider with their outcome
+ * and latency percentiles, cache hit ratios, in-flight requests and the
+ * adaptive limit on them, time spent waiting on rate and concurrency limits
+ * and row throughput.
+ *
+ * Counters are adders the request threads update without locking; latency
+ * samples go through a short synchronized section of their provider's
+ * tracker. Provider lookups are counted around the remote call itself, so
+ * disk cache hits show up only in the cache ratios. The metrics can be
+ * published as an MXBean so they are visible in JConsole or any JMX
+ * collector while a transformation runs.
+ */
+public class GeocoderMetrics implements GeocoderMetricsMXBean {
+  public static final String DOMAIN = "com.si";
+  private static final int LATENCY_SAMPLES = 4096;
+
+  /**
+   * Counters of one provider.
+   */
+  static final class Provider {
+    final LongAdder requests = new LongAdder();
+    final LongAdder successes = new LongAdder();
+    final LongAdder empties = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LatencyTracker latency = new LatencyTracker(LATENCY_SAMPLES, 1);
+
+    ProviderStats snapshot(){
+      return new ProviderStats(requests.sum(), successes.sum(), empties.sum(), errors.sum(),
+              Math.max(0L, latency.percentile(50)), Math.max(0L, latency.percentile(95)), Math.max(0L, latency.percentile(99)));
+    }
+  }
+
+  /**
+   * A snapshot of one provider's counters.
+   */
+  public static final class ProviderStats {
+    private final long requests;
+    private final long successes;
+    private final long empties;
+    private final long errors;
+    private final long latencyP50Millis;
+    private final long latencyP95Millis;
+    private final long latencyP99Millis;
+
+    @ConstructorProperties({"requests", "successes", "empties", "errors", "latencyP50Millis", "latencyP95Millis", "latencyP99Millis"})
+    public ProviderStats(long requests, long successes, long empties, long errors,
+                         long latencyP50Millis, long latencyP95Millis, long latencyP99Millis){
+      this.requests = requests;
+      this.successes = successes;
+      this.empties = empties;
+      this.errors = errors;
+      this.latencyP50Millis = latencyP50Millis;
+      this.latencyP95Millis = latencyP95Millis;
+      this.latencyP99Millis = latencyP99Millis;
+    }
+
+    public long getRequests() {
+      return requests;
+    }
+
+    public long getSuccesses() {
+      return successes;
+    }
+
+    public long getEmpties() {
+      return empties;
+    }
+
+    public long getErrors() {
+      return errors;
+    }
+
+    public long getLatencyP50Millis() {
+      return latencyP50Millis;
+    }
+
+    public long getLatencyP95Millis() {
+      return latencyP95Millis;
+    }
+
+    public long getLatencyP99Millis() {
+      return latencyP99Millis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d Requests (%d Found, %d Empty, %d Failed) p50 %d ms p95 %d ms p99 %d ms",
+              requests, successes, empties, errors, latencyP50Millis, latencyP95Millis, latencyP99Millis);
+    }
+  }
+
+  private final Provider nominatim = new Provider();
+  private final Provider mapbox = new Provider();
+  private final Provider local = new Provider();
+  private final LongAdder rows = new LongAdder();
+  private final LongAdder limiterWaitNanos = new LongAdder();
+  private final LongAdder memoryHits = new LongAdder();
+  private final LongAdder memoryMisses = new LongAdder();
+  private final LongAdder diskHits = new LongAdder();
+  private final LongAdder diskMisses = new LongAdder();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final long startNanos = System.nanoTime();
+  private volatile AdaptiveConcurrencyLimit[] concurrencyLimits = new AdaptiveConcurrencyLimit[0];
+  private ObjectName name;
+
+  public Provider nominatim() {
+    return nominatim;
+  }
+
+  public Provider mapbox() {
+    return mapbox;
+  }
+
+  public Provider local() {
+    return local;
+  }
+
+  /**
+   * Mark the start of a lookup.
+   *
+   * @return              The start time to pass to {@link #finish(Provider, String[], long)}
+   */
+  public long start(){
+    inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Record the outcome of a lookup.
+   *
+   * @param provider      The provider
+   * @param result        The result, null when the lookup failed
+   * @param started       The time returned by {@link #start()}
+   */
+  public void finish(Provider provider, String[] result, long started){
+    inFlight.decrementAndGet();
+    provider.requests.increment();
+    if(result == null){
+      provider.errors.increment();
+    }else if(result.length > 0 && result[0] == null && (result.length < 2 || result[1] == null)){
+      provider.empties.increment();
+    }else{
+      provider.successes.increment();
+    }
+    provider.latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+  }
+
+  /**
+   * Report the adaptive concurrency limits of the nominatim replicas.
+   *
+   * @param limits      The limits, empty when the limit is fixed
+   */
+  public void watchConcurrencyLimits(AdaptiveConcurrencyLimit[] limits){
+    concurrencyLimits = limits;
+  }
+
+  public void recordRow(){
+    rows.increment();
+  }
+
+  public void recordLimiterWait(long nanos){
+    limiterWaitNanos.add(nanos);
+  }
+
+  public void recordMemoryCache(boolean hit){
+    (hit ? memoryHits : memoryMisses).increment();
+  }
+
+  public void recordDiskCache(boolean hit){
+    (hit ? diskHits : diskMisses).increment();
+  }
+
+  /**
+   * Publish the metrics on the platform MBean server.
+   *
+   * @param transformation    The transformation name
+   * @param step              The step name
+   * @param copy              The step copy
+   * @throws JMException
+   */
+  public void register(String transformation, String step, int copy) throws JMException {
+    ObjectName objectName = new ObjectName(DOMAIN + ":type=NominatimGeocoder"
+            + ",transformation=" + ObjectName.quote(String.valueOf(transformation))
+            + ",step=" + ObjectName.quote(String.valueOf(step))
+            + ",copy=" + copy);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if(server.isRegistered(objectName)){
+      server.unregisterMBean(objectName);
+    }
+    server.registerMBean(this, objectName);
+    name = objectName;
+  }
+
+  /**
+   * Remove the metrics from the platform MBean server.
+   */
+  public void unregister(){
+    if(name != null){
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      }catch(JMException e){
+        // already gone
+      }
+      name = null;
+    }
+  }
+
+  public long getRows() {
+    return rows.sum();
+  }
+
+  public double getRowsPerSecond() {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    return seconds > 0 ? rows.sum() / seconds : 0.0;
+  }
+
+  public int getInFlightRequests() {
+    return inFlight.get();
+  }
+
+  public long getRateLimiterWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(limiterWaitNanos.sum());
+  }
+
+  public int getConcurrencyLimit() {
+    int total = 0;
+    for(AdaptiveConcurrencyLimit limit : concurrencyLimits){
+      total += limit.getLimit();
+    }
+    return total;
+  }
+
+  public double getMemoryCacheHitRatio() {
+    return ratio(memoryHits.sum(), memoryMisses.sum());
+  }
+
+  public double getDiskCacheHitRatio() {
+    return ratio(diskHits.sum(), diskMisses.sum());
+  }
+
+  public ProviderStats getNominatim() {
+    return nominatim.snapshot();
+  }
+
+  public ProviderStats getMapbox() {
+    return mapbox.snapshot();
+  }
+
+  public ProviderStats getLocal() {
+    return local.snapshot();
+  }
+
+  /**
+   * A one line summary for the step log.
+   *
+   * @return        The summary
+   */
+  public String getSummary() {
+    StringBuilder summary = new StringBuilder();
+    summary.append(String.format("%d Rows (%.1f/s), %d In Flight, Rate Limiter Wait %d ms",
+            getRows(), getRowsPerSecond(), getInFlightRequests(), getRateLimiterWaitMillis()));
+    if(concurrencyLimits.length > 0){
+      summary.append(String.format(", Concurrency Limit %d", getConcurrencyLimit()));
+    }
+    if(memoryHits.sum() + memoryMisses.sum() > 0){
+      summary.append(String.format(", Memory Cache Hits %.1f%%", 100.0 * getMemoryCacheHitRatio()));
+    }
+    if(diskHits.sum() + diskMisses.sum() > 0){
+      summary.append(String.format(", Disk Cache Hits %.1f%%", 100.0 * getDiskCacheHitRatio()));
+    }
+    this.appendProvider(summary, "Nominatim", nominatim);
+    this.appendProvider(summary, "Mapbox", mapbox);
+    this.appendProvider(summary, "Local", local);
+    return summary.toString();
+  }
+
+  private void appendProvider(StringBuilder summary, String label, Provider provider){
+    if(provider.requests.sum() > 0){
+      summary.append("; ").append(label).append(' ').append(provider.snapshot());
+    }
+  }
+
+  private static double ratio(long hits, long misses){
+    long total = hits + misses;
+    return total == 0 ? 0.0 : (double) hits / total;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+/**
+ * Management interface of the geocoder step's runtime metrics.
+ */
+public interface GeocoderMetricsMXBean {
+  long getRows();
+
+  double getRowsPerSecond();
+
+  int getInFlightRequests();
+
+  long getRateLimiterWaitMillis();
+
+  /**
+   * The outstanding nominatim requests currently allowed across all replicas.
+   *
+   * @return        The sum of the adaptive limits, zero when the limit is fixed
+   */
+  int getConcurrencyLimit();
+
+  double getMemoryCacheHitRatio();
+
+  double getDiskCacheHitRatio();
+
+  GeocoderMetrics.ProviderStats getNominatim();
+
+  GeocoderMetrics.ProviderStats getMapbox();
+
+  GeocoderMetrics.ProviderStats getLocal();
+
+  String getSummary();
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Table of outstanding geocode lookups keyed by canonical address. A lookup
+ * for an address that is already being resolved waits for that result instead
+ * of issuing its own request.
+ */
+public class InFlightRequests {
+  private final ConcurrentMap<String, CompletableFuture<String[]>> calls = new ConcurrentHashMap<>();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * Resolve an address, joining an outstanding lookup for the same key when there is one.
+   *
+   * @param key           The canonical address key
+   * @param loader        Resolves the address when no lookup is outstanding
+   * @return              The loader result, or null if the shared lookup failed or the wait was interrupted
+   */
+  public String[] execute(String key, Supplier<String[]> loader){
+    CompletableFuture<String[]> call = new CompletableFuture<>();
+    CompletableFuture<String[]> existing = calls.putIfAbsent(key, call);
+    if(existing != null){
+      coalesced.incrementAndGet();
+      try {
+        return existing.get();
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        return null;
+      }catch(ExecutionException e){
+        return null;
+      }
+    }
+    try {
+      String[] latLong = loader.get();
+      call.complete(latLong);
+      return latLong;
+    }catch(RuntimeException | Error e){
+      // waiters must always be woken, whatever the loader throws
+      call.completeExceptionally(e);
+      throw e;
+    }finally{
+      calls.remove(key, call);
+    }
+  }
+
+  /**
+   * The number of lookups that joined an outstanding request.
+   *
+   * @return        The coalesced lookup count
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  /**
+   * The number of outstanding lookups.
+   *
+   * @return        The outstanding lookup count
+   */
+  public int size() {
+    return calls.size();
+  }
+}
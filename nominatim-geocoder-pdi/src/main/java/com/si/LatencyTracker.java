@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent request latencies and answers percentile queries
+ * over them. The sorted view is rebuilt only after a number of new samples,
+ * so percentile lookups on every request stay cheap.
+ */
+public class LatencyTracker {
+  private final long[] samples;
+  private final int minSamples;
+  private final int resortEvery;
+  private int count;
+  private int next;
+  private long[] sorted;
+  private int sinceSort;
+
+  /**
+   * Create the tracker.
+   *
+   * @param capacity        The number of recent samples kept
+   * @param minSamples      The samples needed before percentiles are reported
+   */
+  public LatencyTracker(int capacity, int minSamples){
+    this.samples = new long[Math.max(1, capacity)];
+    this.minSamples = Math.max(1, Math.min(minSamples, this.samples.length));
+    this.resortEvery = Math.max(1, this.samples.length / 16);
+  }
+
+  /**
+   * Record a latency.
+   *
+   * @param millis      The latency in milliseconds
+   */
+  public synchronized void record(long millis){
+    samples[next] = millis;
+    next = (next + 1) % samples.length;
+    if(count < samples.length){
+      count++;
+    }
+    sinceSort++;
+  }
+
+  /**
+   * The latency below which the given share of recent requests completed.
+   *
+   * @param percentile      The percentile, between 0 and 100
+   * @return                The latency in milliseconds, or -1 before enough samples were recorded
+   */
+  public synchronized long percentile(double percentile){
+    if(count < minSamples){
+      return -1L;
+    }
+    if(sorted == null || sinceSort >= resortEvery){
+      sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      sinceSort = 0;
+    }
+    double share = Math.max(0.0, Math.min(100.0, percentile)) / 100.0;
+    int rank = (int) Math.ceil(share * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+  }
+
+  /**
+   * The number of samples currently kept.
+   *
+   * @return        The sample count
+   */
+  public synchronized int size(){
+    return count;
+  }
+}
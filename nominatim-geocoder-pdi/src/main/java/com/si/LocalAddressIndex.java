@@ -0,0 +1,763 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline geocoder built from an OpenAddresses style CSV of address points
+ * (NUMBER, STREET, CITY, REGION, POSTCODE, LON, LAT columns).
+ *
+ * Points are grouped by area, the postcode or "CITY|STATE" when a point has no
+ * postcode, then by street and sorted by house number. Areas and street names
+ * are sorted dictionaries, everything else is a primitive array: area to street
+ * range, street to point range, and per point the house number and fixed-point
+ * coordinates (degrees x 1e7). A lookup is two dictionary binary searches and a
+ * binary search over the street's house numbers; numbers between two known
+ * points are interpolated.
+ *
+ * The built index is written next to the CSV with an ".idx" suffix and reused
+ * while it is newer than the CSV.
+ *
+ * Reverse lookups use a grid of 0.01 degree cells built on first use: point
+ * numbers sorted by cell id with a sorted array of occupied cells, searched in
+ * rings around the query cell until no closer point can exist.
+ */
+public class LocalAddressIndex {
+  private static final Map<String, LocalAddressIndex> INDEXES = new HashMap<>();
+  private static final int MAGIC = 0x47454f49;
+  private static final int VERSION = 1;
+  private static final double SCALE = 1e7;
+  private static final int SCALE_DIGITS = 7;
+  private static final int NO_NUMBER = -1;
+  private static final int CELL_SIZE = 100000;
+  private static final int LAT_CELLS = 18000;
+  private static final int LON_CELLS = 36000;
+  private static final double METERS_PER_DEGREE = 111195.0;
+  private static final int MAX_RINGS = 64;
+
+  private final String path;
+  private String[] areas;
+  private int[] areaStreets;
+  private String[] streets;
+  private int[] streetIds;
+  private int[] streetPoints;
+  private int[] numbers;
+  private int[] lats;
+  private int[] lons;
+  private volatile int[] cellIds;
+  private int[] cellStarts;
+  private int[] cellPoints;
+  private long buildMillis;
+  private boolean fromIndexFile;
+  private int skippedRows;
+  private int references;
+
+  LocalAddressIndex(String path){
+    this.path = path;
+  }
+
+  /**
+   * Open the index for an address file. Step copies opening the same file share
+   * one instance. Every call must be paired with {@link #release()}.
+   *
+   * @param path          The address CSV
+   * @return              The index
+   * @throws IOException
+   */
+  public static LocalAddressIndex open(String path) throws IOException {
+    String canonical = new File(path).getCanonicalPath();
+    synchronized(INDEXES){
+      LocalAddressIndex index = INDEXES.get(canonical);
+      if(index == null){
+        index = new LocalAddressIndex(canonical);
+        index.load();
+        INDEXES.put(canonical, index);
+      }
+      index.references++;
+      return index;
+    }
+  }
+
+  /**
+   * Release a reference, dropping the index when the last step lets go of it.
+   */
+  public void release(){
+    synchronized(INDEXES){
+      references--;
+      if(references <= 0){
+        INDEXES.remove(path);
+      }
+    }
+  }
+
+  /**
+   * Load the serialized index when it is current, otherwise build it from the CSV and save it.
+   *
+   * @throws IOException
+   */
+  private void load() throws IOException {
+    long start = System.nanoTime();
+    File csv = new File(path);
+    File idx = new File(path + ".idx");
+    if(idx.isFile() && (!csv.exists() || idx.lastModified() >= csv.lastModified())){
+      this.readIndex(idx);
+      fromIndexFile = true;
+    }else{
+      this.build(csv);
+      try {
+        this.writeIndex(idx);
+      }catch(IOException e){
+        // a read-only location only costs the next run a rebuild
+      }
+    }
+    buildMillis = (System.nanoTime() - start) / 1000000L;
+  }
+
+  /**
+   * Geocode an address.
+   *
+   * @param street        The street line, with the house number
+   * @param city          The city
+   * @param state         The state
+   * @param zip           The postcode
+   * @return              The latitude and longitude, nulls when the address is not in the index
+   */
+  public String[] lookup(String street, String city, String state, String zip){
+    String[] latLong = new String[2];
+    String line = AddressCanonicalizer.street(street);
+    int number = houseNumber(line);
+    String name = number == NO_NUMBER ? line : streetName(line);
+    int streetId = Arrays.binarySearch(streets, name);
+    if(streetId < 0){
+      return latLong;
+    }
+    int range = this.findStreet(AddressCanonicalizer.zip(zip), streetId);
+    if(range < 0){
+      range = this.findStreet(areaKey(AddressCanonicalizer.city(city), AddressCanonicalizer.state(state)), streetId);
+    }
+    if(range < 0){
+      return latLong;
+    }
+    this.locate(range, number, latLong);
+    return latLong;
+  }
+
+  /**
+   * Find the address point nearest to a coordinate.
+   *
+   * @param latitude      The latitude in degrees
+   * @param longitude     The longitude in degrees
+   * @param maxMeters     The search radius
+   * @return              The address line and postcode, nulls when no point is in range
+   */
+  public String[] reverse(double latitude, double longitude, double maxMeters){
+    String[] address = new String[2];
+    if(cellIds == null){
+      this.ensureSpatialIndex();
+    }
+    int lat = (int) Math.round(latitude * SCALE);
+    int lon = (int) Math.round(longitude * SCALE);
+    double metersPerLonDegree = METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+    double cellMeters = Math.min(METERS_PER_DEGREE, metersPerLonDegree) * CELL_SIZE / SCALE;
+    int rings = (int) Math.min(MAX_RINGS, Math.ceil(maxMeters / cellMeters) + 1);
+    int latCell = latCell(lat);
+    int lonCell = lonCell(lon);
+    int best = -1;
+    double bestMeters = maxMeters;
+    for(int r = 0; r <= rings; r++){
+      for(int dy = -r; dy <= r; dy++){
+        int y = latCell + dy;
+        if(y < 0 || y >= LAT_CELLS){
+          continue;
+        }
+        int step = dy == -r || dy == r ? 1 : 2 * r;
+        for(int dx = -r; dx <= r; dx += Math.max(1, step)){
+          int x = lonCell + dx;
+          if(x < 0 || x >= LON_CELLS){
+            continue;
+          }
+          int c = Arrays.binarySearch(cellIds, y * LON_CELLS + x);
+          if(c < 0){
+            continue;
+          }
+          for(int i = cellStarts[c]; i < cellStarts[c + 1]; i++){
+            int p = cellPoints[i];
+            double north = (lats[p] - lat) / SCALE * METERS_PER_DEGREE;
+            double east = (lons[p] - lon) / SCALE * metersPerLonDegree;
+            double meters = Math.sqrt(north * north + east * east);
+            if(meters <= bestMeters){
+              bestMeters = meters;
+              best = p;
+            }
+          }
+        }
+      }
+      if(best >= 0 && bestMeters <= r * cellMeters){
+        break;
+      }
+    }
+    if(best >= 0){
+      int street = upperIndex(streetPoints, best);
+      int area = upperIndex(areaStreets, street);
+      String name = streets[streetIds[street]];
+      address[0] = numbers[best] == NO_NUMBER ? name : numbers[best] + " " + name;
+      address[1] = areas[area].indexOf('|') < 0 ? areas[area] : "";
+    }
+    return address;
+  }
+
+  /**
+   * Find the range holding a position in an array of range starts.
+   *
+   * @param starts        The ascending range starts
+   * @param position      The position
+   * @return              The range index
+   */
+  private static int upperIndex(int[] starts, int position){
+    int i = Arrays.binarySearch(starts, position);
+    if(i >= 0){
+      while(i + 1 < starts.length && starts[i + 1] == position){
+        i++;
+      }
+      return i;
+    }
+    return -i - 2;
+  }
+
+  private static int latCell(int lat){
+    return (int) Math.max(0, Math.min(LAT_CELLS - 1, (lat + 900000000L) / CELL_SIZE));
+  }
+
+  private static int lonCell(int lon){
+    return (int) Math.max(0, Math.min(LON_CELLS - 1, (lon + 1800000000L) / CELL_SIZE));
+  }
+
+  /**
+   * Build the grid used by reverse lookups, once.
+   */
+  public synchronized void ensureSpatialIndex(){
+    if(cellIds != null){
+      return;
+    }
+    int count = numbers.length;
+    long[] keyed = new long[count];
+    for(int p = 0; p < count; p++){
+      long cell = (long) latCell(lats[p]) * LON_CELLS + lonCell(lons[p]);
+      keyed[p] = cell << 32 | p;
+    }
+    Arrays.sort(keyed);
+    int[] points = new int[count];
+    int[] ids = new int[Math.max(16, count / 4)];
+    int[] starts = new int[ids.length + 1];
+    int cells = 0;
+    for(int i = 0; i < count; i++){
+      int cell = (int) (keyed[i] >>> 32);
+      if(cells == 0 || ids[cells - 1] != cell){
+        if(cells == ids.length){
+          ids = Arrays.copyOf(ids, cells * 2);
+          starts = Arrays.copyOf(starts, cells * 2 + 1);
+        }
+        ids[cells] = cell;
+        starts[cells] = i;
+        cells++;
+      }
+      points[i] = (int) keyed[i];
+    }
+    starts[cells] = count;
+    cellPoints = points;
+    cellStarts = Arrays.copyOf(starts, cells + 1);
+    // published last, readers check it without locking
+    cellIds = Arrays.copyOf(ids, cells);
+  }
+
+  /**
+   * Find a street within an area.
+   *
+   * @param area          The area key
+   * @param streetId      The street dictionary id
+   * @return              The street entry or -1
+   */
+  private int findStreet(String area, int streetId){
+    if(area.length() == 0){
+      return -1;
+    }
+    int a = Arrays.binarySearch(areas, area);
+    if(a < 0){
+      return -1;
+    }
+    int s = Arrays.binarySearch(streetIds, areaStreets[a], areaStreets[a + 1], streetId);
+    return s < 0 ? -1 : s;
+  }
+
+  /**
+   * Place a house number on a street, interpolating between the nearest known numbers.
+   *
+   * @param street        The street entry
+   * @param number        The house number or NO_NUMBER
+   * @param latLong       Receives the latitude and longitude
+   */
+  private void locate(int street, int number, String[] latLong){
+    int from = streetPoints[street];
+    int to = streetPoints[street + 1];
+    if(number == NO_NUMBER){
+      int mid = (from + to) >>> 1;
+      this.setLatLong(lats[mid], lons[mid], latLong);
+      return;
+    }
+    int p = Arrays.binarySearch(numbers, from, to, number);
+    if(p >= 0){
+      this.setLatLong(lats[p], lons[p], latLong);
+      return;
+    }
+    int upper = -p - 1;
+    int lower = upper - 1;
+    if(lower < from){
+      this.setLatLong(lats[upper], lons[upper], latLong);
+    }else if(upper >= to){
+      this.setLatLong(lats[lower], lons[lower], latLong);
+    }else{
+      double t = (double) (number - numbers[lower]) / (numbers[upper] - numbers[lower]);
+      int lat = (int) Math.round(lats[lower] + (lats[upper] - lats[lower]) * t);
+      int lon = (int) Math.round(lons[lower] + (lons[upper] - lons[lower]) * t);
+      this.setLatLong(lat, lon, latLong);
+    }
+  }
+
+  private void setLatLong(int lat, int lon, String[] latLong){
+    latLong[0] = CoordinateFormat.format(lat, SCALE_DIGITS);
+    latLong[1] = CoordinateFormat.format(lon, SCALE_DIGITS);
+  }
+
+  /**
+   * Parse the leading house number of a canonical street line. A number may
+   * carry a one letter suffix, so "12A" is 12 while "5TH AVE" has no number.
+   *
+   * @param line          The canonical street line
+   * @return              The number or NO_NUMBER
+   */
+  static int houseNumber(String line){
+    int number = 0;
+    int i = 0;
+    while(i < line.length() && i < 9 && Character.isDigit(line.charAt(i))){
+      number = number * 10 + (line.charAt(i) - '0');
+      i++;
+    }
+    if(i == 0){
+      return NO_NUMBER;
+    }
+    if(i < line.length() && Character.isLetter(line.charAt(i))){
+      i++;
+    }
+    if(i < line.length() && line.charAt(i) != ' ' && line.charAt(i) != '-' && line.charAt(i) != '/'){
+      return NO_NUMBER;
+    }
+    return number;
+  }
+
+  /**
+   * Strip the leading house number token from a canonical street line.
+   *
+   * @param line          The canonical street line
+   * @return              The street name
+   */
+  static String streetName(String line){
+    int space = line.indexOf(' ');
+    return space < 0 ? "" : line.substring(space + 1);
+  }
+
+  private static String areaKey(String city, String state){
+    return city.length() == 0 && state.length() == 0 ? "" : city + "|" + state;
+  }
+
+  /**
+   * Split a CSV line, honouring double quoted fields.
+   *
+   * @param line          The line
+   * @param fields        Receives the fields
+   */
+  static void splitCsv(String line, List<String> fields){
+    fields.clear();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for(int i = 0; i < line.length(); i++){
+      char c = line.charAt(i);
+      if(quoted){
+        if(c == '"'){
+          if(i + 1 < line.length() && line.charAt(i + 1) == '"'){
+            field.append('"');
+            i++;
+          }else{
+            quoted = false;
+          }
+        }else{
+          field.append(c);
+        }
+      }else if(c == '"'){
+        quoted = true;
+      }else if(c == ','){
+        fields.add(field.toString());
+        field.setLength(0);
+      }else{
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+  }
+
+  private static String column(List<String> fields, int idx){
+    return idx >= 0 && idx < fields.size() ? fields.get(idx) : "";
+  }
+
+  /**
+   * Build the index from an address CSV.
+   *
+   * @param csv           The address file
+   * @throws IOException
+   */
+  private void build(File csv) throws IOException {
+    Map<String, Integer> areaIds = new HashMap<>();
+    Map<String, Integer> streetNames = new HashMap<>();
+    int[] rowArea = new int[1024];
+    int[] rowStreet = new int[1024];
+    int[] rowNumber = new int[1024];
+    int[] rowLat = new int[1024];
+    int[] rowLon = new int[1024];
+    int rows = 0;
+
+    try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8), 1 << 16)){
+      List<String> fields = new ArrayList<>();
+      String header = reader.readLine();
+      if(header == null){
+        throw new IOException("Empty Address File " + csv);
+      }
+      splitCsv(header.startsWith("\uFEFF") ? header.substring(1) : header, fields);
+      int numberCol = -1, streetCol = -1, cityCol = -1, regionCol = -1, postcodeCol = -1, lonCol = -1, latCol = -1;
+      for(int i = 0; i < fields.size(); i++){
+        String name = fields.get(i).trim().toUpperCase();
+        if(name.equals("NUMBER")) numberCol = i;
+        else if(name.equals("STREET")) streetCol = i;
+        else if(name.equals("CITY")) cityCol = i;
+        else if(name.equals("REGION")) regionCol = i;
+        else if(name.equals("POSTCODE")) postcodeCol = i;
+        else if(name.equals("LON")) lonCol = i;
+        else if(name.equals("LAT")) latCol = i;
+      }
+      if(streetCol < 0 || lonCol < 0 || latCol < 0){
+        throw new IOException("Address File " + csv + " Needs STREET, LON and LAT Columns");
+      }
+
+      String line;
+      while((line = reader.readLine()) != null){
+        splitCsv(line, fields);
+        String name = AddressCanonicalizer.street(column(fields, streetCol));
+        String area = AddressCanonicalizer.zip(column(fields, postcodeCol));
+        if(area.length() == 0){
+          area = areaKey(AddressCanonicalizer.city(column(fields, cityCol)), AddressCanonicalizer.state(column(fields, regionCol)));
+        }
+        int lat;
+        int lon;
+        try {
+          lat = (int) Math.round(Double.parseDouble(column(fields, latCol)) * SCALE);
+          lon = (int) Math.round(Double.parseDouble(column(fields, lonCol)) * SCALE);
+        }catch(NumberFormatException e){
+          skippedRows++;
+          continue;
+        }
+        if(name.length() == 0 || area.length() == 0){
+          skippedRows++;
+          continue;
+        }
+        if(rows == rowArea.length){
+          int grown = rows * 2;
+          rowArea = Arrays.copyOf(rowArea, grown);
+          rowStreet = Arrays.copyOf(rowStreet, grown);
+          rowNumber = Arrays.copyOf(rowNumber, grown);
+          rowLat = Arrays.copyOf(rowLat, grown);
+          rowLon = Arrays.copyOf(rowLon, grown);
+        }
+        Integer areaId = areaIds.get(area);
+        if(areaId == null){
+          areaId = areaIds.size();
+          areaIds.put(area, areaId);
+        }
+        Integer streetId = streetNames.get(name);
+        if(streetId == null){
+          streetId = streetNames.size();
+          streetNames.put(name, streetId);
+        }
+        rowArea[rows] = areaId;
+        rowStreet[rows] = streetId;
+        rowNumber[rows] = houseNumber(AddressCanonicalizer.street(column(fields, numberCol)));
+        rowLat[rows] = lat;
+        rowLon[rows] = lon;
+        rows++;
+      }
+    }
+
+    areas = sortedKeys(areaIds);
+    streets = sortedKeys(streetNames);
+    int[] areaRank = ranks(areas, areaIds);
+    int[] streetRank = ranks(streets, streetNames);
+    for(int i = 0; i < rows; i++){
+      rowArea[i] = areaRank[rowArea[i]];
+      rowStreet[i] = streetRank[rowStreet[i]];
+    }
+
+    int[] order = new int[rows];
+    for(int i = 0; i < rows; i++){
+      order[i] = i;
+    }
+    sort(order, new int[rows], 0, rows, rowArea, rowStreet, rowNumber);
+
+    numbers = new int[rows];
+    lats = new int[rows];
+    lons = new int[rows];
+    areaStreets = new int[areas.length + 1];
+    int[] ids = new int[Math.max(16, rows / 8)];
+    int[] starts = new int[ids.length + 1];
+    int entries = 0;
+    int lastArea = -1;
+    int lastStreet = -1;
+    for(int i = 0; i < rows; i++){
+      int r = order[i];
+      if(rowArea[r] != lastArea || rowStreet[r] != lastStreet){
+        while(lastArea < rowArea[r]){
+          areaStreets[++lastArea] = entries;
+        }
+        if(entries == ids.length){
+          ids = Arrays.copyOf(ids, entries * 2);
+          starts = Arrays.copyOf(starts, entries * 2 + 1);
+        }
+        ids[entries] = rowStreet[r];
+        starts[entries] = i;
+        entries++;
+        lastStreet = rowStreet[r];
+      }
+      numbers[i] = rowNumber[r];
+      lats[i] = rowLat[r];
+      lons[i] = rowLon[r];
+    }
+    while(lastArea < areas.length){
+      areaStreets[++lastArea] = entries;
+    }
+    streetIds = Arrays.copyOf(ids, entries);
+    streetPoints = Arrays.copyOf(starts, entries + 1);
+    streetPoints[entries] = rows;
+  }
+
+  private static String[] sortedKeys(Map<String, Integer> dictionary){
+    String[] keys = dictionary.keySet().toArray(new String[0]);
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  private static int[] ranks(String[] sorted, Map<String, Integer> dictionary){
+    int[] rank = new int[sorted.length];
+    for(int i = 0; i < sorted.length; i++){
+      rank[dictionary.get(sorted[i])] = i;
+    }
+    return rank;
+  }
+
+  /**
+   * Merge sort row numbers by area, street and house number without boxing.
+   */
+  private static void sort(int[] order, int[] scratch, int from, int to, int[] area, int[] street, int[] number){
+    if(to - from < 2){
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    sort(order, scratch, from, mid, area, street, number);
+    sort(order, scratch, mid, to, area, street, number);
+    if(compare(order[mid - 1], order[mid], area, street, number) <= 0){
+      return;
+    }
+    System.arraycopy(order, from, scratch, from, to - from);
+    int i = from;
+    int j = mid;
+    for(int k = from; k < to; k++){
+      if(j >= to || (i < mid && compare(scratch[i], scratch[j], area, street, number) <= 0)){
+        order[k] = scratch[i++];
+      }else{
+        order[k] = scratch[j++];
+      }
+    }
+  }
+
+  private static int compare(int a, int b, int[] area, int[] street, int[] number){
+    if(area[a] != area[b]){
+      return Integer.compare(area[a], area[b]);
+    }
+    if(street[a] != street[b]){
+      return Integer.compare(street[a], street[b]);
+    }
+    return Integer.compare(number[a], number[b]);
+  }
+
+  /**
+   * Write the index, replacing the old file only once the new one is complete.
+   *
+   * @param file          The index file
+   * @throws IOException
+   */
+  private void writeIndex(File file) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))){
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeStrings(out, areas);
+      writeInts(out, areaStreets);
+      writeStrings(out, streets);
+      writeInts(out, streetIds);
+      writeInts(out, streetPoints);
+      writeInts(out, numbers);
+      writeInts(out, lats);
+      writeInts(out, lons);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void readIndex(File file) throws IOException {
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))){
+      if(in.readInt() != MAGIC || in.readInt() != VERSION){
+        throw new IOException("Unsupported Address Index " + file);
+      }
+      areas = readStrings(in);
+      areaStreets = readInts(in);
+      streets = readStrings(in);
+      streetIds = readInts(in);
+      streetPoints = readInts(in);
+      numbers = readInts(in);
+      lats = readInts(in);
+      lons = readInts(in);
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+    out.writeInt(values.length);
+    for(String value : values){
+      out.writeUTF(value);
+    }
+  }
+
+  private static String[] readStrings(DataInputStream in) throws IOException {
+    String[] values = new String[in.readInt()];
+    for(int i = 0; i < values.length; i++){
+      values[i] = in.readUTF();
+    }
+    return values;
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    out.writeInt(values.length);
+    ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+    IntBuffer ints = chunk.asIntBuffer();
+    for(int i = 0; i < values.length; i += ints.capacity()){
+      int n = Math.min(ints.capacity(), values.length - i);
+      ints.clear();
+      ints.put(values, i, n);
+      out.write(chunk.array(), 0, n * 4);
+    }
+  }
+
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] values = new int[in.readInt()];
+    byte[] chunk = new byte[64 * 1024];
+    IntBuffer ints = ByteBuffer.wrap(chunk).asIntBuffer();
+    for(int i = 0; i < values.length; i += ints.capacity()){
+      int n = Math.min(ints.capacity(), values.length - i);
+      in.readFully(chunk, 0, n * 4);
+      ints.clear();
+      ints.get(values, i, n);
+    }
+    return values;
+  }
+
+  /**
+   * The approximate heap used by the index.
+   *
+   * @return        The size in bytes
+   */
+  public long getMemoryBytes() {
+    long bytes = 4L * (areaStreets.length + streetIds.length + streetPoints.length
+            + numbers.length + lats.length + lons.length);
+    int[] cells = cellIds;
+    if(cells != null){
+      bytes += 4L * (cells.length + cellStarts.length + cellPoints.length);
+    }
+    for(String area : areas){
+      bytes += 40 + 2L * area.length();
+    }
+    for(String street : streets){
+      bytes += 40 + 2L * street.length();
+    }
+    return bytes;
+  }
+
+  /**
+   * The time taken to build or load the index.
+   *
+   * @return        The time in milliseconds
+   */
+  public long getBuildMillis() {
+    return buildMillis;
+  }
+
+  /**
+   * Whether the index was read from a serialized file instead of built from the CSV.
+   *
+   * @return        True when loaded from the index file
+   */
+  public boolean isFromIndexFile() {
+    return fromIndexFile;
+  }
+
+  public int getSkippedRows() {
+    return skippedRows;
+  }
+
+  /**
+   * The number of address points.
+   *
+   * @return        The point count
+   */
+  public int size() {
+    return numbers.length;
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects mapbox queries from concurrent lookups into batch requests.
+ *
+ * A batch is sent as soon as it holds the maximum number of queries, by the
+ * thread adding the last query, or once the first query has waited for the
+ * linger time. The timer thread only notices the expired linger and hands the
+ * batch to the request executor, so lingering batches are sent concurrently
+ * rather than queued behind one another's requests. Each caller blocks until
+ * its own result has been scattered back from the batch response.
+ */
+public class MapboxBatcher {
+  public static final int MAX_QUERIES = 50;
+
+  /**
+   * Sends one batch of queries.
+   */
+  public interface BatchSender {
+    /**
+     * Geocode a batch.
+     *
+     * @param queries       The queries
+     * @return              The latitude and longitude for each query, in order
+     * @throws IOException
+     */
+    String[][] send(List<String> queries) throws IOException;
+  }
+
+  private static final class Query {
+    final String text;
+    final CompletableFuture<String[]> result = new CompletableFuture<>();
+
+    Query(String text){
+      this.text = text;
+    }
+  }
+
+  private final BatchSender sender;
+  private final int batchSize;
+  private final long lingerMillis;
+  private final ScheduledExecutorService timer;
+  private final Executor executor;
+  private List<Query> batch = new ArrayList<>();
+  private ScheduledFuture<?> lingerTask;
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong queries = new AtomicLong();
+
+  /**
+   * Create the batcher.
+   *
+   * @param sender          Sends a batch
+   * @param batchSize       The most queries in a batch
+   * @param lingerMillis    The longest time a query waits for its batch to fill
+   * @param name            The name of the timer thread
+   * @param executor        Sends the batches whose linger time expired
+   */
+  public MapboxBatcher(BatchSender sender, int batchSize, long lingerMillis, String name, Executor executor){
+    this.sender = sender;
+    this.executor = executor;
+    this.batchSize = Math.max(1, Math.min(MAX_QUERIES, batchSize));
+    this.lingerMillis = Math.max(0L, lingerMillis);
+    this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat(name + "-mapbox-batch")
+            .build());
+  }
+
+  /**
+   * Geocode a query as part of a batch.
+   *
+   * @param text        The query
+   * @return            The latitude and longitude, or null if the batch request failed
+   */
+  public String[] geocode(String text){
+    Query query = new Query(text);
+    List<Query> full = null;
+    synchronized(this){
+      batch.add(query);
+      if(batch.size() >= batchSize){
+        full = this.takeBatch();
+      }else if(batch.size() == 1){
+        lingerTask = timer.schedule(this::flushLingering, lingerMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    if(full != null){
+      this.send(full);
+    }
+    try {
+      return query.result.get();
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      return null;
+    }catch(ExecutionException e){
+      return null;
+    }
+  }
+
+  /**
+   * Take the queued queries, cancelling the linger timer.
+   *
+   * @return            The batch
+   */
+  private List<Query> takeBatch(){
+    List<Query> taken = batch;
+    batch = new ArrayList<>(batchSize);
+    if(lingerTask != null){
+      lingerTask.cancel(false);
+      lingerTask = null;
+    }
+    return taken;
+  }
+
+  /**
+   * Take the batch whose linger time expired and hand it to the executor.
+   */
+  private void flushLingering(){
+    final List<Query> lingering = this.takeLingering();
+    if(lingering == null){
+      return;
+    }
+    try {
+      executor.execute(() -> this.send(lingering));
+    }catch(RejectedExecutionException e){
+      // the step is shutting down
+      this.send(lingering);
+    }
+  }
+
+  private synchronized List<Query> takeLingering(){
+    return batch.isEmpty() ? null : this.takeBatch();
+  }
+
+  /**
+   * Send a batch and complete each query with its result.
+   *
+   * @param taken       The batch
+   */
+  private void send(List<Query> taken){
+    List<String> texts = new ArrayList<>(taken.size());
+    for(Query query : taken){
+      texts.add(query.text);
+    }
+    batches.incrementAndGet();
+    queries.addAndGet(taken.size());
+    try {
+      String[][] results = sender.send(texts);
+      for(int i = 0; i < taken.size(); i++){
+        taken.get(i).result.complete(i < results.length ? results[i] : null);
+      }
+    }catch(IOException | RuntimeException e){
+      for(Query query : taken){
+        query.result.complete(null);
+      }
+    }
+  }
+
+  /**
+   * Send anything still queued and stop the timer.
+   */
+  public void close(){
+    List<Query> lingering = this.takeLingering();
+    if(lingering != null){
+      this.send(lingering);
+    }
+    timer.shutdownNow();
+  }
+
+  /**
+   * The number of batch requests sent.
+   *
+   * @return        The batch count
+   */
+  public long getBatches() {
+    return batches.get();
+  }
+
+  /**
+   * The number of queries sent in batches.
+   *
+   * @return        The query count
+   */
+  public long getQueries() {
+    return queries.get();
+  }
+}
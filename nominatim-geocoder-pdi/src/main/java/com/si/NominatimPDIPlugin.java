@@ -18,16 +18,33 @@
  */
 package com.si;
 
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
-import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.*;
 
-import java.net.URI;
+import javax.management.JMException;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.URISyntaxException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Describe your step plugin.
@@ -55,21 +72,255 @@ public class NominatimPDIPlugin extends BaseStep implements StepInterface {
   public boolean init( StepMetaInterface stepMetaInterface, StepDataInterface stepDataInterface ) {
     meta = (NominatimPDIPluginMeta) stepMetaInterface;
     data = (NominatimPDIPluginData) stepDataInterface;
-    return super.init( stepMetaInterface, stepDataInterface );
+    if ( !super.init( stepMetaInterface, stepDataInterface ) ) {
+      return false;
+    }
+    data.startPipeline(meta.getMaxInFlightRequests(), getStepname(), meta.isUseVirtualThreads());
+    if(meta.isUseVirtualThreads() && RequestExecutors.virtualThreadsAvailable() && isDetailed()){
+      logDetailed("Geocode Requests Run on Virtual Threads");
+    }
+    String nominatimUrls = environmentSubstitute(meta.getNominatimUrl());
+    data.maxRetries = Math.max(0, meta.getMaxRetries());
+    data.retryBaseMillis = meta.getRetryBaseMillis();
+    data.retryMaxMillis = Math.max(meta.getRetryBaseMillis(), meta.getRetryMaxMillis());
+    data.breakerThreshold = meta.getBreakerThreshold();
+    data.holdWhileOpen = meta.isHoldWhileOpen();
+    data.startEngine(getTransMeta().getName() + "/" + getStepname(), this.engineConfiguration(),
+            meta.getMemoryCacheMegabytes() * 1024L * 1024L);
+    if(meta.usesRemoteGeocoder() && nominatimUrls != null && nominatimUrls.trim().length() > 0){
+      try {
+        data.startNominatimEndpoints(nominatimUrls, meta.getHealthCheckSeconds());
+      }catch(URISyntaxException e){
+        logError("Failed to Parse Nominatim URL " + nominatimUrls, e);
+        return false;
+      }
+    }
+    int routes = data.getNominatimEndpoints() == null ? 0 : data.getNominatimEndpoints().getEndpoints().size();
+    if(meta.getMapboxUrl() != null && meta.getMapboxUrl().trim().length() > 0){
+      routes++;
+    }
+    data.startHttpClient(meta.getMaxConnectionsPerRoute(), routes, meta.getIdleConnectionSeconds(), meta.getKeepAliveSeconds(),
+            meta.getConnectTimeoutMillis(), meta.getReadTimeoutMillis(), meta.getLeaseTimeoutMillis());
+    if(meta.getHedgePercentile() > 0.0){
+      data.startHedging(meta.getHedgePercentile(), meta.getHedgeMinDelayMillis(), getStepname());
+    }
+    if(meta.getLatencyBudgetMillis() > 0 && meta.isUseMapBoxFallbackIfPresent()){
+      data.startRequestExecutor(getStepname());
+    }
+    data.startRateLimiters(meta.getNominatimRequestsPerSecond(), meta.getNominatimBurst(),
+            meta.getMapboxUrl(), meta.getMapboxRequestsPerSecond(), meta.getMapboxBurst());
+    if(meta.isAdaptiveConcurrency()){
+      data.startConcurrencyLimits(meta.getMinConcurrency(), meta.getMaxConcurrency());
+    }
+    String cacheFile = environmentSubstitute(meta.getCacheFile());
+    if(cacheFile != null && cacheFile.trim().length() > 0){
+      try {
+        data.startDiskCache(cacheFile.trim(), meta.getCacheTtlDays(), meta.getCacheSyncSeconds(), meta.isCompactCacheOnFinish());
+        if(isBasic()){
+          logBasic(String.format("Geocode Cache Replayed %d Results", data.getDiskCache().size()));
+        }
+      }catch(IOException e){
+        logError("Failed to Open Geocode Cache " + cacheFile, e);
+        return false;
+      }
+    }
+    if(meta.getCacheDatabase() != null && !this.startDatabaseCache()){
+      return false;
+    }
+    if(meta.getMapboxUrl() != null && meta.getMapboxUrl().trim().length() > 0){
+      try {
+        data.startMapboxTemplates(meta.getMapboxUrl(), meta.getMapBoxKey());
+      }catch(URISyntaxException e){
+        logError("Failed to Parse Mapbox URL " + meta.getMapboxUrl(), e);
+        return false;
+      }
+      if(meta.getMapboxBatchSize() > 1 && meta.isUseMapBoxFallbackIfPresent()){
+        data.startMapboxBatcher(meta.getMapboxBatchSize(), meta.getMapboxBatchLingerMillis(), getStepname());
+      }
+    }
+    if(meta.usesLocalIndex() && !this.startLocalIndex()){
+      return false;
+    }
+    try {
+      data.metrics.register(getTransMeta().getName(), getStepname(), getCopy());
+    }catch(JMException e){
+      if(isBasic()){
+        logBasic("Failed to Register Geocoder Metrics: " + e.getMessage());
+      }
+    }
+    if(meta.usesRemoteGeocoder()){
+      this.warmUpConnections();
+    }
+    return true;
+  }
+
+  /**
+   * The settings that decide whether copies of this step may share an engine.
+   *
+   * @return      The step settings as XML, or the copy number when they cannot be written
+   */
+  private String engineConfiguration(){
+    try {
+      return meta.getXML();
+    }catch(KettleValueException e){
+      if(isDetailed()){
+        logDetailed("Geocode Engine Not Shared: " + e.getMessage());
+      }
+      return "copy-" + getCopy();
+    }
+  }
+
+  /**
+   * Connect to the cache table, creating it when it does not exist. Each step
+   * copy uses a connection of its own.
+   *
+   * @return      Whether the table is ready
+   */
+  private boolean startDatabaseCache(){
+    DatabaseMeta databaseMeta = meta.getCacheDatabase();
+    String table = databaseMeta.getQuotedSchemaTableCombination(environmentSubstitute(meta.getCacheSchema()),
+            environmentSubstitute(meta.getCacheTable()));
+    Database database = new Database(this, databaseMeta);
+    database.shareVariablesWith(this);
+    try {
+      database.connect(getPartitionID());
+      database.setAutoCommit(true);
+      if(!database.checkTableExists(table)){
+        RowMeta fields = new RowMeta();
+        ValueMetaInterface key = new ValueMetaString(GeocodeDatabaseCache.KEY_COLUMN);
+        key.setLength(GeocodeDatabaseCache.MAX_KEY_LENGTH);
+        fields.addValueMeta(key);
+        fields.addValueMeta(new ValueMetaNumber(GeocodeDatabaseCache.LATITUDE_COLUMN));
+        fields.addValueMeta(new ValueMetaNumber(GeocodeDatabaseCache.LONGITUDE_COLUMN));
+        database.execStatements(database.getCreateTableStatement(table, fields, null, false,
+                GeocodeDatabaseCache.KEY_COLUMN, true));
+        if(isBasic()){
+          logBasic("Created Geocode Cache Table " + table);
+        }
+      }
+      data.startDatabaseCache(database, table, meta.getCacheBatchSize());
+      return true;
+    }catch(KettleException e){
+      logError("Failed to Open Geocode Cache Table " + table, e);
+      database.disconnect();
+      return false;
+    }
+  }
+
+  private boolean startLocalIndex(){
+    String addressFile = environmentSubstitute(meta.getLocalAddressFile());
+    if(addressFile == null || addressFile.trim().length() == 0){
+      logError("No Local Address File Configured");
+      return false;
+    }
+    try {
+      LocalAddressIndex index = data.startLocalIndex(addressFile.trim());
+      if(meta.isReverse()){
+        long start = System.currentTimeMillis();
+        index.ensureSpatialIndex();
+        if(isBasic()){
+          logBasic(String.format("Spatial Index Ready in %d ms", System.currentTimeMillis() - start));
+        }
+      }
+      if(isBasic()){
+        logBasic(String.format("%s Local Address Index of %d Points in %d ms, about %d MB (%d Rows Skipped)",
+                index.isFromIndexFile() ? "Loaded" : "Built", index.size(), index.getBuildMillis(),
+                index.getMemoryBytes() / (1024 * 1024), index.getSkippedRows()));
+      }
+      return true;
+    }catch(IOException e){
+      logError("Failed to Open Local Address File " + addressFile, e);
+      return false;
+    }
+  }
+
+  /**
+   * Open pooled connections to the providers so the first rows do not pay for
+   * connection setup. A synchronous step only ever uses one connection per provider.
+   */
+  private void warmUpConnections(){
+    int connections = Math.min(meta.getMaxInFlightRequests(), meta.getMaxConnectionsPerRoute());
+    int opened = data.warmUp(connections, meta.isUseMapBoxFallbackIfPresent());
+    if(isDetailed()){
+      logDetailed(String.format("Opened %d Geocoder Connections", opened));
+    }
+  }
+
+  /**
+   * Release the request pipeline, HTTP client, rate limiters and cache.
+   *
+   * @param smi     The step metadata
+   * @param sdi     The step data
+   */
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    data = (NominatimPDIPluginData) sdi;
+    if(data.getNominatimEndpoints() != null && isDetailed()){
+      for(EndpointBalancer.Endpoint endpoint : data.getNominatimEndpoints().getEndpoints()){
+        logDetailed(String.format("Nominatim Replica %s Requests %d Healthy %b Breaker %s Rejected %d",
+                endpoint.getUri(), endpoint.getRequests(), endpoint.isHealthy(),
+                endpoint.getBreaker().getState(), endpoint.getBreaker().getRejected()));
+      }
+    }
+    if(isDetailed()){
+      for(AdaptiveConcurrencyLimit limit : data.getConcurrencyLimits()){
+        logDetailed(String.format("Nominatim Concurrency Limit %d, Min Round Trip %d ms, Raised %d Times, Cut %d Times",
+                limit.getLimit(), limit.getMinRttMillis(), limit.getIncreases(), limit.getDecreases()));
+      }
+    }
+    if(data.getMapboxBreaker() != null && isDetailed()){
+      logDetailed(String.format("Mapbox Breaker %s Rejected %d",
+              data.getMapboxBreaker().getState(), data.getMapboxBreaker().getRejected()));
+    }
+    if(data.getHedgeEligible() > 0 && isBasic()){
+      logBasic(String.format("Nominatim Hedged %d of %d Requests (%.1f%%), Hedge Won %d (%.1f%%)",
+              data.getHedges(), data.getHedgeEligible(), 100.0 * data.getHedges() / data.getHedgeEligible(),
+              data.getHedgeWins(), data.getHedges() == 0 ? 0.0 : 100.0 * data.getHedgeWins() / data.getHedges()));
+    }
+    if(data.getRaces() > 0 && isBasic()){
+      logBasic(String.format("Mapbox Raced on %d Lookups, Answer Used %d, Losing Requests Left Running %d",
+              data.getRaces(), data.getRaceMapboxWins(), data.getRaceLosersRunning()));
+    }
+    MapboxBatcher batcher = data.getMapboxBatcher();
+    if(batcher != null && isBasic()){
+      logBasic(String.format("Mapbox Batches %d Carrying %d Lookups", batcher.getBatches(), batcher.getQueries()));
+    }
+    GeocodeDatabaseCache databaseCache = data.getDatabaseCache();
+    if(databaseCache != null && isBasic()){
+      logBasic(String.format("Geocode Cache Table Lookups %d Hits %d in %d Queries, %d Results Written",
+              databaseCache.getLookups(), databaseCache.getHits(), databaseCache.getQueries(), databaseCache.getWrites()));
+    }
+    if(isBasic()){
+      logBasic(data.metrics.getSummary());
+    }
+    data.metrics.unregister();
+    data.stopPipeline();
+    data.stopMapboxBatcher();
+    data.stopRequestExecutor();
+    data.stopRateLimiters();
+    data.stopConcurrencyLimits();
+    // the cache and lookup table are shared, so the copy that releases them last reports their totals
+    boolean lastCopy = data.stopEngine();
+    if(data.memoryCache != null && lastCopy && isBasic()){
+      logBasic(String.format("Geocode Memory Cache Hits %d Misses %d Evictions %d",
+              data.memoryCache.getHits(), data.memoryCache.getMisses(), data.memoryCache.getEvictions()));
+    }
+    if(lastCopy && isBasic()){
+      logBasic(String.format("Geocode Requests Coalesced %d", data.inFlight.getCoalesced()));
+    }
+    data.stopNominatimEndpoints();
+    data.stopHttpClient();
+    data.stopDiskCache();
+    data.stopDatabaseCache();
+    data.stopLocalIndex();
+    super.dispose( smi, sdi );
   }
 
 
   private String[] gecodeMapBox(String address, String city, String state, String zip){
-    String[] latLong = new String[2];
+    String[] latLong = null;
     if(meta.getMapboxUrl() != null && meta.getMapboxUrl().trim().length() > 0) {
       try {
-        URI uri = new URI(meta.getMapboxUrl());
-        data.mapBoxRequest(uri, meta.getMapBoxKey(), address, city, state, zip);
-      }catch(URISyntaxException e){
-        if(isBasic()){
-          logBasic("Failed to Parse Mapbox URL");
-          e.printStackTrace();
-        }
+        latLong = data.mapBoxRequest(address, city, state, zip);
       }catch(Exception e){
         if(isBasic()){
           logBasic("Failed to Obtain mapbox geocode data");
@@ -79,10 +330,135 @@ public class NominatimPDIPlugin extends BaseStep implements StepInterface {
     return latLong;
   }
 
+  /**
+   * Check whether a geocode result holds coordinates.
+   *
+   * @param latLong       The latitude and longitude
+   * @return              Whether coordinates were found
+   */
+  private boolean hasCoordinates(String[] latLong){
+    return latLong != null && latLong.length == 2 && (latLong[0] != null || latLong[1] != null);
+  }
+
+  /**
+   * Geocode an address with nominatim, falling back to mapbox when nominatim finds nothing.
+   *
+   * @param street        The street
+   * @param city          The city
+   * @param state         The state
+   * @param zip           The postal code
+   * @return              The latitude and longitude, an array of nulls when no provider
+   *                      found the address, or null when a request failed
+   */
+  private String[] resolve(String street, String city, String state, String zip){
+    String[] latLong = null;
+    if(data.localIndex != null){
+      long started = data.metrics.start();
+      latLong = data.localIndex.lookup(street, city, state, zip);
+      data.metrics.finish(data.metrics.local(), latLong == null ? new String[2] : latLong, started);
+      if(this.hasCoordinates(latLong) || !meta.usesRemoteGeocoder()){
+        return latLong;
+      }
+    }
+    if(data.getRequestExecutor() != null && meta.getLatencyBudgetMillis() > 0 && meta.isUseMapBoxFallbackIfPresent()
+            && data.getNominatimEndpoints() != null){
+      return this.raceProviders(street, city, state, zip);
+    }
+    if (meta.getNominatimUrl() != null) {
+      latLong = this.geocodeNominatim(street, city, state, zip);
+    }
+    if(!this.hasCoordinates(latLong) && meta.isUseMapBoxFallbackIfPresent()) {
+      String[] mapboxLatLong = this.gecodeMapBox(street, city, state, zip);
+      if(mapboxLatLong != null || latLong == null){
+        latLong = mapboxLatLong;
+      }
+    }
+    return latLong;
+  }
+
+
+  /**
+   * Geocode an address with nominatim, starting mapbox alongside it once the
+   * latency budget has passed or as soon as nominatim finds nothing. The first
+   * answer with coordinates wins; when nominatim is preferred a mapbox answer
+   * is only used once nominatim has come back empty or twice the budget has
+   * passed. A request that loses the race, including a preferred nominatim
+   * request still running at the deadline, is left to finish in the
+   * background so its answer still reaches the cache, and is counted as a
+   * loser left running.
+   *
+   * @param street        The street
+   * @param city          The city
+   * @param state         The state
+   * @param zip           The postal code
+   * @return              The latitude and longitude, an array of nulls when no provider
+   *                      found the address, or null when a request failed
+   */
+  private String[] raceProviders(String street, String city, String state, String zip){
+    long budgetNanos = TimeUnit.MILLISECONDS.toNanos(meta.getLatencyBudgetMillis());
+    long deadline = System.nanoTime() + 2 * budgetNanos;
+    boolean preferNominatim = meta.isPreferNominatim();
+    CompletionService<String[]> race = new ExecutorCompletionService<>(data.getRequestExecutor());
+    Future<String[]> nominatim = race.submit(() -> this.geocodeNominatim(street, city, state, zip));
+    Future<String[]> mapbox = null;
+    String[] nominatimLatLong = null;
+    String[] mapboxLatLong = null;
+    try {
+      Future<String[]> done = race.poll(budgetNanos, TimeUnit.NANOSECONDS);
+      if(done == null){
+        mapbox = race.submit(() -> this.gecodeMapBox(street, city, state, zip));
+      }
+      int remaining = mapbox == null ? 1 : 2;
+      while(remaining > 0){
+        if(done == null){
+          if(preferNominatim && this.hasCoordinates(mapboxLatLong)){
+            done = race.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if(done == null){
+              break;
+            }
+          }else{
+            done = race.take();
+          }
+        }
+        remaining--;
+        String[] answer;
+        try {
+          answer = done.get();
+        }catch(ExecutionException e){
+          answer = null;
+        }
+        if(done == nominatim){
+          nominatimLatLong = answer;
+          if(this.hasCoordinates(answer)){
+            break;
+          }
+          if(mapbox == null){
+            mapbox = race.submit(() -> this.gecodeMapBox(street, city, state, zip));
+            remaining++;
+          }
+        }else{
+          mapboxLatLong = answer;
+          if(this.hasCoordinates(answer) && !preferNominatim){
+            break;
+          }
+        }
+        done = null;
+      }
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+    }
+    if(mapbox == null){
+      return nominatimLatLong;
+    }
+    boolean mapboxWon = !this.hasCoordinates(nominatimLatLong) && (mapboxLatLong != null || nominatimLatLong == null);
+    Future<String[]> loser = mapboxWon ? nominatim : mapbox;
+    data.countRace(mapboxWon, !loser.isDone());
+    return mapboxWon ? mapboxLatLong : nominatimLatLong;
+  }
 
   /**
    * Geocode from nominatim
-   * @param address         The address
+   * @param address         The address, or the whole query in free-form mode
    * @param city            The city
    * @param state           The state
    * @param zip             The postal code
@@ -90,17 +466,17 @@ public class NominatimPDIPlugin extends BaseStep implements StepInterface {
    */
   private String[] geocodeNominatim(String address, String city, String state, String zip){
     String[] latLong = null;
-    String url = meta.getNominatimUrl();
-    if(url !=null && url.trim().length() > 0){
-      url = url.trim();
+    if(data.getNominatimEndpoints() != null){
       try {
-        URI uri = new URI(url);
-        latLong = data.nominatimRequest(uri, address, city, state, zip);
+        latLong = data.freeForm ? data.nominatimQueryRequest(address) : data.nominatimRequest(address, city, state, zip);
+      }catch(CircuitOpenException e){
+        if(isDetailed()){
+          logDetailed(String.format("Nominatim Circuit Open for %d ms", e.getRemainingMillis()));
+        }
       }catch(Exception e){
         if(isBasic()){
           logBasic("Failed to Geocode Address");
           logBasic(e.getMessage());
-          e.printStackTrace();
         }
       }
     }else{
@@ -112,49 +488,21 @@ public class NominatimPDIPlugin extends BaseStep implements StepInterface {
   }
 
   /**
-   * Extract the field.
+   * Extract the field as text.
    *
-   * @param fieldName     The field name to extract
-   * @param rmi           The row meta interface
-   * @return              The extracted value primitive
+   * @param r             The row
+   * @param idx           The field index from the row plan
+   * @return              The value, an empty string for an unset field, or null
    */
-  private Object extractField(Object[] r, String fieldName, RowMetaInterface rmi){
-    if(fieldName != null && fieldName.trim().length() > 0) {
-      int idx = rmi.indexOfValue(fieldName);
-      if (idx > -1) {
-        return r[idx];
-      }
-    }else if(fieldName == null){
-      if(isBasic()){
-        logBasic("Field " + fieldName + " Not Provided in Geocoding");
-      }
+  private String extractField(Object[] r, int idx){
+    if(idx == NominatimPDIPluginData.FIELD_NOT_SET){
+      return "";
     }
-    return null;
-  }
-
-
-  /**
-   * Check if the address was obtained
-   * @param r           The row to check
-   * @param rmi         The row meta interface
-   * @return            Whether the address was parsed
-   */
-  private boolean wasGeocodeObtained(Object[] r, RowMetaInterface rmi){
-    boolean found = false;
-    String latField = meta.getLatitudeField();
-    String lonField = meta.getLongitudeField();
-    int idx = rmi.indexOfValue(latField);
-
-    if(idx > -1) {
-      if(r[idx] != null){
-        idx = rmi.indexOfValue(lonField);
-        if(r[idx] == null) {
-          found = true;
-        }
-      }
+    if(idx < 0 || r[idx] == null){
+      return null;
     }
-
-    return found;
+    Object value = r[idx];
+    return value instanceof String ? (String) value : String.valueOf(value);
   }
 
   /**
@@ -164,11 +512,31 @@ public class NominatimPDIPlugin extends BaseStep implements StepInterface {
    * @return      The object row representation
    */
   private Object[] resizeRow(Object[] r){
-    Object[] orow = r.clone();
-    if(orow.length < data.outputRowMeta.size()){
-      orow = RowDataUtil.resizeArray(orow, data.outputRowMeta.size());
+    return RowDataUtil.resizeArray(r, data.outputRowMeta.size());
+  }
+
+  /**
+   * Convert a coordinate to the configured output type.
+   *
+   * @param value         The coordinate text
+   * @return              The output value
+   */
+  private Object toCoordinate(String value){
+    if(value == null){
+      return null;
+    }
+    try {
+      switch (data.coordinateType) {
+        case ValueMetaInterface.TYPE_NUMBER:
+          return Double.valueOf(value);
+        case ValueMetaInterface.TYPE_BIGNUMBER:
+          return new BigDecimal(value);
+        default:
+          return value;
+      }
+    }catch(NumberFormatException e){
+      return null;
     }
-    return orow;
   }
 
   /**
@@ -176,108 +544,157 @@ public class NominatimPDIPlugin extends BaseStep implements StepInterface {
    *
    * @param latLong       The latitude and longitude values
    * @param r             The row to package
-   * @param rmi           The row meta interface
    * @return              The updated row
    */
-  private Object[] packageRow(String[] latLong, Object[] r, RowMetaInterface rmi){
-    int idx = data.outputRowMeta.indexOfValue(meta.getLatitudeField());
-    if(idx > -1){
-      String lat = latLong[0];
-      r[idx] = lat;
-      idx = data.outputRowMeta.indexOfValue(meta.getLongitudeField());
-      if(idx > -1) {
-        String lon = latLong[1];
-        r[idx] = lon;
-      }else{
-        if(isBasic()){
-          logBasic("Longitude Field Not Provided for Geocoder");
-        }
-      }
-    }else{
-      if(isBasic()){
-        logBasic("Latitude Field Not Provided for Geocoder");
-      }
+  private Object[] packageRow(String[] latLong, Object[] r){
+    if(data.latitudeIndex > -1){
+      r[data.latitudeIndex] = this.toCoordinate(latLong[0]);
+    }
+    if(data.longitudeIndex > -1){
+      r[data.longitudeIndex] = this.toCoordinate(latLong[1]);
     }
     return r;
   }
 
   /**
-   * Wait for a specified time to slow down request rate.
+   * The cache key of the address in a row.
    *
-   * @param waitTime        The wait time long
+   * @param r           The row
+   * @return            The key, or null when an address field is missing
    */
-  private void doWait(long waitTime){
-    try {
-      Thread.sleep(waitTime);
-    }catch(InterruptedException e){
-      if(isBasic()){
-        logBasic(String.format("Failed to Wait for %d seconds in Geocoder", waitTime));
-        e.printStackTrace();
-      }
+  private String addressKey(Object[] r){
+    String city = this.extractField(r, data.cityIndex);
+    String street = this.extractField(r, data.streetIndex);
+    String state = this.extractField(r, data.stateIndex);
+    String zip = this.extractField(r, data.zipIndex);
+    if(city == null || street == null || state == null || zip == null){
+      return null;
     }
+    return AddressCanonicalizer.key(street, city, state, zip);
   }
 
   /**
    * Geocode the address in a row
    *
    * @param inrow       The input row
-   * @param rmi         The row meta interface
+   * @param cached      Results read from the cache table for the row's batch, or null
    * @return            The updated row
    */
-  private Object[] getLatLong(Object[] inrow, RowMetaInterface rmi){
+  private Object[] getLatLong(Object[] inrow, Map<String, String[]> cached){
     Object[] outrow = this.resizeRow(inrow);
-    boolean fallThrough = meta.isUseMapBoxFallbackIfPresent();
-    String cityO = "";
-    if(meta.getCityField() != null && meta.getCityField().trim().length() > 0) {
-      cityO = (String) this.extractField(outrow, meta.getCityField(), rmi);
-    }
+    final String city = this.extractField(outrow, data.cityIndex);
+    final String street = this.extractField(outrow, data.streetIndex);
+    final String state = this.extractField(outrow, data.stateIndex);
+    final String zip = this.extractField(outrow, data.zipIndex);
 
-    String streetO = "";
-    if(meta.getStreetField() != null && meta.getStreetField().trim().length() >0) {
-      streetO = (String) this.extractField(outrow, meta.getStreetField(), rmi);
+    if(city != null && street != null && state != null && zip != null) {
+      String addressKey = AddressCanonicalizer.key(street, city, state, zip);
+      final long cacheHash = AddressHash.hash64(addressKey);
+      String[] latLong = null;
+      if(data.memoryCache != null){
+        latLong = data.memoryCache.get(cacheHash);
+        data.metrics.recordMemoryCache(latLong != null);
+      }
+      if(latLong == null && cached != null){
+        latLong = cached.get(addressKey);
+        if(latLong != null && data.memoryCache != null){
+          data.memoryCache.put(cacheHash, latLong);
+        }
+      }
+      if(latLong == null) {
+        latLong = data.inFlight.execute(addressKey, () -> {
+          String[] resolved = this.resolve(street, city, state, zip);
+          if(resolved != null && data.memoryCache != null){
+            data.memoryCache.put(cacheHash, resolved);
+          }
+          if(resolved != null && data.getDatabaseCache() != null){
+            data.getDatabaseCache().store(addressKey, resolved);
+          }
+          return resolved;
+        });
+      }
+      if(this.hasCoordinates(latLong)){
+        outrow = this.packageRow(latLong, outrow);
+      }
     }
 
-    String stateO = "";
-    if(meta.getStateField() != null && meta.getStateField().trim().length() > 0) {
-      stateO = (String) this.extractField(outrow, meta.getStateField(), rmi);
-    }
+    return outrow;
+  }
 
-    Object zipO = "";
-    if(meta.getZipField() != null && meta.getZipField().trim().length() > 0) {
-      zipO = this.extractField(outrow, meta.getZipField(), rmi);
-    }
+  /**
+   * Geocode a row in the configured direction.
+   *
+   * @param inrow       The input row
+   * @param cached      Results read from the cache table for the row's batch, or null
+   * @return            The updated row
+   */
+  private Object[] geocodeRow(Object[] inrow, Map<String, String[]> cached){
+    data.metrics.recordRow();
+    return data.reverse ? this.reverseGeocode(inrow) : this.getLatLong(inrow, cached);
+  }
 
-    if(cityO != null && streetO != null && stateO != null && zipO != null) {
-      if(zipO != null && !(zipO instanceof String)){
-        zipO = String.valueOf(zipO);
-      }else if(zipO == null){
-        zipO = "";
-      }
-      String zip = (String) zipO;
+  /**
+   * Read a coordinate input value as degrees.
+   *
+   * @param r             The row
+   * @param idx           The field index from the row plan
+   * @return              The degrees or NaN
+   */
+  private double extractDegrees(Object[] r, int idx){
+    if(idx < 0 || r[idx] == null){
+      return Double.NaN;
+    }
+    Object value = r[idx];
+    if(value instanceof Number){
+      return ((Number) value).doubleValue();
+    }
+    try {
+      return Double.parseDouble(value.toString().trim());
+    }catch(NumberFormatException e){
+      return Double.NaN;
+    }
+  }
 
-      if (meta.getNominatimUrl() != null) {
-        String[] latLong = this.geocodeNominatim(streetO, cityO, stateO, zip);
-        if(meta.getPostNominatimWaitMillis() > 0L){
-          this.doWait(meta.getPostNominatimWaitMillis());
-        }
-        if(latLong != null && latLong.length == 2 && (latLong[0] != null || latLong[1] != null)){
-          outrow = this.packageRow(latLong, outrow, rmi);
-        }else{
-          fallThrough = false;
+  /**
+   * Find the address at the coordinates in a row, locally first and then with
+   * the nominatim reverse endpoint when the engine allows it.
+   *
+   * @param inrow       The input row
+   * @return            The updated row
+   */
+  private Object[] reverseGeocode(Object[] inrow){
+    Object[] outrow = this.resizeRow(inrow);
+    double latitude = this.extractDegrees(outrow, data.latitudeInputIndex);
+    double longitude = this.extractDegrees(outrow, data.longitudeInputIndex);
+    if(Double.isNaN(latitude) || Double.isNaN(longitude)){
+      return outrow;
+    }
+    String[] address = null;
+    if(data.localIndex != null){
+      long started = data.metrics.start();
+      address = data.localIndex.reverse(latitude, longitude, meta.getReverseMaxMeters());
+      data.metrics.finish(data.metrics.local(), address == null ? new String[2] : address, started);
+    }
+    if((address == null || address[0] == null) && meta.usesRemoteGeocoder()){
+      if(data.getNominatimEndpoints() != null){
+        try {
+          address = data.nominatimReverseRequest(latitude, longitude);
+        }catch(Exception e){
+          if(isBasic()){
+            logBasic("Failed to Reverse Geocode Coordinates");
+            logBasic(e.getMessage());
+          }
         }
       }
-
-      if (fallThrough && !this.wasGeocodeObtained(outrow, rmi)) {
-        String[] latLong = this.gecodeMapBox(streetO, cityO, stateO, zip);
-        if(meta.getPostMapboxWaitMillis() > 0L){
-          this.doWait(meta.getPostMapboxWaitMillis());
-        }
-        if(latLong != null && latLong.length == 2 && (latLong[0] != null || latLong[1] != null)) {
-          outrow = this.packageRow(latLong, outrow, rmi);
-        }
+    }
+    if(address != null){
+      if(data.addressIndex > -1){
+        outrow[data.addressIndex] = address[0];
+      }
+      if(data.postcodeIndex > -1){
+        outrow[data.postcodeIndex] = address[1];
       }
     }
-
     return outrow;
   }
 
@@ -287,17 +704,143 @@ public class NominatimPDIPlugin extends BaseStep implements StepInterface {
    * @throws KettleException
    */
   private void setupProcessor() throws KettleException{
-    RowMetaInterface inMeta = getInputRowMeta().clone();
-    data.outputRowMeta = inMeta;
-    meta.getFields(data.outputRowMeta, getStepname(), null, null, this, null, null);
+    List<String> missing = data.planRows(meta, getInputRowMeta(), getStepname(), this);
+    if(isBasic()){
+      for(String fieldName : missing){
+        logBasic("Field " + fieldName + " Not Found in Geocoder Input");
+      }
+    }
     first = false;
   }
 
 
+  /**
+   * Wait for a pipelined row to finish geocoding.
+   *
+   * @param future        The pending row
+   * @return              The geocoded row
+   * @throws KettleException
+   */
+  private Object[] awaitRow(Future<Object[]> future) throws KettleException{
+    try {
+      return future.get();
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new KettleException("Interrupted While Waiting for Geocode", e);
+    }catch(ExecutionException e){
+      throw new KettleException("Failed to Geocode Row", e.getCause());
+    }
+  }
+
+  /**
+   * Emit pipelined rows in input order. Completed rows at the head of the
+   * queue are always written; beyond that the call blocks until no more than
+   * the given number of rows remain outstanding.
+   *
+   * @param maxPending      The number of rows allowed to remain in flight
+   * @throws KettleException
+   */
+  private void drainPending(int maxPending) throws KettleException{
+    if(data.pending == null){
+      return;
+    }
+    while(!data.pending.isEmpty() && (data.pending.size() > maxPending || data.pending.peek().isDone())){
+      putRow(data.outputRowMeta, this.awaitRow(data.pending.poll()));
+    }
+  }
+
+  /**
+   * Submit a row to the request pipeline.
+   *
+   * @param r           The input row
+   * @param cached      Results read from the cache table for the row's batch, or null
+   * @throws KettleException
+   */
+  private void submitRow(final Object[] r, final Map<String, String[]> cached) throws KettleException{
+    data.pending.add(data.executor.submit(() -> this.geocodeRow(r, cached)));
+    this.drainPending(data.maxInFlight - 1);
+  }
+
+  /**
+   * Geocode a row on the pipeline when there is one, otherwise in place.
+   *
+   * @param r           The input row
+   * @param cached      Results read from the cache table for the row's batch, or null
+   * @throws KettleException
+   */
+  private void dispatchRow(Object[] r, Map<String, String[]> cached) throws KettleException{
+    if(data.isPipelined()){
+      this.submitRow(r, cached);
+    }else {
+      putRow(data.outputRowMeta, this.geocodeRow(r, cached));
+    }
+  }
+
+  /**
+   * Resolve the buffered batch of rows against the cache table with one
+   * multi-key query and geocode them, so only the misses reach a provider.
+   * Results found since the previous batch are written back first.
+   *
+   * @throws KettleException
+   */
+  private void processBatch() throws KettleException{
+    if(data.cacheBatch.isEmpty()){
+      return;
+    }
+    List<String> keys = new ArrayList<>(data.cacheBatch.size());
+    for(Object[] r : data.cacheBatch){
+      keys.add(this.addressKey(r));
+    }
+    Map<String, String[]> cached;
+    try {
+      data.getDatabaseCache().flush();
+      cached = data.getDatabaseCache().lookup(keys);
+    }catch(SQLException e){
+      throw new KettleException("Failed to Read Geocode Cache Table", e);
+    }
+    for(Object[] r : data.cacheBatch){
+      this.dispatchRow(r, cached);
+    }
+    data.cacheBatch.clear();
+  }
+
+  /**
+   * Log the first failed write to the persistent cache, after which the cache
+   * stops storing results but lookups carry on.
+   */
+  private void reportDiskCacheFailure(){
+    GeocodeDiskCache diskCache = data.getDiskCache();
+    IOException failure = diskCache == null ? null : diskCache.takeWriteFailure();
+    if(failure != null){
+      logError("Failed to Write Geocode Cache, New Results Will Not Be Cached", failure);
+    }
+  }
+
+  /**
+   * Write results still buffered for the cache table.
+   *
+   * @throws KettleException
+   */
+  private void flushDatabaseCache() throws KettleException{
+    try {
+      data.getDatabaseCache().flush();
+    }catch(SQLException e){
+      throw new KettleException("Failed to Write Geocode Cache Table", e);
+    }
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     Object[] r = getRow(); // get row, set busy!
     if ( r == null ) {
       // no more input to be expected...
+      boolean batched = data.getDatabaseCache() != null && !data.reverse;
+      if(batched){
+        this.processBatch();
+      }
+      this.drainPending(0);
+      if(batched){
+        this.flushDatabaseCache();
+      }
       setOutputDone();
       return false;
     }
@@ -308,12 +851,21 @@ public class NominatimPDIPlugin extends BaseStep implements StepInterface {
       this.setupProcessor();
     }
 
-    r = this.getLatLong(r, getInputRowMeta());
-    putRow(data.outputRowMeta, r);
+    if(data.getDatabaseCache() != null && !data.reverse){
+      data.cacheBatch.add(r);
+      if(data.cacheBatch.size() >= meta.getCacheBatchSize()){
+        this.processBatch();
+      }
+    }else {
+      this.dispatchRow(r, null);
+    }
+    this.reportDiskCacheFailure();
 
     if ( checkFeedback( getLinesRead() ) ) {
       if ( log.isBasic() )
         logBasic( BaseMessages.getString( PKG, "NominatimPDIPlugin.Log.LineNumber" ) + getLinesRead() );
+      if ( log.isDetailed() )
+        logDetailed( data.metrics.getSummary() );
     }
       
     return true;
@@ -18,165 +18,1190 @@
  */
 package com.si;
 
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import org.apache.http.util.EntityUtils;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class NominatimPDIPluginData extends BaseStepData implements StepDataInterface {
+  public static final int FIELD_NOT_SET = -2;
+
   public RowMetaInterface outputRowMeta;
+  public int streetIndex = FIELD_NOT_SET;
+  public int cityIndex = FIELD_NOT_SET;
+  public int stateIndex = FIELD_NOT_SET;
+  public int zipIndex = FIELD_NOT_SET;
+  public int latitudeIndex = -1;
+  public int longitudeIndex = -1;
+  public int coordinateType = ValueMetaInterface.TYPE_STRING;
+  public boolean reverse;
+  public int latitudeInputIndex = -1;
+  public int longitudeInputIndex = -1;
+  public int addressIndex = -1;
+  public int postcodeIndex = -1;
+  public ExecutorService executor;
+  public Deque<Future<Object[]>> pending;
+  public int maxInFlight = 1;
+  private boolean virtualThreads;
+  public GeocodeMemoryCache memoryCache;
+  public LocalAddressIndex localIndex;
+  public InFlightRequests inFlight = new InFlightRequests();
+  public final GeocoderMetrics metrics = new GeocoderMetrics();
+  private SharedHttpClient sharedClient;
+  private int sharedClientRoutes;
   private HttpClient client;
+  private EndpointBalancer nominatimEndpoints;
+  private RequestTemplate[] searchTemplates = new RequestTemplate[0];
+  private RequestTemplate[] queryTemplates = new RequestTemplate[0];
+  private RequestTemplate[] reverseTemplates = new RequestTemplate[0];
+  private URI mapboxUri;
+  private RequestTemplate mapboxTemplate;
+  private RequestTemplate mapboxBatchTemplate;
+  public int queryIndex = FIELD_NOT_SET;
+  public boolean freeForm;
+  private TokenBucketRateLimiter[] nominatimLimiters = new TokenBucketRateLimiter[0];
+  private TokenBucketRateLimiter mapboxLimiter;
+  private double nominatimRate;
+  private int nominatimBurst;
+  private double mapboxRate;
+  private int mapboxBurst;
+  private AdaptiveConcurrencyLimit[] nominatimConcurrency = new AdaptiveConcurrencyLimit[0];
+  private int concurrencyMinLimit;
+  private int concurrencyMaxLimit;
+  private GeocodeDiskCache diskCache;
+  private Database cacheDatabase;
+  private GeocodeDatabaseCache databaseCache;
+  public final List<Object[]> cacheBatch = new ArrayList<>();
+  private MapboxBatcher mapboxBatcher;
+  private CircuitBreaker mapboxBreaker;
+  private GeocodeEngine engine;
+  public int maxRetries = 2;
+  public long retryBaseMillis = 500L;
+  public long retryMaxMillis = 30000L;
+  public int breakerThreshold = 5;
+  public boolean holdWhileOpen;
+  private ExecutorService requestExecutor;
+  private double hedgePercentile;
+  private long hedgeMinDelayMillis;
+  private final AtomicLong hedgeEligible = new AtomicLong();
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+  private final AtomicLong races = new AtomicLong();
+  private final AtomicLong raceMapboxWins = new AtomicLong();
+  private final AtomicLong raceLosersRunning = new AtomicLong();
 
   /**
    * Setup the data class
    */
   public NominatimPDIPluginData() {
     super();
-    client = HttpClientBuilder.create().build();
   }
 
   /**
-   * Package teh response
+   * Find an input field for the row plan.
    *
-   * @param response      The HttpResponse
-   * @return              The latLong string array
+   * @param fieldName     The configured field name
+   * @param rmi           The input row meta
+   * @param missing       Collects configured fields absent from the input
+   * @return              The index, FIELD_NOT_SET when no field is configured, or -1 when it is missing
    */
-  private String[] packageResponse(HttpResponse response) throws IOException, ParseException {
-    String[] latLong = new String[2];
-    JSONParser parser = new JSONParser();
-    InputStream is = response.getEntity().getContent();
+  private static int indexOfInput(String fieldName, RowMetaInterface rmi, List<String> missing){
+    if(fieldName == null || fieldName.trim().length() == 0){
+      return FIELD_NOT_SET;
+    }
+    int idx = rmi.indexOfValue(fieldName);
+    if(idx < 0){
+      missing.add(fieldName);
+    }
+    return idx;
+  }
+
+  /**
+   * Lay out the output row and precompute the field indexes used per row.
+   *
+   * @param meta          The step settings
+   * @param inMeta        The input row meta
+   * @param stepname      The step name
+   * @param space         The variables for the output fields
+   * @return              The configured input fields missing from the input
+   * @throws KettleStepException
+   */
+  public List<String> planRows(NominatimPDIPluginMeta meta, RowMetaInterface inMeta, String stepname,
+                               VariableSpace space) throws KettleStepException{
+    List<String> missing = new ArrayList<>();
+    outputRowMeta = inMeta.clone();
+    meta.getFields(outputRowMeta, stepname, null, null, space, null, null);
+    freeForm = meta.isFreeForm();
+    if(freeForm){
+      // the whole address travels in the street slot and the other parts stay empty
+      queryIndex = indexOfInput(meta.getQueryField(), inMeta, missing);
+      streetIndex = queryIndex;
+      cityIndex = FIELD_NOT_SET;
+      stateIndex = FIELD_NOT_SET;
+      zipIndex = FIELD_NOT_SET;
+    }else{
+      queryIndex = FIELD_NOT_SET;
+      streetIndex = indexOfInput(meta.getStreetField(), inMeta, missing);
+      cityIndex = indexOfInput(meta.getCityField(), inMeta, missing);
+      stateIndex = indexOfInput(meta.getStateField(), inMeta, missing);
+      zipIndex = indexOfInput(meta.getZipField(), inMeta, missing);
+    }
+    latitudeIndex = outputRowMeta.indexOfValue(meta.getLatitudeField());
+    longitudeIndex = outputRowMeta.indexOfValue(meta.getLongitudeField());
+    reverse = meta.isReverse();
+    latitudeInputIndex = indexOfInput(meta.getLatitudeInputField(), inMeta, missing);
+    longitudeInputIndex = indexOfInput(meta.getLongitudeInputField(), inMeta, missing);
+    addressIndex = outputRowMeta.indexOfValue(meta.getAddressField());
+    postcodeIndex = outputRowMeta.indexOfValue(meta.getPostcodeField());
+    coordinateType = latitudeIndex > -1 ? outputRowMeta.getValueMeta(latitudeIndex).getType()
+            : ValueMetaInterface.TYPE_STRING;
+    return missing;
+  }
+
+  /**
+   * Obtain the shared pooled HTTP client.
+   *
+   * @param maxPerRoute           The maximum connections per route
+   * @param routes                The number of endpoints the step sends requests to
+   * @param idleSeconds           The time after which idle connections are closed
+   * @param keepAliveSeconds      The longest time a connection is kept alive
+   * @param connectTimeoutMillis  The longest wait for a connection to open
+   * @param readTimeoutMillis     The longest wait for data on an open connection
+   * @param leaseTimeoutMillis    The longest wait for a connection from the pool
+   */
+  public void startHttpClient(int maxPerRoute, int routes, int idleSeconds, int keepAliveSeconds,
+                              int connectTimeoutMillis, int readTimeoutMillis, int leaseTimeoutMillis){
+    sharedClient = SharedHttpClient.acquire(maxPerRoute, routes, idleSeconds, keepAliveSeconds,
+            connectTimeoutMillis, readTimeoutMillis, leaseTimeoutMillis);
+    sharedClientRoutes = routes;
+    client = sharedClient.getClient();
+  }
+
+  /**
+   * Send requests through the given client instead of the shared pool, such
+   * as a stubbed transport in benchmarks.
+   *
+   * @param client                The client
+   */
+  void useHttpClient(HttpClient client){
+    this.client = client;
+  }
+
+  /**
+   * Open pooled connections to the providers before the first rows arrive,
+   * within what their rate limiters allow without waiting.
+   *
+   * @param connections       The number of connections to open per endpoint
+   * @param mapbox            Whether to warm up mapbox as well as the nominatim replicas
+   * @return                  The number of connections opened
+   */
+  public int warmUp(int connections, boolean mapbox){
+    if(sharedClient == null){
+      return 0;
+    }
+    int opened = 0;
+    if(nominatimEndpoints != null){
+      for(EndpointBalancer.Endpoint endpoint : nominatimEndpoints.getEndpoints()){
+        TokenBucketRateLimiter limiter = endpoint.getIndex() < nominatimLimiters.length ? nominatimLimiters[endpoint.getIndex()] : null;
+        opened += sharedClient.warmUp(endpoint.getUri(), connections, limiter);
+      }
+    }
+    if(mapbox && mapboxUri != null){
+      opened += sharedClient.warmUp(mapboxUri, connections, mapboxLimiter);
+    }
+    return opened;
+  }
+
+  /**
+   * Release the shared HTTP client.
+   */
+  public void stopHttpClient(){
+    if(sharedClient != null){
+      sharedClient.release(sharedClientRoutes);
+      sharedClient = null;
+      client = null;
+    }
+  }
+
+  /**
+   * Start the asynchronous request pipeline. A window of one keeps the
+   * synchronous behavior and starts no threads.
+   *
+   * @param maxInFlight       The maximum number of outstanding requests
+   * @param stepName          The step name used to label worker threads
+   * @param virtualThreads    Whether requests run on virtual threads when the JVM supports them
+   */
+  public void startPipeline(int maxInFlight, String stepName, boolean virtualThreads){
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.virtualThreads = virtualThreads;
+    if(this.maxInFlight > 1) {
+      executor = RequestExecutors.create(stepName + "-geocoder", this.maxInFlight, virtualThreads);
+      pending = new ArrayDeque<>(this.maxInFlight);
+    }
+  }
+
+  /**
+   * Whether rows are geocoded on the request pipeline.
+   *
+   * @return      True when the in-flight window is larger than one
+   */
+  public boolean isPipelined(){
+    return executor != null;
+  }
+
+  /**
+   * Stop the request pipeline, abandoning any outstanding requests.
+   */
+  public void stopPipeline(){
+    if(executor != null){
+      executor.shutdownNow();
+      executor = null;
+    }
+    if(pending != null){
+      pending.clear();
+    }
+  }
+
+  /**
+   * Hedge slow nominatim requests with a duplicate to another replica.
+   *
+   * @param percentile        The latency percentile after which a request is hedged
+   * @param minDelayMillis    The shortest wait before hedging
+   * @param stepName          The step name used to label request threads
+   */
+  public void startHedging(double percentile, int minDelayMillis, String stepName){
+    this.hedgePercentile = percentile;
+    this.hedgeMinDelayMillis = Math.max(0, minDelayMillis);
+    this.startRequestExecutor(stepName);
+  }
+
+  /**
+   * Start the threads that run concurrent requests for a single lookup, used
+   * by hedging and by the provider race. A row runs at most four such
+   * requests at once, which bounds the platform threads needed.
+   *
+   * @param stepName          The step name used to label request threads
+   */
+  public void startRequestExecutor(String stepName){
+    if(requestExecutor == null){
+      requestExecutor = RequestExecutors.create(stepName + "-request", 4 * maxInFlight, virtualThreads);
+    }
+  }
+
+  /**
+   * Stop the concurrent request threads, abandoning any outstanding requests.
+   */
+  public void stopRequestExecutor(){
+    if(requestExecutor != null){
+      requestExecutor.shutdownNow();
+      requestExecutor = null;
+    }
+  }
+
+  public ExecutorService getRequestExecutor() {
+    return requestExecutor;
+  }
+
+  /**
+   * Count a lookup where mapbox was raced against nominatim.
+   *
+   * @param mapboxWon     Whether the mapbox answer was used
+   * @param loserRunning  Whether the losing request was still running when the answer was chosen
+   */
+  public void countRace(boolean mapboxWon, boolean loserRunning){
+    races.incrementAndGet();
+    if(mapboxWon){
+      raceMapboxWins.incrementAndGet();
+    }
+    if(loserRunning){
+      raceLosersRunning.incrementAndGet();
+    }
+  }
+
+  /**
+   * The number of lookups where mapbox was started alongside nominatim.
+   *
+   * @return      The race count
+   */
+  public long getRaces() {
+    return races.get();
+  }
+
+  /**
+   * The number of races whose mapbox answer was used.
+   *
+   * @return      The win count
+   */
+  public long getRaceMapboxWins() {
+    return raceMapboxWins.get();
+  }
+
+  /**
+   * The number of races whose losing request was still running when the
+   * answer was chosen and was left to finish in the background.
+   *
+   * @return      The count of losers left running
+   */
+  public long getRaceLosersRunning() {
+    return raceLosersRunning.get();
+  }
+
+  /**
+   * The number of nominatim requests sent while hedging was enabled.
+   *
+   * @return      The request count
+   */
+  public long getHedgeEligible() {
+    return hedgeEligible.get();
+  }
+
+  /**
+   * The number of duplicate requests sent.
+   *
+   * @return      The hedge count
+   */
+  public long getHedges() {
+    return hedges.get();
+  }
+
+  /**
+   * The number of duplicate requests that answered before the original.
+   *
+   * @return      The win count
+   */
+  public long getHedgeWins() {
+    return hedgeWins.get();
+  }
+
+  /**
+   * Join the engine shared by the copies of this step, taking its memory
+   * cache, outstanding lookup table and mapbox breaker.
+   *
+   * @param step                  Identifies the step
+   * @param configuration         The step settings
+   * @param memoryCacheBytes      The memory cache budget, zero or less for no memory cache
+   */
+  public void startEngine(String step, String configuration, long memoryCacheBytes){
+    engine = GeocodeEngine.acquire(step, configuration, memoryCacheBytes, breakerThreshold, retryBaseMillis, retryMaxMillis);
+    memoryCache = engine.getMemoryCache();
+    inFlight = engine.getInFlight();
+  }
+
+  /**
+   * Leave the shared engine.
+   *
+   * @return          True when this copy was the last to hold the engine, or held none
+   */
+  public boolean stopEngine(){
+    if(engine == null){
+      return true;
+    }
+    boolean last = engine.release();
+    engine = null;
+    return last;
+  }
+
+  public GeocodeEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Balance nominatim requests over the configured replicas and compile the
+   * search, free-form and reverse request templates of each replica.
+   *
+   * @param urls                  The replica urls, separated by commas or whitespace
+   * @param healthCheckSeconds    The time between health probes, zero or less to disable them
+   * @throws URISyntaxException
+   */
+  public void startNominatimEndpoints(String urls, int healthCheckSeconds) throws URISyntaxException {
+    nominatimEndpoints = EndpointBalancer.acquire(urls, healthCheckSeconds,
+            () -> new CircuitBreaker(breakerThreshold, retryBaseMillis, retryMaxMillis));
+    List<EndpointBalancer.Endpoint> endpoints = nominatimEndpoints.getEndpoints();
+    searchTemplates = new RequestTemplate[endpoints.size()];
+    queryTemplates = new RequestTemplate[endpoints.size()];
+    reverseTemplates = new RequestTemplate[endpoints.size()];
+    String[] search = new String[]{"format", "json", "limit", "1"};
+    for(EndpointBalancer.Endpoint endpoint : endpoints){
+      URI uri = endpoint.getUri();
+      searchTemplates[endpoint.getIndex()] = RequestTemplate.query(uri, search, "city", "street", "state", "postalcode");
+      queryTemplates[endpoint.getIndex()] = RequestTemplate.query(uri, search, "q");
+      reverseTemplates[endpoint.getIndex()] = RequestTemplate.query(EndpointBalancer.siblingUri(uri, "reverse"),
+              new String[]{"format", "jsonv2", "addressdetails", "1"}, "lat", "lon");
+    }
+  }
+
+  /**
+   * Release the nominatim replicas.
+   */
+  public void stopNominatimEndpoints(){
+    if(nominatimEndpoints != null){
+      nominatimEndpoints.release();
+      nominatimEndpoints = null;
+    }
+  }
+
+  public CircuitBreaker getMapboxBreaker() {
+    return mapboxBreaker;
+  }
+
+  public EndpointBalancer getNominatimEndpoints() {
+    return nominatimEndpoints;
+  }
+
+  /**
+   * Obtain the shared rate limiters for the configured endpoints, one for each
+   * nominatim replica so that throughput grows with the number of replicas,
+   * and create the mapbox circuit breaker.
+   *
+   * @param nominatimRate       The nominatim requests per second
+   * @param nominatimBurst      The nominatim burst size
+   * @param mapboxUrl           The mapbox url
+   * @param mapboxRate          The mapbox requests per second
+   * @param mapboxBurst         The mapbox burst size
+   */
+  public void startRateLimiters(double nominatimRate, int nominatimBurst,
+                                String mapboxUrl, double mapboxRate, int mapboxBurst){
+    this.nominatimRate = nominatimRate;
+    this.nominatimBurst = nominatimBurst;
+    this.mapboxRate = mapboxRate;
+    this.mapboxBurst = mapboxBurst;
+    if(nominatimEndpoints != null) {
+      List<EndpointBalancer.Endpoint> endpoints = nominatimEndpoints.getEndpoints();
+      nominatimLimiters = new TokenBucketRateLimiter[endpoints.size()];
+      for(EndpointBalancer.Endpoint endpoint : endpoints){
+        nominatimLimiters[endpoint.getIndex()] = TokenBucketRateLimiter.forEndpoint(endpoint.getUri().toString(), nominatimRate, nominatimBurst);
+      }
+    }
+    if(mapboxUrl != null && mapboxUrl.trim().length() > 0) {
+      mapboxBreaker = engine != null ? engine.getMapboxBreaker() : new CircuitBreaker(breakerThreshold, retryBaseMillis, retryMaxMillis);
+      mapboxLimiter = TokenBucketRateLimiter.forEndpoint(mapboxUrl, mapboxRate, mapboxBurst);
+    }
+  }
+
+  /**
+   * Release the shared rate limiters.
+   */
+  public void stopRateLimiters(){
+    for(TokenBucketRateLimiter limiter : nominatimLimiters){
+      limiter.release(nominatimRate, nominatimBurst);
+    }
+    nominatimLimiters = new TokenBucketRateLimiter[0];
+    if(mapboxLimiter != null){
+      mapboxLimiter.release(mapboxRate, mapboxBurst);
+      mapboxLimiter = null;
+    }
+  }
+
+  /**
+   * Adapt the number of outstanding requests to each nominatim replica to
+   * the latency and failures it shows, within the given bounds.
+   *
+   * @param minLimit      The lowest number of outstanding requests per replica
+   * @param maxLimit      The highest number of outstanding requests per replica
+   */
+  public void startConcurrencyLimits(int minLimit, int maxLimit){
+    if(nominatimEndpoints != null) {
+      List<EndpointBalancer.Endpoint> endpoints = nominatimEndpoints.getEndpoints();
+      nominatimConcurrency = new AdaptiveConcurrencyLimit[endpoints.size()];
+      concurrencyMinLimit = minLimit;
+      concurrencyMaxLimit = maxLimit;
+      for(EndpointBalancer.Endpoint endpoint : endpoints){
+        nominatimConcurrency[endpoint.getIndex()] = AdaptiveConcurrencyLimit.forEndpoint(endpoint.getUri().toString(), minLimit, maxLimit);
+      }
+      metrics.watchConcurrencyLimits(nominatimConcurrency);
+    }
+  }
+
+  /**
+   * Release the shared concurrency limits.
+   */
+  public void stopConcurrencyLimits(){
+    for(AdaptiveConcurrencyLimit limit : nominatimConcurrency){
+      limit.release(concurrencyMinLimit, concurrencyMaxLimit);
+    }
+    nominatimConcurrency = new AdaptiveConcurrencyLimit[0];
+    metrics.watchConcurrencyLimits(nominatimConcurrency);
+  }
+
+  public AdaptiveConcurrencyLimit[] getConcurrencyLimits() {
+    return nominatimConcurrency;
+  }
+
+  /**
+   * Open the persistent geocode cache, replaying the results of earlier runs.
+   *
+   * @param path              The cache file
+   * @param ttlDays           The number of days a cached result is valid, zero or less to keep results forever
+   * @param syncSeconds       The time between forcing new results to disk, zero or less to force them only on close
+   * @param compactOnClose    Whether to drop superseded and expired results when the last step closes the cache
+   * @throws IOException
+   */
+  public void startDiskCache(String path, int ttlDays, int syncSeconds, boolean compactOnClose) throws IOException {
+    diskCache = GeocodeDiskCache.open(path, ttlDays > 0 ? TimeUnit.DAYS.toMillis(ttlDays) : 0L,
+            syncSeconds > 0 ? TimeUnit.SECONDS.toMillis(syncSeconds) : 0L, compactOnClose);
+  }
+
+  public GeocodeDiskCache getDiskCache() {
+    return diskCache;
+  }
+
+  /**
+   * Open the local address index, building it from the address file when needed.
+   *
+   * @param path        The address file
+   * @return            The index
+   * @throws IOException
+   */
+  public LocalAddressIndex startLocalIndex(String path) throws IOException {
+    localIndex = LocalAddressIndex.open(path);
+    return localIndex;
+  }
+
+  /**
+   * Release the local address index.
+   */
+  public void stopLocalIndex(){
+    if(localIndex != null){
+      localIndex.release();
+      localIndex = null;
+    }
+  }
+
+  /**
+   * Compile the mapbox single and batch request templates.
+   *
+   * @param url             The mapbox endpoint
+   * @param token           The access token
+   * @throws URISyntaxException
+   */
+  public void startMapboxTemplates(String url, String token) throws URISyntaxException {
+    URI uri = new URI(url.trim());
+    String[] params = new String[]{"access_token", token, "limit", "1"};
+    mapboxUri = uri;
+    mapboxTemplate = RequestTemplate.path(uri, "/geocoding/v5/mapbox.places/", ".json", params);
+    mapboxBatchTemplate = RequestTemplate.path(uri, "/geocoding/v5/mapbox.places-permanent/", ".json", params);
+  }
+
+  /**
+   * Send mapbox lookups in batches. The templates must have been compiled
+   * with {@link #startMapboxTemplates(String, String)}. Batches whose linger
+   * time expires are sent on the request threads.
+   *
+   * @param batchSize       The most queries in a batch
+   * @param lingerMillis    The longest time a query waits for its batch to fill
+   * @param stepName        The step name, used to name the batch timer and request threads
+   */
+  public void startMapboxBatcher(int batchSize, int lingerMillis, String stepName){
+    this.startRequestExecutor(stepName);
+    mapboxBatcher = new MapboxBatcher(this::mapBoxBatchRequest, batchSize, lingerMillis, stepName, requestExecutor);
+  }
+
+  /**
+   * Send any queued mapbox lookups and stop batching.
+   */
+  public void stopMapboxBatcher(){
+    if(mapboxBatcher != null){
+      mapboxBatcher.close();
+      mapboxBatcher = null;
+    }
+  }
+
+  public MapboxBatcher getMapboxBatcher() {
+    return mapboxBatcher;
+  }
+
+  /**
+   * Use a database table as a cache tier.
+   *
+   * @param database        The connected database, disconnected by {@link #stopDatabaseCache()}
+   * @param table           The cache table, quoted and qualified
+   * @param batchSize       The most rows resolved by one query or write batch
+   */
+  public void startDatabaseCache(Database database, String table, int batchSize){
+    cacheDatabase = database;
+    databaseCache = new GeocodeDatabaseCache(database.getConnection(), table, batchSize);
+  }
+
+  /**
+   * Disconnect the cache table. Results not yet flushed are dropped.
+   */
+  public void stopDatabaseCache(){
+    databaseCache = null;
+    cacheBatch.clear();
+    if(cacheDatabase != null){
+      cacheDatabase.disconnect();
+      cacheDatabase = null;
+    }
+  }
+
+  public GeocodeDatabaseCache getDatabaseCache() {
+    return databaseCache;
+  }
+
+  /**
+   * Release the persistent geocode cache.
+   */
+  public void stopDiskCache(){
+    if(diskCache != null){
+      diskCache.release();
+      diskCache = null;
+    }
+  }
+
+  /**
+   * Wait for a permit from a rate limiter.
+   *
+   * @param limiter     The limiter, possibly null
+   * @throws InterruptedIOException
+   */
+  private void throttle(TokenBucketRateLimiter limiter) throws InterruptedIOException {
+    if(limiter != null){
+      long started = System.nanoTime();
+      try {
+        limiter.acquire();
+        metrics.recordLimiterWait(System.nanoTime() - started);
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted While Waiting for Rate Limiter");
+      }
+    }
+  }
+
+  /**
+   * Wait for an outstanding request slot from a concurrency limit.
+   *
+   * @param limit       The limit, possibly null
+   * @throws InterruptedIOException
+   */
+  private void admit(AdaptiveConcurrencyLimit limit) throws InterruptedIOException {
+    if(limit != null){
+      try {
+        metrics.recordLimiterWait(limit.acquire());
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted While Waiting for Concurrency Limit");
+      }
+    }
+  }
+
+  /**
+   * Reads a response body.
+   */
+  interface ResponseReader<T> {
+    T read(InputStream in) throws IOException;
+  }
+
+  /**
+   * Send a request to the least loaded nominatim replica and read the response.
+   *
+   * Connection failures and server errors are retried on the next replica
+   * after an exponential backoff with jitter, or the pause the server asked
+   * for with Retry-After when that is longer. When every replica's breaker is
+   * open the request either waits for the first one to half-open or fails at
+   * once so the row can go to the fallback provider.
+   *
+   * @param templates       The request template of each replica
+   * @param values          The template values
+   * @param reader          Reads the response body
+   * @return                The parsed response
+   * @throws URISyntaxException
+   * @throws IOException
+   */
+  private <T> T nominatimGet(RequestTemplate[] templates, String[] values, ResponseReader<T> reader) throws URISyntaxException, IOException {
+    int attempt = 0;
+    while(true){
+      EndpointBalancer.Endpoint endpoint = nominatimEndpoints.acquireEndpoint();
+      if(endpoint == null){
+        long wait = nominatimEndpoints.nextAvailableMillis();
+        if(!holdWhileOpen){
+          throw new CircuitOpenException("Nominatim Circuit Open", wait);
+        }
+        this.pause(Math.max(1L, wait));
+        continue;
+      }
+      long backoff;
+      try {
+        return this.nominatimHedged(new Attempt<>(endpoint, templates, values, reader));
+      }catch(GeocodeHttpException e){
+        if(!e.isServerFailure() || attempt >= maxRetries || e.getRetryAfterMillis() > retryMaxMillis){
+          throw e;
+        }
+        backoff = Math.max(e.getRetryAfterMillis(), CircuitBreaker.backoffMillis(attempt, retryBaseMillis, retryMaxMillis));
+      }catch(InterruptedIOException e){
+        throw e;
+      }catch(IOException e){
+        if(attempt >= maxRetries){
+          throw e;
+        }
+        backoff = CircuitBreaker.backoffMillis(attempt, retryBaseMillis, retryMaxMillis);
+      }
+      this.pause(backoff);
+      attempt++;
+    }
+  }
+
+  /**
+   * One request to a replica, which a competing request can cancel.
+   */
+  private final class Attempt<T> implements Callable<T> {
+    final EndpointBalancer.Endpoint endpoint;
+    final RequestTemplate[] templates;
+    final String[] values;
+    final ResponseReader<T> reader;
+    private volatile HttpGet request;
+    private volatile boolean cancelled;
+
+    Attempt(EndpointBalancer.Endpoint endpoint, RequestTemplate[] templates, String[] values, ResponseReader<T> reader){
+      this.endpoint = endpoint;
+      this.templates = templates;
+      this.values = values;
+      this.reader = reader;
+    }
+
+    public T call() throws Exception {
+      return nominatimAttempt(this);
+    }
+
+    void start(HttpGet started){
+      request = started;
+      if(cancelled){
+        started.abort();
+      }
+    }
+
+    void cancel(){
+      cancelled = true;
+      HttpGet started = request;
+      if(started != null){
+        started.abort();
+      }
+    }
+  }
+
+  /**
+   * Send a request and, when it has not answered within the hedge delay, a
+   * duplicate to another replica, taking whichever succeeds first and aborting
+   * the other. The delay is the configured percentile of recent latencies, so
+   * only the slow tail is duplicated.
+   *
+   * @param primary       The request
+   * @return              The parsed response
+   * @throws URISyntaxException
+   * @throws IOException
+   */
+  private <T> T nominatimHedged(Attempt<T> primary) throws URISyntaxException, IOException {
+    if(requestExecutor == null || hedgePercentile <= 0.0){
+      return this.nominatimAttempt(primary);
+    }
+    hedgeEligible.incrementAndGet();
+    long delay = nominatimEndpoints.getLatency().percentile(hedgePercentile);
+    if(delay < 0 || nominatimEndpoints.getEndpoints().size() < 2){
+      return this.nominatimAttempt(primary);
+    }
+    CompletionService<T> race = new ExecutorCompletionService<>(requestExecutor);
+    Future<T> first = race.submit(primary);
+    Attempt<T> hedge = null;
     try {
-      Reader reader = new InputStreamReader(is);
+      Future<T> done = race.poll(Math.max(hedgeMinDelayMillis, delay), TimeUnit.MILLISECONDS);
+      if(done == null){
+        EndpointBalancer.Endpoint other = nominatimEndpoints.acquireEndpoint(primary.endpoint);
+        if(other != null){
+          hedge = new Attempt<>(other, primary.templates, primary.values, primary.reader);
+          race.submit(hedge);
+          hedges.incrementAndGet();
+        }
+        done = race.take();
+      }
+      int remaining = hedge == null ? 1 : 2;
+      while(true){
+        remaining--;
+        try {
+          T result = done.get();
+          if(done != first){
+            hedgeWins.incrementAndGet();
+          }
+          return result;
+        }catch(ExecutionException e){
+          if(remaining == 0){
+            throw unwrap(e);
+          }
+        }
+        done = race.take();
+      }
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted While Waiting for Nominatim");
+    }finally{
+      primary.cancel();
+      if(hedge != null){
+        hedge.cancel();
+      }
+    }
+  }
+
+  /**
+   * Rethrow the failure of a request run on another thread.
+   *
+   * @param e       The wrapped failure
+   * @return        Never returns normally
+   * @throws URISyntaxException
+   * @throws IOException
+   */
+  private static IOException unwrap(ExecutionException e) throws URISyntaxException, IOException {
+    Throwable cause = e.getCause();
+    if(cause instanceof IOException){
+      throw (IOException) cause;
+    }
+    if(cause instanceof URISyntaxException){
+      throw (URISyntaxException) cause;
+    }
+    if(cause instanceof RuntimeException){
+      throw (RuntimeException) cause;
+    }
+    return new IOException(cause);
+  }
+
+  /**
+   * Send one request to a replica, reporting the outcome to the balancer.
+   *
+   * @param attempt         The request
+   * @return                The parsed response
+   * @throws URISyntaxException
+   * @throws IOException
+   */
+  private <T> T nominatimAttempt(Attempt<T> attempt) throws URISyntaxException, IOException {
+    EndpointBalancer.Endpoint endpoint = attempt.endpoint;
+    AdaptiveConcurrencyLimit concurrency = nominatimConcurrency.length > 0 ? nominatimConcurrency[endpoint.getIndex()] : null;
+    boolean admitted = false;
+    boolean failed = true;
+    boolean ignored = false;
+    long retryAfter = 0L;
+    long started = 0L;
+    long rtt = -1L;
+    try {
+      HttpGet request = new HttpGet(attempt.templates[endpoint.getIndex()].expand(attempt.values));
+      request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+      this.throttle(nominatimLimiters[endpoint.getIndex()]);
+      this.admit(concurrency);
+      admitted = concurrency != null;
+      started = System.nanoTime();
+      attempt.start(request);
+      HttpResponse response = this.client.execute(request);
+      if(response.getStatusLine().getStatusCode() != 200){
+        EntityUtils.consumeQuietly(response.getEntity());
+        GeocodeHttpException error = GeocodeHttpException.fromResponse("Nominatim", response);
+        // a client error says nothing about the replica's health or load
+        ignored = !error.isServerFailure();
+        retryAfter = error.getRetryAfterMillis();
+        throw error;
+      }
+      InputStream is = response.getEntity().getContent();
       try {
-        JSONArray jsonArray = (JSONArray) parser.parse(reader);
-        if(jsonArray != null && jsonArray.size() > 0) {
-          JSONObject jsonObj = (JSONObject) jsonArray.get(0);
-          String lat = (String) jsonObj.get("lat");
-          String lon = (String) jsonObj.get("lon");
-          latLong[0] = lat;
-          latLong[1] = lon;
+        T result = attempt.reader.read(is);
+        failed = false;
+        rtt = System.nanoTime() - started;
+        nominatimEndpoints.getLatency().record(TimeUnit.NANOSECONDS.toMillis(rtt));
+        return result;
+      }finally{
+        is.close();
+      }
+    }finally{
+      if(attempt.cancelled || ignored){
+        nominatimEndpoints.abandon(endpoint);
+      }else{
+        nominatimEndpoints.complete(endpoint, failed, retryAfter);
+      }
+      if(admitted){
+        if(attempt.cancelled || ignored || (!failed && rtt < 0L)){
+          concurrency.onIgnored();
+        }else if(failed){
+          concurrency.onDropped(started);
+        }else{
+          concurrency.onSuccess(started, rtt);
         }
-      } finally {
-        reader.close();
       }
+    }
+  }
+
+  /**
+   * Sleep between attempts.
+   *
+   * @param millis      The time to wait
+   * @throws InterruptedIOException
+   */
+  private void pause(long millis) throws InterruptedIOException {
+    try {
+      Thread.sleep(millis);
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted While Backing Off");
+    }
+  }
+
+  /**
+   * Find the address at a coordinate with the nominatim reverse endpoint.
+   *
+   * @param latitude      The latitude
+   * @param longitude     The longitude
+   * @return              The address line and postcode
+   * @throws URISyntaxException
+   * @throws IOException
+   */
+  public String[] nominatimReverseRequest(double latitude, double longitude) throws URISyntaxException, IOException {
+    long started = metrics.start();
+    String[] address = null;
+    try {
+      address = this.nominatimGet(reverseTemplates, new String[]{String.valueOf(latitude), String.valueOf(longitude)},
+              GeocodeResponseParser::parseNominatimReverse);
     }finally{
-      is.close();
+      metrics.finish(metrics.nominatim(), address, started);
     }
-    return latLong;
+    return address;
+  }
+
+  /**
+   * Look up a result in the persistent cache. A cache that cannot be read
+   * counts as a miss so the lookup still goes to the provider.
+   *
+   * @param cacheKey      The cache key
+   * @return              The cached result, or null
+   */
+  private String[] lookupDiskCache(String cacheKey){
+    String[] cached;
+    try {
+      cached = diskCache.get(cacheKey);
+    }catch(IOException e){
+      cached = null;
+    }
+    metrics.recordDiskCache(cached != null);
+    return cached;
   }
 
   /**
    * Request data from nominatim
    *
-   * @param uri         The uri
    * @param street      The street
    * @param city        The city
    * @param state       The state
    * @param zip         The zip
-   * @return            The http response
-   * @throws ClientProtocolException
+   * @return            The latitude and longitude
+   * @throws URISyntaxException
    * @throws IOException
    */
-  public String[] nominatimRequest(URI uri, String street, String city, String state, String zip) throws ParseException, URISyntaxException, ClientProtocolException, IOException {
-    URI outputURI = new URIBuilder(uri)
-            .addParameter("city", city)
-            .addParameter("street", street)
-            .addParameter("state", state)
-            .addParameter("postalcode", zip)
-            .addParameter("format", "json")
-            .build();
-    HttpUriRequest request = new HttpGet(outputURI);
-    HttpResponse response =  this.client.execute(request);
-    int code = response.getStatusLine().getStatusCode();
-    String reason = response.getStatusLine().getReasonPhrase();
-    if(code != 200){
-      throw new IOException("Nominatim Request Failed with Status Code " + code + "\n" + reason);
+  public String[] nominatimRequest(String street, String city, String state, String zip) throws URISyntaxException, IOException {
+    String cacheKey = null;
+    if(diskCache != null){
+      cacheKey = AddressHash.key("nominatim", AddressCanonicalizer.key(street, city, state, zip));
+      String[] cached = this.lookupDiskCache(cacheKey);
+      if(cached != null){
+        return cached;
+      }
+    }
+    long started = metrics.start();
+    String[] latLong = null;
+    try {
+      latLong = this.nominatimGet(searchTemplates, new String[]{city, street, state, zip},
+              GeocodeResponseParser::parseNominatim);
+    }finally{
+      metrics.finish(metrics.nominatim(), latLong, started);
+    }
+    if(cacheKey != null){
+      diskCache.put(cacheKey, latLong);
     }
-    return this.packageResponse(response);
+    return latLong;
   }
 
+  /**
+   * Request data from nominatim with a single free-form query.
+   *
+   * @param query       The address on one line
+   * @return            The latitude and longitude
+   * @throws URISyntaxException
+   * @throws IOException
+   */
+  public String[] nominatimQueryRequest(String query) throws URISyntaxException, IOException {
+    String cacheKey = null;
+    if(diskCache != null){
+      cacheKey = AddressHash.key("nominatim-q", AddressCanonicalizer.key(query, "", "", ""));
+      String[] cached = this.lookupDiskCache(cacheKey);
+      if(cached != null){
+        return cached;
+      }
+    }
+    long started = metrics.start();
+    String[] latLong = null;
+    try {
+      latLong = this.nominatimGet(queryTemplates, new String[]{query}, GeocodeResponseParser::parseNominatim);
+    }finally{
+      metrics.finish(metrics.nominatim(), latLong, started);
+    }
+    if(cacheKey != null){
+      diskCache.put(cacheKey, latLong);
+    }
+    return latLong;
+  }
+
+
   /**
    * Packages geojson from mapbox to lat long array.
    *
    * @param response          The mapbox response
    * @return                  The lat long array
    */
-  private String[] packageGeoJson(HttpResponse response) throws IOException, ParseException {
-    String[] latLong = new String[2];
-    JSONParser parser = new JSONParser();
+  private String[] packageGeoJson(HttpResponse response) throws IOException {
     InputStream is = response.getEntity().getContent();
     try {
-      Reader reader = new InputStreamReader(is);
-      try {
-        JSONObject fullObj = (JSONObject) parser.parse(reader);
-        if(fullObj != null){
-          JSONArray jarr = (JSONArray) fullObj.get("features");
-          if(jarr != null && jarr.size() > 0){
-            JSONObject jobj = (JSONObject) jarr.get(0);
-            jarr = (JSONArray) jobj.get("coordinates");
-            if(jarr.size() == 2){
-              latLong[0] = String.valueOf((float)jarr.get(0));
-              latLong[1] = String.valueOf((float)jarr.get(1));
-            }
-          }
+      return GeocodeResponseParser.parseMapbox(is);
+    }finally{
+      is.close();
+    }
+  }
+
+  /**
+   * Send a request to mapbox through its rate limiter and circuit breaker.
+   *
+   * @param request       The request
+   * @return              The successful response
+   * @throws IOException
+   */
+  private HttpResponse executeMapbox(HttpUriRequest request) throws IOException {
+    if(mapboxBreaker != null && !mapboxBreaker.allowRequest()){
+      throw new CircuitOpenException("Mapbox Circuit Open", mapboxBreaker.remainingOpenMillis());
+    }
+    try {
+      this.throttle(mapboxLimiter);
+    }catch(InterruptedIOException e){
+      if(mapboxBreaker != null){
+        mapboxBreaker.onIgnored();
+      }
+      throw e;
+    }
+    boolean failed = true;
+    boolean ignored = false;
+    long retryAfter = 0L;
+    try {
+      HttpResponse response = this.client.execute(request);
+      if(response.getStatusLine().getStatusCode() != 200){
+        EntityUtils.consumeQuietly(response.getEntity());
+        GeocodeHttpException error = GeocodeHttpException.fromResponse("Mapbox", response);
+        ignored = !error.isServerFailure();
+        retryAfter = error.getRetryAfterMillis();
+        throw error;
+      }
+      failed = false;
+      return response;
+    }finally{
+      if(mapboxBreaker != null){
+        if(ignored){
+          mapboxBreaker.onIgnored();
+        }else if(failed){
+          mapboxBreaker.onFailure(retryAfter);
+        }else{
+          mapboxBreaker.onSuccess();
         }
-      } finally {
-        reader.close();
       }
+    }
+  }
+
+  /**
+   * Geocode a batch of queries with one request to the mapbox batch endpoint.
+   *
+   * @param queries       The queries, free of ';' and '/'
+   * @return              The latitude and longitude for each query
+   * @throws IOException
+   */
+  private String[][] mapBoxBatchRequest(List<String> queries) throws IOException {
+    HttpUriRequest request = new HttpGet(mapboxBatchTemplate.expandJoined(queries, ';'));
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    HttpResponse response = this.executeMapbox(request);
+    InputStream is = response.getEntity().getContent();
+    try {
+      return GeocodeResponseParser.parseMapboxBatch(is, queries.size());
     }finally{
       is.close();
     }
-    return latLong;
   }
 
   /**
-   * Request data from mapbox
+   * Request data from mapbox. The templates must have been compiled with
+   * {@link #startMapboxTemplates(String, String)}.
    *
-   * @param uri         The uri
-   * @param token       The mapbox token
    * @param street      The street
    * @param city        The city
    * @param state       The state
    * @param zip         The zip
-   * @return            The http response
+   * @return            The latitude and longitude
+   * @throws URISyntaxException
    * @throws ClientProtocolException
    * @throws IOException
    */
-  public String[] mapBoxRequest(URI uri, String token, String street, String city, String state, String zip)
-          throws IOException, ParseException, URISyntaxException, ClientProtocolException, IOException {
+  public String[] mapBoxRequest(String street, String city, String state, String zip)
+          throws URISyntaxException, ClientProtocolException, IOException {
+    String cacheKey = null;
+    if(diskCache != null){
+      cacheKey = AddressHash.key("mapbox", AddressCanonicalizer.key(street, city, state, zip));
+      String[] cached = this.lookupDiskCache(cacheKey);
+      if(cached != null){
+        return cached;
+      }
+    }
     String addr = street;
     addr = addr + " " + city;
     addr = addr.trim() + " " + state;
     addr = addr.trim() + " " + zip;
     addr = addr.trim();
-    URI mboxUri = new URL(uri.toURL(), String.format("/geocoding/v5/mapbox.places/%s.json", addr)).toURI();
-    mboxUri = new URIBuilder(mboxUri).addParameter("access_token", token).build();
-    HttpUriRequest uriRequest = new HttpGet(mboxUri);
-    HttpResponse response = this.client.execute(uriRequest);
-    int code = response.getStatusLine().getStatusCode();
-    String reason = response.getStatusLine().getReasonPhrase();
-    if(code != 200){
-      throw new IOException("Mapbox Request Failed with Status Code " + code + "\n" + reason);
-    }
-    return this.packageGeoJson(response);
+    long started = metrics.start();
+    String[] latLong = null;
+    try {
+      if(mapboxBatcher != null){
+        if(mapboxBreaker != null && !mapboxBreaker.isAvailable()){
+          throw new CircuitOpenException("Mapbox Circuit Open", mapboxBreaker.remainingOpenMillis());
+        }
+        latLong = mapboxBatcher.geocode(addr.replace(';', ' ').replace('/', ' '));
+        if(latLong == null){
+          throw new IOException("Mapbox Batch Request Failed");
+        }
+      }else{
+        HttpUriRequest uriRequest = new HttpGet(mapboxTemplate.expand(addr.replace('/', ' ')));
+        uriRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        HttpResponse response = this.executeMapbox(uriRequest);
+        latLong = this.packageGeoJson(response);
+      }
+    }finally{
+      metrics.finish(metrics.mapbox(), latLong, started);
+    }
+    if(cacheKey != null){
+      diskCache.put(cacheKey, latLong);
+    }
+    return latLong;
   }
 }
\ No newline at end of file
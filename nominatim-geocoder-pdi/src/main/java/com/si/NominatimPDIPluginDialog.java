@@ -20,6 +20,8 @@ package com.si;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CCombo;
+import org.eclipse.swt.custom.CTabFolder;
+import org.eclipse.swt.custom.CTabItem;
 import org.eclipse.swt.events.*;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.FormAttachment;
@@ -27,6 +29,7 @@ import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.*;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.Props;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.plugins.PluginInterface;
 import org.pentaho.di.core.plugins.PluginRegistry;
@@ -59,53 +62,68 @@ public class NominatimPDIPluginDialog extends BaseStepDialog implements StepDial
   private Text wStepname;
   private FormData fdStepname, fdlStepname;
 
-  private Label streetName;
-  private CCombo wStreetCombo;
-  private FormData fdlStreetName, fdlStreet;
+  private CTabFolder wTabFolder;
+  private String[] inputFields = new String[0];
 
-  private Label stateName;
+  private CCombo wStreetCombo;
   private CCombo wStateCombo;
-  private FormData fdlStateName, fdlState;
-
-  private Label cityName;
   private CCombo wCityCombo;
-  private FormData fdlCityName, fdlCity;
-
-  private Label zipName;
   private CCombo wZipCombo;
-  private FormData fdlZipName, fdlZip;
-
-  private Label nominatimName;
-  private TextVar wNominatimField;
-  private FormData fdlNominatimName, fdlNominatimField;
-
-  private Label mapBoxName;
-  private TextVar wMapBoxField;
-  private FormData fdlMapBoxName, fdlMapBoxField;
-
-  private Label latitudeName;
+  private CCombo wQueryCombo;
   private TextVar wLatitudeField;
-  private FormData fdlLatitudeName, fdlLatitudeField;
-
-  private Label longitudeName;
   private TextVar wLongitudeField;
-  private FormData fdlLongitudeName, fdlLongitudeField;
+  private CCombo wCoordinateTypeCombo;
+  private CCombo wModeCombo;
+  private CCombo wLatitudeInputCombo;
+  private CCombo wLongitudeInputCombo;
+  private TextVar wAddressField;
+  private TextVar wPostcodeField;
+  private TextVar wReverseMaxMetersField;
+  private TextVar wMapBoxBatchSizeField;
+  private TextVar wHealthCheckField;
+  private TextVar wMaxRetriesField;
+  private TextVar wRetryBaseField;
+  private TextVar wRetryMaxField;
+  private TextVar wBreakerThresholdField;
+  private CCombo wBreakerPolicyCombo;
+  private TextVar wHedgePercentileField;
+  private TextVar wHedgeMinDelayField;
+  private Button wUseVirtualThreads;
+  private Button wAdaptiveConcurrency;
+  private TextVar wMinConcurrencyField;
+  private TextVar wMaxConcurrencyField;
+  private TextVar wLatencyBudgetField;
+  private CCombo wRacePolicyCombo;
+  private TextVar wMapBoxBatchLingerField;
 
-  private Label mapBoxKeyName;
+  private TextVar wNominatimField;
+  private TextVar wNominatimRateField;
+  private TextVar wNominatimBurstField;
+  private TextVar wMapBoxField;
   private TextVar wMapBoxKeyField;
-  private FormData fdlMapBoxKeyName, fdlMapBoxKeyField;
-
-  private Label mapBoxWaitName;
-  private TextVar wMapBoxWaitField;
-  private FormData fdlMapBoxWaitName, fdlMapBoxWaitField;
-
-  private Label nominatimWaitName;
-  private TextVar wNominatimWaitField;
-  private FormData fdlNominatimWaitName, fdlNominatimWaitField;
-
-  private Label useMboxName;
+  private TextVar wMapBoxRateField;
+  private TextVar wMapBoxBurstField;
   private Button wUseMbox;
-  private FormData fdlUseMboxName, fdlUseMbox;
+
+  private TextVar wMaxInFlightField;
+  private TextVar wMaxConnectionsField;
+  private TextVar wIdleConnectionField;
+  private TextVar wKeepAliveField;
+  private TextVar wConnectTimeoutField;
+  private TextVar wReadTimeoutField;
+  private TextVar wLeaseTimeoutField;
+
+  private TextVar wCacheFileField;
+  private CCombo wEngineCombo;
+  private TextVar wLocalAddressFileField;
+  private TextVar wCacheTtlField;
+  private TextVar wMemoryCacheField;
+  private TextVar wCacheSyncField;
+  private Button wCompactCacheOnFinish;
+  private CCombo wCacheConnection;
+  private TextVar wCacheSchemaField;
+  private TextVar wCacheTableField;
+  private TextVar wCacheBatchSizeField;
 
   private Button wCancel;
   private Button wOK;
@@ -120,6 +138,136 @@ public class NominatimPDIPluginDialog extends BaseStepDialog implements StepDial
     meta = (NominatimPDIPluginMeta) in;
   }
 
+  /**
+   * Create a tab holding a form of labelled settings.
+   *
+   * @param labelKey      The message key of the tab title
+   * @return              The composite to add settings to
+   */
+  private Composite addTab(String labelKey){
+    CTabItem tab = new CTabItem(wTabFolder, SWT.NONE);
+    tab.setText(BaseMessages.getString(PKG, labelKey));
+    Composite composite = new Composite(wTabFolder, SWT.NONE);
+    props.setLook(composite);
+    FormLayout layout = new FormLayout();
+    layout.marginWidth = Const.FORM_MARGIN;
+    layout.marginHeight = Const.FORM_MARGIN;
+    composite.setLayout(layout);
+    tab.setControl(composite);
+    return composite;
+  }
+
+  /**
+   * Add the label for a setting row.
+   *
+   * @param parent        The parent composite
+   * @param labelKey      The message key of the label
+   * @param lastControl   The control above the row, or null for the first row
+   * @return              The label
+   */
+  private Label addLabel(Composite parent, String labelKey, Control lastControl){
+    Label label = new Label(parent, SWT.RIGHT);
+    label.setText(BaseMessages.getString(PKG, labelKey));
+    props.setLook(label);
+    FormData fdLabel = new FormData();
+    fdLabel.left = new FormAttachment(0, 0);
+    fdLabel.right = new FormAttachment(props.getMiddlePct(), -Const.MARGIN);
+    fdLabel.top = lastControl == null ? new FormAttachment(0, Const.MARGIN) : new FormAttachment(lastControl, ELEMENT_SPACING);
+    label.setLayoutData(fdLabel);
+    return label;
+  }
+
+  /**
+   * Lay out the input control of a setting row.
+   *
+   * @param control       The control
+   * @param lastControl   The control above the row, or null for the first row
+   */
+  private void layoutControl(Control control, Control lastControl){
+    FormData fdControl = new FormData();
+    fdControl.left = new FormAttachment(props.getMiddlePct(), 0);
+    fdControl.right = new FormAttachment(100, 0);
+    fdControl.top = lastControl == null ? new FormAttachment(0, Const.MARGIN) : new FormAttachment(lastControl, ELEMENT_SPACING);
+    control.setLayoutData(fdControl);
+  }
+
+  /**
+   * Add a text setting.
+   *
+   * @param parent        The parent composite
+   * @param labelKey      The message key of the label
+   * @param lastControl   The control above the row
+   * @return              The text widget
+   */
+  private TextVar addTextVar(Composite parent, String labelKey, Control lastControl){
+    this.addLabel(parent, labelKey, lastControl);
+    TextVar text = new TextVar(transMeta, parent, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+    text.setText("");
+    text.addModifyListener(lsMod);
+    text.addSelectionListener(lsDef);
+    props.setLook(text);
+    this.layoutControl(text, lastControl);
+    return text;
+  }
+
+  /**
+   * Add a combo listing the incoming fields.
+   *
+   * @param parent        The parent composite
+   * @param labelKey      The message key of the label
+   * @param lastControl   The control above the row
+   * @return              The combo
+   */
+  private CCombo addFieldCombo(Composite parent, String labelKey, Control lastControl){
+    this.addLabel(parent, labelKey, lastControl);
+    CCombo combo = new CCombo(parent, SWT.BORDER);
+    props.setLook(combo);
+    for(int i = 0; i < inputFields.length; i++){
+      combo.add(inputFields[i]);
+    }
+    combo.addModifyListener(lsMod);
+    combo.addSelectionListener(lsDef);
+    this.layoutControl(combo, lastControl);
+    return combo;
+  }
+
+  /**
+   * Add a combo offering a fixed set of choices.
+   *
+   * @param parent        The parent composite
+   * @param labelKey      The message key of the label
+   * @param lastControl   The control above the row
+   * @param items         The choices
+   * @return              The combo
+   */
+  private CCombo addChoiceCombo(Composite parent, String labelKey, Control lastControl, String[] items){
+    this.addLabel(parent, labelKey, lastControl);
+    CCombo combo = new CCombo(parent, SWT.BORDER | SWT.READ_ONLY);
+    props.setLook(combo);
+    combo.setItems(items);
+    combo.addModifyListener(lsMod);
+    combo.addSelectionListener(lsDef);
+    this.layoutControl(combo, lastControl);
+    return combo;
+  }
+
+  /**
+   * Add a check box setting.
+   *
+   * @param parent        The parent composite
+   * @param labelKey      The message key of the label
+   * @param lastControl   The control above the row
+   * @return              The check box
+   */
+  private Button addCheckBox(Composite parent, String labelKey, Control lastControl){
+    this.addLabel(parent, labelKey, lastControl);
+    Button button = new Button(parent, SWT.CHECK);
+    props.setLook(button);
+    button.addSelectionListener(lsDef);
+    this.layoutControl(button, lastControl);
+    return button;
+  }
+
   public String open() {
     // store some convenient SWT variables
     Shell parent = getParent();
@@ -137,12 +285,19 @@ public class NominatimPDIPluginDialog extends BaseStepDialog implements StepDial
 
     // The ModifyListener used on all controls. It will update the meta object to
     // indicate that changes are being made.
-    ModifyListener lsMod = new ModifyListener() {
+    lsMod = new ModifyListener() {
       public void modifyText(ModifyEvent e) {
         meta.setChanged();
       }
     };
 
+    // default listener (for hitting "enter")
+    lsDef = new SelectionAdapter() {
+      public void widgetDefaultSelected(SelectionEvent e) {
+        ok();
+      }
+    };
+
     // ------------------------------------------------------- //
     // SWT code for building the actual settings dialog        //
     // ------------------------------------------------------- //
@@ -168,294 +323,113 @@ public class NominatimPDIPluginDialog extends BaseStepDialog implements StepDial
     wStepname.setText(stepname);
     props.setLook(wStepname);
     wStepname.addModifyListener(lsMod);
+    wStepname.addSelectionListener(lsDef);
     fdStepname = new FormData();
     fdStepname.left = new FormAttachment(middle, 0);
     fdStepname.top = new FormAttachment(0, margin);
     fdStepname.right = new FormAttachment(100, 0);
     wStepname.setLayoutData(fdStepname);
 
-    // Set the street
-    streetName = new Label( shell, SWT.RIGHT );
-    streetName.setText( BaseMessages.getString( PKG, "NominatimPDIPluginDialog.Fields.Street" ) );
-    props.setLook( streetName );
-    fdlStreetName = new FormData();
-    fdlStreetName.left = new FormAttachment( 0, 0 );
-    fdlStreetName.right = new FormAttachment( middle, -margin );
-    fdlStreetName.top = new FormAttachment( wStepname, 15 );
-    streetName.setLayoutData( fdlStreetName );
-
-    wStreetCombo = new CCombo( shell, SWT.BORDER );
-    props.setLook( wStreetCombo );
     StepMeta stepinfo = transMeta.findStep( stepname );
     if ( stepinfo != null ) {
       try {
-        String[] fields = transMeta.getStepFields(stepname).getFieldNames();
-        for (int i = 0; i < fields.length; i++) {
-          wStreetCombo.add(fields[i]);
-        }
-      }catch(KettleException e){
-        if ( log.isBasic())
-          logBasic("Failed to Get Step Fields");
-      }
-    }
-
-    wStreetCombo.addModifyListener( lsMod );
-    fdlStreet = new FormData();
-    fdlStreet.left = new FormAttachment( middle, 0 );
-    fdlStreet.top = new FormAttachment( wStepname, 15 );
-    fdlStreet.right = new FormAttachment( 100, 0 );
-    wStreetCombo.setLayoutData( fdlStreet );
-
-    //city
-    cityName = new Label( shell, SWT.RIGHT );
-    cityName.setText( BaseMessages.getString( PKG, "NominatimPDIPluginDialog.Fields.City" ) );
-    props.setLook( cityName );
-    fdlCityName = new FormData();
-    fdlCityName.left = new FormAttachment( 0, 0 );
-    fdlCityName.right = new FormAttachment( middle, -margin );
-    fdlCityName.top = new FormAttachment( wStreetCombo, 15 );
-    cityName.setLayoutData( fdlCityName );
-
-    wCityCombo = new CCombo( shell, SWT.BORDER );
-    props.setLook( wCityCombo );
-    if ( stepinfo != null ) {
-      try {
-        String[] fields = transMeta.getStepFields(stepname).getFieldNames();
-        for (int i = 0; i < fields.length; i++) {
-          wCityCombo.add(fields[i]);
-        }
-      }catch(KettleException e){
-        if ( log.isBasic())
-          logBasic("Failed to Get Step Fields");
-      }
-    }
-
-    wCityCombo.addModifyListener( lsMod );
-    fdlCity = new FormData();
-    fdlCity.left = new FormAttachment( middle, 0 );
-    fdlCity.top = new FormAttachment( wStreetCombo, 15 );
-    fdlCity.right = new FormAttachment( 100, 0 );
-    wCityCombo.setLayoutData( fdlCity );
-
-    //state
-    stateName = new Label( shell, SWT.RIGHT );
-    stateName.setText( BaseMessages.getString( PKG, "NominatimPDIPluginDialog.Fields.State" ) );
-    props.setLook( stateName );
-    fdlStateName = new FormData();
-    fdlStateName.left = new FormAttachment( 0, 0 );
-    fdlStateName.right = new FormAttachment( middle, -margin );
-    fdlStateName.top = new FormAttachment( wCityCombo, 15 );
-    stateName.setLayoutData( fdlStateName );
-
-    wStateCombo = new CCombo( shell, SWT.BORDER );
-    props.setLook( wStateCombo );
-    if ( stepinfo != null ) {
-      try {
-        String[] fields = transMeta.getStepFields(stepname).getFieldNames();
-        for (int i = 0; i < fields.length; i++) {
-          wStateCombo.add(fields[i]);
-        }
+        inputFields = transMeta.getPrevStepFields(stepname).getFieldNames();
       }catch(KettleException e){
         if ( log.isBasic())
           logBasic("Failed to Get Step Fields");
       }
     }
 
-    wStateCombo.addModifyListener( lsMod );
-    fdlState = new FormData();
-    fdlState.left = new FormAttachment( middle, 0 );
-    fdlState.top = new FormAttachment( wCityCombo, 15 );
-    fdlState.right = new FormAttachment( 100, 0 );
-    wStateCombo.setLayoutData( fdlState );
-
-    //zip
-    zipName = new Label( shell, SWT.RIGHT );
-    zipName.setText( BaseMessages.getString( PKG, "NominatimPDIPluginDialog.Fields.Zip" ) );
-    props.setLook( zipName );
-    fdlZipName = new FormData();
-    fdlZipName.left = new FormAttachment( 0, 0 );
-    fdlZipName.right = new FormAttachment( middle, -margin );
-    fdlZipName.top = new FormAttachment( wStateCombo, 15 );
-    zipName.setLayoutData( fdlZipName );
-
-    wZipCombo = new CCombo( shell, SWT.BORDER );
-    props.setLook( wZipCombo );
-    if ( stepinfo != null ) {
-      try {
-        String[] fields = transMeta.getStepFields(stepname).getFieldNames();
-        for (int i = 0; i < fields.length; i++) {
-          wZipCombo.add(fields[i]);
-        }
-      }catch(KettleException e){
-        if ( log.isBasic())
-          logBasic("Failed to Get Step Fields");
-      }
-    }
-
-    wZipCombo.addModifyListener( lsMod );
-    fdlZip = new FormData();
-    fdlZip.left = new FormAttachment( middle, 0 );
-    fdlZip.top = new FormAttachment( wStateCombo, 15 );
-    fdlZip.right = new FormAttachment( 100, 0 );
-    wZipCombo.setLayoutData( fdlZip );
-
-    //latitude
-    latitudeName = new Label(shell, SWT.RIGHT);
-    latitudeName.setText(BaseMessages.getString(PKG, "NominatimPDIPluginDialog.Out.Latitude"));
-    props.setLook(latitudeName);
-    fdlLatitudeName = new FormData();
-    fdlLatitudeName.left = new FormAttachment(0, 0);
-    fdlLatitudeName.top = new FormAttachment(wZipCombo, 15);
-    fdlLatitudeName.right = new FormAttachment(middle, -margin);
-    latitudeName.setLayoutData(fdlLatitudeName);
-    wLatitudeField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
-    wLatitudeField.setText("");
-    wLatitudeField.addModifyListener(lsMod);
-    props.setLook(wLatitudeField);
-    fdlLatitudeField = new FormData();
-    fdlLatitudeField.left = new FormAttachment(middle, 0);
-    fdlLatitudeField.top = new FormAttachment(wZipCombo, 15);
-    fdlLatitudeField.right = new FormAttachment(100, 0);
-    wLatitudeField.setLayoutData(fdlLatitudeField);
-
-    //longitude
-    longitudeName = new Label(shell, SWT.RIGHT);
-    longitudeName.setText(BaseMessages.getString(PKG, "NominatimPDIPluginDialog.Out.Longitude"));
-    props.setLook(longitudeName);
-    fdlLongitudeName = new FormData();
-    fdlLongitudeName.left = new FormAttachment(0, 0);
-    fdlLongitudeName.top = new FormAttachment(latitudeName, 15);
-    fdlLongitudeName.right = new FormAttachment(middle, -margin);
-    longitudeName.setLayoutData(fdlLongitudeName);
-    wLongitudeField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
-    wLongitudeField.setText("");
-    wLongitudeField.addModifyListener(lsMod);
-    props.setLook(wLongitudeField);
-    fdlLongitudeField = new FormData();
-    fdlLongitudeField.left = new FormAttachment(middle, 0);
-    fdlLongitudeField.top = new FormAttachment(latitudeName, 15);
-    fdlLongitudeField.right = new FormAttachment(100, 0);
-    wLongitudeField.setLayoutData(fdlLongitudeField);
-
-    //nominatim url
-    nominatimName = new Label(shell, SWT.RIGHT);
-    nominatimName.setText(BaseMessages.getString(PKG, "NominatimPDIPluginDialog.Config.Nominatim"));
-    props.setLook(nominatimName);
-    fdlNominatimName = new FormData();
-    fdlNominatimName.left = new FormAttachment(0, 0);
-    fdlNominatimName.top = new FormAttachment(longitudeName, 15);
-    fdlNominatimName.right = new FormAttachment(middle, -margin);
-    nominatimName.setLayoutData(fdlNominatimName);
-    wNominatimField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
-    wNominatimField.setText("");
-    wNominatimField.addModifyListener(lsMod);
-    props.setLook(wNominatimField);
-    fdlNominatimField = new FormData();
-    fdlNominatimField.left = new FormAttachment(middle, 0);
-    fdlNominatimField.top = new FormAttachment(longitudeName, 15);
-    fdlNominatimField.right = new FormAttachment(100, 0);
-    wNominatimField.setLayoutData(fdlNominatimField);
-
-    //nominatim wait
-    nominatimWaitName = new Label(shell, SWT.RIGHT);
-    nominatimWaitName.setText(BaseMessages.getString(PKG, "NominatimPDIPluginDialog.Config.NominatimWait"));
-    props.setLook(nominatimWaitName);
-    fdlNominatimWaitName = new FormData();
-    fdlNominatimWaitName.left = new FormAttachment(0, 0);
-    fdlNominatimWaitName.top = new FormAttachment(nominatimName, 15);
-    fdlNominatimWaitName.right = new FormAttachment(middle, -margin);
-    nominatimWaitName.setLayoutData(fdlNominatimWaitName);
-    wNominatimWaitField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
-    wNominatimWaitField.setText("");
-    wNominatimWaitField.addModifyListener(lsMod);
-    props.setLook(wNominatimWaitField);
-    fdlNominatimWaitField = new FormData();
-    fdlNominatimWaitField.left = new FormAttachment(middle, 0);
-    fdlNominatimWaitField.top = new FormAttachment(nominatimName, 15);
-    fdlNominatimWaitField.right = new FormAttachment(100, 0);
-    wNominatimWaitField.setLayoutData(fdlNominatimWaitField);
-
-    //mapboxurl
-    mapBoxName = new Label(shell, SWT.RIGHT);
-    mapBoxName.setText(BaseMessages.getString(PKG, "NominatimPDIPluginDialog.Config.MapBox"));
-    props.setLook(mapBoxName);
-    fdlMapBoxName = new FormData();
-    fdlMapBoxName.left = new FormAttachment(0, 0);
-    fdlMapBoxName.top = new FormAttachment(nominatimWaitName, 15);
-    fdlMapBoxName.right = new FormAttachment(middle, -margin);
-    mapBoxName.setLayoutData(fdlMapBoxName);
-    wMapBoxField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
-    wMapBoxField.setText("");
-    wMapBoxField.addModifyListener(lsMod);
-    props.setLook(wMapBoxField);
-    fdlMapBoxField = new FormData();
-    fdlMapBoxField.left = new FormAttachment(middle, 0);
-    fdlMapBoxField.top = new FormAttachment(nominatimWaitName, 15);
-    fdlMapBoxField.right = new FormAttachment(100, 0);
-    wMapBoxField.setLayoutData(fdlMapBoxField);
-
-    //mapboxkey
-    mapBoxKeyName = new Label(shell, SWT.RIGHT);
-    mapBoxKeyName.setText(BaseMessages.getString(PKG, "NominatimPDIPluginDialog.Config.MapBoxKey"));
-    props.setLook(mapBoxKeyName);
-    fdlMapBoxKeyName = new FormData();
-    fdlMapBoxKeyName.left = new FormAttachment(0, 0);
-    fdlMapBoxKeyName.top = new FormAttachment(mapBoxName, 15);
-    fdlMapBoxKeyName.right = new FormAttachment(middle, -margin);
-    mapBoxKeyName.setLayoutData(fdlMapBoxKeyName);
-    wMapBoxKeyField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
-    wMapBoxKeyField.setText("");
-    wMapBoxKeyField.addModifyListener(lsMod);
-    props.setLook(wMapBoxKeyField);
-    fdlMapBoxKeyField = new FormData();
-    fdlMapBoxKeyField.left = new FormAttachment(middle, 0);
-    fdlMapBoxKeyField.top = new FormAttachment(mapBoxName, 15);
-    fdlMapBoxKeyField.right = new FormAttachment(100, 0);
-    wMapBoxKeyField.setLayoutData(fdlMapBoxKeyField);
-
-    //mapboxwait
-    mapBoxWaitName = new Label(shell, SWT.RIGHT);
-    mapBoxWaitName.setText(BaseMessages.getString(PKG, "NominatimPDIPluginDialog.Config.MapBoxWait"));
-    props.setLook(mapBoxWaitName);
-    fdlMapBoxWaitName = new FormData();
-    fdlMapBoxWaitName.left = new FormAttachment(0, 0);
-    fdlMapBoxWaitName.top = new FormAttachment(mapBoxKeyName, 15);
-    fdlMapBoxWaitName.right = new FormAttachment(middle, -margin);
-    mapBoxWaitName.setLayoutData(fdlMapBoxWaitName);
-    wMapBoxWaitField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
-    wMapBoxWaitField.setText("");
-    wMapBoxWaitField.addModifyListener(lsMod);
-    props.setLook(wMapBoxWaitField);
-    fdlMapBoxWaitField = new FormData();
-    fdlMapBoxWaitField.left = new FormAttachment(middle, 0);
-    fdlMapBoxWaitField.top = new FormAttachment(mapBoxKeyName, 15);
-    fdlMapBoxWaitField.right = new FormAttachment(100, 0);
-    wMapBoxWaitField.setLayoutData(fdlMapBoxWaitField);
-
-    //use mapbox fallback
-    useMboxName = new Label(shell,SWT.RIGHT);
-    useMboxName.setText(BaseMessages.getString(PKG,"NominatimPDIPluginDialog.Config.UseMapBox"));
-    props.setLook(useMboxName);
-    fdlUseMboxName = new FormData();
-    fdlUseMboxName.left = new FormAttachment(0, 0);
-    fdlUseMboxName.top = new FormAttachment(mapBoxWaitName, 15);
-    fdlUseMboxName.right = new FormAttachment(middle, -margin);
-    useMboxName.setLayoutData(fdlUseMboxName);
-    wUseMbox = new Button(shell, SWT.CHECK);
-    props.setLook(wUseMbox);
-    fdlUseMbox = new FormData();
-    fdlUseMbox.left = new FormAttachment(middle, 0);
-    fdlUseMbox.top = new FormAttachment(mapBoxWaitName, 15);
-    fdlUseMbox.right = new FormAttachment(100, 0);
-    wUseMbox.setLayoutData(fdlUseMbox);
-
+    wTabFolder = new CTabFolder(shell, SWT.BORDER);
+    props.setLook(wTabFolder, Props.WIDGET_STYLE_TAB);
+
+    // fields tab
+    Composite wFieldsComp = this.addTab("NominatimPDIPluginDialog.Tab.Fields");
+    wModeCombo = this.addChoiceCombo(wFieldsComp, "NominatimPDIPluginDialog.Fields.Mode", null, NominatimPDIPluginMeta.MODES);
+    wStreetCombo = this.addFieldCombo(wFieldsComp, "NominatimPDIPluginDialog.Fields.Street", wModeCombo);
+    wCityCombo = this.addFieldCombo(wFieldsComp, "NominatimPDIPluginDialog.Fields.City", wStreetCombo);
+    wStateCombo = this.addFieldCombo(wFieldsComp, "NominatimPDIPluginDialog.Fields.State", wCityCombo);
+    wZipCombo = this.addFieldCombo(wFieldsComp, "NominatimPDIPluginDialog.Fields.Zip", wStateCombo);
+    wQueryCombo = this.addFieldCombo(wFieldsComp, "NominatimPDIPluginDialog.Fields.Query", wZipCombo);
+    wLatitudeField = this.addTextVar(wFieldsComp, "NominatimPDIPluginDialog.Out.Latitude", wQueryCombo);
+    wLongitudeField = this.addTextVar(wFieldsComp, "NominatimPDIPluginDialog.Out.Longitude", wLatitudeField);
+    wCoordinateTypeCombo = this.addChoiceCombo(wFieldsComp, "NominatimPDIPluginDialog.Out.CoordinateType", wLongitudeField,
+            NominatimPDIPluginMeta.COORDINATE_TYPES);
+    wLatitudeInputCombo = this.addFieldCombo(wFieldsComp, "NominatimPDIPluginDialog.Fields.LatitudeInput", wCoordinateTypeCombo);
+    wLongitudeInputCombo = this.addFieldCombo(wFieldsComp, "NominatimPDIPluginDialog.Fields.LongitudeInput", wLatitudeInputCombo);
+    wAddressField = this.addTextVar(wFieldsComp, "NominatimPDIPluginDialog.Out.Address", wLongitudeInputCombo);
+    wPostcodeField = this.addTextVar(wFieldsComp, "NominatimPDIPluginDialog.Out.Postcode", wAddressField);
+
+    // providers tab
+    Composite wProvidersComp = this.addTab("NominatimPDIPluginDialog.Tab.Providers");
+    wEngineCombo = this.addChoiceCombo(wProvidersComp, "NominatimPDIPluginDialog.Config.Engine", null,
+            NominatimPDIPluginMeta.ENGINES);
+    wLocalAddressFileField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.LocalAddressFile", wEngineCombo);
+    wReverseMaxMetersField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.ReverseMaxMeters", wLocalAddressFileField);
+    wNominatimField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.Nominatim", wReverseMaxMetersField);
+    wHealthCheckField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.HealthCheckSeconds", wNominatimField);
+    wNominatimRateField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.NominatimRate", wHealthCheckField);
+    wNominatimBurstField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.NominatimBurst", wNominatimRateField);
+    wMapBoxField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.MapBox", wNominatimBurstField);
+    wMapBoxKeyField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.MapBoxKey", wMapBoxField);
+    wMapBoxRateField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.MapBoxRate", wMapBoxKeyField);
+    wMapBoxBurstField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.MapBoxBurst", wMapBoxRateField);
+    wMapBoxBatchSizeField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.MapBoxBatchSize", wMapBoxBurstField);
+    wMapBoxBatchLingerField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.MapBoxBatchLinger", wMapBoxBatchSizeField);
+    wUseMbox = this.addCheckBox(wProvidersComp, "NominatimPDIPluginDialog.Config.UseMapBox", wMapBoxBatchLingerField);
+    wLatencyBudgetField = this.addTextVar(wProvidersComp, "NominatimPDIPluginDialog.Config.LatencyBudgetMillis", wUseMbox);
+    wRacePolicyCombo = this.addChoiceCombo(wProvidersComp, "NominatimPDIPluginDialog.Config.RacePolicy", wLatencyBudgetField,
+            NominatimPDIPluginMeta.RACE_POLICIES);
+
+    // performance tab
+    Composite wPerformanceComp = this.addTab("NominatimPDIPluginDialog.Tab.Performance");
+    wMaxInFlightField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.MaxInFlight", null);
+    wMaxConnectionsField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.MaxConnections", wMaxInFlightField);
+    wIdleConnectionField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.IdleConnectionSeconds", wMaxConnectionsField);
+    wKeepAliveField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.KeepAliveSeconds", wIdleConnectionField);
+    wConnectTimeoutField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.ConnectTimeout", wKeepAliveField);
+    wReadTimeoutField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.ReadTimeout", wConnectTimeoutField);
+    wLeaseTimeoutField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.LeaseTimeout", wReadTimeoutField);
+    wMaxRetriesField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.MaxRetries", wLeaseTimeoutField);
+    wRetryBaseField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.RetryBaseMillis", wMaxRetriesField);
+    wRetryMaxField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.RetryMaxMillis", wRetryBaseField);
+    wBreakerThresholdField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.BreakerThreshold", wRetryMaxField);
+    wBreakerPolicyCombo = this.addChoiceCombo(wPerformanceComp, "NominatimPDIPluginDialog.Config.BreakerPolicy", wBreakerThresholdField,
+            NominatimPDIPluginMeta.BREAKER_POLICIES);
+    wHedgePercentileField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.HedgePercentile", wBreakerPolicyCombo);
+    wHedgeMinDelayField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.HedgeMinDelayMillis", wHedgePercentileField);
+    wUseVirtualThreads = this.addCheckBox(wPerformanceComp, "NominatimPDIPluginDialog.Config.UseVirtualThreads", wHedgeMinDelayField);
+    wAdaptiveConcurrency = this.addCheckBox(wPerformanceComp, "NominatimPDIPluginDialog.Config.AdaptiveConcurrency", wUseVirtualThreads);
+    wMinConcurrencyField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.MinConcurrency", wAdaptiveConcurrency);
+    wMaxConcurrencyField = this.addTextVar(wPerformanceComp, "NominatimPDIPluginDialog.Config.MaxConcurrency", wMinConcurrencyField);
+
+    // cache tab
+    Composite wCacheComp = this.addTab("NominatimPDIPluginDialog.Tab.Cache");
+    wCacheFileField = this.addTextVar(wCacheComp, "NominatimPDIPluginDialog.Cache.File", null);
+    wCacheTtlField = this.addTextVar(wCacheComp, "NominatimPDIPluginDialog.Cache.TtlDays", wCacheFileField);
+    wMemoryCacheField = this.addTextVar(wCacheComp, "NominatimPDIPluginDialog.Cache.MemoryMegabytes", wCacheTtlField);
+    wCacheSyncField = this.addTextVar(wCacheComp, "NominatimPDIPluginDialog.Cache.SyncSeconds", wMemoryCacheField);
+    wCompactCacheOnFinish = this.addCheckBox(wCacheComp, "NominatimPDIPluginDialog.Cache.CompactOnFinish", wCacheSyncField);
+    wCacheConnection = this.addConnectionLine(wCacheComp, wCompactCacheOnFinish, props.getMiddlePct(), Const.MARGIN);
+    wCacheConnection.addModifyListener(lsMod);
+    wCacheSchemaField = this.addTextVar(wCacheComp, "NominatimPDIPluginDialog.Cache.Schema", wCacheConnection);
+    wCacheTableField = this.addTextVar(wCacheComp, "NominatimPDIPluginDialog.Cache.Table", wCacheSchemaField);
+    wCacheBatchSizeField = this.addTextVar(wCacheComp, "NominatimPDIPluginDialog.Cache.BatchSize", wCacheTableField);
+
+    FormData fdTabFolder = new FormData();
+    fdTabFolder.left = new FormAttachment(0, 0);
+    fdTabFolder.top = new FormAttachment(wStepname, margin);
+    fdTabFolder.right = new FormAttachment(100, 0);
+    fdTabFolder.bottom = new FormAttachment(100, -50);
+    wTabFolder.setLayoutData(fdTabFolder);
+    wTabFolder.setSelection(0);
 
     // OK and cancel buttons
     wOK = new Button(shell, SWT.PUSH);
     wOK.setText(BaseMessages.getString(PKG, "System.Button.OK"));
     wCancel = new Button(shell, SWT.PUSH);
     wCancel.setText(BaseMessages.getString(PKG, "System.Button.Cancel"));
-    setButtonPositions(new Button[]{wOK, wCancel}, margin, useMboxName);
+    setButtonPositions(new Button[]{wOK, wCancel}, margin, wTabFolder);
 
     // Add listeners for cancel and OK
     lsCancel = new Listener() {
@@ -471,28 +445,6 @@ public class NominatimPDIPluginDialog extends BaseStepDialog implements StepDial
     wCancel.addListener(SWT.Selection, lsCancel);
     wOK.addListener(SWT.Selection, lsOK);
 
-    // default listener (for hitting "enter")
-    lsDef = new SelectionAdapter() {
-      public void widgetDefaultSelected(SelectionEvent e) {
-        ok();
-      }
-    };
-    wStepname.addSelectionListener(lsDef);
-    wCityCombo.addSelectionListener(lsDef);
-    wLatitudeField.addSelectionListener(lsDef);
-    wLongitudeField.addSelectionListener(lsDef);
-    wMapBoxField.addSelectionListener(lsDef);
-    wMapBoxKeyField.addSelectionListener(lsDef);
-    wMapBoxWaitField.addSelectionListener(lsDef);
-    wNominatimField.addSelectionListener(lsDef);
-    wNominatimWaitField.addSelectionListener(lsDef);
-    wStateCombo.addSelectionListener(lsDef);
-    wStreetCombo.addSelectionListener(lsDef);
-    wUseMbox.addSelectionListener(lsDef);
-    wZipCombo.addSelectionListener(lsDef);
-
-
-
     // Detect X or ALT-F4 or something that kills this window and cancel the dialog properly
     shell.addShellListener(new ShellAdapter() {
       public void shellClosed(ShellEvent e) {
@@ -528,18 +480,62 @@ public class NominatimPDIPluginDialog extends BaseStepDialog implements StepDial
    */
   public void getData() {
     wStepname.selectAll();
+    wCacheFileField.setText(Const.NVL(meta.getCacheFile(), ""));
+    wEngineCombo.setText(Const.NVL(meta.getGeocoderEngine(), NominatimPDIPluginMeta.ENGINES[0]));
+    wLocalAddressFileField.setText(Const.NVL(meta.getLocalAddressFile(), ""));
+    wReverseMaxMetersField.setText(String.valueOf(meta.getReverseMaxMeters()));
+    wMapBoxBatchSizeField.setText(String.valueOf(meta.getMapboxBatchSize()));
+    wHealthCheckField.setText(String.valueOf(meta.getHealthCheckSeconds()));
+    wMapBoxBatchLingerField.setText(String.valueOf(meta.getMapboxBatchLingerMillis()));
+    wModeCombo.setText(Const.NVL(meta.getGeocodeMode(), NominatimPDIPluginMeta.MODES[0]));
+    wLatitudeInputCombo.setText(Const.NVL(meta.getLatitudeInputField(), ""));
+    wLongitudeInputCombo.setText(Const.NVL(meta.getLongitudeInputField(), ""));
+    wAddressField.setText(Const.NVL(meta.getAddressField(), ""));
+    wPostcodeField.setText(Const.NVL(meta.getPostcodeField(), ""));
+    wCacheTtlField.setText(String.valueOf(meta.getCacheTtlDays()));
+    wMemoryCacheField.setText(String.valueOf(meta.getMemoryCacheMegabytes()));
+    wCacheSyncField.setText(String.valueOf(meta.getCacheSyncSeconds()));
+    wCompactCacheOnFinish.setSelection(meta.isCompactCacheOnFinish());
+    wCacheConnection.setText(meta.getCacheDatabase() == null ? "" : meta.getCacheDatabase().getName());
+    wCacheSchemaField.setText(Const.NVL(meta.getCacheSchema(), ""));
+    wCacheTableField.setText(Const.NVL(meta.getCacheTable(), ""));
+    wCacheBatchSizeField.setText(String.valueOf(meta.getCacheBatchSize()));
     wCityCombo.setText(Const.NVL(meta.getCityField(), ""));
     wLatitudeField.setText(Const.NVL(meta.getLatitudeField(),""));
     wLongitudeField.setText(Const.NVL(meta.getLongitudeField(),""));
+    wCoordinateTypeCombo.setText(Const.NVL(meta.getCoordinateType(), NominatimPDIPluginMeta.COORDINATE_TYPES[0]));
+    wMaxInFlightField.setText(String.valueOf(meta.getMaxInFlightRequests()));
+    wMaxConnectionsField.setText(String.valueOf(meta.getMaxConnectionsPerRoute()));
+    wIdleConnectionField.setText(String.valueOf(meta.getIdleConnectionSeconds()));
+    wKeepAliveField.setText(String.valueOf(meta.getKeepAliveSeconds()));
+    wConnectTimeoutField.setText(String.valueOf(meta.getConnectTimeoutMillis()));
+    wReadTimeoutField.setText(String.valueOf(meta.getReadTimeoutMillis()));
+    wLeaseTimeoutField.setText(String.valueOf(meta.getLeaseTimeoutMillis()));
+    wMaxRetriesField.setText(String.valueOf(meta.getMaxRetries()));
+    wRetryBaseField.setText(String.valueOf(meta.getRetryBaseMillis()));
+    wRetryMaxField.setText(String.valueOf(meta.getRetryMaxMillis()));
+    wBreakerThresholdField.setText(String.valueOf(meta.getBreakerThreshold()));
+    wBreakerPolicyCombo.setText(Const.NVL(meta.getBreakerPolicy(), NominatimPDIPluginMeta.BREAKER_POLICIES[0]));
+    wHedgePercentileField.setText(String.valueOf(meta.getHedgePercentile()));
+    wHedgeMinDelayField.setText(String.valueOf(meta.getHedgeMinDelayMillis()));
+    wUseVirtualThreads.setSelection(meta.isUseVirtualThreads());
+    wAdaptiveConcurrency.setSelection(meta.isAdaptiveConcurrency());
+    wMinConcurrencyField.setText(String.valueOf(meta.getMinConcurrency()));
+    wMaxConcurrencyField.setText(String.valueOf(meta.getMaxConcurrency()));
     wMapBoxField.setText(Const.NVL(meta.getMapboxUrl(), ""));
     wMapBoxKeyField.setText(Const.NVL(meta.getMapBoxKey(), ""));
-    wMapBoxWaitField.setText(String.valueOf(meta.getPostMapboxWaitMillis()));
+    wMapBoxRateField.setText(String.valueOf(meta.getMapboxRequestsPerSecond()));
+    wMapBoxBurstField.setText(String.valueOf(meta.getMapboxBurst()));
     wNominatimField.setText(Const.NVL(meta.getNominatimUrl(), ""));
-    wNominatimWaitField.setText(String.valueOf(meta.getPostNominatimWaitMillis()));
+    wNominatimRateField.setText(String.valueOf(meta.getNominatimRequestsPerSecond()));
+    wNominatimBurstField.setText(String.valueOf(meta.getNominatimBurst()));
     wStateCombo.setText(Const.NVL(meta.getStateField(), ""));
     wStreetCombo.setText(Const.NVL(meta.getStreetField(), ""));
     wUseMbox.setSelection(meta.isUseMapBoxFallbackIfPresent());
+    wLatencyBudgetField.setText(String.valueOf(meta.getLatencyBudgetMillis()));
+    wRacePolicyCombo.setText(Const.NVL(meta.getRacePolicy(), NominatimPDIPluginMeta.RACE_POLICIES[0]));
     wZipCombo.setText(Const.NVL(meta.getZipField(), ""));
+    wQueryCombo.setText(Const.NVL(meta.getQueryField(), ""));
     wStepname.setFocus();
   }
 
@@ -563,36 +559,116 @@ public class NominatimPDIPluginDialog extends BaseStepDialog implements StepDial
     String city = wCityCombo.getText();
     String latField = wLatitudeField.getText();
     String longField = wLongitudeField.getText();
+    String coordinateType = wCoordinateTypeCombo.getText();
     String mbField = wMapBoxField.getText();
     String mbKeyField = wMapBoxKeyField.getText();
-    String mbWaitField = wMapBoxWaitField.getText();
+    double mbRate = Const.toDouble(wMapBoxRateField.getText(), 0.0);
+    int mbBurst = Const.toInt(wMapBoxBurstField.getText(), 1);
     String nomField = wNominatimField.getText();
-    String nomWaitField = wNominatimWaitField.getText();
+    double nomRate = Const.toDouble(wNominatimRateField.getText(), 0.0);
+    int nomBurst = Const.toInt(wNominatimBurstField.getText(), 1);
     String stateField = wStateCombo.getText();
     String streetField = wStreetCombo.getText();
     String zipField = wZipCombo.getText();
+    String queryField = wQueryCombo.getText();
     boolean useMbox = wUseMbox.getSelection();
-
-    if(mbWaitField == null || mbWaitField.trim().length() == 0){
-      mbWaitField = "0";
-    }
-
-    if(nomField == null || nomField.trim().length() == 0){
-      nomField = "0";
-    }
+    int latencyBudgetMillis = Const.toInt(wLatencyBudgetField.getText(), 0);
+    String racePolicy = wRacePolicyCombo.getText();
+    int maxInFlight = Const.toInt(wMaxInFlightField.getText(), 1);
+    int maxConnections = Const.toInt(wMaxConnectionsField.getText(), 16);
+    int idleConnectionSeconds = Const.toInt(wIdleConnectionField.getText(), 30);
+    int keepAliveSeconds = Const.toInt(wKeepAliveField.getText(), 60);
+    int connectTimeoutMillis = Const.toInt(wConnectTimeoutField.getText(), 10000);
+    int readTimeoutMillis = Const.toInt(wReadTimeoutField.getText(), 30000);
+    int leaseTimeoutMillis = Const.toInt(wLeaseTimeoutField.getText(), 30000);
+    int maxRetries = Const.toInt(wMaxRetriesField.getText(), 2);
+    int retryBaseMillis = Const.toInt(wRetryBaseField.getText(), 500);
+    int retryMaxMillis = Const.toInt(wRetryMaxField.getText(), 30000);
+    int breakerThreshold = Const.toInt(wBreakerThresholdField.getText(), 5);
+    String breakerPolicy = wBreakerPolicyCombo.getText();
+    double hedgePercentile = Const.toDouble(wHedgePercentileField.getText(), 0.0);
+    int hedgeMinDelayMillis = Const.toInt(wHedgeMinDelayField.getText(), 20);
+    boolean useVirtualThreads = wUseVirtualThreads.getSelection();
+    boolean adaptiveConcurrency = wAdaptiveConcurrency.getSelection();
+    int minConcurrency = Const.toInt(wMinConcurrencyField.getText(), 1);
+    int maxConcurrency = Const.toInt(wMaxConcurrencyField.getText(), 64);
+    String cacheFile = wCacheFileField.getText();
+    String engine = wEngineCombo.getText();
+    String localAddressFile = wLocalAddressFileField.getText();
+    int reverseMaxMeters = Const.toInt(wReverseMaxMetersField.getText(), 250);
+    int mapboxBatchSize = Const.toInt(wMapBoxBatchSizeField.getText(), 1);
+    int healthCheckSeconds = Const.toInt(wHealthCheckField.getText(), 10);
+    int mapboxBatchLinger = Const.toInt(wMapBoxBatchLingerField.getText(), 50);
+    String mode = wModeCombo.getText();
+    String latitudeInput = wLatitudeInputCombo.getText();
+    String longitudeInput = wLongitudeInputCombo.getText();
+    String addressField = wAddressField.getText();
+    String postcodeField = wPostcodeField.getText();
+    int cacheTtlDays = Const.toInt(wCacheTtlField.getText(), 0);
+    int memoryCacheMegabytes = Const.toInt(wMemoryCacheField.getText(), 0);
+    int cacheSyncSeconds = Const.toInt(wCacheSyncField.getText(), 5);
+    boolean compactCacheOnFinish = wCompactCacheOnFinish.getSelection();
+    String cacheConnection = wCacheConnection.getText();
+    String cacheSchema = wCacheSchemaField.getText();
+    String cacheTable = wCacheTableField.getText();
+    int cacheBatchSize = Const.toInt(wCacheBatchSizeField.getText(), 500);
 
     meta.setCityField(city);
     meta.setLatitudeField(latField);
     meta.setLongitudeField(longField);
+    meta.setCoordinateType(coordinateType);
     meta.setMapboxUrl(mbField);
     meta.setMapBoxKey(mbKeyField);
-    meta.setPostMapboxWaitMillis(Long.parseLong(mbWaitField));
+    meta.setMapboxRequestsPerSecond(mbRate);
+    meta.setMapboxBurst(Math.max(1, mbBurst));
     meta.setNominatimUrl(nomField);
-    meta.setPostNominatimWaitMillis(Long.parseLong(nomWaitField));
+    meta.setNominatimRequestsPerSecond(nomRate);
+    meta.setNominatimBurst(Math.max(1, nomBurst));
     meta.setStateField(stateField);
     meta.setStreetField(streetField);
     meta.setZipField(zipField);
+    meta.setQueryField(queryField);
     meta.setUseMapBoxFallbackIfPresent(useMbox);
+    meta.setLatencyBudgetMillis(Math.max(0, latencyBudgetMillis));
+    meta.setRacePolicy(racePolicy);
+    meta.setMaxInFlightRequests(Math.max(1, maxInFlight));
+    meta.setMaxConnectionsPerRoute(Math.max(1, maxConnections));
+    meta.setIdleConnectionSeconds(Math.max(1, idleConnectionSeconds));
+    meta.setKeepAliveSeconds(Math.max(1, keepAliveSeconds));
+    meta.setConnectTimeoutMillis(Math.max(1, connectTimeoutMillis));
+    meta.setReadTimeoutMillis(Math.max(1, readTimeoutMillis));
+    meta.setLeaseTimeoutMillis(Math.max(1, leaseTimeoutMillis));
+    meta.setMaxRetries(Math.max(0, maxRetries));
+    meta.setRetryBaseMillis(Math.max(1, retryBaseMillis));
+    meta.setRetryMaxMillis(Math.max(Math.max(1, retryBaseMillis), retryMaxMillis));
+    meta.setBreakerThreshold(Math.max(1, breakerThreshold));
+    meta.setBreakerPolicy(breakerPolicy);
+    meta.setHedgePercentile(Math.max(0.0, Math.min(100.0, hedgePercentile)));
+    meta.setHedgeMinDelayMillis(Math.max(0, hedgeMinDelayMillis));
+    meta.setUseVirtualThreads(useVirtualThreads);
+    meta.setAdaptiveConcurrency(adaptiveConcurrency);
+    meta.setMinConcurrency(Math.max(1, minConcurrency));
+    meta.setMaxConcurrency(Math.max(Math.max(1, minConcurrency), maxConcurrency));
+    meta.setCacheFile(cacheFile);
+    meta.setGeocoderEngine(engine);
+    meta.setLocalAddressFile(localAddressFile);
+    meta.setReverseMaxMeters(Math.max(1, reverseMaxMeters));
+    meta.setMapboxBatchSize(Math.max(1, Math.min(MapboxBatcher.MAX_QUERIES, mapboxBatchSize)));
+    meta.setMapboxBatchLingerMillis(Math.max(0, mapboxBatchLinger));
+    meta.setHealthCheckSeconds(Math.max(0, healthCheckSeconds));
+    meta.setGeocodeMode(mode);
+    meta.setLatitudeInputField(latitudeInput);
+    meta.setLongitudeInputField(longitudeInput);
+    meta.setAddressField(addressField);
+    meta.setPostcodeField(postcodeField);
+    meta.setCacheTtlDays(cacheTtlDays);
+    meta.setMemoryCacheMegabytes(Math.max(0, memoryCacheMegabytes));
+    meta.setCacheSyncSeconds(cacheSyncSeconds);
+    meta.setCompactCacheOnFinish(compactCacheOnFinish);
+    meta.setCacheDatabase(transMeta.findDatabase(cacheConnection));
+    meta.setCacheSchema(cacheSchema);
+    meta.setCacheTable(cacheTable);
+    meta.setCacheBatchSize(Math.max(1, cacheBatchSize));
     dispose();
   }
-}
\ No newline at end of file
+}
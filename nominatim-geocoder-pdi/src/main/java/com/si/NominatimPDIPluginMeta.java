@@ -29,8 +29,10 @@ import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
 import org.pentaho.di.core.row.value.ValueMetaFactory;
 import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.xml.XMLHandler;
@@ -57,6 +59,12 @@ import java.util.List;
 @Step( id = "NominatimPDIPlugin", image = "NominatimPDIPlugin.svg", name = "Nominatim Geocode",
     description = "Nominatim geocoder.", categoryDescription = "Transform" )
 public class NominatimPDIPluginMeta extends BaseStepMeta implements StepMetaInterface {
+  public static final String[] COORDINATE_TYPES = { "String", "Number", "BigNumber" };
+  public static final String[] ENGINES = { "Nominatim", "Local", "Local then Nominatim" };
+  public static final String[] MODES = { "Forward", "Reverse" };
+  public static final String[] BREAKER_POLICIES = { "Fallback", "Hold" };
+  public static final String[] RACE_POLICIES = { "First Answer", "Prefer Nominatim" };
+
   private String nominatimUrl = "";
   private String mapboxUrl = "";
   private String mapBoxKey = "";
@@ -66,9 +74,53 @@ public class NominatimPDIPluginMeta extends BaseStepMeta implements StepMetaInte
   private String zipField = "";
   private String latitudeField = "";
   private String longitudeField = "";
-  private long postMapboxWaitMillis = 1000L;
-  private long postNominatimWaitMillis = 1000L;
+  private double nominatimRequestsPerSecond = 1.0;
+  private int nominatimBurst = 1;
+  private double mapboxRequestsPerSecond = 1.0;
+  private int mapboxBurst = 1;
   private boolean useMapBoxFallbackIfPresent = true;
+  private int maxInFlightRequests = 1;
+  private String cacheFile = "";
+  private int cacheTtlDays = 30;
+  private int memoryCacheMegabytes = 64;
+  private int maxConnectionsPerRoute = 16;
+  private int idleConnectionSeconds = 30;
+  private int keepAliveSeconds = 60;
+  private String coordinateType = COORDINATE_TYPES[0];
+  private String geocoderEngine = ENGINES[0];
+  private String localAddressFile = "";
+  private String geocodeMode = MODES[0];
+  private String latitudeInputField = "";
+  private String longitudeInputField = "";
+  private String addressField = "";
+  private String postcodeField = "";
+  private int reverseMaxMeters = 250;
+  private int mapboxBatchSize = 1;
+  private int mapboxBatchLingerMillis = 50;
+  private int healthCheckSeconds = 10;
+  private int maxRetries = 2;
+  private int retryBaseMillis = 500;
+  private int retryMaxMillis = 30000;
+  private int breakerThreshold = 5;
+  private String breakerPolicy = BREAKER_POLICIES[0];
+  private double hedgePercentile = 0.0;
+  private int hedgeMinDelayMillis = 20;
+  private int latencyBudgetMillis = 0;
+  private String racePolicy = RACE_POLICIES[0];
+  private boolean useVirtualThreads = true;
+  private int cacheSyncSeconds = 5;
+  private boolean compactCacheOnFinish = false;
+  private DatabaseMeta cacheDatabase;
+  private String cacheSchema = "";
+  private String cacheTable = "geocode_cache";
+  private int cacheBatchSize = 500;
+  private boolean adaptiveConcurrency = false;
+  private int minConcurrency = 1;
+  private int maxConcurrency = 64;
+  private String queryField = "";
+  private int connectTimeoutMillis = 10000;
+  private int readTimeoutMillis = 30000;
+  private int leaseTimeoutMillis = 30000;
   
   private static Class<?> PKG = NominatimPDIPlugin.class; // for i18n purposes, needed by Translator2!!   $NON-NLS-1$
 
@@ -156,24 +208,435 @@ public class NominatimPDIPluginMeta extends BaseStepMeta implements StepMetaInte
     this.useMapBoxFallbackIfPresent = useMapBoxFallbackIfPresent;
   }
 
-  public long getPostMapboxWaitMillis() {
-    return postMapboxWaitMillis;
+  public double getNominatimRequestsPerSecond() {
+    return nominatimRequestsPerSecond;
+  }
+
+  public void setNominatimRequestsPerSecond(double nominatimRequestsPerSecond) {
+    this.nominatimRequestsPerSecond = nominatimRequestsPerSecond;
+  }
+
+  public int getNominatimBurst() {
+    return nominatimBurst;
+  }
+
+  public void setNominatimBurst(int nominatimBurst) {
+    this.nominatimBurst = nominatimBurst;
+  }
+
+  public double getMapboxRequestsPerSecond() {
+    return mapboxRequestsPerSecond;
+  }
+
+  public void setMapboxRequestsPerSecond(double mapboxRequestsPerSecond) {
+    this.mapboxRequestsPerSecond = mapboxRequestsPerSecond;
+  }
+
+  public int getMapboxBurst() {
+    return mapboxBurst;
+  }
+
+  public void setMapboxBurst(int mapboxBurst) {
+    this.mapboxBurst = mapboxBurst;
+  }
+
+  public int getMaxInFlightRequests() {
+    return maxInFlightRequests;
+  }
+
+  public void setMaxInFlightRequests(int maxInFlightRequests) {
+    this.maxInFlightRequests = maxInFlightRequests;
+  }
+
+  public String getCacheFile() {
+    return cacheFile;
+  }
+
+  public void setCacheFile(String cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  public int getCacheTtlDays() {
+    return cacheTtlDays;
+  }
+
+  public void setCacheTtlDays(int cacheTtlDays) {
+    this.cacheTtlDays = cacheTtlDays;
+  }
+
+  public int getMemoryCacheMegabytes() {
+    return memoryCacheMegabytes;
+  }
+
+  public void setMemoryCacheMegabytes(int memoryCacheMegabytes) {
+    this.memoryCacheMegabytes = memoryCacheMegabytes;
+  }
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  public int getIdleConnectionSeconds() {
+    return idleConnectionSeconds;
+  }
+
+  public void setIdleConnectionSeconds(int idleConnectionSeconds) {
+    this.idleConnectionSeconds = idleConnectionSeconds;
+  }
+
+  public int getKeepAliveSeconds() {
+    return keepAliveSeconds;
+  }
+
+  public void setKeepAliveSeconds(int keepAliveSeconds) {
+    this.keepAliveSeconds = keepAliveSeconds;
+  }
+
+  public String getCoordinateType() {
+    return coordinateType;
+  }
+
+  public void setCoordinateType(String coordinateType) {
+    this.coordinateType = coordinateType;
+  }
+
+  public String getGeocoderEngine() {
+    return geocoderEngine;
+  }
+
+  public void setGeocoderEngine(String geocoderEngine) {
+    this.geocoderEngine = geocoderEngine;
+  }
+
+  public String getLocalAddressFile() {
+    return localAddressFile;
   }
 
-  public void setPostMapboxWaitMillis(long postMapboxWaitMillis) {
-    this.postMapboxWaitMillis = postMapboxWaitMillis;
+  public void setLocalAddressFile(String localAddressFile) {
+    this.localAddressFile = localAddressFile;
   }
 
-  public long getPostNominatimWaitMillis() {
-    return postNominatimWaitMillis;
+  /**
+   * Whether the address is read from one field and sent to nominatim as a
+   * free-form query instead of as street, city, state and postal code.
+   *
+   * @return        True when a query field is configured
+   */
+  public boolean isFreeForm() {
+    return queryField != null && queryField.trim().length() > 0;
   }
 
-  public void setPostNominatimWaitMillis(long postNominatimWaitMillis) {
-    this.postNominatimWaitMillis = postNominatimWaitMillis;
+  /**
+   * Whether addresses are looked up in the local address index.
+   *
+   * @return        True for the local engines
+   */
+  public boolean usesLocalIndex() {
+    return !ENGINES[0].equals(geocoderEngine);
+  }
+
+  /**
+   * Whether addresses may be sent to the remote geocoders.
+   *
+   * @return        False only for the local engine without fallback
+   */
+  public boolean usesRemoteGeocoder() {
+    return !ENGINES[1].equals(geocoderEngine);
+  }
+
+  public String getGeocodeMode() {
+    return geocodeMode;
+  }
+
+  public void setGeocodeMode(String geocodeMode) {
+    this.geocodeMode = geocodeMode;
+  }
+
+  /**
+   * Whether coordinates are turned into addresses rather than addresses into coordinates.
+   *
+   * @return        True in reverse mode
+   */
+  public boolean isReverse() {
+    return MODES[1].equals(geocodeMode);
+  }
+
+  public String getLatitudeInputField() {
+    return latitudeInputField;
+  }
+
+  public void setLatitudeInputField(String latitudeInputField) {
+    this.latitudeInputField = latitudeInputField;
+  }
+
+  public String getLongitudeInputField() {
+    return longitudeInputField;
+  }
+
+  public void setLongitudeInputField(String longitudeInputField) {
+    this.longitudeInputField = longitudeInputField;
+  }
+
+  public String getAddressField() {
+    return addressField;
+  }
+
+  public void setAddressField(String addressField) {
+    this.addressField = addressField;
+  }
+
+  public String getPostcodeField() {
+    return postcodeField;
+  }
+
+  public void setPostcodeField(String postcodeField) {
+    this.postcodeField = postcodeField;
+  }
+
+  public int getReverseMaxMeters() {
+    return reverseMaxMeters;
+  }
+
+  public void setReverseMaxMeters(int reverseMaxMeters) {
+    this.reverseMaxMeters = reverseMaxMeters;
+  }
+
+  public int getMapboxBatchSize() {
+    return mapboxBatchSize;
+  }
+
+  public void setMapboxBatchSize(int mapboxBatchSize) {
+    this.mapboxBatchSize = mapboxBatchSize;
+  }
+
+  public int getMapboxBatchLingerMillis() {
+    return mapboxBatchLingerMillis;
+  }
+
+  public void setMapboxBatchLingerMillis(int mapboxBatchLingerMillis) {
+    this.mapboxBatchLingerMillis = mapboxBatchLingerMillis;
+  }
+
+  public int getHealthCheckSeconds() {
+    return healthCheckSeconds;
+  }
+
+  public void setHealthCheckSeconds(int healthCheckSeconds) {
+    this.healthCheckSeconds = healthCheckSeconds;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  public void setMaxRetries(int maxRetries) {
+    this.maxRetries = maxRetries;
+  }
+
+  public int getRetryBaseMillis() {
+    return retryBaseMillis;
+  }
+
+  public void setRetryBaseMillis(int retryBaseMillis) {
+    this.retryBaseMillis = retryBaseMillis;
+  }
+
+  public int getRetryMaxMillis() {
+    return retryMaxMillis;
+  }
+
+  public void setRetryMaxMillis(int retryMaxMillis) {
+    this.retryMaxMillis = retryMaxMillis;
+  }
+
+  public int getBreakerThreshold() {
+    return breakerThreshold;
+  }
+
+  public void setBreakerThreshold(int breakerThreshold) {
+    this.breakerThreshold = breakerThreshold;
+  }
+
+  public String getBreakerPolicy() {
+    return breakerPolicy;
+  }
+
+  public void setBreakerPolicy(String breakerPolicy) {
+    this.breakerPolicy = breakerPolicy;
+  }
+
+  /**
+   * Whether lookups wait for an open circuit breaker instead of falling back.
+   *
+   * @return        True for the hold policy
+   */
+  public boolean isHoldWhileOpen() {
+    return BREAKER_POLICIES[1].equals(breakerPolicy);
+  }
+
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public void setHedgePercentile(double hedgePercentile) {
+    this.hedgePercentile = hedgePercentile;
+  }
+
+  public int getHedgeMinDelayMillis() {
+    return hedgeMinDelayMillis;
+  }
+
+  public void setHedgeMinDelayMillis(int hedgeMinDelayMillis) {
+    this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+  }
+
+  public int getLatencyBudgetMillis() {
+    return latencyBudgetMillis;
+  }
+
+  public void setLatencyBudgetMillis(int latencyBudgetMillis) {
+    this.latencyBudgetMillis = latencyBudgetMillis;
+  }
+
+  public String getRacePolicy() {
+    return racePolicy;
+  }
+
+  public void setRacePolicy(String racePolicy) {
+    this.racePolicy = racePolicy;
+  }
+
+  /**
+   * Whether a raced mapbox answer waits for nominatim to come back empty.
+   *
+   * @return        True for the prefer nominatim policy
+   */
+  public boolean isPreferNominatim() {
+    return RACE_POLICIES[1].equals(racePolicy);
+  }
+
+  public boolean isUseVirtualThreads() {
+    return useVirtualThreads;
+  }
+
+  public void setUseVirtualThreads(boolean useVirtualThreads) {
+    this.useVirtualThreads = useVirtualThreads;
+  }
+
+  public int getCacheSyncSeconds() {
+    return cacheSyncSeconds;
+  }
+
+  public void setCacheSyncSeconds(int cacheSyncSeconds) {
+    this.cacheSyncSeconds = cacheSyncSeconds;
+  }
+
+  public boolean isCompactCacheOnFinish() {
+    return compactCacheOnFinish;
+  }
+
+  public void setCompactCacheOnFinish(boolean compactCacheOnFinish) {
+    this.compactCacheOnFinish = compactCacheOnFinish;
+  }
+
+  public DatabaseMeta getCacheDatabase() {
+    return cacheDatabase;
+  }
+
+  public void setCacheDatabase(DatabaseMeta cacheDatabase) {
+    this.cacheDatabase = cacheDatabase;
+  }
+
+  public String getCacheSchema() {
+    return cacheSchema;
+  }
+
+  public void setCacheSchema(String cacheSchema) {
+    this.cacheSchema = cacheSchema;
+  }
+
+  public String getCacheTable() {
+    return cacheTable;
+  }
+
+  public void setCacheTable(String cacheTable) {
+    this.cacheTable = cacheTable;
+  }
+
+  public int getCacheBatchSize() {
+    return cacheBatchSize;
+  }
+
+  public void setCacheBatchSize(int cacheBatchSize) {
+    this.cacheBatchSize = cacheBatchSize;
+  }
+
+  public boolean isAdaptiveConcurrency() {
+    return adaptiveConcurrency;
+  }
+
+  public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+    this.adaptiveConcurrency = adaptiveConcurrency;
+  }
+
+  public int getMinConcurrency() {
+    return minConcurrency;
+  }
+
+  public void setMinConcurrency(int minConcurrency) {
+    this.minConcurrency = minConcurrency;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public void setMaxConcurrency(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public String getQueryField() {
+    return queryField;
+  }
+
+  public void setQueryField(String queryField) {
+    this.queryField = queryField;
+  }
+
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  public int getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  public int getLeaseTimeoutMillis() {
+    return leaseTimeoutMillis;
+  }
+
+  public void setLeaseTimeoutMillis(int leaseTimeoutMillis) {
+    this.leaseTimeoutMillis = leaseTimeoutMillis;
   }
 
   public void loadXML(Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
-    readData( stepnode );
+    readData( stepnode, databases );
+  }
+
+  public DatabaseMeta[] getUsedDatabaseConnections() {
+    return cacheDatabase != null ? new DatabaseMeta[]{cacheDatabase} : super.getUsedDatabaseConnections();
   }
 
   public Object clone() {
@@ -193,16 +656,87 @@ public class NominatimPDIPluginMeta extends BaseStepMeta implements StepMetaInte
     xml.append(XMLHandler.addTagValue("useMapBox", useMapBoxFallbackIfPresent));
     xml.append(XMLHandler.addTagValue("latitudeField", latitudeField));
     xml.append(XMLHandler.addTagValue("longitudeField", longitudeField));
-    xml.append(XMLHandler.addTagValue("postMapboxWaitMillis", postMapboxWaitMillis));
-    xml.append(XMLHandler.addTagValue("postNominatimWaitMillis", postNominatimWaitMillis));
+    xml.append(XMLHandler.addTagValue("nominatimRequestsPerSecond", nominatimRequestsPerSecond));
+    xml.append(XMLHandler.addTagValue("nominatimBurst", nominatimBurst));
+    xml.append(XMLHandler.addTagValue("mapboxRequestsPerSecond", mapboxRequestsPerSecond));
+    xml.append(XMLHandler.addTagValue("mapboxBurst", mapboxBurst));
+    xml.append(XMLHandler.addTagValue("maxInFlightRequests", maxInFlightRequests));
+    xml.append(XMLHandler.addTagValue("cacheFile", cacheFile));
+    xml.append(XMLHandler.addTagValue("cacheTtlDays", cacheTtlDays));
+    xml.append(XMLHandler.addTagValue("memoryCacheMegabytes", memoryCacheMegabytes));
+    xml.append(XMLHandler.addTagValue("maxConnectionsPerRoute", maxConnectionsPerRoute));
+    xml.append(XMLHandler.addTagValue("idleConnectionSeconds", idleConnectionSeconds));
+    xml.append(XMLHandler.addTagValue("keepAliveSeconds", keepAliveSeconds));
+    xml.append(XMLHandler.addTagValue("coordinateType", coordinateType));
+    xml.append(XMLHandler.addTagValue("geocoderEngine", geocoderEngine));
+    xml.append(XMLHandler.addTagValue("localAddressFile", localAddressFile));
+    xml.append(XMLHandler.addTagValue("geocodeMode", geocodeMode));
+    xml.append(XMLHandler.addTagValue("latitudeInputField", latitudeInputField));
+    xml.append(XMLHandler.addTagValue("longitudeInputField", longitudeInputField));
+    xml.append(XMLHandler.addTagValue("addressField", addressField));
+    xml.append(XMLHandler.addTagValue("postcodeField", postcodeField));
+    xml.append(XMLHandler.addTagValue("reverseMaxMeters", reverseMaxMeters));
+    xml.append(XMLHandler.addTagValue("mapboxBatchSize", mapboxBatchSize));
+    xml.append(XMLHandler.addTagValue("mapboxBatchLingerMillis", mapboxBatchLingerMillis));
+    xml.append(XMLHandler.addTagValue("healthCheckSeconds", healthCheckSeconds));
+    xml.append(XMLHandler.addTagValue("maxRetries", maxRetries));
+    xml.append(XMLHandler.addTagValue("retryBaseMillis", retryBaseMillis));
+    xml.append(XMLHandler.addTagValue("retryMaxMillis", retryMaxMillis));
+    xml.append(XMLHandler.addTagValue("breakerThreshold", breakerThreshold));
+    xml.append(XMLHandler.addTagValue("breakerPolicy", breakerPolicy));
+    xml.append(XMLHandler.addTagValue("hedgePercentile", hedgePercentile));
+    xml.append(XMLHandler.addTagValue("hedgeMinDelayMillis", hedgeMinDelayMillis));
+    xml.append(XMLHandler.addTagValue("latencyBudgetMillis", latencyBudgetMillis));
+    xml.append(XMLHandler.addTagValue("racePolicy", racePolicy));
+    xml.append(XMLHandler.addTagValue("useVirtualThreads", useVirtualThreads));
+    xml.append(XMLHandler.addTagValue("cacheSyncSeconds", cacheSyncSeconds));
+    xml.append(XMLHandler.addTagValue("compactCacheOnFinish", compactCacheOnFinish));
+    xml.append(XMLHandler.addTagValue("cacheConnection", cacheDatabase == null ? "" : cacheDatabase.getName()));
+    xml.append(XMLHandler.addTagValue("cacheSchema", cacheSchema));
+    xml.append(XMLHandler.addTagValue("cacheTable", cacheTable));
+    xml.append(XMLHandler.addTagValue("cacheBatchSize", cacheBatchSize));
+    xml.append(XMLHandler.addTagValue("adaptiveConcurrency", adaptiveConcurrency));
+    xml.append(XMLHandler.addTagValue("minConcurrency", minConcurrency));
+    xml.append(XMLHandler.addTagValue("maxConcurrency", maxConcurrency));
+    xml.append(XMLHandler.addTagValue("queryField", queryField));
+    xml.append(XMLHandler.addTagValue("connectTimeoutMillis", connectTimeoutMillis));
+    xml.append(XMLHandler.addTagValue("readTimeoutMillis", readTimeoutMillis));
+    xml.append(XMLHandler.addTagValue("leaseTimeoutMillis", leaseTimeoutMillis));
     return xml.toString();
   }
 
-  private void readData( Node stepnode ) throws KettleXMLException {
+  /**
+   * Convert a post request wait into a request rate.
+   *
+   * @param waitMillis      The wait after each request
+   * @return                The equivalent requests per second, zero for no limit
+   */
+  private static double waitToRate(long waitMillis){
+    return waitMillis > 0L ? 1000.0 / waitMillis : 0.0;
+  }
+
+  /**
+   * Read a request rate, falling back to the wait time stored by older versions of the step.
+   *
+   * @param stepnode        The step node
+   * @param rateTag         The rate tag
+   * @param legacyWaitTag   The legacy wait tag
+   * @return                The requests per second
+   */
+  private static double readRate(Node stepnode, String rateTag, String legacyWaitTag){
+    String rate = XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, rateTag));
+    if(rate == null){
+      String wait = XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, legacyWaitTag));
+      return wait == null ? 1.0 : waitToRate(Const.toLong(wait, 1000L));
+    }
+    return Const.toDouble(rate, 1.0);
+  }
+
+  private void readData( Node stepnode, List<DatabaseMeta> databases ) throws KettleXMLException {
     try {
       setNominatimUrl(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "nominatimUrl")), ""));
-      setMapBoxKey(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "mapboxUrl")), ""));
-      setMapboxUrl(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "mapboxKey")), ""));
+      setMapboxUrl(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "mapboxUrl")), ""));
+      setMapBoxKey(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "mapboxKey")), ""));
       setStreetField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "streetField")), ""));
       setCityField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "cityField")), ""));
       setStateField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "stateField")), ""));
@@ -210,8 +744,52 @@ public class NominatimPDIPluginMeta extends BaseStepMeta implements StepMetaInte
       setLatitudeField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "latitudeField")), ""));
       setLongitudeField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "longitudeField")), ""));
       setUseMapBoxFallbackIfPresent(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "useMapBox")), "N").equals("Y"));
-      setPostMapboxWaitMillis(Long.parseLong(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "postMapboxWaitMillis"))));
-      setPostNominatimWaitMillis(Long.parseLong(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "postNominatimWaitMillis"))));
+      setNominatimRequestsPerSecond(readRate(stepnode, "nominatimRequestsPerSecond", "postNominatimWaitMillis"));
+      setNominatimBurst(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "nominatimBurst")), 1));
+      setMapboxRequestsPerSecond(readRate(stepnode, "mapboxRequestsPerSecond", "postMapboxWaitMillis"));
+      setMapboxBurst(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "mapboxBurst")), 1));
+      setMaxInFlightRequests(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "maxInFlightRequests")), 1));
+      setCacheFile(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "cacheFile")), ""));
+      setCacheTtlDays(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "cacheTtlDays")), 30));
+      setMemoryCacheMegabytes(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "memoryCacheMegabytes")), 64));
+      setMaxConnectionsPerRoute(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "maxConnectionsPerRoute")), 16));
+      setIdleConnectionSeconds(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "idleConnectionSeconds")), 30));
+      setKeepAliveSeconds(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "keepAliveSeconds")), 60));
+      setCoordinateType(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "coordinateType")), COORDINATE_TYPES[0]));
+      setGeocoderEngine(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "geocoderEngine")), ENGINES[0]));
+      setLocalAddressFile(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "localAddressFile")), ""));
+      setGeocodeMode(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "geocodeMode")), MODES[0]));
+      setLatitudeInputField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "latitudeInputField")), ""));
+      setLongitudeInputField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "longitudeInputField")), ""));
+      setAddressField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "addressField")), ""));
+      setPostcodeField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "postcodeField")), ""));
+      setReverseMaxMeters(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "reverseMaxMeters")), 250));
+      setMapboxBatchSize(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "mapboxBatchSize")), 1));
+      setMapboxBatchLingerMillis(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "mapboxBatchLingerMillis")), 50));
+      setHealthCheckSeconds(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "healthCheckSeconds")), 10));
+      setMaxRetries(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "maxRetries")), 2));
+      setRetryBaseMillis(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "retryBaseMillis")), 500));
+      setRetryMaxMillis(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "retryMaxMillis")), 30000));
+      setBreakerThreshold(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "breakerThreshold")), 5));
+      setBreakerPolicy(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "breakerPolicy")), BREAKER_POLICIES[0]));
+      setHedgePercentile(Const.toDouble(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "hedgePercentile")), 0.0));
+      setHedgeMinDelayMillis(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "hedgeMinDelayMillis")), 20));
+      setLatencyBudgetMillis(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "latencyBudgetMillis")), 0));
+      setRacePolicy(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "racePolicy")), RACE_POLICIES[0]));
+      setUseVirtualThreads(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "useVirtualThreads")), "Y").equals("Y"));
+      setCacheSyncSeconds(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "cacheSyncSeconds")), 5));
+      setCompactCacheOnFinish(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "compactCacheOnFinish")), "N").equals("Y"));
+      setCacheDatabase(DatabaseMeta.findDatabase(databases, XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "cacheConnection"))));
+      setCacheSchema(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "cacheSchema")), ""));
+      setCacheTable(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "cacheTable")), "geocode_cache"));
+      setCacheBatchSize(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "cacheBatchSize")), 500));
+      setAdaptiveConcurrency(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "adaptiveConcurrency")), "N").equals("Y"));
+      setMinConcurrency(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "minConcurrency")), 1));
+      setMaxConcurrency(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "maxConcurrency")), 64));
+      setQueryField(Const.NVL(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "queryField")), ""));
+      setConnectTimeoutMillis(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "connectTimeoutMillis")), 10000));
+      setReadTimeoutMillis(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "readTimeoutMillis")), 30000));
+      setLeaseTimeoutMillis(Const.toInt(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "leaseTimeoutMillis")), 30000));
     } catch ( Exception e ) {
       throw new KettleXMLException( "Demo plugin unable to read step info from XML node", e );
     }
@@ -228,8 +806,105 @@ public class NominatimPDIPluginMeta extends BaseStepMeta implements StepMetaInte
     this.zipField = "";
     this.latitudeField = "";
     this.longitudeField = "";
-    this.postMapboxWaitMillis = 1000L;
-    this.postNominatimWaitMillis = 1000L;
+    this.nominatimRequestsPerSecond = 1.0;
+    this.nominatimBurst = 1;
+    this.mapboxRequestsPerSecond = 1.0;
+    this.mapboxBurst = 1;
+    this.maxInFlightRequests = 1;
+    this.cacheFile = "";
+    this.cacheTtlDays = 30;
+    this.memoryCacheMegabytes = 64;
+    this.maxConnectionsPerRoute = 16;
+    this.idleConnectionSeconds = 30;
+    this.keepAliveSeconds = 60;
+    this.coordinateType = COORDINATE_TYPES[0];
+    this.geocoderEngine = ENGINES[0];
+    this.localAddressFile = "";
+    this.geocodeMode = MODES[0];
+    this.latitudeInputField = "";
+    this.longitudeInputField = "";
+    this.addressField = "";
+    this.postcodeField = "";
+    this.reverseMaxMeters = 250;
+    this.mapboxBatchSize = 1;
+    this.mapboxBatchLingerMillis = 50;
+    this.healthCheckSeconds = 10;
+    this.maxRetries = 2;
+    this.retryBaseMillis = 500;
+    this.retryMaxMillis = 30000;
+    this.breakerThreshold = 5;
+    this.breakerPolicy = BREAKER_POLICIES[0];
+    this.hedgePercentile = 0.0;
+    this.hedgeMinDelayMillis = 20;
+    this.latencyBudgetMillis = 0;
+    this.racePolicy = RACE_POLICIES[0];
+    this.useVirtualThreads = true;
+    this.cacheSyncSeconds = 5;
+    this.compactCacheOnFinish = false;
+    this.cacheDatabase = null;
+    this.cacheSchema = "";
+    this.cacheTable = "geocode_cache";
+    this.cacheBatchSize = 500;
+    this.adaptiveConcurrency = false;
+    this.minConcurrency = 1;
+    this.maxConcurrency = 64;
+    this.queryField = "";
+    this.connectTimeoutMillis = 10000;
+    this.readTimeoutMillis = 30000;
+    this.leaseTimeoutMillis = 30000;
+  }
+
+  /**
+   * Use a default for repository attributes that are missing or not positive.
+   *
+   * @param value       The stored value
+   * @param def         The default
+   * @return            The value to use
+   */
+  private static int positive(long value, int def){
+    return value > 0L ? (int) value : def;
+  }
+
+  /**
+   * Read a whole number for which zero is a valid setting. It is saved as text
+   * so that a missing attribute, from a step saved before the setting existed,
+   * can be told apart from zero and given the same default as an XML load.
+   *
+   * @param rep           The repository
+   * @param id_step       The step id
+   * @param code          The attribute name
+   * @param def           The default
+   * @return              The value
+   * @throws KettleException
+   */
+  private static int readCount(Repository rep, ObjectId id_step, String code, int def) throws KettleException {
+    String text = rep.getStepAttributeString(id_step, code);
+    if(text != null){
+      return Const.toInt(text, def);
+    }
+    return positive(rep.getStepAttributeInteger(id_step, code), def);
+  }
+
+  /**
+   * Read a request rate from the repository, falling back to the wait time
+   * stored by older versions of the step and to one request per second when
+   * neither is present, as for an XML load.
+   *
+   * @param rep               The repository
+   * @param id_step           The step id
+   * @param rateCode          The rate attribute
+   * @param legacyWaitCode    The legacy wait attribute
+   * @return                  The requests per second
+   * @throws KettleException
+   */
+  private static double readRate(Repository rep, ObjectId id_step, String rateCode, String legacyWaitCode)
+          throws KettleException {
+    String rate = rep.getStepAttributeString(id_step, rateCode);
+    if(rate == null){
+      long wait = rep.getStepAttributeInteger(id_step, legacyWaitCode);
+      return wait > 0L ? waitToRate(wait) : 1.0;
+    }
+    return Const.toDouble(rate, 1.0);
   }
 
   public void readRep( Repository rep, IMetaStore metaStore, ObjectId id_step, List<DatabaseMeta> databases ) throws KettleException {
@@ -244,8 +919,52 @@ public class NominatimPDIPluginMeta extends BaseStepMeta implements StepMetaInte
       this.zipField = rep.getStepAttributeString(id_step, "zipField");
       this.latitudeField = rep.getStepAttributeString(id_step, "latitudeField");
       this.longitudeField = rep.getStepAttributeString(id_step, "longitudeField");
-      this.postMapboxWaitMillis = rep.getStepAttributeInteger(id_step, "postMapboxWaitMillis");
-      this.postNominatimWaitMillis = rep.getStepAttributeInteger(id_step, "postNominatimWaitMillis");
+      this.nominatimRequestsPerSecond = readRate(rep, id_step, "nominatimRequestsPerSecond", "postNominatimWaitMillis");
+      this.nominatimBurst = (int) Math.max(1L, rep.getStepAttributeInteger(id_step, "nominatimBurst"));
+      this.mapboxRequestsPerSecond = readRate(rep, id_step, "mapboxRequestsPerSecond", "postMapboxWaitMillis");
+      this.mapboxBurst = (int) Math.max(1L, rep.getStepAttributeInteger(id_step, "mapboxBurst"));
+      this.maxInFlightRequests = (int) Math.max(1L, rep.getStepAttributeInteger(id_step, "maxInFlightRequests"));
+      this.cacheFile = Const.NVL(rep.getStepAttributeString(id_step, "cacheFile"), "");
+      this.cacheTtlDays = readCount(rep, id_step, "cacheTtlDays", 30);
+      this.memoryCacheMegabytes = readCount(rep, id_step, "memoryCacheMegabytes", 64);
+      this.maxConnectionsPerRoute = positive(rep.getStepAttributeInteger(id_step, "maxConnectionsPerRoute"), 16);
+      this.idleConnectionSeconds = positive(rep.getStepAttributeInteger(id_step, "idleConnectionSeconds"), 30);
+      this.keepAliveSeconds = positive(rep.getStepAttributeInteger(id_step, "keepAliveSeconds"), 60);
+      this.coordinateType = Const.NVL(rep.getStepAttributeString(id_step, "coordinateType"), COORDINATE_TYPES[0]);
+      this.geocoderEngine = Const.NVL(rep.getStepAttributeString(id_step, "geocoderEngine"), ENGINES[0]);
+      this.localAddressFile = Const.NVL(rep.getStepAttributeString(id_step, "localAddressFile"), "");
+      this.geocodeMode = Const.NVL(rep.getStepAttributeString(id_step, "geocodeMode"), MODES[0]);
+      this.latitudeInputField = Const.NVL(rep.getStepAttributeString(id_step, "latitudeInputField"), "");
+      this.longitudeInputField = Const.NVL(rep.getStepAttributeString(id_step, "longitudeInputField"), "");
+      this.addressField = Const.NVL(rep.getStepAttributeString(id_step, "addressField"), "");
+      this.postcodeField = Const.NVL(rep.getStepAttributeString(id_step, "postcodeField"), "");
+      this.reverseMaxMeters = positive(rep.getStepAttributeInteger(id_step, "reverseMaxMeters"), 250);
+      this.mapboxBatchSize = positive(rep.getStepAttributeInteger(id_step, "mapboxBatchSize"), 1);
+      this.mapboxBatchLingerMillis = readCount(rep, id_step, "mapboxBatchLingerMillis", 50);
+      this.healthCheckSeconds = readCount(rep, id_step, "healthCheckSeconds", 10);
+      this.maxRetries = readCount(rep, id_step, "maxRetries", 2);
+      this.retryBaseMillis = positive(rep.getStepAttributeInteger(id_step, "retryBaseMillis"), 500);
+      this.retryMaxMillis = positive(rep.getStepAttributeInteger(id_step, "retryMaxMillis"), 30000);
+      this.breakerThreshold = positive(rep.getStepAttributeInteger(id_step, "breakerThreshold"), 5);
+      this.breakerPolicy = Const.NVL(rep.getStepAttributeString(id_step, "breakerPolicy"), BREAKER_POLICIES[0]);
+      this.hedgePercentile = Const.toDouble(rep.getStepAttributeString(id_step, "hedgePercentile"), 0.0);
+      this.hedgeMinDelayMillis = readCount(rep, id_step, "hedgeMinDelayMillis", 20);
+      this.latencyBudgetMillis = readCount(rep, id_step, "latencyBudgetMillis", 0);
+      this.racePolicy = Const.NVL(rep.getStepAttributeString(id_step, "racePolicy"), RACE_POLICIES[0]);
+      this.useVirtualThreads = rep.getStepAttributeBoolean(id_step, 0, "useVirtualThreads", true);
+      this.cacheSyncSeconds = readCount(rep, id_step, "cacheSyncSeconds", 5);
+      this.compactCacheOnFinish = rep.getStepAttributeBoolean(id_step, 0, "compactCacheOnFinish", false);
+      this.cacheDatabase = rep.loadDatabaseMetaFromStepAttribute(id_step, "cacheConnection", databases);
+      this.cacheSchema = Const.NVL(rep.getStepAttributeString(id_step, "cacheSchema"), "");
+      this.cacheTable = Const.NVL(rep.getStepAttributeString(id_step, "cacheTable"), "geocode_cache");
+      this.cacheBatchSize = positive(rep.getStepAttributeInteger(id_step, "cacheBatchSize"), 500);
+      this.adaptiveConcurrency = rep.getStepAttributeBoolean(id_step, 0, "adaptiveConcurrency", false);
+      this.minConcurrency = positive(rep.getStepAttributeInteger(id_step, "minConcurrency"), 1);
+      this.maxConcurrency = positive(rep.getStepAttributeInteger(id_step, "maxConcurrency"), 64);
+      this.queryField = Const.NVL(rep.getStepAttributeString(id_step, "queryField"), "");
+      this.connectTimeoutMillis = positive(rep.getStepAttributeInteger(id_step, "connectTimeoutMillis"), 10000);
+      this.readTimeoutMillis = positive(rep.getStepAttributeInteger(id_step, "readTimeoutMillis"), 30000);
+      this.leaseTimeoutMillis = positive(rep.getStepAttributeInteger(id_step, "leaseTimeoutMillis"), 30000);
     } catch ( Exception e ) {
       throw new KettleException( "Unable to load step from repository", e );
     }
@@ -264,21 +983,94 @@ public class NominatimPDIPluginMeta extends BaseStepMeta implements StepMetaInte
       rep.saveStepAttribute( id_transformation, id_step, "zipField", zipField);
       rep.saveStepAttribute( id_transformation, id_step, "latitudeField", latitudeField);
       rep.saveStepAttribute( id_transformation, id_step, "longitudeField", longitudeField);
-      rep.saveStepAttribute(id_transformation, id_step, "postMapboxWaitMillis", postMapboxWaitMillis);
-      rep.saveStepAttribute(id_transformation, id_step, "postNominatimWaitMillis", postNominatimWaitMillis);
+      rep.saveStepAttribute(id_transformation, id_step, "nominatimRequestsPerSecond", String.valueOf(nominatimRequestsPerSecond));
+      rep.saveStepAttribute(id_transformation, id_step, "nominatimBurst", nominatimBurst);
+      rep.saveStepAttribute(id_transformation, id_step, "mapboxRequestsPerSecond", String.valueOf(mapboxRequestsPerSecond));
+      rep.saveStepAttribute(id_transformation, id_step, "mapboxBurst", mapboxBurst);
+      rep.saveStepAttribute(id_transformation, id_step, "maxInFlightRequests", maxInFlightRequests);
+      rep.saveStepAttribute(id_transformation, id_step, "cacheFile", cacheFile);
+      rep.saveStepAttribute(id_transformation, id_step, "cacheTtlDays", String.valueOf(cacheTtlDays));
+      rep.saveStepAttribute(id_transformation, id_step, "memoryCacheMegabytes", String.valueOf(memoryCacheMegabytes));
+      rep.saveStepAttribute(id_transformation, id_step, "maxConnectionsPerRoute", maxConnectionsPerRoute);
+      rep.saveStepAttribute(id_transformation, id_step, "idleConnectionSeconds", idleConnectionSeconds);
+      rep.saveStepAttribute(id_transformation, id_step, "keepAliveSeconds", keepAliveSeconds);
+      rep.saveStepAttribute(id_transformation, id_step, "coordinateType", coordinateType);
+      rep.saveStepAttribute(id_transformation, id_step, "geocoderEngine", geocoderEngine);
+      rep.saveStepAttribute(id_transformation, id_step, "localAddressFile", localAddressFile);
+      rep.saveStepAttribute(id_transformation, id_step, "geocodeMode", geocodeMode);
+      rep.saveStepAttribute(id_transformation, id_step, "latitudeInputField", latitudeInputField);
+      rep.saveStepAttribute(id_transformation, id_step, "longitudeInputField", longitudeInputField);
+      rep.saveStepAttribute(id_transformation, id_step, "addressField", addressField);
+      rep.saveStepAttribute(id_transformation, id_step, "postcodeField", postcodeField);
+      rep.saveStepAttribute(id_transformation, id_step, "reverseMaxMeters", reverseMaxMeters);
+      rep.saveStepAttribute(id_transformation, id_step, "mapboxBatchSize", mapboxBatchSize);
+      rep.saveStepAttribute(id_transformation, id_step, "mapboxBatchLingerMillis", String.valueOf(mapboxBatchLingerMillis));
+      rep.saveStepAttribute(id_transformation, id_step, "healthCheckSeconds", String.valueOf(healthCheckSeconds));
+      rep.saveStepAttribute(id_transformation, id_step, "maxRetries", String.valueOf(maxRetries));
+      rep.saveStepAttribute(id_transformation, id_step, "retryBaseMillis", retryBaseMillis);
+      rep.saveStepAttribute(id_transformation, id_step, "retryMaxMillis", retryMaxMillis);
+      rep.saveStepAttribute(id_transformation, id_step, "breakerThreshold", breakerThreshold);
+      rep.saveStepAttribute(id_transformation, id_step, "breakerPolicy", breakerPolicy);
+      rep.saveStepAttribute(id_transformation, id_step, "hedgePercentile", String.valueOf(hedgePercentile));
+      rep.saveStepAttribute(id_transformation, id_step, "hedgeMinDelayMillis", String.valueOf(hedgeMinDelayMillis));
+      rep.saveStepAttribute(id_transformation, id_step, "latencyBudgetMillis", String.valueOf(latencyBudgetMillis));
+      rep.saveStepAttribute(id_transformation, id_step, "racePolicy", racePolicy);
+      rep.saveStepAttribute(id_transformation, id_step, "useVirtualThreads", useVirtualThreads);
+      rep.saveStepAttribute(id_transformation, id_step, "cacheSyncSeconds", String.valueOf(cacheSyncSeconds));
+      rep.saveStepAttribute(id_transformation, id_step, "compactCacheOnFinish", compactCacheOnFinish);
+      rep.saveDatabaseMetaStepAttribute(id_transformation, id_step, "cacheConnection", cacheDatabase);
+      if(cacheDatabase != null){
+        rep.insertStepDatabase(id_transformation, id_step, cacheDatabase.getObjectId());
+      }
+      rep.saveStepAttribute(id_transformation, id_step, "cacheSchema", cacheSchema);
+      rep.saveStepAttribute(id_transformation, id_step, "cacheTable", cacheTable);
+      rep.saveStepAttribute(id_transformation, id_step, "cacheBatchSize", cacheBatchSize);
+      rep.saveStepAttribute(id_transformation, id_step, "adaptiveConcurrency", adaptiveConcurrency);
+      rep.saveStepAttribute(id_transformation, id_step, "minConcurrency", minConcurrency);
+      rep.saveStepAttribute(id_transformation, id_step, "maxConcurrency", maxConcurrency);
+      rep.saveStepAttribute(id_transformation, id_step, "queryField", queryField);
+      rep.saveStepAttribute(id_transformation, id_step, "connectTimeoutMillis", connectTimeoutMillis);
+      rep.saveStepAttribute(id_transformation, id_step, "readTimeoutMillis", readTimeoutMillis);
+      rep.saveStepAttribute(id_transformation, id_step, "leaseTimeoutMillis", leaseTimeoutMillis);
     } catch ( Exception e ) {
       throw new KettleException( "Unable to save step into repository: " + id_step, e );
     }
   }
 
+  /**
+   * Create the value meta for a coordinate output field.
+   *
+   * @param name        The field name
+   * @return            The value meta of the configured coordinate type
+   */
+  private ValueMetaInterface createCoordinateMeta(String name){
+    if(COORDINATE_TYPES[1].equals(coordinateType)){
+      return new ValueMetaNumber(name);
+    }else if(COORDINATE_TYPES[2].equals(coordinateType)){
+      return new ValueMetaBigNumber(name);
+    }
+    return new ValueMetaString(name);
+  }
+
   public void getFields( RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep,
                          VariableSpace space, Repository repository, IMetaStore metaStore ) throws KettleStepException {
-    ValueMetaString v0 = new ValueMetaString(latitudeField);
+    if(this.isReverse()){
+      ValueMetaInterface address = new ValueMetaString(addressField);
+      address.setOrigin(origin);
+      rowMeta.addValueMeta(address);
+
+      ValueMetaInterface postcode = new ValueMetaString(postcodeField);
+      postcode.setOrigin(origin);
+      rowMeta.addValueMeta(postcode);
+      return;
+    }
+
+    ValueMetaInterface v0 = this.createCoordinateMeta(latitudeField);
     v0.setOrigin(origin);
     rowMeta.addValueMeta(v0);
 
-    ValueMetaString v1 = new ValueMetaString(longitudeField);
-    v0.setOrigin(origin);
+    ValueMetaInterface v1 = this.createCoordinateMeta(longitudeField);
+    v1.setOrigin(origin);
     rowMeta.addValueMeta(v1);
   }
   
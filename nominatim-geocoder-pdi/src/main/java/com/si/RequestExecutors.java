@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors that run blocking geocode requests.
+ *
+ * On Java 21 and later each task runs on its own virtual thread, so thousands
+ * of lookups can wait on the network for the cost of their stacks; callers
+ * bound concurrency themselves with the in-flight window. Older JVMs get a
+ * bounded pool of daemon platform threads. The virtual thread API is reached
+ * through reflection so the plugin still builds and runs on Java 8.
+ */
+public final class RequestExecutors {
+  private static final Method OF_VIRTUAL;
+  private static final Method BUILDER_NAME;
+  private static final Method BUILDER_FACTORY;
+  private static final Method THREAD_PER_TASK;
+
+  static {
+    Method ofVirtual = null;
+    Method builderName = null;
+    Method builderFactory = null;
+    Method threadPerTask = null;
+    try {
+      Class<?> builder = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      builderName = builder.getMethod("name", String.class, long.class);
+      builderFactory = builder.getMethod("factory");
+      threadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+    }catch(ReflectiveOperationException e){
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    BUILDER_NAME = builderName;
+    BUILDER_FACTORY = builderFactory;
+    THREAD_PER_TASK = threadPerTask;
+  }
+
+  private RequestExecutors(){
+  }
+
+  /**
+   * Whether the running JVM supports virtual threads.
+   *
+   * @return        True on Java 21 and later
+   */
+  public static boolean virtualThreadsAvailable(){
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Create an executor for blocking requests.
+   *
+   * @param name              The thread name prefix
+   * @param maxThreads        The most platform threads when virtual threads are not used
+   * @param virtualThreads    Whether to use virtual threads when the JVM has them
+   * @return                  The executor
+   */
+  public static ExecutorService create(String name, int maxThreads, boolean virtualThreads){
+    if(virtualThreads && virtualThreadsAvailable()){
+      try {
+        Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+        ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        return (ExecutorService) THREAD_PER_TASK.invoke(null, factory);
+      }catch(ReflectiveOperationException e){
+        // fall through to platform threads
+      }
+    }
+    int threads = Math.max(1, maxThreads);
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder()
+            .setNameFormat(name + "-%d")
+            .setDaemon(true)
+            .build());
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+}
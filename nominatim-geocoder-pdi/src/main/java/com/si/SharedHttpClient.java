@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooled HTTP client shared by every step in the JVM with the same connection
+ * settings. Clients are reference counted and closed when the last step
+ * releases them.
+ *
+ * Every request has connect, read and pool lease timeouts, so a replica that
+ * stops answering fails the request instead of holding its worker. The pool's
+ * total size follows the routes of the steps currently sharing the client so
+ * that the total never caps the per-route limit, and shrinks again as steps
+ * release it.
+ */
+public class SharedHttpClient {
+  private static final Map<String, SharedHttpClient> CLIENTS = new HashMap<>();
+
+  private final String key;
+  private final int maxPerRoute;
+  private final PoolingHttpClientConnectionManager manager;
+  private final CloseableHttpClient client;
+  private int routes;
+  private int references;
+
+  /**
+   * Create the client.
+   *
+   * @param key                   The registry key
+   * @param maxPerRoute           The maximum connections per route
+   * @param idleSeconds           The time after which idle connections are closed
+   * @param keepAliveSeconds      The longest time a connection is kept alive
+   * @param config                The timeouts applied to every request
+   */
+  SharedHttpClient(String key, int maxPerRoute, int idleSeconds, int keepAliveSeconds, RequestConfig config){
+    this.key = key;
+    this.maxPerRoute = maxPerRoute;
+    final long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+    manager = new PoolingHttpClientConnectionManager();
+    manager.setDefaultMaxPerRoute(maxPerRoute);
+    manager.setMaxTotal(maxPerRoute);
+    manager.setValidateAfterInactivity(2000);
+    client = HttpClients.custom()
+            .setConnectionManager(manager)
+            .setDefaultRequestConfig(config)
+            .evictExpiredConnections()
+            .evictIdleConnections(idleSeconds, TimeUnit.SECONDS)
+            .setKeepAliveStrategy((response, context) -> {
+              long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+              return server > 0 ? Math.min(server, keepAliveMillis) : keepAliveMillis;
+            })
+            .build();
+  }
+
+  /**
+   * Obtain the shared client for a set of connection settings. Every call must
+   * be paired with {@link #release(int)} given the same number of routes.
+   *
+   * @param maxPerRoute           The maximum connections per route
+   * @param routes                The number of endpoints the caller sends requests to
+   * @param idleSeconds           The time after which idle connections are closed
+   * @param keepAliveSeconds      The longest time a connection is kept alive
+   * @param connectTimeoutMillis  The longest wait for a connection to open
+   * @param readTimeoutMillis     The longest wait for data on an open connection
+   * @param leaseTimeoutMillis    The longest wait for a connection from the pool
+   * @return                      The shared client
+   */
+  public static SharedHttpClient acquire(int maxPerRoute, int routes, int idleSeconds, int keepAliveSeconds,
+                                         int connectTimeoutMillis, int readTimeoutMillis, int leaseTimeoutMillis){
+    int perRoute = Math.max(1, maxPerRoute);
+    int idle = Math.max(1, idleSeconds);
+    int keepAlive = Math.max(1, keepAliveSeconds);
+    int connectTimeout = Math.max(1, connectTimeoutMillis);
+    int readTimeout = Math.max(1, readTimeoutMillis);
+    int leaseTimeout = Math.max(1, leaseTimeoutMillis);
+    String key = perRoute + ":" + idle + ":" + keepAlive + ":" + connectTimeout + ":" + readTimeout + ":" + leaseTimeout;
+    synchronized(CLIENTS){
+      SharedHttpClient shared = CLIENTS.get(key);
+      if(shared == null){
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(leaseTimeout)
+                .build();
+        shared = new SharedHttpClient(key, perRoute, idle, keepAlive, config);
+        CLIENTS.put(key, shared);
+      }
+      shared.references++;
+      shared.routes += Math.max(1, routes);
+      shared.manager.setMaxTotal(perRoute * shared.routes);
+      return shared;
+    }
+  }
+
+  /**
+   * Release a reference, closing the client and its connections when the last step lets go of it.
+   *
+   * @param routes                The number of endpoints given to {@link #acquire}
+   */
+  public void release(int routes){
+    synchronized(CLIENTS){
+      references--;
+      this.routes -= Math.max(1, routes);
+      if(references > 0){
+        manager.setMaxTotal(maxPerRoute * Math.max(1, this.routes));
+      }else{
+        CLIENTS.remove(key);
+        try {
+          client.close();
+        }catch(IOException e){
+          // connections are discarded either way
+        }
+      }
+    }
+  }
+
+  public HttpClient getClient() {
+    return client;
+  }
+
+  int getMaxTotal() {
+    return manager.getMaxTotal();
+  }
+
+  /**
+   * Open connections to an endpoint ahead of the first rows. Lightweight HEAD
+   * requests are sent concurrently so each one leaves an open connection in
+   * the pool. Each request takes a permit from the endpoint's rate limiter
+   * when one is free without waiting, so warming up never exceeds the rate
+   * and never delays the step.
+   *
+   * @param uri               The endpoint
+   * @param connections       The number of connections to open
+   * @param limiter           The endpoint's rate limiter, or null
+   * @return                  The number of connections opened
+   */
+  public int warmUp(URI uri, int connections, TokenBucketRateLimiter limiter){
+    int wanted = Math.min(connections, maxPerRoute);
+    int count = 0;
+    while(count < wanted && (limiter == null || limiter.tryAcquire())){
+      count++;
+    }
+    if(count <= 0){
+      return 0;
+    }
+    final URI root = uri.resolve("/");
+    ExecutorService pool = Executors.newFixedThreadPool(count);
+    int opened = 0;
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>(count);
+      for(int i = 0; i < count; i++){
+        tasks.add(() -> {
+          HttpResponse response = client.execute(new HttpHead(root));
+          EntityUtils.consumeQuietly(response.getEntity());
+          return true;
+        });
+      }
+      for(Future<Boolean> future : pool.invokeAll(tasks, 30, TimeUnit.SECONDS)){
+        try {
+          if(!future.isCancelled() && future.get()){
+            opened++;
+          }
+        }catch(Exception e){
+          // an endpoint that cannot be reached is reported by the first real request
+        }
+      }
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+    }finally{
+      pool.shutdownNow();
+    }
+    return opened;
+  }
+}
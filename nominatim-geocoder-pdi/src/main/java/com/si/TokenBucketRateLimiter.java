@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.si;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the request rate against a single endpoint.
+ *
+ * Limiters are shared by every step copy in the JVM that targets the same
+ * scheme, host and port. Permits are reserved up front, so concurrent callers
+ * queue behind each other and the sustained rate never exceeds the configured
+ * one regardless of request latency. The limiter applies the most
+ * restrictive settings of the steps currently holding it, so the limit
+ * loosens again when the stricter step releases it.
+ */
+public class TokenBucketRateLimiter {
+  private static final Map<String, TokenBucketRateLimiter> LIMITERS = new HashMap<>();
+
+  private final String key;
+  private final List<Hold> holds = new ArrayList<>();
+  private double permitsPerSecond;
+  private double burst;
+  private double tokens;
+  private long lastRefillNanos;
+
+  /**
+   * The settings one step obtained the limiter with.
+   */
+  private static final class Hold {
+    final double permitsPerSecond;
+    final int burst;
+
+    Hold(double permitsPerSecond, int burst){
+      this.permitsPerSecond = permitsPerSecond;
+      this.burst = burst;
+    }
+  }
+
+  /**
+   * Create a limiter.
+   *
+   * @param key                   The endpoint key
+   * @param permitsPerSecond      The sustained rate, zero or less for no limit
+   * @param burst                 The bucket size
+   */
+  TokenBucketRateLimiter(String key, double permitsPerSecond, int burst){
+    this(key, permitsPerSecond, burst, System.nanoTime());
+  }
+
+  /**
+   * Create a limiter with a full bucket at the given time.
+   *
+   * @param key                   The endpoint key
+   * @param permitsPerSecond      The sustained rate, zero or less for no limit
+   * @param burst                 The bucket size
+   * @param nowNanos              The current time, from {@link System#nanoTime()}
+   */
+  TokenBucketRateLimiter(String key, double permitsPerSecond, int burst, long nowNanos){
+    this.key = key;
+    this.permitsPerSecond = permitsPerSecond;
+    this.burst = Math.max(1, burst);
+    this.tokens = this.burst;
+    this.lastRefillNanos = nowNanos;
+  }
+
+  /**
+   * Obtain the limiter for an endpoint. When other steps already hold a
+   * limiter for the endpoint the most restrictive of their settings applies.
+   * Every call must be paired with {@link #release(double, int)} given the
+   * same settings.
+   *
+   * @param url                   The endpoint url
+   * @param permitsPerSecond      The sustained rate, zero or less for no limit
+   * @param burst                 The bucket size
+   * @return                      The shared limiter
+   */
+  public static TokenBucketRateLimiter forEndpoint(String url, double permitsPerSecond, int burst){
+    String key = endpointKey(url);
+    synchronized(LIMITERS) {
+      TokenBucketRateLimiter limiter = LIMITERS.get(key);
+      if (limiter == null) {
+        limiter = new TokenBucketRateLimiter(key, permitsPerSecond, burst);
+        LIMITERS.put(key, limiter);
+      }
+      limiter.hold(permitsPerSecond, burst, System.nanoTime());
+      return limiter;
+    }
+  }
+
+  /**
+   * Reduce the endpoint key to scheme, host and port.
+   *
+   * @param url       The endpoint url
+   * @return          The key
+   */
+  static String endpointKey(String url){
+    String trimmed = url == null ? "" : url.trim();
+    try {
+      URI uri = new URI(trimmed);
+      if(uri.getScheme() != null && uri.getAuthority() != null) {
+        return (uri.getScheme() + "://" + uri.getAuthority()).toLowerCase();
+      }
+    }catch(Exception e){
+      // fall through to the raw url
+    }
+    return trimmed.toLowerCase();
+  }
+
+  /**
+   * Add a step's settings to the ones the limit is computed from.
+   *
+   * @param permitsPerSecond      The requested rate
+   * @param burst                 The requested bucket size
+   * @param nowNanos              The current time, from {@link System#nanoTime()}
+   */
+  synchronized void hold(double permitsPerSecond, int burst, long nowNanos){
+    holds.add(new Hold(permitsPerSecond, burst));
+    this.applyHolds(nowNanos);
+  }
+
+  /**
+   * Remove a step's settings and loosen the limit to what the remaining steps allow.
+   *
+   * @param permitsPerSecond      The rate the step obtained the limiter with
+   * @param burst                 The bucket size the step obtained the limiter with
+   * @param nowNanos              The current time, from {@link System#nanoTime()}
+   * @return                      Whether any step still holds the limiter
+   */
+  synchronized boolean unhold(double permitsPerSecond, int burst, long nowNanos){
+    for(int i = 0; i < holds.size(); i++){
+      Hold hold = holds.get(i);
+      if(hold.permitsPerSecond == permitsPerSecond && hold.burst == burst){
+        holds.remove(i);
+        break;
+      }
+    }
+    if(!holds.isEmpty()){
+      this.applyHolds(nowNanos);
+    }
+    return !holds.isEmpty();
+  }
+
+  /**
+   * Apply the most restrictive rate and bucket size of the current holds.
+   * Tokens earned so far are counted at the old rate first.
+   *
+   * @param nowNanos              The current time
+   */
+  private void applyHolds(long nowNanos){
+    this.refill(nowNanos);
+    double rate = 0.0;
+    int size = 0;
+    for(Hold hold : holds){
+      if(hold.permitsPerSecond > 0 && (rate <= 0 || hold.permitsPerSecond < rate)){
+        rate = hold.permitsPerSecond;
+      }
+      if(hold.burst > 0 && (size <= 0 || hold.burst < size)){
+        size = hold.burst;
+      }
+    }
+    permitsPerSecond = rate;
+    burst = Math.max(1, size);
+    tokens = Math.min(tokens, burst);
+  }
+
+  /**
+   * Release a reference obtained from {@link #forEndpoint(String, double, int)}.
+   *
+   * @param permitsPerSecond      The rate given to {@link #forEndpoint(String, double, int)}
+   * @param burst                 The bucket size given to {@link #forEndpoint(String, double, int)}
+   */
+  public void release(double permitsPerSecond, int burst){
+    synchronized(LIMITERS){
+      if(!this.unhold(permitsPerSecond, burst, System.nanoTime()) && LIMITERS.get(key) == this){
+        LIMITERS.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Add the tokens earned since the last refill. The monitor must be held.
+   *
+   * @param nowNanos              The current time
+   */
+  private void refill(long nowNanos){
+    if(permitsPerSecond > 0){
+      tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * permitsPerSecond / 1e9);
+    }
+    lastRefillNanos = nowNanos;
+  }
+
+  /**
+   * Take a permit, sleeping until the bucket allows the request.
+   *
+   * @return        The time spent waiting in nanoseconds
+   * @throws InterruptedException
+   */
+  public long acquire() throws InterruptedException {
+    long waitNanos = this.reserve(System.nanoTime());
+    if(waitNanos > 0){
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+    return waitNanos;
+  }
+
+  /**
+   * Reserve a permit.
+   *
+   * @param nowNanos      The current time, from {@link System#nanoTime()}
+   * @return              How long the caller must wait before using it, in nanoseconds
+   */
+  synchronized long reserve(long nowNanos){
+    if(permitsPerSecond <= 0){
+      return 0L;
+    }
+    this.refill(nowNanos);
+    tokens -= 1.0;
+    return tokens < 0 ? (long) Math.ceil(-tokens * 1e9 / permitsPerSecond) : 0L;
+  }
+
+  /**
+   * Take a permit only when the bucket allows a request without waiting.
+   *
+   * @return        Whether a permit was taken
+   */
+  public boolean tryAcquire(){
+    return this.tryAcquire(System.nanoTime());
+  }
+
+  /**
+   * Take a permit only when the bucket allows a request at the given time.
+   *
+   * @param nowNanos      The current time, from {@link System#nanoTime()}
+   * @return              Whether a permit was taken
+   */
+  synchronized boolean tryAcquire(long nowNanos){
+    if(permitsPerSecond <= 0){
+      return true;
+    }
+    this.refill(nowNanos);
+    if(tokens < 1.0){
+      return false;
+    }
+    tokens -= 1.0;
+    return true;
+  }
+
+  public synchronized double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  public synchronized int getBurst() {
+    return (int) burst;
+  }
+}
@@ -0,0 +1,240 @@
+package com.si;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Embedded HTTP server imitating the nominatim search, reverse and status
+ * endpoints and the mapbox places endpoints, with configurable latency,
+ * failures, throttling and payload size, for offline end-to-end tests.
+ */
+public class MockGeocoderServer {
+    private long medianMillis;
+    private double sigma;
+    private ToLongFunction<URI> latencyByRequest;
+    private double errorRate;
+    private double throttleRate;
+    private int retryAfterSeconds = 1;
+    private double emptyRate;
+    private int paddingBytes;
+    private HttpServer server;
+    private ExecutorService executor;
+    private final LatencyTracker latency = new LatencyTracker(100000, 1);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    /**
+     * Log-normal response latency.
+     *
+     * @param medianMillis      The median latency
+     * @param p99Millis         The 99th percentile latency
+     * @return                  This server
+     */
+    public MockGeocoderServer latency(long medianMillis, long p99Millis) {
+        this.medianMillis = medianMillis;
+        this.sigma = medianMillis > 0 && p99Millis > medianMillis ? Math.log((double) p99Millis / medianMillis) / 2.326 : 0.0;
+        return this;
+    }
+
+    /**
+     * Latency chosen from each request, such as to answer some addresses
+     * before others. Replaces the log-normal latency.
+     *
+     * @param latencyByRequest  The latency in milliseconds for a request uri
+     * @return                  This server
+     */
+    public MockGeocoderServer latency(ToLongFunction<URI> latencyByRequest) {
+        this.latencyByRequest = latencyByRequest;
+        return this;
+    }
+
+    public MockGeocoderServer errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public MockGeocoderServer throttleRate(double throttleRate, int retryAfterSeconds) {
+        this.throttleRate = throttleRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public MockGeocoderServer emptyRate(double emptyRate) {
+        this.emptyRate = emptyRate;
+        return this;
+    }
+
+    public MockGeocoderServer paddingBytes(int paddingBytes) {
+        this.paddingBytes = paddingBytes;
+        return this;
+    }
+
+    public MockGeocoderServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "mock-geocoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public String nominatimUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/search";
+    }
+
+    public String mapboxUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public LatencyTracker getLatency() {
+        return latency;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        try {
+            URI uri = exchange.getRequestURI();
+            String path = uri.getPath();
+            if (path.endsWith("/status")) {
+                this.respond(exchange, 200, "OK");
+                return;
+            }
+            requests.incrementAndGet();
+            this.sleep(latencyByRequest != null ? latencyByRequest.applyAsLong(uri) : this.sampleLatency());
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < throttleRate) {
+                throttled.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                this.respond(exchange, 429, "Too Many Requests");
+                return;
+            }
+            if (random.nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                this.respond(exchange, 503, "Service Unavailable");
+                return;
+            }
+            boolean empty = random.nextDouble() < emptyRate;
+            if (path.endsWith("/search")) {
+                this.respond(exchange, 200, empty ? "[]" : this.nominatimResult(String.valueOf(uri.getRawQuery())));
+            } else if (path.endsWith("/reverse")) {
+                this.respond(exchange, 200, empty ? "{\"error\":\"Unable to geocode\"}" : this.reverseResult(String.valueOf(uri.getRawQuery())));
+            } else if (path.startsWith("/geocoding/v5/mapbox.places-permanent/")) {
+                String[] queries = path.substring(path.lastIndexOf('/') + 1).replace(".json", "").split(";");
+                StringBuilder body = new StringBuilder(queries.length > 1 ? "[" : "");
+                for (int i = 0; i < queries.length; i++) {
+                    body.append(i > 0 ? "," : "").append(this.mapboxResult(queries[i], empty));
+                }
+                this.respond(exchange, 200, body.append(queries.length > 1 ? "]" : "").toString());
+            } else if (path.startsWith("/geocoding/v5/mapbox.places/")) {
+                this.respond(exchange, 200, this.mapboxResult(path, empty));
+            } else {
+                this.respond(exchange, 404, "Not Found");
+            }
+        } finally {
+            latency.record((System.nanoTime() - started) / 1000000L);
+            exchange.close();
+        }
+    }
+
+    private long sampleLatency() {
+        if (medianMillis <= 0) {
+            return 0L;
+        }
+        return Math.round(medianMillis * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private void sleep(long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String padding() {
+        StringBuilder padding = new StringBuilder(paddingBytes);
+        for (int i = 0; i < paddingBytes; i++) {
+            padding.append('x');
+        }
+        return padding.toString();
+    }
+
+    private String nominatimResult(String query) {
+        Random random = new Random(query.hashCode());
+        return String.format(Locale.ROOT, "[{\"place_id\":%d,\"licence\":\"Data (c) OpenStreetMap contributors\","
+                        + "\"osm_type\":\"way\",\"lat\":\"%.7f\",\"lon\":\"%.7f\",\"display_name\":\"%s\","
+                        + "\"class\":\"building\",\"type\":\"house\",\"importance\":0.5,\"extra\":\"%s\"}]",
+                Math.abs(query.hashCode()), 25 + random.nextDouble() * 24, -124 + random.nextDouble() * 57,
+                "Mock Result", this.padding());
+    }
+
+    private String reverseResult(String query) {
+        Random random = new Random(query.hashCode());
+        return String.format(Locale.ROOT, "{\"place_id\":%d,\"display_name\":\"Mock Result\",\"address\":{\"house_number\":\"%d\","
+                        + "\"road\":\"Main Street\",\"postcode\":\"%05d\"},\"extra\":\"%s\"}",
+                Math.abs(query.hashCode()), 1 + random.nextInt(9999), random.nextInt(99999), this.padding());
+    }
+
+    private String mapboxResult(String query, boolean empty) {
+        if (empty) {
+            return "{\"type\":\"FeatureCollection\",\"query\":[],\"features\":[]}";
+        }
+        Random random = new Random(query.hashCode());
+        double lon = -124 + random.nextDouble() * 57;
+        double lat = 25 + random.nextDouble() * 24;
+        return String.format(Locale.ROOT, "{\"type\":\"FeatureCollection\",\"query\":[],\"features\":[{\"id\":\"address.%d\","
+                        + "\"type\":\"Feature\",\"place_type\":[\"address\"],\"relevance\":1,\"properties\":{},"
+                        + "\"text\":\"Main Street\",\"place_name\":\"%s\",\"center\":[%.6f,%.6f],"
+                        + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.6f,%.6f]}}]}",
+                Math.abs(query.hashCode()), this.padding(), lon, lat, lon, lat);
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
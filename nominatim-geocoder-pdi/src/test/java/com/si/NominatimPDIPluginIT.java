@@ -0,0 +1,281 @@
+package com.si;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.annotations.Step;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class NominatimPDIPluginIT {
+
+    private static final int ROWS = 2000;
+    private static final Pattern HOUSE_NUMBER = Pattern.compile("street=(\\d+)");
+
+    private static final class Result {
+        final List<Object[]> rows = Collections.synchronizedList(new ArrayList<Object[]>());
+        RowMetaInterface rowMeta;
+        long millis;
+        long errors;
+        NominatimPDIPluginData data;
+
+        int geocoded() {
+            int latitude = rowMeta.indexOfValue("lat");
+            int count = 0;
+            synchronized (rows) {
+                for (Object[] row : rows) {
+                    if (row[latitude] != null) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        double rowsPerSecond() {
+            return rows.size() * 1000.0 / Math.max(1L, millis);
+        }
+    }
+
+    @BeforeClass
+    public static void setUpKettle() throws KettleException {
+        KettleEnvironment.init(false);
+        if (PluginRegistry.getInstance().findPluginWithId(StepPluginType.class, "NominatimPDIPlugin") == null) {
+            StepPluginType.getInstance().handlePluginAnnotation(NominatimPDIPluginMeta.class,
+                    NominatimPDIPluginMeta.class.getAnnotation(Step.class), new ArrayList<String>(), true, null);
+        }
+    }
+
+    private static NominatimPDIPluginMeta geocoderMeta(MockGeocoderServer mock) {
+        NominatimPDIPluginMeta meta = new NominatimPDIPluginMeta();
+        meta.setDefault();
+        meta.setNominatimUrl(mock.nominatimUrl());
+        meta.setNominatimRequestsPerSecond(0.0);
+        meta.setUseMapBoxFallbackIfPresent(false);
+        meta.setHealthCheckSeconds(0);
+        meta.setMemoryCacheMegabytes(0);
+        meta.setMaxInFlightRequests(32);
+        meta.setMaxConnectionsPerRoute(32);
+        meta.setStreetField("street");
+        meta.setCityField("city");
+        meta.setStateField("state");
+        meta.setZipField("zip");
+        meta.setLatitudeField("lat");
+        meta.setLongitudeField("lon");
+        return meta;
+    }
+
+    private static Result run(NominatimPDIPluginMeta meta, int rows) throws KettleException {
+        TransMeta transMeta = new TransMeta();
+        transMeta.setName("geocoder-it");
+        StepMeta input = new StepMeta("input", new InjectorMeta());
+        StepMeta geocode = new StepMeta("geocode", meta);
+        StepMeta output = new StepMeta("output", new DummyTransMeta());
+        transMeta.addStep(input);
+        transMeta.addStep(geocode);
+        transMeta.addStep(output);
+        transMeta.addTransHop(new TransHopMeta(input, geocode));
+        transMeta.addTransHop(new TransHopMeta(geocode, output));
+
+        final Result result = new Result();
+        Trans trans = new Trans(transMeta);
+        trans.prepareExecution(null);
+        result.data = (NominatimPDIPluginData) trans.getStepDataInterface("geocode", 0);
+        RowProducer producer = trans.addRowProducer("input", 0);
+        trans.getStepInterface("output", 0).addRowListener(new RowAdapter() {
+            @Override
+            public void rowWrittenEvent(RowMetaInterface rowMeta, Object[] row) {
+                result.rowMeta = rowMeta;
+                result.rows.add(row);
+            }
+        });
+
+        RowMeta rowMeta = new RowMeta();
+        rowMeta.addValueMeta(new ValueMetaString("street"));
+        rowMeta.addValueMeta(new ValueMetaString("city"));
+        rowMeta.addValueMeta(new ValueMetaString("state"));
+        rowMeta.addValueMeta(new ValueMetaString("zip"));
+        long started = System.currentTimeMillis();
+        trans.startThreads();
+        for (int i = 0; i < rows; i++) {
+            producer.putRow(rowMeta, new Object[]{ (i + 1) + " Main St", "Springfield", "IL", "62701" });
+        }
+        producer.finished();
+        trans.waitUntilFinished();
+        result.millis = System.currentTimeMillis() - started;
+        result.errors = trans.getErrors();
+        return result;
+    }
+
+    private static NominatimPDIPluginMeta raceMeta(MockGeocoderServer mock, int budgetMillis, boolean preferNominatim) {
+        NominatimPDIPluginMeta meta = geocoderMeta(mock);
+        meta.setMaxInFlightRequests(8);
+        meta.setMapboxUrl(mock.mapboxUrl());
+        meta.setMapBoxKey("test-token");
+        meta.setMapboxRequestsPerSecond(0.0);
+        meta.setUseMapBoxFallbackIfPresent(true);
+        meta.setLatencyBudgetMillis(budgetMillis);
+        meta.setRacePolicy(NominatimPDIPluginMeta.RACE_POLICIES[preferNominatim ? 1 : 0]);
+        return meta;
+    }
+
+    private static long houseNumber(URI uri) {
+        Matcher matcher = HOUSE_NUMBER.matcher(String.valueOf(uri.getQuery()));
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0L;
+    }
+
+    private static void report(String name, Result result, MockGeocoderServer mock) {
+        System.out.println(String.format("%s: %d rows in %d ms (%.0f rows/s), %d geocoded, server p50 %d ms p99 %d ms, "
+                        + "%d requests, %d errors, %d throttled",
+                name, result.rows.size(), result.millis, result.rowsPerSecond(), result.geocoded(),
+                mock.getLatency().percentile(50), mock.getLatency().percentile(99),
+                mock.getRequests(), mock.getErrors(), mock.getThrottled()));
+    }
+
+    @Test
+    public void shouldMeetThroughputFloor() throws Exception {
+        MockGeocoderServer server = new MockGeocoderServer().latency(5, 40).paddingBytes(512).start();
+        try {
+            Result result = run(geocoderMeta(server), ROWS);
+            report("throughput", result, server);
+            double floor = Double.parseDouble(System.getProperty("geocoder.it.minRowsPerSecond", "100"));
+            assert(result.errors == 0);
+            assert(result.rows.size() == ROWS);
+            assert(result.geocoded() == ROWS);
+            assert(result.rowsPerSecond() >= floor);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldRetryThroughServerErrors() throws Exception {
+        MockGeocoderServer server = new MockGeocoderServer().latency(2, 20).errorRate(0.05).start();
+        try {
+            NominatimPDIPluginMeta meta = geocoderMeta(server);
+            meta.setRetryBaseMillis(10);
+            meta.setRetryMaxMillis(200);
+            Result result = run(meta, ROWS);
+            report("server errors", result, server);
+            assert(result.errors == 0);
+            assert(result.rows.size() == ROWS);
+            assert(result.geocoded() >= ROWS * 95 / 100);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldFinishWhenThrottled() throws Exception {
+        MockGeocoderServer server = new MockGeocoderServer().latency(2, 20).throttleRate(0.02, 1).start();
+        try {
+            Result result = run(geocoderMeta(server), ROWS);
+            report("throttled", result, server);
+            assert(result.errors == 0);
+            assert(result.rows.size() == ROWS);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldKeepInputOrderWhenAnswersArriveOutOfOrder() throws Exception {
+        // within each window of eight rows the earlier rows are answered later
+        MockGeocoderServer server = new MockGeocoderServer().latency(uri -> 5 * (8 - houseNumber(uri) % 8)).start();
+        try {
+            NominatimPDIPluginMeta meta = geocoderMeta(server);
+            meta.setMaxInFlightRequests(8);
+            int rows = 400;
+            Result result = run(meta, rows);
+            report("ordering", result, server);
+            assert(result.errors == 0);
+            assert(result.rows.size() == rows);
+            assert(result.geocoded() == rows);
+            int street = result.rowMeta.indexOfValue("street");
+            for (int i = 0; i < rows; i++) {
+                assert(((i + 1) + " Main St").equals(result.rows.get(i)[street]));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldUseFasterMapboxAndCountNominatimLeftRunning() throws Exception {
+        MockGeocoderServer server = new MockGeocoderServer()
+                .latency(uri -> uri.getPath().endsWith("/search") ? 300L : 5L).start();
+        try {
+            int rows = 40;
+            Result first = run(raceMeta(server, 50, false), rows);
+            report("race first answer", first, server);
+            assert(first.errors == 0);
+            assert(first.geocoded() == rows);
+            assert(first.data.getRaces() == rows);
+            assert(first.data.getRaceMapboxWins() == rows);
+            assert(first.data.getRaceLosersRunning() == rows);
+
+            // preferring nominatim, the mapbox answer is used once twice the budget has passed
+            Result preferred = run(raceMeta(server, 50, true), rows);
+            report("race prefer nominatim past deadline", preferred, server);
+            assert(preferred.errors == 0);
+            assert(preferred.geocoded() == rows);
+            assert(preferred.data.getRaces() == rows);
+            assert(preferred.data.getRaceMapboxWins() == rows);
+            assert(preferred.data.getRaceLosersRunning() == rows);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldPreferNominatimAnsweringBeforeDeadline() throws Exception {
+        MockGeocoderServer server = new MockGeocoderServer()
+                .latency(uri -> uri.getPath().endsWith("/search") ? 70L : 5L).start();
+        try {
+            int rows = 40;
+            Result result = run(raceMeta(server, 50, true), rows);
+            report("race prefer nominatim", result, server);
+            assert(result.errors == 0);
+            assert(result.geocoded() == rows);
+            assert(result.data.getRaces() == rows);
+            assert(result.data.getRaceMapboxWins() == 0);
+            assert(result.data.getRaceLosersRunning() == 0);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldNotRaceWithinBudget() throws Exception {
+        MockGeocoderServer server = new MockGeocoderServer().latency(uri -> 2L).start();
+        try {
+            int rows = 40;
+            Result result = run(raceMeta(server, 200, false), rows);
+            report("race within budget", result, server);
+            assert(result.errors == 0);
+            assert(result.geocoded() == rows);
+            assert(result.data.getRaces() == 0);
+        } finally {
+            server.stop();
+        }
+    }
+}
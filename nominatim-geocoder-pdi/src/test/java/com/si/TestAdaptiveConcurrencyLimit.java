@@ -0,0 +1,151 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestAdaptiveConcurrencyLimit {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private void succeed(AdaptiveConcurrencyLimit limit, long rttMillis) throws InterruptedException {
+        limit.acquire();
+        limit.onSuccess(System.nanoTime(), rttMillis * MILLI);
+    }
+
+    @Test
+    public void testGrowsWhileLatencyHolds() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 1, 10);
+        assert(limit.getLimit() == 1);
+        for (int i = 0; i < 200; i++) {
+            succeed(limit, 10);
+        }
+        assert(limit.getLimit() > 1);
+        assert(limit.getLimit() <= 10);
+        assert(limit.getMinRttMillis() == 10);
+    }
+
+    @Test
+    public void testStopsAtMaximum() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 1, 3);
+        for (int i = 0; i < 1000; i++) {
+            int allowed = limit.getLimit();
+            for (int j = 0; j < allowed; j++) {
+                limit.acquire();
+            }
+            for (int j = 0; j < allowed; j++) {
+                limit.onSuccess(System.nanoTime(), 10 * MILLI);
+            }
+        }
+        assert(limit.getLimit() == 3);
+    }
+
+    @Test
+    public void testCutsOnFailureOncePerRoundTrip() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 1, 100);
+        for (int i = 0; i < 100000 && limit.getLimit() < 20; i++) {
+            int allowed = limit.getLimit();
+            for (int j = 0; j < allowed; j++) {
+                limit.acquire();
+            }
+            for (int j = 0; j < allowed; j++) {
+                limit.onSuccess(System.nanoTime(), 10 * MILLI);
+            }
+        }
+        int grown = limit.getLimit();
+        assert(grown >= 20);
+        long sent = System.nanoTime() - 1;
+        limit.acquire();
+        limit.acquire();
+        limit.onDropped(sent);
+        limit.onDropped(sent);
+        assert(limit.getDecreases() == 1);
+        assert(limit.getLimit() == (int) (grown * AdaptiveConcurrencyLimit.BACKOFF_RATIO)
+                || limit.getLimit() == (int) (grown * AdaptiveConcurrencyLimit.BACKOFF_RATIO) + 1);
+    }
+
+    @Test
+    public void testCutsOnSlowResponse() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 2, 100);
+        for (int i = 0; i < 500; i++) {
+            succeed(limit, 10);
+        }
+        long decreases = limit.getDecreases();
+        succeed(limit, 100);
+        assert(limit.getDecreases() == decreases + 1);
+        for (int i = 0; i < 400; i++) {
+            succeed(limit, 500);
+        }
+        assert(limit.getLimit() == 2);
+    }
+
+    @Test
+    public void testBlocksAtLimit() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 1, 1);
+        limit.acquire();
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limit.acquire();
+                admitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        assert(!admitted.await(100, TimeUnit.MILLISECONDS));
+        limit.onIgnored();
+        assert(admitted.await(5, TimeUnit.SECONDS));
+        assert(limit.getInFlight() == 1);
+    }
+
+    @Test
+    public void testSharedPerEndpoint() {
+        AdaptiveConcurrencyLimit first = AdaptiveConcurrencyLimit.forEndpoint("http://nominatim:8080/search", 1, 50);
+        AdaptiveConcurrencyLimit second = AdaptiveConcurrencyLimit.forEndpoint("http://NOMINATIM:8080/reverse", 4, 20);
+        try {
+            assert(first == second);
+            assert(first.getLimit() == 4);
+        } finally {
+            first.release(1, 50);
+            second.release(4, 20);
+        }
+    }
+
+    @Test
+    public void testRangeWidensWhenNarrowerStepReleases() {
+        AdaptiveConcurrencyLimit wide = AdaptiveConcurrencyLimit.forEndpoint("http://widen:8080/search", 1, 50);
+        AdaptiveConcurrencyLimit narrow = AdaptiveConcurrencyLimit.forEndpoint("http://widen:8080/search", 4, 20);
+        try {
+            assert(wide.getMinLimit() == 4);
+            assert(wide.getMaxLimit() == 20);
+            narrow.release(4, 20);
+            assert(wide.getMinLimit() == 1);
+            assert(wide.getMaxLimit() == 50);
+            assert(wide.getLimit() == 4);
+        } finally {
+            wide.release(1, 50);
+        }
+        AdaptiveConcurrencyLimit fresh = AdaptiveConcurrencyLimit.forEndpoint("http://widen:8080/search", 2, 10);
+        try {
+            assert(fresh != wide);
+            assert(fresh.getMinLimit() == 2);
+            assert(fresh.getMaxLimit() == 10);
+        } finally {
+            fresh.release(2, 10);
+        }
+    }
+
+    @Test
+    public void testRangeKeepsNarrowerStepAfterWiderReleases() {
+        AdaptiveConcurrencyLimit wide = AdaptiveConcurrencyLimit.forEndpoint("http://narrow:8080/search", 1, 50);
+        AdaptiveConcurrencyLimit narrow = AdaptiveConcurrencyLimit.forEndpoint("http://narrow:8080/search", 4, 20);
+        try {
+            wide.release(1, 50);
+            assert(narrow.getMinLimit() == 4);
+            assert(narrow.getMaxLimit() == 20);
+        } finally {
+            narrow.release(4, 20);
+        }
+    }
+}
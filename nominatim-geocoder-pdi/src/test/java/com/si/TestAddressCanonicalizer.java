@@ -0,0 +1,39 @@
+package com.si;
+
+import org.junit.Test;
+
+public class TestAddressCanonicalizer {
+
+    @Test
+    public void shouldCanonicalizeStreetVariants() {
+        String expected = "123 MAIN ST";
+        assert(AddressCanonicalizer.street("123 Main Street").equals(expected));
+        assert(AddressCanonicalizer.street("123 MAIN ST").equals(expected));
+        assert(AddressCanonicalizer.street("  123   Main St. ").equals(expected));
+    }
+
+    @Test
+    public void shouldAbbreviateDirectionals() {
+        assert(AddressCanonicalizer.street("400 North-West Avenue").equals("400 N W AVE"));
+        assert(AddressCanonicalizer.street("400 Northwest Ave").equals("400 NW AVE"));
+        assert(AddressCanonicalizer.street("12 O'Brien Blvd, Suite 5").equals("12 OBRIEN BLVD STE 5"));
+    }
+
+    @Test
+    public void shouldCanonicalizeStateAndZip() {
+        assert(AddressCanonicalizer.state("Colorado").equals("CO"));
+        assert(AddressCanonicalizer.state(" new  york ").equals("NY"));
+        assert(AddressCanonicalizer.state("co").equals("CO"));
+        assert(AddressCanonicalizer.zip("80202-1234").equals("80202"));
+        assert(AddressCanonicalizer.zip("802021234").equals("80202"));
+        assert(AddressCanonicalizer.zip(" 80202 ").equals("80202"));
+        assert(AddressCanonicalizer.zip("k1a 0b1").equals("K1A 0B1"));
+    }
+
+    @Test
+    public void shouldShareKeysAcrossSpellings() {
+        String a = AddressCanonicalizer.key("123 Main Street", "Denver", "Colorado", "80202-1234");
+        String b = AddressCanonicalizer.key("123 MAIN ST.", "DENVER", "CO", "80202");
+        assert(a.equals(b));
+    }
+}
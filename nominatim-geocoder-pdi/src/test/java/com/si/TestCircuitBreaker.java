@@ -0,0 +1,61 @@
+package com.si;
+
+import org.junit.Test;
+
+public class TestCircuitBreaker {
+
+    @Test
+    public void shouldOpenAfterThresholdAndCloseAfterTrial() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(2, 20L, 20L);
+        assert(breaker.allowRequest());
+        breaker.onFailure(0L);
+        assert(breaker.getState() == CircuitBreaker.State.CLOSED);
+        breaker.onFailure(0L);
+        assert(breaker.getState() == CircuitBreaker.State.OPEN);
+        assert(!breaker.allowRequest());
+        assert(breaker.getRejected() == 1);
+        Thread.sleep(40L);
+        assert(breaker.getState() == CircuitBreaker.State.HALF_OPEN);
+        assert(breaker.allowRequest());
+        assert(!breaker.allowRequest());
+        breaker.onSuccess();
+        assert(breaker.getState() == CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldReopenWhenTrialFails() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 20L, 20L);
+        breaker.onFailure(0L);
+        Thread.sleep(40L);
+        assert(breaker.allowRequest());
+        breaker.onFailure(0L);
+        assert(breaker.getState() == CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void shouldHonourRetryAfter() {
+        CircuitBreaker breaker = new CircuitBreaker(10, 10L, 100L);
+        breaker.onFailure(5000L);
+        assert(breaker.getState() == CircuitBreaker.State.OPEN);
+        assert(breaker.remainingOpenMillis() > 4000L);
+    }
+
+    @Test
+    public void shouldBoundBackoff() {
+        for(int attempt = 0; attempt < 40; attempt++){
+            long delay = CircuitBreaker.backoffMillis(attempt, 100L, 2000L);
+            long cap = Math.min(2000L, 100L << Math.min(attempt, 20));
+            assert(delay >= cap / 2 && delay <= cap);
+        }
+    }
+
+    @Test
+    public void shouldParseRetryAfter() {
+        long now = 1500000000000L;
+        assert(GeocodeHttpException.parseRetryAfter("120", now) == 120000L);
+        assert(GeocodeHttpException.parseRetryAfter("Fri, 14 Jul 2017 02:40:30 GMT", now) == 30000L);
+        assert(GeocodeHttpException.parseRetryAfter("Fri, 14 Jul 2017 02:39:00 GMT", now) == 0L);
+        assert(GeocodeHttpException.parseRetryAfter(null, now) == 0L);
+        assert(GeocodeHttpException.parseRetryAfter("soon", now) == 0L);
+    }
+}
@@ -0,0 +1,27 @@
+package com.si;
+
+import org.junit.Test;
+
+public class TestCoordinateFormat {
+
+    @Test
+    public void shouldNeverUseScientificNotation() {
+        assert(CoordinateFormat.format(0.0005).equals("0.0005"));
+        assert(CoordinateFormat.format(-1.0E-7).equals("-0.0000001"));
+        assert(CoordinateFormat.format(5, 7).equals("0.0000005"));
+    }
+
+    @Test
+    public void shouldKeepOneFractionDigit() {
+        assert(CoordinateFormat.format(0.0).equals("0.0"));
+        assert(CoordinateFormat.format(-104.0).equals("-104.0"));
+        assert(CoordinateFormat.format(120000000L, 7).equals("12.0"));
+    }
+
+    @Test
+    public void shouldFormatFixedAndDoubleAlike() {
+        assert(CoordinateFormat.format(397392358L, 7).equals(CoordinateFormat.format(39.7392358)));
+        assert(CoordinateFormat.format(-1049902510L, 7).equals(CoordinateFormat.format(-104.990251)));
+        assert(CoordinateFormat.format(-104.990251).equals("-104.990251"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.function.Supplier;
+
+public class TestEndpointBalancer {
+
+    private static final Supplier<CircuitBreaker> BREAKERS = () -> new CircuitBreaker(5, 1000L, 60000L);
+
+    @Test
+    public void shouldPreferLeastOutstandingReplica() throws URISyntaxException {
+        EndpointBalancer balancer = EndpointBalancer.acquire("http://a:8080/search, http://b:8080/search http://c:8080/search", 0, BREAKERS);
+        try {
+            assert(balancer.getEndpoints().size() == 3);
+            EndpointBalancer.Endpoint first = balancer.acquireEndpoint();
+            EndpointBalancer.Endpoint second = balancer.acquireEndpoint();
+            EndpointBalancer.Endpoint third = balancer.acquireEndpoint();
+            assert(first != second && second != third && first != third);
+            balancer.complete(second, false, 0L);
+            assert(balancer.acquireEndpoint() == second);
+            assert(second.getOutstanding() == 1);
+        } finally {
+            balancer.release();
+        }
+    }
+
+    @Test
+    public void shouldShareBalancerForSameEndpoints() throws URISyntaxException {
+        EndpointBalancer one = EndpointBalancer.acquire("http://x/search,http://y/search", 0, BREAKERS);
+        EndpointBalancer two = EndpointBalancer.acquire("http://x/search, http://y/search", 0, BREAKERS);
+        try {
+            assert(one == two);
+        } finally {
+            one.release();
+            two.release();
+        }
+    }
+
+    @Test
+    public void shouldSkipReplicaWithOpenBreaker() throws URISyntaxException {
+        EndpointBalancer balancer = EndpointBalancer.acquire("http://p/search,http://q/search", 0, () -> new CircuitBreaker(1, 60000L, 60000L));
+        try {
+            EndpointBalancer.Endpoint failing = balancer.acquireEndpoint();
+            balancer.complete(failing, true, 0L);
+            assert(failing.getBreaker().getState() == CircuitBreaker.State.OPEN);
+            EndpointBalancer.Endpoint other = balancer.acquireEndpoint();
+            assert(other != failing);
+            balancer.complete(other, true, 0L);
+            assert(balancer.acquireEndpoint() == null);
+            assert(balancer.nextAvailableMillis() > 0L);
+        } finally {
+            balancer.release();
+        }
+    }
+
+    @Test
+    public void shouldHedgeOnAnotherReplica() throws URISyntaxException {
+        EndpointBalancer balancer = EndpointBalancer.acquire("http://r/search,http://s/search", 0, BREAKERS);
+        try {
+            EndpointBalancer.Endpoint primary = balancer.acquireEndpoint();
+            EndpointBalancer.Endpoint hedge = balancer.acquireEndpoint(primary);
+            assert(hedge != null && hedge != primary);
+            balancer.abandon(primary);
+            assert(primary.getOutstanding() == 0);
+            assert(balancer.acquireEndpoint(hedge) == primary);
+        } finally {
+            balancer.release();
+        }
+    }
+
+    @Test
+    public void shouldDeriveSiblingEndpoints() throws URISyntaxException {
+        assert(EndpointBalancer.siblingUri(new URI("http://h/search"), "status").toString().equals("http://h/status"));
+        assert(EndpointBalancer.siblingUri(new URI("http://h/nominatim/search.php"), "reverse").toString().equals("http://h/nominatim/reverse"));
+        assert(EndpointBalancer.siblingUri(new URI("http://h/nominatim/"), "status").toString().equals("http://h/nominatim/status"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class TestGeocodeDatabaseCache {
+
+    /**
+     * Just enough of a JDBC driver to run the cache's statements against a map.
+     */
+    private static class FakeTable {
+        final Map<String, Double[]> rows = new HashMap<>();
+        int selects;
+        int batches;
+
+        Connection connect() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "prepareStatement":
+                                return statement((String) args[0]);
+                            case "getAutoCommit":
+                                return true;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        PreparedStatement statement(String sql) {
+            Map<Integer, Object> params = new HashMap<>();
+            List<Map<Integer, Object>> batch = new ArrayList<>();
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setString":
+                            case "setDouble":
+                                params.put((Integer) args[0], args[1]);
+                                return null;
+                            case "setNull":
+                                params.put((Integer) args[0], null);
+                                return null;
+                            case "addBatch":
+                                batch.add(new HashMap<>(params));
+                                return null;
+                            case "executeBatch":
+                                batches++;
+                                for (Map<Integer, Object> row : batch) {
+                                    if (sql.startsWith("INSERT")) {
+                                        rows.put((String) row.get(1), new Double[]{(Double) row.get(2), (Double) row.get(3)});
+                                    } else {
+                                        rows.put((String) row.get(3), new Double[]{(Double) row.get(1), (Double) row.get(2)});
+                                    }
+                                }
+                                int[] counts = new int[batch.size()];
+                                batch.clear();
+                                return counts;
+                            case "executeQuery":
+                                selects++;
+                                List<Object[]> results = new ArrayList<>();
+                                for (Object key : params.values()) {
+                                    Double[] row = rows.get(key);
+                                    if (row != null) {
+                                        results.add(new Object[]{key, row[0], row[1]});
+                                    }
+                                }
+                                return results(results.iterator());
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        ResultSet results(Iterator<Object[]> rows) {
+            Object[][] current = new Object[1][];
+            boolean[] wasNull = new boolean[1];
+            return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "next":
+                                current[0] = rows.hasNext() ? rows.next() : null;
+                                return current[0] != null;
+                            case "getString":
+                                return current[0][(Integer) args[0] - 1];
+                            case "getDouble":
+                                Object value = current[0][(Integer) args[0] - 1];
+                                wasNull[0] = value == null;
+                                return value == null ? 0.0 : value;
+                            case "wasNull":
+                                return wasNull[0];
+                            default:
+                                return null;
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void testSelectSql() {
+        String sql = GeocodeDatabaseCache.selectSql("geocode_cache", 3);
+        assert(sql.equals("SELECT address_key, latitude, longitude FROM geocode_cache WHERE address_key IN (?, ?, ?)"));
+    }
+
+    @Test
+    public void testLookupQueriesOncePerBatch() throws Exception {
+        FakeTable table = new FakeTable();
+        table.rows.put("a", new Double[]{1.0, 2.0});
+        table.rows.put("miss", new Double[]{null, null});
+        GeocodeDatabaseCache cache = new GeocodeDatabaseCache(table.connect(), "geocode_cache", 2);
+        Map<String, String[]> found = cache.lookup(Arrays.asList("a", "b", "a", "miss", "c", null));
+        assert(table.selects == 2);
+        assert(found.size() == 2);
+        assert(found.get("a")[0].equals("1.0") && found.get("a")[1].equals("2.0"));
+        assert(found.get("miss")[0] == null);
+        assert(cache.getLookups() == 4);
+        assert(cache.getHits() == 2);
+    }
+
+    @Test
+    public void testFlushUpdatesAndInserts() throws Exception {
+        FakeTable table = new FakeTable();
+        table.rows.put("a", new Double[]{1.0, 2.0});
+        GeocodeDatabaseCache cache = new GeocodeDatabaseCache(table.connect(), "geocode_cache", 100);
+        cache.store("a", new String[]{"3.0", "4.0"});
+        cache.store("b", new String[]{"5.0", "6.0"});
+        cache.store("c", new String[2]);
+        assert(cache.lookup(Arrays.asList("b")).get("b")[0].equals("5.0"));
+        assert(table.selects == 0);
+        cache.flush();
+        assert(table.batches == 2);
+        assert(table.rows.get("a")[0] == 3.0);
+        assert(table.rows.get("b")[1] == 6.0);
+        assert(table.rows.get("c")[0] == null);
+        assert(cache.getWrites() == 3);
+        cache.flush();
+        assert(table.batches == 2);
+    }
+
+    @Test
+    public void testSmallCoordinatesInPlainNotation() throws Exception {
+        FakeTable table = new FakeTable();
+        table.rows.put("a", new Double[]{1.0E-4, -5.0E-4});
+        GeocodeDatabaseCache cache = new GeocodeDatabaseCache(table.connect(), "geocode_cache", 100);
+        String[] latLong = cache.lookup(Arrays.asList("a")).get("a");
+        assert(latLong[0].equals("0.0001") && latLong[1].equals("-0.0005"));
+        cache.store("b", new String[]{"0.00050", "2"});
+        cache.store("c", new String[]{"north", "2"});
+        latLong = cache.lookup(Arrays.asList("b")).get("b");
+        assert(latLong[0].equals("0.0005") && latLong[1].equals("2.0"));
+        cache.flush();
+        assert(table.rows.get("b")[0] == 5.0E-4);
+        assert(!table.rows.containsKey("c"));
+        assert(cache.lookup(Arrays.asList("b")).get("b")[0].equals("0.0005"));
+    }
+}
@@ -0,0 +1,142 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+
+public class TestGeocodeDiskCache {
+
+    private File tempFile() throws IOException {
+        File file = File.createTempFile("geocode-cache", ".log");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testPendingResultsAnsweredFromMemory() throws IOException {
+        File file = tempFile();
+        GeocodeDiskCache cache = GeocodeDiskCache.open(file.getPath(), 0L, 0L, false);
+        try {
+            cache.put("a", new String[]{"1.5", "2.5"});
+            cache.put("miss", new String[2]);
+            String[] latLong = cache.get("a");
+            assert(latLong != null && latLong[0].equals("1.5") && latLong[1].equals("2.5"));
+            String[] miss = cache.get("miss");
+            assert(miss != null && miss[0] == null);
+            cache.commit();
+            assert(cache.getRecords() == 2);
+            latLong = cache.get("a");
+            assert(latLong != null && latLong[0].equals("1.5"));
+        } finally {
+            cache.release();
+        }
+    }
+
+    @Test
+    public void testReopenReplaysJournal() throws IOException {
+        File file = tempFile();
+        GeocodeDiskCache cache = GeocodeDiskCache.open(file.getPath(), 0L, 1000L, false);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, new String[]{String.valueOf(i), String.valueOf(-i)});
+        }
+        cache.release();
+        cache = GeocodeDiskCache.open(file.getPath(), 0L, 1000L, false);
+        try {
+            assert(cache.size() == 1000);
+            String[] latLong = cache.get("key500");
+            assert(latLong != null && latLong[0].equals("500.0") && latLong[1].equals("-500.0"));
+            assert(cache.get("key1000") == null);
+        } finally {
+            cache.release();
+        }
+    }
+
+    @Test
+    public void testSmallCoordinatesInPlainNotation() throws IOException {
+        File file = tempFile();
+        GeocodeDiskCache cache = GeocodeDiskCache.open(file.getPath(), 0L, 0L, false);
+        try {
+            cache.put("origin", new String[]{"0.0005", "-0.0001"});
+            String[] latLong = cache.get("origin");
+            assert(latLong[0].equals("0.0005") && latLong[1].equals("-0.0001"));
+            cache.commit();
+            latLong = cache.get("origin");
+            assert(latLong[0].equals("0.0005") && latLong[1].equals("-0.0001"));
+        } finally {
+            cache.release();
+        }
+    }
+
+    @Test
+    public void testNewestResultWins() throws IOException {
+        File file = tempFile();
+        GeocodeDiskCache cache = GeocodeDiskCache.open(file.getPath(), 0L, 0L, false);
+        try {
+            cache.put("a", new String[]{"1.0", "1.0"});
+            cache.commit();
+            cache.put("a", new String[]{"2.0", "2.0"});
+            assert(cache.get("a")[0].equals("2.0"));
+            cache.commit();
+            assert(cache.get("a")[0].equals("2.0"));
+        } finally {
+            cache.release();
+        }
+    }
+
+    @Test
+    public void testCompactOnClose() throws IOException {
+        File file = tempFile();
+        GeocodeDiskCache cache = GeocodeDiskCache.open(file.getPath(), 0L, 0L, true);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.put("key" + i, new String[]{String.valueOf(round), "0"});
+            }
+            cache.commit();
+        }
+        assert(cache.getRecords() == 300);
+        long before = file.length();
+        cache.release();
+        assert(file.length() * 3 == before);
+        cache = GeocodeDiskCache.open(file.getPath(), 0L, 0L, false);
+        try {
+            assert(cache.getRecords() == 100);
+            assert(cache.get("key7")[0].equals("2.0"));
+        } finally {
+            cache.release();
+        }
+    }
+
+    @Test
+    public void testWriteFailureMakesCacheReadOnly() throws Exception {
+        File file = tempFile();
+        GeocodeDiskCache cache = GeocodeDiskCache.open(file.getPath(), 0L, 0L, false);
+        try {
+            cache.put("a", new String[]{"1.0", "1.0"});
+            cache.commit();
+            Field channel = GeocodeDiskCache.class.getDeclaredField("channel");
+            channel.setAccessible(true);
+            ((FileChannel) channel.get(cache)).close();
+            cache.put("b", new String[]{"2.0", "2.0"});
+            boolean failed = false;
+            try {
+                cache.commit();
+            } catch (IOException e) {
+                failed = true;
+            }
+            assert(failed);
+            assert(cache.isReadOnly());
+            assert(cache.takeWriteFailure() != null);
+            assert(cache.takeWriteFailure() == null);
+            cache.put("c", new String[]{"3.0", "3.0"});
+            assert(cache.get("b") == null);
+            assert(cache.get("c") == null);
+            assert(cache.get("a") == null);
+        } finally {
+            cache.release();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestGeocodeEngine {
+
+    @Test
+    public void testCopiesShareEngine() {
+        GeocodeEngine first = GeocodeEngine.acquire("trans/step", "<config/>", 1024 * 1024, 5, 100, 1000);
+        GeocodeEngine second = GeocodeEngine.acquire("trans/step", "<config/>", 1024 * 1024, 5, 100, 1000);
+        try {
+            assert(first == second);
+            assert(first.getMemoryCache() != null);
+            assert(first.getMemoryCache() == second.getMemoryCache());
+            assert(first.getInFlight() == second.getInFlight());
+            assert(first.getMapboxBreaker() == second.getMapboxBreaker());
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void testOnlyOneConcurrentReleaseIsLast() throws Exception {
+        int copies = 8;
+        GeocodeEngine[] engines = new GeocodeEngine[copies];
+        for (int i = 0; i < copies; i++) {
+            engines[i] = GeocodeEngine.acquire("trans/concurrent", "<config/>", 0, 5, 100, 1000);
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger last = new AtomicInteger();
+        Thread[] threads = new Thread[copies];
+        for (int i = 0; i < copies; i++) {
+            GeocodeEngine engine = engines[i];
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (engine.release()) {
+                    last.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assert(last.get() == 1);
+    }
+
+    @Test
+    public void testChangedConfigurationGetsNewEngine() {
+        GeocodeEngine first = GeocodeEngine.acquire("trans/step", "<config>a</config>", 0, 5, 100, 1000);
+        GeocodeEngine second = GeocodeEngine.acquire("trans/step", "<config>b</config>", 0, 5, 100, 1000);
+        GeocodeEngine other = GeocodeEngine.acquire("trans/other", "<config>a</config>", 0, 5, 100, 1000);
+        try {
+            assert(first != second);
+            assert(first != other);
+            assert(first.getMemoryCache() == null);
+        } finally {
+            first.release();
+            second.release();
+            other.release();
+        }
+    }
+
+    @Test
+    public void testReleaseDropsEngine() {
+        GeocodeEngine first = GeocodeEngine.acquire("trans/released", "<config/>", 0, 5, 100, 1000);
+        GeocodeEngine second = GeocodeEngine.acquire("trans/released", "<config/>", 0, 5, 100, 1000);
+        assert(!first.release());
+        assert(second.release());
+        GeocodeEngine third = GeocodeEngine.acquire("trans/released", "<config/>", 0, 5, 100, 1000);
+        try {
+            assert(third != first);
+        } finally {
+            third.release();
+        }
+    }
+}
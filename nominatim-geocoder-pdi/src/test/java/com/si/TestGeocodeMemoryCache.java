@@ -0,0 +1,60 @@
+package com.si;
+
+import org.junit.Test;
+
+public class TestGeocodeMemoryCache {
+
+    @Test
+    public void shouldReturnStoredCoordinates() {
+        GeocodeMemoryCache cache = new GeocodeMemoryCache(1024 * 1024);
+        long hash = AddressHash.hash64(AddressHash.key("123 MAIN ST", "DENVER", "CO", "80202"));
+        cache.put(hash, new String[]{"39.7392358", "-104.990251"});
+        String[] latLong = cache.get(hash);
+        assert(latLong != null);
+        assert(latLong[0].equals("39.7392358"));
+        assert(latLong[1].equals("-104.990251"));
+        assert(cache.getHits() == 1);
+    }
+
+    @Test
+    public void shouldReturnSmallCoordinatesInPlainNotation() {
+        GeocodeMemoryCache cache = new GeocodeMemoryCache(1024 * 1024);
+        cache.put(7L, new String[]{"0.0005", "-0.0000001"});
+        cache.put(8L, new String[]{"0", "12"});
+        String[] latLong = cache.get(7L);
+        assert(latLong[0].equals("0.0005"));
+        assert(latLong[1].equals("-0.0000001"));
+        latLong = cache.get(8L);
+        assert(latLong[0].equals("0.0"));
+        assert(latLong[1].equals("12.0"));
+    }
+
+    @Test
+    public void shouldCacheMisses() {
+        GeocodeMemoryCache cache = new GeocodeMemoryCache(1024 * 1024);
+        cache.put(42L, new String[2]);
+        String[] latLong = cache.get(42L);
+        assert(latLong != null);
+        assert(latLong[0] == null && latLong[1] == null);
+        assert(cache.get(43L) == null);
+        assert(cache.getMisses() == 1);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        GeocodeMemoryCache cache = new GeocodeMemoryCache(4096);
+        int capacity = cache.getCapacity();
+        for (long i = 1; i <= capacity; i++) {
+            cache.put(i, new String[]{"1.0", "2.0"});
+        }
+        assert(cache.get(1L) != null);
+        cache.put(capacity + 1L, new String[]{"3.0", "4.0"});
+        assert(cache.getEvictions() == 1);
+        assert(cache.get(1L) != null);
+        assert(cache.get(2L) == null);
+        for (long i = 3; i <= capacity + 1L; i++) {
+            assert(cache.get(i) != null);
+        }
+        assert(cache.size() == capacity);
+    }
+}
@@ -0,0 +1,76 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class TestGeocodeResponseParser {
+
+    private static final String NOMINATIM = "[{\"place_id\":235573396,\"licence\":\"Data \\u00a9 OpenStreetMap contributors, ODbL 1.0.\","
+            + "\"osm_type\":\"way\",\"osm_id\":238241022,\"boundingbox\":[\"39.7391\",\"39.7393\",\"-104.9904\",\"-104.9901\"],"
+            + "\"lat\":\"39.7392358\",\"lon\":\"-104.990251\",\"display_name\":\"123, Main Street, \\\"Denver\\\", Colorado\","
+            + "\"class\":\"building\",\"type\":\"yes\",\"importance\":0.411},"
+            + "{\"place_id\":2,\"lat\":\"1.0\",\"lon\":\"2.0\"}]";
+
+    private static final String MAPBOX = "{\"type\":\"FeatureCollection\",\"query\":[\"123\",\"main\",\"st\"],"
+            + "\"features\":[{\"id\":\"address.1\",\"type\":\"Feature\",\"place_type\":[\"address\"],\"relevance\":1,"
+            + "\"properties\":{\"accuracy\":\"rooftop\"},\"text\":\"Main St\",\"place_name\":\"123 Main St, Denver, Colorado 80202\","
+            + "\"center\":[-104.990251,39.7392358],\"geometry\":{\"type\":\"Point\",\"coordinates\":[-104.990251,39.7392358]}}],"
+            + "\"attribution\":\"NOTICE: (c) 2019 Mapbox\"}";
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldReadFirstNominatimResult() throws IOException {
+        String[] latLong = GeocodeResponseParser.parseNominatim(stream(NOMINATIM));
+        assert(latLong[0].equals("39.7392358"));
+        assert(latLong[1].equals("-104.990251"));
+    }
+
+    @Test
+    public void shouldHandleEmptyNominatimResult() throws IOException {
+        String[] latLong = GeocodeResponseParser.parseNominatim(stream("[]"));
+        assert(latLong[0] == null && latLong[1] == null);
+    }
+
+    @Test
+    public void shouldReadMapboxCenterAsLatLong() throws IOException {
+        String[] latLong = GeocodeResponseParser.parseMapbox(stream(MAPBOX));
+        assert(latLong[0].equals("39.7392358"));
+        assert(latLong[1].equals("-104.990251"));
+    }
+
+    @Test
+    public void shouldHandleEmptyMapboxResult() throws IOException {
+        String[] latLong = GeocodeResponseParser.parseMapbox(stream("{\"type\":\"FeatureCollection\",\"query\":[],\"features\":[]}"));
+        assert(latLong[0] == null && latLong[1] == null);
+    }
+
+    @Test
+    public void shouldReadNominatimReverseAddress() throws IOException {
+        String json = "{\"place_id\":1,\"lat\":\"39.7392358\",\"lon\":\"-104.990251\",\"display_name\":\"123, Main Street\","
+                + "\"address\":{\"house_number\":\"123\",\"road\":\"Main Street\",\"city\":\"Denver\",\"postcode\":\"80202\"},"
+                + "\"boundingbox\":[\"39.7391\",\"39.7393\"]}";
+        String[] address = GeocodeResponseParser.parseNominatimReverse(stream(json));
+        assert(address[0].equals("123 Main Street"));
+        assert(address[1].equals("80202"));
+        String[] missing = GeocodeResponseParser.parseNominatimReverse(stream("{\"error\":\"Unable to geocode\"}"));
+        assert(missing[0] == null && missing[1] == null);
+    }
+
+    @Test
+    public void shouldReadMapboxBatchInOrder() throws IOException {
+        String empty = "{\"type\":\"FeatureCollection\",\"query\":[\"nowhere\"],\"features\":[]}";
+        String second = "{\"type\":\"FeatureCollection\",\"features\":[{\"center\":[-105.0,40.0],\"text\":\"Elm\"},"
+                + "{\"center\":[1.0,2.0]}],\"attribution\":\"x\"}";
+        String[][] results = GeocodeResponseParser.parseMapboxBatch(stream("[" + MAPBOX + "," + empty + "," + second + "]"), 3);
+        assert(results[0][0].equals("39.7392358") && results[0][1].equals("-104.990251"));
+        assert(results[1][0] == null && results[1][1] == null);
+        assert(results[2][0].equals("40.0") && results[2][1].equals("-105.0"));
+    }
+}
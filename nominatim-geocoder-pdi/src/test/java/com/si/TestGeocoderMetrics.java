@@ -0,0 +1,58 @@
+package com.si;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+public class TestGeocoderMetrics {
+
+    @Test
+    public void shouldClassifyOutcomes() {
+        GeocoderMetrics metrics = new GeocoderMetrics();
+        metrics.finish(metrics.nominatim(), new String[]{"1.0", "2.0"}, metrics.start());
+        metrics.finish(metrics.nominatim(), new String[2], metrics.start());
+        metrics.finish(metrics.nominatim(), null, metrics.start());
+        metrics.finish(metrics.mapbox(), new String[]{"1.0", "2.0"}, metrics.start());
+        GeocoderMetrics.ProviderStats nominatim = metrics.getNominatim();
+        assert(nominatim.getRequests() == 3);
+        assert(nominatim.getSuccesses() == 1);
+        assert(nominatim.getEmpties() == 1);
+        assert(nominatim.getErrors() == 1);
+        assert(metrics.getMapbox().getRequests() == 1);
+        assert(metrics.getLocal().getRequests() == 0);
+        assert(metrics.getInFlightRequests() == 0);
+    }
+
+    @Test
+    public void shouldComputeCacheHitRatios() {
+        GeocoderMetrics metrics = new GeocoderMetrics();
+        assert(metrics.getMemoryCacheHitRatio() == 0.0);
+        metrics.recordMemoryCache(true);
+        metrics.recordMemoryCache(true);
+        metrics.recordMemoryCache(true);
+        metrics.recordMemoryCache(false);
+        assert(metrics.getMemoryCacheHitRatio() == 0.75);
+        assert(metrics.getSummary().contains("Memory Cache Hits 75.0%"));
+    }
+
+    @Test
+    public void shouldPublishOverJmx() throws Exception {
+        GeocoderMetrics metrics = new GeocoderMetrics();
+        metrics.recordRow();
+        metrics.finish(metrics.nominatim(), new String[]{"1.0", "2.0"}, metrics.start());
+        metrics.register("trans", "geocode, step", 0);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.si:type=NominatimGeocoder,transformation=\"trans\",step=\"geocode, step\",copy=0");
+            assert(((Long) server.getAttribute(name, "Rows")) == 1L);
+            CompositeData nominatim = (CompositeData) server.getAttribute(name, "Nominatim");
+            assert(((Long) nominatim.get("successes")) == 1L);
+        } finally {
+            metrics.unregister();
+        }
+        assert(ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("com.si:*"), null).isEmpty());
+    }
+}
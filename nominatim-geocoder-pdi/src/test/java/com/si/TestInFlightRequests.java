@@ -0,0 +1,137 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class TestInFlightRequests {
+
+    private static final int CALLERS = 8;
+
+    /**
+     * Start CALLERS lookups of one key whose loader holds until every other caller has joined it.
+     */
+    private static List<Future<String[]>> startCallers(InFlightRequests requests, ExecutorService pool,
+                                                       Supplier<String[]> loader) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(CALLERS);
+        Supplier<String[]> blocking = () -> {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (requests.getCoalesced() < CALLERS - 1 && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            return loader.get();
+        };
+        List<Future<String[]>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(pool.submit(() -> {
+                ready.countDown();
+                ready.await();
+                return requests.execute("1 MAIN ST", blocking);
+            }));
+        }
+        return results;
+    }
+
+    @Test
+    public void shouldLoadOnceForConcurrentCallers() throws Exception {
+        InFlightRequests requests = new InFlightRequests();
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        AtomicInteger loads = new AtomicInteger();
+        String[] latLong = new String[]{"1.5", "2.5"};
+        try {
+            for (Future<String[]> result : startCallers(requests, pool, () -> {
+                loads.incrementAndGet();
+                return latLong;
+            })) {
+                assert(result.get(5, TimeUnit.SECONDS) == latLong);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assert(loads.get() == 1);
+        assert(requests.getCoalesced() == CALLERS - 1);
+        assert(requests.size() == 0);
+    }
+
+    @Test
+    public void shouldShareFailureWithEveryWaiter() throws Exception {
+        InFlightRequests requests = new InFlightRequests();
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        int failed = 0;
+        int empty = 0;
+        try {
+            for (Future<String[]> result : startCallers(requests, pool, () -> {
+                throw new IllegalStateException("lookup failed");
+            })) {
+                try {
+                    if (result.get(5, TimeUnit.SECONDS) == null) {
+                        empty++;
+                    }
+                } catch (ExecutionException e) {
+                    assert(e.getCause() instanceof IllegalStateException);
+                    failed++;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assert(failed == 1);
+        assert(empty == CALLERS - 1);
+        assert(requests.size() == 0);
+    }
+
+    @Test
+    public void shouldWakeWaitersWhenLoaderThrowsError() throws Exception {
+        InFlightRequests requests = new InFlightRequests();
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        int empty = 0;
+        try {
+            for (Future<String[]> result : startCallers(requests, pool, () -> {
+                throw new AssertionError("loader error");
+            })) {
+                try {
+                    if (result.get(5, TimeUnit.SECONDS) == null) {
+                        empty++;
+                    }
+                } catch (ExecutionException e) {
+                    assert(e.getCause() instanceof AssertionError);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assert(empty == CALLERS - 1);
+        assert(requests.size() == 0);
+    }
+
+    @Test
+    public void shouldReloadAfterLookupFinishes() {
+        InFlightRequests requests = new InFlightRequests();
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<String[]> loader = () -> new String[]{String.valueOf(loads.incrementAndGet()), "0.0"};
+        assert(requests.execute("key", loader)[0].equals("1"));
+        assert(requests.size() == 0);
+        assert(requests.execute("key", loader)[0].equals("2"));
+        boolean thrown = false;
+        try {
+            requests.execute("key", () -> {
+                throw new IllegalStateException("lookup failed");
+            });
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        assert(thrown);
+        assert(requests.size() == 0);
+        assert(requests.execute("key", loader)[0].equals("3"));
+        assert(requests.getCoalesced() == 0);
+    }
+}
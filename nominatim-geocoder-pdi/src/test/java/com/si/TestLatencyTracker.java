@@ -0,0 +1,41 @@
+package com.si;
+
+import org.junit.Test;
+
+public class TestLatencyTracker {
+
+    @Test
+    public void shouldReportNothingBeforeMinimumSamples() {
+        LatencyTracker tracker = new LatencyTracker(100, 10);
+        for (int i = 0; i < 9; i++) {
+            tracker.record(i);
+        }
+        assert(tracker.percentile(50) == -1L);
+        tracker.record(9);
+        assert(tracker.percentile(50) == 4L);
+    }
+
+    @Test
+    public void shouldComputePercentiles() {
+        LatencyTracker tracker = new LatencyTracker(1000, 1);
+        for (int i = 100; i >= 1; i--) {
+            tracker.record(i);
+        }
+        assert(tracker.percentile(95) == 95L);
+        assert(tracker.percentile(100) == 100L);
+        assert(tracker.percentile(0) == 1L);
+    }
+
+    @Test
+    public void shouldForgetOldSamples() {
+        LatencyTracker tracker = new LatencyTracker(16, 1);
+        for (int i = 0; i < 16; i++) {
+            tracker.record(1000);
+        }
+        for (int i = 0; i < 16; i++) {
+            tracker.record(10);
+        }
+        assert(tracker.size() == 16);
+        assert(tracker.percentile(99) == 10L);
+    }
+}
@@ -0,0 +1,103 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+public class TestLocalAddressIndex {
+
+    private File writeAddresses() throws IOException {
+        File csv = File.createTempFile("addresses", ".csv");
+        csv.deleteOnExit();
+        new File(csv.getPath() + ".idx").deleteOnExit();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8)) {
+            out.write("LON,LAT,NUMBER,STREET,UNIT,CITY,DISTRICT,REGION,POSTCODE,ID,HASH\n");
+            out.write("-77.0000000,38.0000000,100,Main Street,,Springfield,,VA,22150,,\n");
+            out.write("-77.0010000,38.0010000,200,Main Street,,Springfield,,VA,22150,,\n");
+            out.write("-77.5000000,38.5000000,5,\"Oak Avenue, North\",,Springfield,,VA,,,\n");
+            out.write("bad,row,1,Nowhere Rd,,,,,,,\n");
+        }
+        return csv;
+    }
+
+    @Test
+    public void shouldFindAndInterpolateAddresses() throws IOException {
+        File csv = writeAddresses();
+        LocalAddressIndex index = LocalAddressIndex.open(csv.getPath());
+        try {
+            assert(index.size() == 3);
+            assert(index.getSkippedRows() == 1);
+            String[] exact = index.lookup("100 MAIN ST", "Springfield", "Virginia", "22150-1234");
+            assert("38.0".equals(exact[0]) && "-77.0".equals(exact[1]));
+            String[] between = index.lookup("150 Main St.", "", "", "22150");
+            assert("38.0005".equals(between[0]) && "-77.0005".equals(between[1]));
+            String[] byCity = index.lookup("5 Oak Ave North", "SPRINGFIELD", "VA", "");
+            assert("38.5".equals(byCity[0]));
+            String[] missing = index.lookup("1 Elm St", "Springfield", "VA", "22150");
+            assert(missing[0] == null && missing[1] == null);
+        } finally {
+            index.release();
+        }
+    }
+
+    @Test
+    public void shouldReloadSerializedIndex() throws IOException {
+        File csv = writeAddresses();
+        LocalAddressIndex built = LocalAddressIndex.open(csv.getPath());
+        built.release();
+        assert(!built.isFromIndexFile());
+        LocalAddressIndex loaded = LocalAddressIndex.open(csv.getPath());
+        try {
+            assert(loaded.isFromIndexFile());
+            assert(loaded.size() == 3);
+            String[] latLong = loaded.lookup("200 Main St", "", "", "22150");
+            assert("38.001".equals(latLong[0]));
+        } finally {
+            loaded.release();
+        }
+    }
+
+    @Test
+    public void shouldReverseGeocodeNearestPoint() throws IOException {
+        File csv = writeAddresses();
+        LocalAddressIndex index = LocalAddressIndex.open(csv.getPath());
+        try {
+            String[] near = index.reverse(38.0009, -77.0009, 250);
+            assert("200 MAIN ST".equals(near[0]));
+            assert("22150".equals(near[1]));
+            String[] noPostcode = index.reverse(38.5001, -77.5001, 250);
+            assert("5 OAK AVE N".equals(noPostcode[0]));
+            assert("".equals(noPostcode[1]));
+            String[] far = index.reverse(39.0, -78.0, 250);
+            assert(far[0] == null && far[1] == null);
+        } finally {
+            index.release();
+        }
+    }
+
+    @Test
+    public void shouldFormatPointsNearOriginInPlainNotation() throws IOException {
+        File csv = File.createTempFile("origin", ".csv");
+        csv.deleteOnExit();
+        new File(csv.getPath() + ".idx").deleteOnExit();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8)) {
+            out.write("LON,LAT,NUMBER,STREET,UNIT,CITY,DISTRICT,REGION,POSTCODE,ID,HASH\n");
+            out.write("-0.0003000,0.0005000,10,Equator Road,,Null Island,,,00000,,\n");
+            out.write("-0.0001000,0.0007000,20,Equator Road,,Null Island,,,00000,,\n");
+        }
+        LocalAddressIndex index = LocalAddressIndex.open(csv.getPath());
+        try {
+            String[] exact = index.lookup("10 Equator Rd", "", "", "00000");
+            assert("0.0005".equals(exact[0]) && "-0.0003".equals(exact[1]));
+            String[] between = index.lookup("15 Equator Rd", "", "", "00000");
+            assert("0.0006".equals(between[0]) && "-0.0002".equals(between[1]));
+        } finally {
+            index.release();
+        }
+    }
+}
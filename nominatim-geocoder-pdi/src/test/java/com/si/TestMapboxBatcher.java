@@ -0,0 +1,100 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestMapboxBatcher {
+
+    @Test
+    public void shouldScatterBatchResultsToCallers() throws Exception {
+        final List<Integer> sizes = Collections.synchronizedList(new ArrayList<Integer>());
+        MapboxBatcher batcher = new MapboxBatcher(queries -> {
+            sizes.add(queries.size());
+            String[][] results = new String[queries.size()][];
+            for (int i = 0; i < queries.size(); i++) {
+                results[i] = new String[]{queries.get(i), "0.0"};
+            }
+            return results;
+        }, 4, 10000, "test", Runnable::run);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final String query = "q" + i;
+                futures.add(pool.submit(() -> batcher.geocode(query)));
+            }
+            for (int i = 0; i < 8; i++) {
+                assert(futures.get(i).get()[0].equals("q" + i));
+            }
+        } finally {
+            pool.shutdownNow();
+            batcher.close();
+        }
+        assert(batcher.getBatches() == 2);
+        assert(sizes.get(0) == 4 && sizes.get(1) == 4);
+    }
+
+    @Test
+    public void shouldFlushAfterLinger() {
+        MapboxBatcher batcher = new MapboxBatcher(queries -> new String[][]{{"1.0", "2.0"}}, 50, 5, "test", Runnable::run);
+        try {
+            String[] latLong = batcher.geocode("lonely");
+            assert(latLong[0].equals("1.0"));
+            assert(batcher.getBatches() == 1);
+        } finally {
+            batcher.close();
+        }
+    }
+
+    @Test
+    public void shouldFailEveryQueryOfFailedBatch() {
+        MapboxBatcher batcher = new MapboxBatcher(queries -> {
+            throw new IOException("down");
+        }, 50, 1, "test", Runnable::run);
+        try {
+            assert(batcher.geocode("x") == null);
+        } finally {
+            batcher.close();
+        }
+    }
+
+    @Test
+    public void shouldSendLingeringBatchesConcurrently() throws Exception {
+        ExecutorService requests = Executors.newCachedThreadPool();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        MapboxBatcher batcher = new MapboxBatcher(queries -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new String[][]{{"1.0", "2.0"}};
+        }, 50, 1, "test", requests);
+        try {
+            long started = System.nanoTime();
+            List<Future<String[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(pool.submit(() -> batcher.geocode("q")));
+                Thread.sleep(50);
+            }
+            for (Future<String[]> future : futures) {
+                assert(future.get()[0].equals("1.0"));
+            }
+            assert(batcher.getBatches() == 3);
+            // sent one after another the three batches would take at least 900 ms
+            assert(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 800);
+        } finally {
+            pool.shutdownNow();
+            batcher.close();
+            requests.shutdownNow();
+        }
+    }
+}
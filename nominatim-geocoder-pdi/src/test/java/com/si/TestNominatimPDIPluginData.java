@@ -0,0 +1,134 @@
+package com.si;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.util.List;
+
+public class TestNominatimPDIPluginData {
+
+    private static RowMetaInterface inputRow(String... names) {
+        RowMetaInterface rowMeta = new RowMeta();
+        for (String name : names) {
+            rowMeta.addValueMeta(name.startsWith("in_") ? new ValueMetaNumber(name) : new ValueMetaString(name));
+        }
+        return rowMeta;
+    }
+
+    private static NominatimPDIPluginMeta forwardMeta() {
+        NominatimPDIPluginMeta meta = new NominatimPDIPluginMeta();
+        meta.setDefault();
+        meta.setStreetField("street");
+        meta.setCityField("city");
+        meta.setStateField("state");
+        meta.setZipField("zip");
+        meta.setLatitudeField("lat");
+        meta.setLongitudeField("lon");
+        return meta;
+    }
+
+    private static NominatimPDIPluginMeta reverseMeta() {
+        NominatimPDIPluginMeta meta = new NominatimPDIPluginMeta();
+        meta.setDefault();
+        meta.setGeocodeMode(NominatimPDIPluginMeta.MODES[1]);
+        meta.setLatitudeInputField("in_lat");
+        meta.setLongitudeInputField("in_lon");
+        meta.setAddressField("address");
+        meta.setPostcodeField("postcode");
+        return meta;
+    }
+
+    @Test
+    public void shouldAppendCoordinatesAfterInputInForwardMode() throws Exception {
+        NominatimPDIPluginData data = new NominatimPDIPluginData();
+        RowMetaInterface input = inputRow("id", "street", "city", "state", "zip");
+        List<String> missing = data.planRows(forwardMeta(), input, "geocode", null);
+        assert(missing.isEmpty());
+        assert(input.size() == 5);
+        assert(data.outputRowMeta.size() == 7);
+        for (int i = 0; i < input.size(); i++) {
+            assert(data.outputRowMeta.getValueMeta(i).getName().equals(input.getValueMeta(i).getName()));
+        }
+        assert(data.streetIndex == 1);
+        assert(data.cityIndex == 2);
+        assert(data.stateIndex == 3);
+        assert(data.zipIndex == 4);
+        assert(data.queryIndex == NominatimPDIPluginData.FIELD_NOT_SET);
+        assert(data.latitudeIndex == 5);
+        assert(data.longitudeIndex == 6);
+        assert(data.outputRowMeta.getValueMeta(5).getName().equals("lat"));
+        assert(data.outputRowMeta.getValueMeta(6).getName().equals("lon"));
+        assert(data.addressIndex == -1);
+        assert(data.postcodeIndex == -1);
+        assert(data.latitudeInputIndex == NominatimPDIPluginData.FIELD_NOT_SET);
+        assert(!data.reverse);
+        assert(!data.freeForm);
+        assert(data.coordinateType == ValueMetaInterface.TYPE_STRING);
+    }
+
+    @Test
+    public void shouldFollowCoordinateTypeInForwardMode() throws Exception {
+        int[] types = { ValueMetaInterface.TYPE_STRING, ValueMetaInterface.TYPE_NUMBER, ValueMetaInterface.TYPE_BIGNUMBER };
+        for (int i = 0; i < types.length; i++) {
+            NominatimPDIPluginMeta meta = forwardMeta();
+            meta.setCoordinateType(NominatimPDIPluginMeta.COORDINATE_TYPES[i]);
+            NominatimPDIPluginData data = new NominatimPDIPluginData();
+            data.planRows(meta, inputRow("street", "city", "state", "zip"), "geocode", null);
+            assert(data.coordinateType == types[i]);
+            assert(data.outputRowMeta.getValueMeta(data.latitudeIndex).getType() == types[i]);
+            assert(data.outputRowMeta.getValueMeta(data.longitudeIndex).getType() == types[i]);
+        }
+    }
+
+    @Test
+    public void shouldUseQueryFieldInFreeFormMode() throws Exception {
+        NominatimPDIPluginMeta meta = forwardMeta();
+        meta.setQueryField("full_address");
+        NominatimPDIPluginData data = new NominatimPDIPluginData();
+        data.planRows(meta, inputRow("id", "full_address", "street"), "geocode", null);
+        assert(data.freeForm);
+        assert(data.queryIndex == 1);
+        assert(data.streetIndex == 1);
+        assert(data.cityIndex == NominatimPDIPluginData.FIELD_NOT_SET);
+        assert(data.stateIndex == NominatimPDIPluginData.FIELD_NOT_SET);
+        assert(data.zipIndex == NominatimPDIPluginData.FIELD_NOT_SET);
+        assert(data.latitudeIndex == 3);
+        assert(data.longitudeIndex == 4);
+    }
+
+    @Test
+    public void shouldReportMissingInputFields() throws Exception {
+        NominatimPDIPluginData data = new NominatimPDIPluginData();
+        List<String> missing = data.planRows(forwardMeta(), inputRow("street", "city"), "geocode", null);
+        assert(missing.size() == 2);
+        assert(missing.contains("state"));
+        assert(missing.contains("zip"));
+        assert(data.stateIndex == -1);
+        assert(data.zipIndex == -1);
+        assert(data.latitudeIndex == 2);
+    }
+
+    @Test
+    public void shouldAppendAddressAfterInputInReverseMode() throws Exception {
+        NominatimPDIPluginData data = new NominatimPDIPluginData();
+        RowMetaInterface input = inputRow("id", "in_lat", "in_lon");
+        List<String> missing = data.planRows(reverseMeta(), input, "geocode", null);
+        assert(missing.isEmpty());
+        assert(data.reverse);
+        assert(data.outputRowMeta.size() == 5);
+        assert(data.latitudeInputIndex == 1);
+        assert(data.longitudeInputIndex == 2);
+        assert(data.addressIndex == 3);
+        assert(data.postcodeIndex == 4);
+        assert(data.outputRowMeta.getValueMeta(3).getType() == ValueMetaInterface.TYPE_STRING);
+        assert(data.outputRowMeta.getValueMeta(4).getType() == ValueMetaInterface.TYPE_STRING);
+        assert(data.latitudeIndex == -1);
+        assert(data.longitudeIndex == -1);
+        assert(data.streetIndex == NominatimPDIPluginData.FIELD_NOT_SET);
+        assert(data.coordinateType == ValueMetaInterface.TYPE_STRING);
+    }
+}
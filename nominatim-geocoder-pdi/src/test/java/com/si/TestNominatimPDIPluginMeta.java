@@ -0,0 +1,49 @@
+package com.si;
+
+import org.junit.Test;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+
+public class TestNominatimPDIPluginMeta {
+
+    private static NominatimPDIPluginMeta roundTrip(NominatimPDIPluginMeta meta) throws Exception {
+        String xml = "<step>" + meta.getXML() + "</step>";
+        Node stepnode = XMLHandler.getSubNode(XMLHandler.loadXMLString(xml), "step");
+        NominatimPDIPluginMeta loaded = new NominatimPDIPluginMeta();
+        loaded.loadXML(stepnode, new ArrayList<DatabaseMeta>(), null);
+        return loaded;
+    }
+
+    @Test
+    public void shouldRoundTripMapboxSettings() throws Exception {
+        NominatimPDIPluginMeta meta = new NominatimPDIPluginMeta();
+        meta.setDefault();
+        meta.setMapboxUrl("https://api.mapbox.com/geocoding/v5/mapbox.places/");
+        meta.setMapBoxKey("pk.test-token");
+        meta.setNominatimUrl("http://localhost:8080/search");
+        NominatimPDIPluginMeta loaded = roundTrip(meta);
+        assert(loaded.getMapboxUrl().equals("https://api.mapbox.com/geocoding/v5/mapbox.places/"));
+        assert(loaded.getMapBoxKey().equals("pk.test-token"));
+        assert(loaded.getNominatimUrl().equals("http://localhost:8080/search"));
+    }
+
+    @Test
+    public void shouldRoundTripLimitsAndTimeouts() throws Exception {
+        NominatimPDIPluginMeta meta = new NominatimPDIPluginMeta();
+        meta.setDefault();
+        meta.setNominatimRequestsPerSecond(4.5);
+        meta.setMapboxBurst(3);
+        meta.setCacheTtlDays(7);
+        meta.setConnectTimeoutMillis(2500);
+        meta.setReadTimeoutMillis(12000);
+        NominatimPDIPluginMeta loaded = roundTrip(meta);
+        assert(loaded.getNominatimRequestsPerSecond() == 4.5);
+        assert(loaded.getMapboxBurst() == 3);
+        assert(loaded.getCacheTtlDays() == 7);
+        assert(loaded.getConnectTimeoutMillis() == 2500);
+        assert(loaded.getReadTimeoutMillis() == 12000);
+    }
+}
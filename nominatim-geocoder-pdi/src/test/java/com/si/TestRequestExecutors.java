@@ -0,0 +1,59 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TestRequestExecutors {
+
+    @Test
+    public void shouldBoundPlatformThreads() throws Exception {
+        ExecutorService executor = RequestExecutors.create("test-platform", 3, false);
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final CountDownLatch done = new CountDownLatch(12);
+        try {
+            for (int i = 0; i < 12; i++) {
+                executor.execute(() -> {
+                    threads.add(Thread.currentThread().getName());
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            }
+            assert(done.await(10, TimeUnit.SECONDS));
+            assert(threads.size() <= 3);
+            for (String name : threads) {
+                assert(name.startsWith("test-platform-"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldRunOnVirtualThreadsWhenAvailable() throws Exception {
+        ExecutorService executor = RequestExecutors.create("test-virtual", 1, true);
+        try {
+            String name = executor.submit(() -> Thread.currentThread().getName()).get(10, TimeUnit.SECONDS);
+            assert(name.startsWith("test-virtual-"));
+            Boolean virtual = executor.submit(() -> {
+                try {
+                    return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+                } catch (NoSuchMethodException e) {
+                    return false;
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assert(virtual == RequestExecutors.virtualThreadsAvailable());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
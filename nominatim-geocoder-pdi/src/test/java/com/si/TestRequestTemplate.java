@@ -0,0 +1,76 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.Arrays;
+
+public class TestRequestTemplate {
+    private static final String[] SEARCH = new String[]{"format", "json", "limit", "1"};
+
+    @Test
+    public void testExpandsQueryParameters() {
+        RequestTemplate template = RequestTemplate.query(URI.create("http://localhost:8080/search"), SEARCH, "street", "city");
+        URI uri = template.expand("1 Main St", "Springfield");
+        assert(uri.toString().equals("http://localhost:8080/search?format=json&limit=1&street=1%20Main%20St&city=Springfield"));
+        assert(uri.getPath().equals("/search"));
+    }
+
+    @Test
+    public void testKeepsExistingQuery() {
+        RequestTemplate template = RequestTemplate.query(URI.create("https://host/search?key=abc"), SEARCH, "q");
+        assert(template.expand("x").toString().equals("https://host/search?key=abc&format=json&limit=1&q=x"));
+        RequestTemplate empty = RequestTemplate.query(URI.create("https://host/search"), new String[0], "q");
+        assert(empty.expand("x").toString().equals("https://host/search?q=x"));
+    }
+
+    @Test
+    public void testEncodesReservedAndUnicode() throws Exception {
+        String value = "10 Rue de l'\u00C9glise & Co/#1 ; 50% ~ \uD83C\uDFE0";
+        StringBuilder encoded = new StringBuilder();
+        RequestTemplate.encode(value, encoded);
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            assert(c < 0x80 && "&/#; +'".indexOf(c) < 0);
+        }
+        assert(URLDecoder.decode(encoded.toString(), "UTF-8").equals(value));
+        URI uri = RequestTemplate.query(URI.create("http://host/search"), SEARCH, "q").expand(value);
+        assert(uri.getRawQuery().endsWith("&q=" + encoded));
+    }
+
+    @Test
+    public void testNullIsEmpty() {
+        RequestTemplate template = RequestTemplate.query(URI.create("http://host/search"), SEARCH, "street", "city");
+        assert(template.expand(null, "A").toString().endsWith("&street=&city=A"));
+    }
+
+    @Test
+    public void testPathTemplate() {
+        URI base = URI.create("https://api.mapbox.com");
+        RequestTemplate template = RequestTemplate.path(base, "/geocoding/v5/mapbox.places/", ".json",
+                new String[]{"access_token", "pk.a b", "limit", "1"});
+        URI uri = template.expand("1 Main St Springfield");
+        assert(uri.toString().equals("https://api.mapbox.com/geocoding/v5/mapbox.places/1%20Main%20St%20Springfield.json?access_token=pk.a%20b&limit=1"));
+        assert(uri.getPath().equals("/geocoding/v5/mapbox.places/1 Main St Springfield.json"));
+    }
+
+    @Test
+    public void testExpandJoined() {
+        RequestTemplate template = RequestTemplate.path(URI.create("http://host:1"), "/geocoding/v5/mapbox.places-permanent/", ".json",
+                new String[]{"limit", "1"});
+        URI uri = template.expandJoined(Arrays.asList("a b", "c"), ';');
+        assert(uri.toString().equals("http://host:1/geocoding/v5/mapbox.places-permanent/a%20b;c.json?limit=1"));
+    }
+
+    @Test
+    public void testRejectsWrongValueCount() {
+        boolean rejected = false;
+        try {
+            RequestTemplate.query(URI.create("http://host/search"), SEARCH, "q").expand("a", "b");
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assert(rejected);
+    }
+}
@@ -0,0 +1,56 @@
+package com.si;
+
+import org.junit.Test;
+
+public class TestSharedHttpClient {
+
+    @Test
+    public void shouldShareClientsWithTheSameSettings() {
+        SharedHttpClient first = SharedHttpClient.acquire(4, 2, 30, 60, 1000, 2000, 3000);
+        SharedHttpClient second = SharedHttpClient.acquire(4, 1, 30, 60, 1000, 2000, 3000);
+        SharedHttpClient other = SharedHttpClient.acquire(4, 1, 30, 60, 1000, 2000, 4000);
+        try {
+            assert(first == second);
+            assert(first != other);
+            assert(first.getClient() == second.getClient());
+        } finally {
+            first.release(2);
+            second.release(1);
+            other.release(1);
+        }
+    }
+
+    @Test
+    public void shouldSizePoolFromCurrentRoutes() {
+        SharedHttpClient first = SharedHttpClient.acquire(8, 3, 31, 60, 1000, 2000, 3000);
+        assert(first.getMaxTotal() == 24);
+        SharedHttpClient second = SharedHttpClient.acquire(8, 2, 31, 60, 1000, 2000, 3000);
+        assert(second.getMaxTotal() == 40);
+        second.release(2);
+        assert(first.getMaxTotal() == 24);
+        for (int i = 0; i < 100; i++) {
+            SharedHttpClient cycle = SharedHttpClient.acquire(8, 2, 31, 60, 1000, 2000, 3000);
+            cycle.release(2);
+        }
+        assert(first.getMaxTotal() == 24);
+        first.release(3);
+    }
+
+    @Test
+    public void shouldCloseClientWithLastReference() {
+        SharedHttpClient first = SharedHttpClient.acquire(2, 1, 32, 60, 1000, 2000, 3000);
+        SharedHttpClient second = SharedHttpClient.acquire(2, 1, 32, 60, 1000, 2000, 3000);
+        first.release(1);
+        SharedHttpClient third = SharedHttpClient.acquire(2, 1, 32, 60, 1000, 2000, 3000);
+        assert(third == second);
+        second.release(1);
+        third.release(1);
+        SharedHttpClient fresh = SharedHttpClient.acquire(2, 1, 32, 60, 1000, 2000, 3000);
+        try {
+            assert(fresh != first);
+            assert(fresh.getMaxTotal() == 2);
+        } finally {
+            fresh.release(1);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.si;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestTokenBucketRateLimiter {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void shouldAllowBurstThenRefillAtRate() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 4.0, 3, 0L);
+        assert(limiter.tryAcquire(0L));
+        assert(limiter.tryAcquire(0L));
+        assert(limiter.tryAcquire(0L));
+        assert(!limiter.tryAcquire(0L));
+        assert(!limiter.tryAcquire(SECOND / 4 - 1));
+        assert(limiter.tryAcquire(SECOND / 4));
+        assert(!limiter.tryAcquire(SECOND / 4));
+        assert(limiter.tryAcquire(SECOND / 2));
+    }
+
+    @Test
+    public void shouldNotRefillPastBurst() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 10.0, 2, 0L);
+        long later = 60 * SECOND;
+        assert(limiter.tryAcquire(later));
+        assert(limiter.tryAcquire(later));
+        assert(!limiter.tryAcquire(later));
+    }
+
+    @Test
+    public void shouldQueueReservationsAtSustainedRate() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 5.0, 1, 0L);
+        assert(limiter.reserve(0L) == 0L);
+        assert(limiter.reserve(0L) == SECOND / 5);
+        assert(limiter.reserve(0L) == 2 * SECOND / 5);
+        assert(!limiter.tryAcquire(2 * SECOND / 5));
+        long last = 0L;
+        for (int i = 0; i < 300; i++) {
+            last = limiter.reserve(0L);
+        }
+        assert(last == 302 * SECOND / 5);
+    }
+
+    @Test
+    public void shouldNotLimitWithoutRate() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 0.0, 1, 0L);
+        for (int i = 0; i < 1000; i++) {
+            assert(limiter.tryAcquire(0L));
+            assert(limiter.reserve(0L) == 0L);
+        }
+    }
+
+    @Test
+    public void shouldLoosenWhenStricterStepReleases() {
+        TokenBucketRateLimiter fast = TokenBucketRateLimiter.forEndpoint("http://limited:8080/search", 10.0, 5);
+        TokenBucketRateLimiter slow = TokenBucketRateLimiter.forEndpoint("http://LIMITED:8080/reverse", 2.0, 1);
+        try {
+            assert(fast == slow);
+            assert(fast.getPermitsPerSecond() == 2.0);
+            assert(fast.getBurst() == 1);
+        } finally {
+            slow.release(2.0, 1);
+        }
+        try {
+            assert(fast.getPermitsPerSecond() == 10.0);
+            assert(fast.getBurst() == 5);
+        } finally {
+            fast.release(10.0, 5);
+        }
+        TokenBucketRateLimiter fresh = TokenBucketRateLimiter.forEndpoint("http://limited:8080", 3.0, 2);
+        try {
+            assert(fresh != fast);
+            assert(fresh.getPermitsPerSecond() == 3.0);
+        } finally {
+            fresh.release(3.0, 2);
+        }
+    }
+
+    @Test
+    public void shouldKeepUnlimitedStepsFromLoosening() {
+        TokenBucketRateLimiter unlimited = TokenBucketRateLimiter.forEndpoint("http://mixed:8080", 0.0, 1);
+        TokenBucketRateLimiter limited = TokenBucketRateLimiter.forEndpoint("http://mixed:8080", 4.0, 2);
+        try {
+            assert(unlimited.getPermitsPerSecond() == 4.0);
+        } finally {
+            limited.release(4.0, 2);
+        }
+        try {
+            assert(unlimited.getPermitsPerSecond() == 0.0);
+        } finally {
+            unlimited.release(0.0, 1);
+        }
+    }
+}